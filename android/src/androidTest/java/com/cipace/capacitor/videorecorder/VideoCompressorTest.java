@@ -0,0 +1,184 @@
+package com.cipace.capacitor.videorecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaMuxer;
+import android.view.Surface;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class VideoCompressorTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int FRAME_RATE = 30;
+    private static final int FRAMES = 60;
+
+    private File dir;
+
+    @Before
+    public void createDir() {
+        dir = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "compressor-test");
+        dir.mkdirs();
+    }
+
+    @After
+    public void deleteDir() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void compressesGeneratedClip() throws Exception {
+        File input = new File(dir, "input.mp4");
+        File output = new File(dir, "output.mp4");
+        generateClip(input);
+
+        VideoCompressor.Options options = new VideoCompressor.Options();
+        options.maxWidth = 320;
+        options.maxHeight = 320;
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Object> outcome = new AtomicReference<>();
+        VideoCompressor.compress("test", input, output, options, new VideoRecorder.RecordingCallback() {
+            @Override
+            public void onSuccess(Object result) {
+                outcome.set(result);
+                done.countDown();
+            }
+
+            @Override
+            public void onError(VideoRecorderError error) {
+                outcome.set(error);
+                done.countDown();
+            }
+        });
+        assertTrue("Compression timed out", done.await(60, TimeUnit.SECONDS));
+        assertTrue("Compression failed: " + outcome.get(), outcome.get() instanceof VideoCompressor.Result);
+
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(output.getAbsolutePath());
+            // The source has no audio, so only the video track comes out
+            assertEquals(1, extractor.getTrackCount());
+            MediaFormat format = extractor.getTrackFormat(0);
+            assertEquals(MediaFormat.MIMETYPE_VIDEO_AVC, format.getString(MediaFormat.KEY_MIME));
+            assertEquals(320, format.getInteger(MediaFormat.KEY_WIDTH));
+        } finally {
+            extractor.release();
+        }
+        long inputMs = durationMs(input);
+        long outputMs = durationMs(output);
+        assertTrue("Input duration " + inputMs, inputMs > 1000);
+        assertEquals(inputMs, outputMs, 200);
+    }
+
+    @Test
+    public void readsIntegerAndFloatFrameRates() {
+        MediaFormat format = MediaFormat.createVideoFormat(MediaFormat.MIMETYPE_VIDEO_AVC, WIDTH, HEIGHT);
+        assertEquals(30.0, VideoCompressor.frameRateOf(format, 30.0), 0);
+
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, 24);
+        assertEquals(24.0, VideoCompressor.frameRateOf(format, 30.0), 0);
+
+        format.setFloat(MediaFormat.KEY_FRAME_RATE, 29.97f);
+        assertEquals(29.97, VideoCompressor.frameRateOf(format, 30.0), 0.001);
+
+        format.setFloat(MediaFormat.KEY_FRAME_RATE, 0f);
+        assertEquals(30.0, VideoCompressor.frameRateOf(format, 30.0), 0);
+    }
+
+    /** Encodes FRAMES solid-color frames at roughly FRAME_RATE into a video-only MP4. */
+    private static void generateClip(File file) throws IOException, InterruptedException {
+        MediaFormat format = MediaFormat.createVideoFormat(MediaFormat.MIMETYPE_VIDEO_AVC, WIDTH, HEIGHT);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, 1000000);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, 1);
+
+        MediaCodec encoder = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_VIDEO_AVC);
+        MediaMuxer muxer = new MediaMuxer(file.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        try {
+            encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            Surface surface = encoder.createInputSurface();
+            encoder.start();
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            int track = -1;
+            for (int frame = 0; frame < FRAMES; frame++) {
+                // Frames take the time they are posted, so pace them at the frame rate
+                Canvas canvas = surface.lockHardwareCanvas();
+                canvas.drawColor(Color.rgb(frame * 4, 255 - frame * 4, 128));
+                surface.unlockCanvasAndPost(canvas);
+                track = drain(encoder, muxer, info, track, false);
+                Thread.sleep(1000 / FRAME_RATE);
+            }
+            encoder.signalEndOfInputStream();
+            drain(encoder, muxer, info, track, true);
+            surface.release();
+        } finally {
+            encoder.release();
+            muxer.release();
+        }
+    }
+
+    private static int drain(MediaCodec encoder, MediaMuxer muxer, MediaCodec.BufferInfo info, int track,
+                             boolean endOfStream) {
+        while (true) {
+            int index = encoder.dequeueOutputBuffer(info, endOfStream ? 10000 : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream) {
+                    return track;
+                }
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                track = muxer.addTrack(encoder.getOutputFormat());
+                muxer.start();
+            } else if (index >= 0) {
+                ByteBuffer data = encoder.getOutputBuffer(index);
+                assertNotNull(data);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0) {
+                    muxer.writeSampleData(track, data, info);
+                }
+                encoder.releaseOutputBuffer(index, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    muxer.stop();
+                    return track;
+                }
+            }
+        }
+    }
+
+    private static long durationMs(File file) throws IOException {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(file.getAbsolutePath());
+            return Long.parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
+        } finally {
+            retriever.release();
+        }
+    }
+}
@@ -0,0 +1,555 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.AudioTimestamp;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * Captures microphone audio on one dedicated thread, either to AAC in MP4 (.m4a):
+ * {@code AudioRecord} → {@code MediaCodec} → {@code MediaMuxer}, or to 16-bit PCM WAV,
+ * where {@code AudioRecord} reads straight into a memory-mapped {@link WavWriter}.
+ *
+ * For AAC, PCM is read into a fixed ring of direct buffers allocated up front and copied from there
+ * into the encoder's input buffers. When the encoder falls behind, reads keep going into
+ * the ring instead of stalling AudioRecord; only a full ring drops the oldest chunk. The
+ * BufferInfo and the ring are reused, so steady-state capture allocates nothing.
+ *
+ * A capture is up to {@code clipLimit} consecutive clips of {@code clipDurationUs} each
+ * (one unbounded clip when the duration is 0). The encoder keeps running across clips;
+ * only the muxer (or WAV file) is replaced. The capture is published as a {@link RecordingSession}, so
+ * {@code stopRecording}/{@code pauseRecording}/{@code resumeRecording} and progress
+ * events work as for video. Pausing keeps reading but discards the audio.
+ *
+ * Reads the app did not keep up with are lost in AudioRecord's own buffer, which the app
+ * can't observe directly. From API 24 the engine compares the capture position reported
+ * by {@code getTimestamp()} with the frames it has read and counts the difference beyond
+ * the buffer as an overrun ({@link RecordingMetrics#recordAudioOverrun}).
+ */
+public class AudioCaptureEngine implements Runnable {
+
+    private static final String TAG = "AudioCaptureEngine";
+
+    public static final String MIME_TYPE = "audio/mp4";
+    public static final String FORMAT_AAC = "aac";
+    public static final String FORMAT_WAV = "wav";
+    private static final String CODEC_MIME = MediaFormat.MIMETYPE_AUDIO_AAC;
+    static final int SAMPLE_RATE = 44100;
+    static final int BIT_RATE = 96000;
+    private static final int STEREO_BIT_RATE = 128000;
+    // One AAC frame of input per read
+    private static final int CHUNK_FRAMES = 1024;
+    // ~190ms of audio the encoder may fall behind by before chunks are dropped
+    private static final int POOL_SIZE = 8;
+    // WAV has no ring in front of the file, so the driver buffer absorbs stalls instead
+    private static final int WAV_BUFFER_MS = 500;
+    private static final long CODEC_TIMEOUT_US = 10000;
+    // Give up waiting for the encoder's end of stream after this many empty polls (~2s)
+    private static final int MAX_EOS_POLLS = 200;
+
+    private final File outputDir;
+    private final String baseName;
+    private final String recordingId;
+    private final long clipDurationUs;
+    private final int clipLimit;
+    private final long progressIntervalMs;
+    private final boolean wav;
+    private final int sampleRate;
+    private final int channels;
+    private final int bytesPerFrame;
+    private final int chunkBytes;
+    private final int bitRate;
+
+    private AudioLevelMeter levelMeter;
+    private long levelIntervalMs;
+
+    private volatile boolean stopRequested;
+    private volatile boolean paused;
+    private VideoRecorder.RecordingCallback callback;
+
+    // Only touched on the capture thread
+    private final ByteBuffer[] pool = new ByteBuffer[POOL_SIZE];
+    private final long[] poolPtsUs = new long[POOL_SIZE];
+    private int poolHead;
+    private int poolCount;
+    private long framesCaptured;
+    private long droppedChunks;
+    // Overrun detection: every frame read (paused or not), and the frames found lost
+    private AudioTimestamp timestamp;
+    private int bufferFrames;
+    private long framesRead;
+    private long framesLost;
+    private long overruns;
+    private WavWriter wavWriter;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private MediaFormat outputFormat;
+    private MediaMuxer muxer;
+    private int track = -1;
+    private File clipFile;
+    private long clipStartUs = -1;
+    private long clipEndUs;
+    private long clipStartTime;
+    private boolean clipsExhausted;
+    private final ArrayList<VideoRecorder.StopRecordingResult> clips = new ArrayList<>();
+    private long completedBytes;
+    private RecordingSession session;
+
+    /** {@code format} is {@link #FORMAT_AAC} or {@link #FORMAT_WAV}; {@code channels} is 1 or 2. */
+    public AudioCaptureEngine(File outputDir, String baseName, String format, int sampleRate, int channels,
+                              double clipDurationSeconds, int clipLimit, long progressIntervalMs) {
+        this.outputDir = outputDir;
+        this.baseName = baseName;
+        this.recordingId = "recording_" + System.currentTimeMillis();
+        this.clipDurationUs = (long) (clipDurationSeconds * 1000000);
+        this.clipLimit = Math.max(1, clipLimit);
+        this.progressIntervalMs = progressIntervalMs;
+        this.wav = FORMAT_WAV.equals(format);
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bytesPerFrame = 2 * channels;
+        this.chunkBytes = CHUNK_FRAMES * bytesPerFrame;
+        this.bitRate = wav ? sampleRate * bytesPerFrame * 8 : channels == 2 ? STEREO_BIT_RATE : BIT_RATE;
+        if (!wav) {
+            for (int i = 0; i < POOL_SIZE; i++) {
+                pool[i] = ByteBuffer.allocateDirect(chunkBytes).order(ByteOrder.nativeOrder());
+            }
+        }
+    }
+
+    /** Pushes audioLevel events at this interval while capturing (0 = off); call before {@link #start}. */
+    public void setAudioLevelInterval(long intervalMs) {
+        levelIntervalMs = intervalMs;
+        levelMeter = intervalMs > 0 ? new AudioLevelMeter(intervalMs) : null;
+    }
+
+    /**
+     * Starts capturing on a new thread. The callback receives the finished clips (a list
+     * of StopRecordingResult) once the capture ends by duration, limit or stop request.
+     */
+    public void start(VideoRecorder.RecordingCallback callback) {
+        this.callback = callback;
+        new Thread(this, "VideoRecorder-audio").start();
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        AudioRecord record = null;
+        MediaCodec codec = null;
+        VideoRecorderError error = null;
+        try {
+            int channelMask = channels == 2 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+            int minBufferSize = AudioRecord.getMinBufferSize(sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+            if (minBufferSize <= 0) {
+                throw new CaptureException(VideoRecorderError.MICROPHONE_ERROR, "Audio capture format not supported");
+            }
+            // Room for the whole ring (AAC) or the stall budget (WAV) in the driver buffer as well
+            int bufferSize = wav ? sampleRate * bytesPerFrame * WAV_BUFFER_MS / 1000 : chunkBytes * POOL_SIZE;
+            record = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate, channelMask,
+                AudioFormat.ENCODING_PCM_16BIT, Math.max(minBufferSize, bufferSize));
+            if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+                throw new CaptureException(VideoRecorderError.MICROPHONE_ERROR, "Failed to initialize microphone");
+            }
+            bufferFrames = Math.max(minBufferSize, bufferSize) / bytesPerFrame;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                timestamp = new AudioTimestamp();
+            }
+
+            if (wav) {
+                openClip();
+                startRecord(record);
+                captureWav(record);
+            } else {
+                MediaFormat format = MediaFormat.createAudioFormat(CODEC_MIME, sampleRate, channels);
+                format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+                format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+                format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, chunkBytes);
+                codec = MediaCodec.createEncoderByType(CODEC_MIME);
+                codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+                codec.start();
+
+                openClip();
+                startRecord(record);
+                captureAac(record, codec);
+            }
+        } catch (CaptureException e) {
+            error = new VideoRecorderError(e.code, e.getMessage());
+        } catch (Exception e) {
+            Log.e(TAG, "Audio capture failed", e);
+            error = new VideoRecorderError(VideoRecorderError.RECORDING_FAILED, "Audio capture failed: " + e.getMessage());
+        } finally {
+            if (record != null) {
+                record.release();
+            }
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (RuntimeException e) {
+                    // Already in an error state
+                }
+                codec.release();
+            }
+        }
+
+        try {
+            closeClip();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to finish " + clipFile, e);
+            if (error == null) {
+                error = new VideoRecorderError(VideoRecorderError.RECORDING_FAILED, "Failed to finish audio file: " + e.getMessage());
+            }
+        }
+        if (droppedChunks > 0) {
+            Log.w(TAG, "Dropped " + droppedChunks + " chunks while the encoder was behind");
+        }
+        if (overruns > 0) {
+            Log.w(TAG, "Microphone overran " + overruns + " times, losing ~" + framesLost + " frames");
+        }
+        finish(error);
+    }
+
+    private void startRecord(AudioRecord record) throws CaptureException {
+        record.startRecording();
+        if (record.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+            throw new CaptureException(VideoRecorderError.MICROPHONE_ERROR, "Microphone is in use by another app");
+        }
+        beginSession();
+    }
+
+    private void captureAac(AudioRecord record, MediaCodec codec) throws CaptureException {
+        while (!stopRequested) {
+            if (poolCount == POOL_SIZE && !feed(codec, CODEC_TIMEOUT_US)) {
+                // Encoder is stuck; drop the oldest chunk rather than stall the microphone
+                poolHead = (poolHead + 1) % POOL_SIZE;
+                poolCount--;
+                droppedChunks++;
+                RecordingMetrics.recordAudioDroppedChunk();
+            }
+            int slot = (poolHead + poolCount) % POOL_SIZE;
+            ByteBuffer buffer = pool[slot];
+            buffer.clear();
+            int read = read(record, buffer);
+            if (read == 0 || paused) {
+                continue;
+            }
+            if (levelMeter != null) {
+                levelMeter.meter(buffer, read);
+            }
+            buffer.limit(read);
+            poolPtsUs[slot] = framesCaptured * 1000000L / sampleRate;
+            framesCaptured += read / bytesPerFrame;
+            poolCount++;
+
+            feed(codec, 0);
+            drain(codec, false);
+        }
+
+        // Everything that was read goes in before the end of stream
+        record.stop();
+        while (poolCount > 0) {
+            feed(codec, CODEC_TIMEOUT_US);
+            drain(codec, false);
+        }
+        int index;
+        while ((index = codec.dequeueInputBuffer(CODEC_TIMEOUT_US)) < 0) {
+            drain(codec, false);
+        }
+        codec.queueInputBuffer(index, 0, 0, framesCaptured * 1000000L / sampleRate,
+            MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+        drain(codec, true);
+    }
+
+    /** Reads each chunk straight into the WAV file's mapping; paused chunks are overwritten. */
+    private void captureWav(AudioRecord record) throws CaptureException, IOException {
+        long clipFrames = clipDurationUs * sampleRate / 1000000;
+        while (!stopRequested) {
+            ByteBuffer chunk = wavWriter.nextChunk();
+            int read = read(record, chunk);
+            if (read == 0 || paused) {
+                continue;
+            }
+            if (levelMeter != null) {
+                levelMeter.meter(chunk, read);
+            }
+            wavWriter.advance(read);
+            long frames = wavWriter.getDataBytes() / bytesPerFrame;
+            if ((clipFrames > 0 && frames >= clipFrames)
+                || wavWriter.getDataBytes() + chunkBytes > WavWriter.MAX_DATA_BYTES) {
+                if (clips.size() + 1 >= clipLimit) {
+                    break;
+                }
+                closeClip();
+                openClip();
+                if (session != null) {
+                    session.setOutput(clipFile, completedBytes);
+                }
+            }
+        }
+        record.stop();
+    }
+
+    /** One blocking read into {@code target}, with overrun accounting. */
+    private int read(AudioRecord record, ByteBuffer target) throws CaptureException {
+        int read = record.read(target, chunkBytes);
+        if (read < 0) {
+            throw new CaptureException(VideoRecorderError.MICROPHONE_ERROR, "Microphone read failed (" + read + ")");
+        }
+        framesRead += read / bytesPerFrame;
+        if (timestamp != null && record.getTimestamp(timestamp, AudioTimestamp.TIMEBASE_MONOTONIC) == AudioRecord.SUCCESS) {
+            // Frames captured but neither read nor already counted as lost; more than the
+            // buffer holds means the driver overwrote some
+            long lost = timestamp.framePosition - framesRead - framesLost - bufferFrames;
+            if (lost > 0) {
+                framesLost += lost;
+                overruns++;
+                RecordingMetrics.recordAudioOverrun(lost);
+            }
+        }
+        return read;
+    }
+
+    /** Stops the capture; the start callback then receives the clips. */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    /** Moves pooled chunks into the encoder while it has free input buffers. */
+    private boolean feed(MediaCodec codec, long timeoutUs) {
+        while (poolCount > 0) {
+            int index = codec.dequeueInputBuffer(timeoutUs);
+            if (index < 0) {
+                return false;
+            }
+            ByteBuffer input = codec.getInputBuffer(index);
+            ByteBuffer chunk = pool[poolHead];
+            int length = chunk.remaining();
+            input.clear();
+            input.put(chunk);
+            codec.queueInputBuffer(index, 0, length, poolPtsUs[poolHead], 0);
+            poolHead = (poolHead + 1) % POOL_SIZE;
+            poolCount--;
+            timeoutUs = 0;
+        }
+        return true;
+    }
+
+    /** Writes encoded frames to the current clip; waits for the end of stream when asked. */
+    private void drain(MediaCodec codec, boolean endOfStream) {
+        int emptyPolls = 0;
+        while (true) {
+            int index = codec.dequeueOutputBuffer(info, endOfStream ? CODEC_TIMEOUT_US : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream || ++emptyPolls > MAX_EOS_POLLS) {
+                    return;
+                }
+                continue;
+            }
+            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                outputFormat = codec.getOutputFormat();
+                startMuxer();
+                continue;
+            }
+            if (index < 0) {
+                continue;
+            }
+
+            // Codec config is carried by the output format
+            if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0 && track >= 0) {
+                writeSample(codec.getOutputBuffer(index));
+            }
+            codec.releaseOutputBuffer(index, false);
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                return;
+            }
+        }
+    }
+
+    private void writeSample(ByteBuffer data) {
+        if (clipsExhausted) {
+            return;
+        }
+        long ptsUs = info.presentationTimeUs;
+        if (clipStartUs < 0) {
+            clipStartUs = ptsUs;
+        } else if (clipDurationUs > 0 && ptsUs - clipStartUs >= clipDurationUs) {
+            if (clips.size() + 1 >= clipLimit) {
+                // Last clip is full: end the capture and drop what the encoder still holds
+                clipsExhausted = true;
+                stopRequested = true;
+                return;
+            }
+            closeClip();
+            openClip();
+            startMuxer();
+            clipStartUs = ptsUs;
+            if (session != null) {
+                session.setOutput(clipFile, completedBytes);
+            }
+        }
+        info.presentationTimeUs = ptsUs - clipStartUs;
+        muxer.writeSampleData(track, data, info);
+        clipEndUs = info.presentationTimeUs + CHUNK_FRAMES * 1000000L / sampleRate;
+    }
+
+    private void openClip() {
+        clipFile = new File(outputDir, baseName + (clips.isEmpty() ? "" : "_" + clips.size()) + (wav ? ".wav" : ".m4a"));
+        try {
+            if (wav) {
+                wavWriter = new WavWriter(clipFile, sampleRate, channels, chunkBytes);
+            } else {
+                muxer = new MediaMuxer(clipFile.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create " + clipFile, e);
+        }
+        track = -1;
+        clipStartUs = -1;
+        clipEndUs = 0;
+        clipStartTime = System.currentTimeMillis();
+    }
+
+    private void startMuxer() {
+        if (outputFormat != null && track < 0) {
+            track = muxer.addTrack(outputFormat);
+            muxer.start();
+        }
+    }
+
+    /** Finishes the current clip; a clip without samples is deleted. */
+    private void closeClip() {
+        if (wav) {
+            closeWavClip();
+            return;
+        }
+        if (muxer == null) {
+            return;
+        }
+        boolean hasSamples = track >= 0 && clipStartUs >= 0;
+        try {
+            if (hasSamples) {
+                muxer.stop();
+            }
+        } finally {
+            muxer.release();
+            muxer = null;
+        }
+        if (!hasSamples) {
+            clipFile.delete();
+            return;
+        }
+        long fileSize = clipFile.length();
+        completedBytes += fileSize;
+        double duration = clipEndUs / 1000000.0;
+        clips.add(new VideoRecorder.StopRecordingResult(recordingId, clipFile.getAbsolutePath(), fileSize,
+            duration, 0, 0, clipStartTime, System.currentTimeMillis(), null, MIME_TYPE, 0, "mp4a.40.2",
+            duration > 0 ? (long) (fileSize * 8 / duration) : bitRate));
+    }
+
+    private void closeWavClip() {
+        if (wavWriter == null) {
+            return;
+        }
+        WavWriter writer = wavWriter;
+        wavWriter = null;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to finish " + clipFile, e);
+        }
+        if (writer.getDataBytes() == 0) {
+            clipFile.delete();
+            return;
+        }
+        long fileSize = clipFile.length();
+        completedBytes += fileSize;
+        clips.add(new VideoRecorder.StopRecordingResult(recordingId, clipFile.getAbsolutePath(), fileSize,
+            writer.getDuration(), 0, 0, clipStartTime, System.currentTimeMillis(), null, WavWriter.MIME_TYPE, 0,
+            "pcm", bitRate));
+    }
+
+    private void beginSession() throws CaptureException {
+        double maxDuration = clipDurationUs > 0 ? clipDurationUs * clipLimit / 1000000.0 : 0;
+        // A mapped WAV file is extended ahead of the data, so its size comes from the byte rate
+        session = RecordingSession.begin(recordingId, clipFile, maxDuration, 0, bitRate / 8.0, wav,
+            progressIntervalMs);
+        if (session == null) {
+            throw new CaptureException(VideoRecorderError.ALREADY_RECORDING, "Recording is already in progress");
+        }
+        if (levelMeter != null) {
+            session.setAudioLevelMeter(levelMeter, levelIntervalMs);
+        }
+        // Requests only flip flags that the capture thread polls
+        session.setController(new RecordingSession.Controller() {
+            @Override
+            public void stop() {
+                stopRequested = true;
+            }
+
+            @Override
+            public void pause(VideoRecorder.RecordingCallback callback) {
+                paused = true;
+                session.pause();
+                callback.onSuccess(null);
+            }
+
+            @Override
+            public void resume(VideoRecorder.RecordingCallback callback) {
+                paused = false;
+                session.resume();
+                callback.onSuccess(null);
+            }
+        });
+    }
+
+    private void finish(VideoRecorderError error) {
+        if (error != null && !clips.isEmpty()) {
+            // Keep the clips that were finished before the failure
+            Log.w(TAG, "Capture ended early: " + error.message);
+            error = null;
+        } else if (error == null && clips.isEmpty()) {
+            error = new VideoRecorderError(VideoRecorderError.RECORDING_FAILED, "No audio was captured");
+        }
+        if (session != null) {
+            if (error != null) {
+                session.fail(error);
+            } else {
+                // stopRecording callers get the last clip
+                session.complete(clips.get(clips.size() - 1));
+            }
+            session = null;
+        }
+        if (error != null) {
+            callback.onError(error);
+        } else {
+            callback.onSuccess(new ArrayList<>(clips));
+        }
+    }
+
+    /** A capture failure with its error code. */
+    private static class CaptureException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final String code;
+
+        CaptureException(String code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.cipace.capacitor.videorecorder;
+
+import com.getcapacitor.JSObject;
+import java.nio.ByteBuffer;
+
+/**
+ * RMS and peak level of the recording's audio in dBFS, for {@code audioLevel} events.
+ *
+ * With PCM at hand (captureAudio), {@link #meter} runs on the capture thread over the
+ * buffer that was just read, using absolute reads and primitive accumulators only, and
+ * publishes one window's levels every interval. MediaRecorder exposes no PCM, so for
+ * video the meter polls {@link AmplitudeSource} instead and reports the peak only.
+ *
+ * Events are built by {@link RecordingSession} on its ticker, at most once per interval
+ * whatever the read rate, so the capture thread never touches the bridge.
+ */
+public class AudioLevelMeter {
+
+    /** Peak sample since the previous call, as {@code MediaRecorder.getMaxAmplitude()}. */
+    public interface AmplitudeSource {
+        int getMaxAmplitude();
+    }
+
+    // 16-bit PCM has ~96 dB of dynamic range; silence is reported as this instead of -Infinity
+    private static final double FLOOR_DB = -96;
+    private static final double FULL_SCALE = 32768.0;
+
+    private final AmplitudeSource source;
+    private final long windowNanos;
+
+    // Capture thread
+    private double sumSquares;
+    private long samples;
+    private int peak;
+    private long windowStart = -1;
+
+    // Written by the capture thread, read by the ticker; published is bumped last
+    private volatile double peakDb;
+    private volatile double rmsDb;
+    private volatile int published;
+    // Ticker
+    private int emitted;
+
+    /** Meters PCM passed to {@link #meter}, publishing every {@code intervalMs}. */
+    public AudioLevelMeter(long intervalMs) {
+        this.source = null;
+        this.windowNanos = intervalMs * 1000000L;
+    }
+
+    /** Polls {@code source} for the peak when an event is due. */
+    public AudioLevelMeter(AmplitudeSource source) {
+        this.source = source;
+        this.windowNanos = 0;
+    }
+
+    /**
+     * Adds {@code bytes} of 16-bit PCM, starting at index 0 of {@code pcm}, to the current
+     * window. The buffer's position and limit are left untouched.
+     */
+    public void meter(ByteBuffer pcm, int bytes) {
+        for (int i = 0; i + 1 < bytes; i += 2) {
+            int sample = pcm.getShort(i);
+            sumSquares += (double) sample * sample;
+            int magnitude = sample < 0 ? -sample : sample;
+            if (magnitude > peak) {
+                peak = magnitude;
+            }
+        }
+        samples += bytes / 2;
+
+        long now = System.nanoTime();
+        if (windowStart < 0) {
+            windowStart = now;
+        } else if (now - windowStart >= windowNanos && samples > 0) {
+            rmsDb = toDb(Math.sqrt(sumSquares / samples));
+            peakDb = toDb(peak);
+            published++;
+            sumSquares = 0;
+            samples = 0;
+            peak = 0;
+            windowStart = now;
+        }
+    }
+
+    /** The latest levels as an event, or null when nothing new was measured; runs on the ticker. */
+    JSObject poll(String recordingId) {
+        JSObject event;
+        if (source != null) {
+            int amplitude;
+            try {
+                amplitude = source.getMaxAmplitude();
+            } catch (RuntimeException e) {
+                // The recorder is being released or swapped (pause below API 24)
+                return null;
+            }
+            event = new JSObject();
+            event.put("peak", toDb(amplitude));
+        } else {
+            int current = published;
+            if (current == emitted) {
+                return null;
+            }
+            emitted = current;
+            event = new JSObject();
+            event.put("peak", peakDb);
+            event.put("rms", rmsDb);
+        }
+        event.put("recordingId", recordingId);
+        return event;
+    }
+
+    private static double toDb(double amplitude) {
+        if (amplitude <= 0) {
+            return FLOOR_DB;
+        }
+        double db = 20 * Math.log10(amplitude / FULL_SCALE);
+        return Math.max(FLOOR_DB, Math.round(db * 10) / 10.0);
+    }
+}
@@ -0,0 +1,334 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.SurfaceTexture;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.hardware.Camera;
+import android.util.Log;
+import android.view.TextureView;
+import android.view.View;
+import android.view.ViewGroup;
+import com.getcapacitor.JSObject;
+import java.io.IOException;
+
+/**
+ * Live camera preview drawn in the host Activity, behind (or above) the WebView, so the
+ * page draws its own controls and no recording Activity is started.
+ *
+ * The camera stays open and previewing between takes: {@link RecordingService} borrows
+ * it for a recording and hands it back afterwards, so a new take only pays for
+ * {@code MediaRecorder.prepare()}/{@code start()}.
+ *
+ * The view lives on the UI thread; the camera, the SurfaceTexture it draws into and all
+ * other state are only touched on the camera thread ({@link CameraPrewarmer#post}).
+ * SurfaceTextures are released by us, not by the TextureView, so one that is still in use
+ * by a recording survives the view being detached (e.g. the app going to background).
+ */
+public class CameraPreview {
+
+    private static final String TAG = "CameraPreview";
+
+    // UI thread
+    private static TextureView view;
+    private static View webView;
+    private static boolean webViewTransparent;
+    // WebView background before the preview made it transparent
+    private static Drawable webViewBackground;
+
+    // Camera thread
+    private static CameraPrewarmer.PreparedCamera camera;
+    // Latest texture offered by the view, and the one the camera draws into
+    private static SurfaceTexture surface;
+    private static SurfaceTexture attached;
+    private static boolean previewing;
+    // Lent to RecordingService; the preview must not be touched until it is handed back
+    private static boolean recording;
+    private static boolean releaseAfterRecording;
+    private static VideoRecorder.RecordingCallback pendingOpen;
+    // Bumped on every open/close so a camera that finishes opening too late is dropped
+    private static int generation;
+
+    /**
+     * Shows the preview at {@code x, y, width, height} (pixels, relative to the WebView's
+     * parent) and opens {@code cameraId}. Must be called on the UI thread. The callback
+     * fires once the first preview is running. Opening again moves the view and reuses
+     * the camera when it is the same one.
+     */
+    public static void open(Activity activity, View hostWebView, int x, int y, int width, int height, boolean toBack,
+                            final int cameraId, final String quality, final VideoRecorder.RecordingCallback callback) {
+        ViewGroup parent = (ViewGroup) hostWebView.getParent();
+        if (parent == null) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.CAMERA_ERROR, "WebView is not attached"));
+            return;
+        }
+        removeView();
+
+        TextureView textureView = new TextureView(activity);
+        textureView.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
+            @Override
+            public void onSurfaceTextureAvailable(final SurfaceTexture texture, int w, int h) {
+                CameraPrewarmer.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        surface = texture;
+                        sync();
+                    }
+                });
+            }
+
+            @Override
+            public void onSurfaceTextureSizeChanged(SurfaceTexture texture, int w, int h) {
+            }
+
+            @Override
+            public boolean onSurfaceTextureDestroyed(final SurfaceTexture texture) {
+                CameraPrewarmer.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (surface == texture) {
+                            surface = null;
+                        }
+                        if (texture == attached) {
+                            // Stops the preview and releases it, unless a recording still draws into it
+                            sync();
+                        } else {
+                            texture.release();
+                        }
+                    }
+                });
+                // Released on the camera thread once the camera no longer uses it
+                return false;
+            }
+
+            @Override
+            public void onSurfaceTextureUpdated(SurfaceTexture texture) {
+            }
+        });
+
+        ViewGroup.MarginLayoutParams params = new ViewGroup.MarginLayoutParams(width, height);
+        params.leftMargin = x;
+        params.topMargin = y;
+        if (toBack) {
+            // The page shows the preview through its transparent background
+            parent.addView(textureView, parent.indexOfChild(hostWebView), params);
+            webViewBackground = hostWebView.getBackground();
+            hostWebView.setBackgroundColor(Color.TRANSPARENT);
+            webViewTransparent = true;
+        } else {
+            parent.addView(textureView, params);
+        }
+        view = textureView;
+        webView = hostWebView;
+
+        CameraPrewarmer.post(new Runnable() {
+            @Override
+            public void run() {
+                final int openGeneration = ++generation;
+                if (recording) {
+                    callback.onError(new VideoRecorderError(VideoRecorderError.ALREADY_RECORDING,
+                        "Can't switch the preview camera while recording"));
+                    return;
+                }
+                failOpen(new VideoRecorderError(VideoRecorderError.CANCELLED, "Preview was opened again"));
+                pendingOpen = callback;
+                if (camera != null && camera.cameraId == cameraId && camera.quality.equals(quality)) {
+                    sync();
+                    return;
+                }
+                releaseCamera();
+                CameraPrewarmer.acquire(cameraId, quality, new VideoRecorder.RecordingCallback() {
+                    @Override
+                    public void onSuccess(Object result) {
+                        CameraPrewarmer.PreparedCamera prepared = (CameraPrewarmer.PreparedCamera) result;
+                        if (openGeneration != generation) {
+                            prepared.camera.release();
+                            return;
+                        }
+                        camera = prepared;
+                        sync();
+                    }
+
+                    @Override
+                    public void onError(VideoRecorderError error) {
+                        if (openGeneration == generation) {
+                            failOpen(error);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /** Removes the preview and releases the camera (after the recording, if one is running). */
+    public static void close() {
+        removeView();
+        CameraPrewarmer.post(new Runnable() {
+            @Override
+            public void run() {
+                generation++;
+                failOpen(new VideoRecorderError(VideoRecorderError.CANCELLED, "Preview was closed"));
+                if (recording) {
+                    releaseAfterRecording = true;
+                } else {
+                    releaseCamera();
+                }
+            }
+        });
+    }
+
+    /**
+     * Lends the previewing camera to a recording, or returns null when there is none.
+     * Runs on the camera thread; the camera must be given back with {@link #giveBack}.
+     */
+    static CameraPrewarmer.PreparedCamera borrow() {
+        if (camera == null || !previewing || recording) {
+            return null;
+        }
+        recording = true;
+        return camera;
+    }
+
+    /** Takes the camera back after the recorder locked it again; runs on the camera thread. */
+    static void giveBack() {
+        recording = false;
+        if (releaseAfterRecording) {
+            releaseAfterRecording = false;
+            releaseCamera();
+            return;
+        }
+        if (previewing) {
+            try {
+                // Some HALs stop the preview when the recorder hands the camera back
+                camera.camera.startPreview();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to restart preview after recording", e);
+            }
+        }
+        // The view may have changed textures while the recording was running
+        sync();
+    }
+
+    /** Points the camera at the view's current texture; runs on the camera thread. */
+    private static void sync() {
+        if (camera == null || recording || attached == surface) {
+            return;
+        }
+        try {
+            if (previewing) {
+                camera.camera.stopPreview();
+                previewing = false;
+            }
+            if (attached != null) {
+                // The view has let go of it
+                attached.release();
+                attached = null;
+            }
+            if (surface != null) {
+                long start = RecordingMetrics.now();
+                camera.camera.setPreviewTexture(surface);
+                camera.camera.startPreview();
+                RecordingMetrics.record(RecordingMetrics.PREVIEW_START, RecordingMetrics.now() - start);
+                attached = surface;
+                previewing = true;
+                completeOpen();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to start preview", e);
+            failOpen(new VideoRecorderError(VideoRecorderError.CAMERA_ERROR, "Failed to start preview: " + e.getMessage()));
+            releaseCamera();
+        }
+    }
+
+    private static void releaseCamera() {
+        if (camera != null) {
+            if (previewing) {
+                camera.camera.stopPreview();
+            }
+            camera.camera.release();
+            camera = null;
+        }
+        previewing = false;
+        if (attached != null && attached != surface) {
+            attached.release();
+        }
+        attached = null;
+    }
+
+    private static void completeOpen() {
+        final VideoRecorder.RecordingCallback callback = pendingOpen;
+        pendingOpen = null;
+        if (callback == null) {
+            return;
+        }
+        final Camera.Size previewSize = camera.previewSize;
+        final JSObject info = camera.toJSObject();
+        final TextureView target = view;
+        if (target != null && previewSize != null) {
+            target.post(new Runnable() {
+                @Override
+                public void run() {
+                    centerCrop(target, previewSize);
+                }
+            });
+        }
+        callback.onSuccess(info);
+    }
+
+    private static void failOpen(VideoRecorderError error) {
+        VideoRecorder.RecordingCallback callback = pendingOpen;
+        pendingOpen = null;
+        if (callback != null) {
+            callback.onError(error);
+        }
+    }
+
+    /** Scales the stretched preview so it fills the view without distortion. */
+    private static void centerCrop(TextureView target, Camera.Size previewSize) {
+        int viewWidth = target.getWidth();
+        int viewHeight = target.getHeight();
+        if (viewWidth == 0 || viewHeight == 0) {
+            return;
+        }
+        // The preview is rotated to portrait by setDisplayOrientation(90)
+        double contentRatio = (double) previewSize.height / previewSize.width;
+        double viewRatio = (double) viewWidth / viewHeight;
+        float scaleX = 1;
+        float scaleY = 1;
+        if (viewRatio > contentRatio) {
+            scaleY = (float) (viewRatio / contentRatio);
+        } else {
+            scaleX = (float) (contentRatio / viewRatio);
+        }
+        Matrix matrix = new Matrix();
+        matrix.setScale(scaleX, scaleY, viewWidth / 2f, viewHeight / 2f);
+        target.setTransform(matrix);
+    }
+
+    private static void removeView() {
+        if (view == null) {
+            return;
+        }
+        ViewGroup parent = (ViewGroup) view.getParent();
+        if (parent != null) {
+            parent.removeView(view);
+        }
+        if (webViewTransparent) {
+            // setBackgroundColor also sets the page's base color, which WebView can't report.
+            // A color background is restored through it; otherwise the base color goes back
+            // to WebView's default white and the view keeps its original drawable.
+            if (webViewBackground instanceof ColorDrawable) {
+                webView.setBackgroundColor(((ColorDrawable) webViewBackground).getColor());
+            } else {
+                webView.setBackgroundColor(Color.WHITE);
+                webView.setBackground(webViewBackground);
+            }
+            webViewBackground = null;
+            webViewTransparent = false;
+        }
+        view = null;
+        webView = null;
+    }
+}
@@ -0,0 +1,271 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.hardware.Camera;
+import android.media.CamcorderProfile;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import com.getcapacitor.JSObject;
+import java.util.List;
+
+/**
+ * Opens and configures the camera on a dedicated thread, either ahead of time
+ * ({@link #prepare}, before the recording interface is shown) or when the Activity asks
+ * for it ({@link #acquire}), so {@code Camera.open()} and the parameter round-trips never
+ * block the UI thread.
+ *
+ * A prepared camera is held for a limited time and then released. All state is only
+ * touched on the camera thread, so an {@link #acquire} issued while a prepare is still
+ * running simply queues behind it and receives the same handle.
+ */
+public class CameraPrewarmer {
+
+    private static final String TAG = "CameraPrewarmer";
+
+    // Previews above this are slower to start and gain nothing on a phone screen
+    private static final int MAX_PREVIEW_PIXELS = 1920 * 1080;
+
+    public static class PreparedCamera {
+        public final Camera camera;
+        public final int cameraId;
+        public final String quality;
+        public final Camera.Size previewSize;
+        // Time this handle spent in Camera.open() and configuration; 0 when a prepared
+        // handle was reused as it was
+        public final long openNanos;
+        public final long configureNanos;
+        // Opened ahead of time by prepare()
+        public final boolean prewarmed;
+
+        PreparedCamera(Camera camera, int cameraId, String quality, Camera.Size previewSize, long openNanos,
+                       long configureNanos, boolean prewarmed) {
+            this.camera = camera;
+            this.cameraId = cameraId;
+            this.quality = quality;
+            this.previewSize = previewSize;
+            this.openNanos = openNanos;
+            this.configureNanos = configureNanos;
+            this.prewarmed = prewarmed;
+        }
+
+        public JSObject toJSObject() {
+            JSObject obj = new JSObject();
+            obj.put("cameraId", cameraId);
+            obj.put("quality", quality);
+            if (previewSize != null) {
+                obj.put("previewWidth", previewSize.width);
+                obj.put("previewHeight", previewSize.height);
+            }
+            obj.put("openTime", RecordingMetrics.toMillis(openNanos + configureNanos));
+            return obj;
+        }
+    }
+
+    private static Handler handler;
+    // Only touched on the camera thread
+    private static PreparedCamera prepared;
+
+    private static final Runnable EXPIRE = new Runnable() {
+        @Override
+        public void run() {
+            if (prepared != null) {
+                Log.d(TAG, "Prepared camera " + prepared.cameraId + " was not used, releasing it");
+                prepared.camera.release();
+                prepared = null;
+            }
+        }
+    };
+
+    /**
+     * Opens and configures {@code cameraId} for {@code quality} and keeps it for up to
+     * {@code keepAliveMs}. Reuses a camera that is already prepared.
+     */
+    public static void prepare(final int cameraId, final String quality, final long keepAliveMs,
+                               final VideoRecorder.RecordingCallback callback) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    PreparedCamera result = obtain(cameraId, quality);
+                    prepared = new PreparedCamera(result.camera, cameraId, quality, result.previewSize,
+                        result.openNanos, result.configureNanos, true);
+                    handler.removeCallbacks(EXPIRE);
+                    handler.postDelayed(EXPIRE, keepAliveMs);
+                    callback.onSuccess(result);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to prepare camera " + cameraId, e);
+                    callback.onError(new VideoRecorderError(VideoRecorderError.CAMERA_ERROR,
+                        "Failed to open camera: " + e.getMessage()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Hands a configured camera to the caller, who then owns and releases it: the
+     * prepared one when it matches, otherwise a freshly opened one.
+     */
+    public static void acquire(final int cameraId, final String quality,
+                               final VideoRecorder.RecordingCallback callback) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callback.onSuccess(obtain(cameraId, quality));
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to open camera " + cameraId, e);
+                    callback.onError(new VideoRecorderError(VideoRecorderError.CAMERA_ERROR,
+                        "Failed to open camera: " + e.getMessage()));
+                }
+            }
+        });
+    }
+
+    /** Releases a prepared camera that hasn't been acquired. */
+    public static void release() {
+        post(EXPIRE);
+    }
+
+    /** Takes the prepared camera if it fits, otherwise opens a new one; runs on the camera thread. */
+    private static PreparedCamera obtain(int cameraId, String quality) {
+        handler.removeCallbacks(EXPIRE);
+        PreparedCamera current = prepared;
+        prepared = null;
+        if (current != null) {
+            if (current.cameraId == cameraId) {
+                if (current.quality.equals(quality)) {
+                    return new PreparedCamera(current.camera, cameraId, quality, current.previewSize, 0, 0, true);
+                }
+                // Same camera, different quality: only the parameters need to change
+                long start = RecordingMetrics.now();
+                Camera.Size previewSize = configure(current.camera, cameraId, quality);
+                long configureNanos = RecordingMetrics.now() - start;
+                RecordingMetrics.record(RecordingMetrics.CAMERA_CONFIGURE, configureNanos);
+                return new PreparedCamera(current.camera, cameraId, quality, previewSize, 0, configureNanos, true);
+            }
+            current.camera.release();
+        }
+
+        long start = RecordingMetrics.now();
+        Camera camera = Camera.open(cameraId);
+        long opened = RecordingMetrics.now();
+        try {
+            Camera.Size previewSize = configure(camera, cameraId, quality);
+            long openNanos = opened - start;
+            long configureNanos = RecordingMetrics.now() - opened;
+            RecordingMetrics.record(RecordingMetrics.CAMERA_OPEN, openNanos);
+            RecordingMetrics.record(RecordingMetrics.CAMERA_CONFIGURE, configureNanos);
+            Log.d(TAG, "Opened camera " + cameraId + " in " + RecordingMetrics.toMillis(openNanos + configureNanos) + "ms");
+            return new PreparedCamera(camera, cameraId, quality, previewSize, openNanos, configureNanos, false);
+        } catch (RuntimeException e) {
+            camera.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Applies the recording configuration: preview size matching the quality's aspect
+     * ratio, continuous video focus, stabilization, auto scene, portrait display and the
+     * recording hint (so {@code MediaRecorder.start()} doesn't restart the preview).
+     * Returns the chosen preview size.
+     */
+    static Camera.Size configure(Camera camera, int cameraId, String quality) {
+        Camera.Parameters parameters = camera.getParameters();
+
+        Camera.Size previewSize = choosePreviewSize(parameters, StoragePreflight.resolveProfile(quality, cameraId));
+        if (previewSize != null) {
+            parameters.setPreviewSize(previewSize.width, previewSize.height);
+        }
+
+        List<String> focusModes = parameters.getSupportedFocusModes();
+        if (focusModes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
+            parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
+        } else if (focusModes.contains(Camera.Parameters.FOCUS_MODE_AUTO)) {
+            parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
+        }
+
+        if (parameters.isVideoStabilizationSupported()) {
+            parameters.setVideoStabilization(true);
+        }
+
+        List<String> sceneModes = parameters.getSupportedSceneModes();
+        if (sceneModes != null && sceneModes.contains(Camera.Parameters.SCENE_MODE_AUTO)) {
+            parameters.setSceneMode(Camera.Parameters.SCENE_MODE_AUTO);
+        }
+
+        parameters.setRecordingHint(true);
+        try {
+            camera.setParameters(parameters);
+        } catch (RuntimeException e) {
+            // Some HALs reject the hint together with other settings; keep the rest
+            Log.w(TAG, "Camera rejected recording hint, configuring without it", e);
+            parameters.setRecordingHint(false);
+            camera.setParameters(parameters);
+        }
+        camera.setDisplayOrientation(90);
+        return previewSize;
+    }
+
+    /**
+     * The preview size closest to the recording size with the same aspect ratio, capped
+     * at 1080p; the closest size overall when no aspect ratio matches.
+     */
+    static Camera.Size choosePreviewSize(Camera.Parameters parameters, CamcorderProfile profile) {
+        List<Camera.Size> supportedPreviewSizes = parameters.getSupportedPreviewSizes();
+        if (supportedPreviewSizes == null || supportedPreviewSizes.isEmpty()) {
+            return null;
+        }
+
+        int targetWidth = profile.videoFrameWidth;
+        int targetHeight = profile.videoFrameHeight;
+        double targetRatio = (double) targetWidth / targetHeight;
+
+        Camera.Size optimalSize = null;
+        double minDiff = Double.MAX_VALUE;
+        for (Camera.Size size : supportedPreviewSizes) {
+            double ratio = (double) size.width / size.height;
+            if (Math.abs(ratio - targetRatio) < 0.1) {
+                double sizeDiff = Math.abs(size.height - targetHeight);
+                if (sizeDiff < minDiff) {
+                    optimalSize = size;
+                    minDiff = sizeDiff;
+                }
+            }
+        }
+
+        if (optimalSize == null) {
+            minDiff = Double.MAX_VALUE;
+            for (Camera.Size size : supportedPreviewSizes) {
+                double sizeDiff = Math.abs(size.width - targetWidth) + Math.abs(size.height - targetHeight);
+                if (sizeDiff < minDiff) {
+                    optimalSize = size;
+                    minDiff = sizeDiff;
+                }
+            }
+        }
+
+        if (optimalSize != null && optimalSize.width * optimalSize.height > MAX_PREVIEW_PIXELS) {
+            for (Camera.Size size : supportedPreviewSizes) {
+                if (size.width <= 1920 && size.height <= 1080) {
+                    double ratio = (double) size.width / size.height;
+                    if (Math.abs(ratio - targetRatio) < 0.1) {
+                        optimalSize = size;
+                        break;
+                    }
+                }
+            }
+        }
+
+        return optimalSize != null ? optimalSize : supportedPreviewSizes.get(0);
+    }
+
+    /** Runs {@code runnable} on the camera thread, where the cameras handed out here live. */
+    static synchronized void post(Runnable runnable) {
+        if (handler == null) {
+            HandlerThread thread = new HandlerThread("VideoRecorder-camera");
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        handler.post(runnable);
+    }
+}
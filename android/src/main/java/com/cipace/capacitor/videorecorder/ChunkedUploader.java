@@ -0,0 +1,415 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.os.Process;
+import android.util.Log;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads finished recordings and segments as resumable chunked PUTs.
+ *
+ * Protocol: every chunk is a {@code PUT} to the upload URL with
+ * {@code Content-Range: bytes <first>-<last>/<total>} and an {@code X-Upload-Id}
+ * header. The server answers 308 (optionally with {@code Range: bytes=0-<last>} to
+ * say how much it has) for intermediate chunks and 2xx once the file is complete.
+ * After a restart the committed offset is queried with an empty PUT carrying
+ * {@code Content-Range: bytes *}{@code /<total>}; servers that don't support the
+ * query fall back to the locally persisted offset.
+ *
+ * Uploads run on a small scheduled pool, so concurrency is bounded and retries wait
+ * out their backoff without holding a worker. State is persisted as one properties
+ * file per upload and reloaded by {@link #resumePending()}. Header values may carry
+ * credentials, so only their names are persisted: an upload that had headers comes
+ * back as {@link #STATUS_NEEDS_HEADERS} and waits for {@link #resume} to supply them.
+ * The wire protocol itself lives in {@link UploadProtocol}.
+ */
+public class ChunkedUploader {
+
+    private static final String TAG = "ChunkedUploader";
+
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_UPLOADING = "uploading";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_FAILED = "failed";
+    // Reloaded after a restart; the caller has to supply the headers again
+    public static final String STATUS_NEEDS_HEADERS = "needsHeaders";
+
+    private static final String STATE_SUFFIX = ".properties";
+    private static final String HEADER_NAMES = "headerNames";
+    private static final long BASE_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60000;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    public static class Upload {
+        public final String uploadId;
+        public final String filePath;
+        public final String url;
+        public final Map<String, String> headers;
+        public final String recordingId;
+        public final int segmentIndex;
+        volatile long offset;
+        volatile long totalBytes;
+        volatile String status;
+        volatile int attempts;
+        volatile boolean cancelled;
+
+        Upload(String uploadId, String filePath, String url, Map<String, String> headers,
+               String recordingId, int segmentIndex) {
+            this.uploadId = uploadId;
+            this.filePath = filePath;
+            this.url = url;
+            this.headers = headers;
+            this.recordingId = recordingId;
+            this.segmentIndex = segmentIndex;
+            this.status = STATUS_PENDING;
+        }
+
+        public JSObject toJSObject() {
+            JSObject obj = new JSObject();
+            obj.put("uploadId", uploadId);
+            obj.put("filePath", filePath);
+            obj.put("recordingId", recordingId);
+            if (segmentIndex >= 0) {
+                obj.put("segmentIndex", segmentIndex);
+            }
+            obj.put("bytesSent", offset);
+            obj.put("totalBytes", totalBytes);
+            obj.put("status", status);
+            return obj;
+        }
+    }
+
+    private static volatile ChunkedUploader instance;
+
+    private final File stateDir;
+    private final int chunkSize;
+    private final int maxRetries;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+
+    /** Creates the shared uploader; later calls return the existing one. */
+    public static synchronized ChunkedUploader initialize(File stateDir, int chunkSize, int concurrency, int maxRetries) {
+        if (instance == null) {
+            instance = new ChunkedUploader(stateDir, chunkSize, concurrency, maxRetries);
+        }
+        return instance;
+    }
+
+    /** Returns the shared uploader, or null if the plugin hasn't loaded yet. */
+    public static ChunkedUploader getInstance() {
+        return instance;
+    }
+
+    ChunkedUploader(File stateDir, int chunkSize, int concurrency, int maxRetries) {
+        this.stateDir = stateDir;
+        this.chunkSize = chunkSize;
+        this.maxRetries = maxRetries;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(Math.max(1, concurrency), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "VideoRecorder-upload-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /** Queues a file for upload and returns its upload ID. */
+    public String enqueue(String filePath, String url, Map<String, String> headers, String recordingId,
+                          int segmentIndex) {
+        Upload upload = new Upload(UUID.randomUUID().toString(), filePath, url,
+            headers != null ? new HashMap<>(headers) : new HashMap<String, String>(), recordingId, segmentIndex);
+        upload.totalBytes = new File(filePath).length();
+        uploads.put(upload.uploadId, upload);
+        persist(upload);
+        schedule(upload, 0);
+        return upload.uploadId;
+    }
+
+    /** Reloads uploads that were still in progress when the process died. */
+    public void resumePending() {
+        File[] files = stateDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(STATE_SUFFIX)) {
+                continue;
+            }
+            Upload upload = load(file);
+            if (upload == null || uploads.containsKey(upload.uploadId)) {
+                continue;
+            }
+            if (STATUS_COMPLETED.equals(upload.status) || STATUS_FAILED.equals(upload.status)) {
+                // Reported last time, nothing left to do
+                file.delete();
+                continue;
+            }
+            uploads.put(upload.uploadId, upload);
+            if (!STATUS_NEEDS_HEADERS.equals(upload.status)) {
+                schedule(upload, 0);
+            }
+        }
+    }
+
+    /**
+     * Continues an upload reloaded as {@link #STATUS_NEEDS_HEADERS} with its headers.
+     * Returns false when there is no such upload waiting.
+     */
+    public synchronized boolean resume(String uploadId, Map<String, String> headers) {
+        Upload upload = uploads.get(uploadId);
+        if (upload == null || !STATUS_NEEDS_HEADERS.equals(upload.status)) {
+            return false;
+        }
+        upload.headers.clear();
+        if (headers != null) {
+            upload.headers.putAll(headers);
+        }
+        upload.status = STATUS_PENDING;
+        persist(upload);
+        schedule(upload, 0);
+        return true;
+    }
+
+    public boolean cancel(String uploadId) {
+        Upload upload = uploads.remove(uploadId);
+        if (upload == null) {
+            return false;
+        }
+        // Under the persist lock, so a write already in progress can't bring the state file back
+        synchronized (this) {
+            upload.cancelled = true;
+            stateFile(upload.uploadId).delete();
+        }
+        return true;
+    }
+
+    public List<Upload> getUploads() {
+        return new ArrayList<>(uploads.values());
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // MARK: - Upload loop
+
+    private void schedule(final Upload upload, long delayMs) {
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runUpload(upload);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void runUpload(Upload upload) {
+        if (upload.cancelled) {
+            return;
+        }
+        File file = new File(upload.filePath);
+        if (!file.exists()) {
+            fail(upload, "File no longer exists");
+            return;
+        }
+        upload.totalBytes = file.length();
+        upload.status = STATUS_UPLOADING;
+
+        try {
+            UploadProtocol protocol = new UploadProtocol(upload.url, requestHeaders(upload), "video/mp4");
+            // Only needed after a retry or restart; a fresh upload starts at zero
+            if (upload.offset > 0 || upload.attempts > 0) {
+                long committed = protocol.queryOffset(upload.totalBytes);
+                if (committed >= 0) {
+                    upload.offset = committed;
+                }
+            }
+
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            while (upload.offset < upload.totalBytes) {
+                if (upload.cancelled) {
+                    return;
+                }
+                long length = Math.min(chunkSize, upload.totalBytes - upload.offset);
+                upload.offset = protocol.sendChunk(file, upload.offset, length, upload.totalBytes, buffer);
+                upload.attempts = 0;
+                persist(upload);
+                emitProgress(upload);
+            }
+            complete(upload);
+        } catch (UploadProtocol.PermanentUploadException e) {
+            fail(upload, e.getMessage());
+        } catch (RuntimeException e) {
+            // Bad URL, SecurityException, ...: retrying won't help, but the upload must not stay "uploading"
+            Log.e(TAG, "Upload " + upload.uploadId + " crashed", e);
+            fail(upload, e.getClass().getSimpleName() + ": " + e.getMessage());
+        } catch (IOException e) {
+            upload.attempts++;
+            if (upload.attempts > maxRetries) {
+                fail(upload, e.getMessage());
+                return;
+            }
+            long delay = backoffDelay(upload.attempts);
+            Log.w(TAG, "Upload " + upload.uploadId + " failed, retrying in " + delay + "ms: " + e.getMessage());
+            upload.status = STATUS_PENDING;
+            persist(upload);
+            schedule(upload, delay);
+        }
+    }
+
+    /** The protocol headers plus the caller's. */
+    private Map<String, String> requestHeaders(Upload upload) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Upload-Id", upload.uploadId);
+        headers.put("X-File-Name", new File(upload.filePath).getName());
+        if (upload.recordingId != null) {
+            headers.put("X-Recording-Id", upload.recordingId);
+        }
+        if (upload.segmentIndex >= 0) {
+            headers.put("X-Segment-Index", String.valueOf(upload.segmentIndex));
+        }
+        headers.putAll(upload.headers);
+        return headers;
+    }
+
+    private long backoffDelay(int attempt) {
+        long delay = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt - 1, 16));
+        // Full jitter so many clients don't retry in lockstep
+        return delay / 2 + (long) (random.nextDouble() * delay / 2);
+    }
+
+    private void complete(Upload upload) {
+        upload.status = STATUS_COMPLETED;
+        uploads.remove(upload.uploadId);
+        stateFile(upload.uploadId).delete();
+        VideoRecorderEvents.emit(VideoRecorderEvents.UPLOAD_COMPLETED, upload.toJSObject());
+    }
+
+    private void fail(Upload upload, String message) {
+        Log.e(TAG, "Upload " + upload.uploadId + " failed: " + message);
+        upload.status = STATUS_FAILED;
+        uploads.remove(upload.uploadId);
+        stateFile(upload.uploadId).delete();
+        JSObject event = upload.toJSObject();
+        event.put("error", message);
+        VideoRecorderEvents.emit(VideoRecorderEvents.UPLOAD_FAILED, event);
+    }
+
+    private void emitProgress(Upload upload) {
+        VideoRecorderEvents.emit(VideoRecorderEvents.UPLOAD_PROGRESS, upload.toJSObject());
+    }
+
+    // MARK: - Persistence
+
+    private File stateFile(String uploadId) {
+        return new File(stateDir, uploadId + STATE_SUFFIX);
+    }
+
+    private synchronized void persist(Upload upload) {
+        if (upload.cancelled) {
+            return;
+        }
+        Properties props = new Properties();
+        props.setProperty("uploadId", upload.uploadId);
+        props.setProperty("filePath", upload.filePath);
+        props.setProperty("url", upload.url);
+        if (upload.recordingId != null) {
+            props.setProperty("recordingId", upload.recordingId);
+        }
+        props.setProperty("segmentIndex", String.valueOf(upload.segmentIndex));
+        props.setProperty("offset", String.valueOf(upload.offset));
+        props.setProperty("totalBytes", String.valueOf(upload.totalBytes));
+        props.setProperty("status", upload.status);
+        // Names only: values may be credentials and are never written to disk
+        StringBuilder names = new StringBuilder();
+        for (String name : upload.headers.keySet()) {
+            if (names.length() > 0) {
+                names.append(',');
+            }
+            names.append(name);
+        }
+        props.setProperty(HEADER_NAMES, names.toString());
+
+        if (!stateDir.exists() && !stateDir.mkdirs()) {
+            Log.w(TAG, "Failed to create " + stateDir);
+            return;
+        }
+        File file = stateFile(upload.uploadId);
+        File tmp = new File(stateDir, file.getName() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                props.store(out, null);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Failed to rename " + tmp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to persist upload state", e);
+            tmp.delete();
+        }
+    }
+
+    private Upload load(File file) {
+        Properties props = new Properties();
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read upload state " + file, e);
+            file.delete();
+            return null;
+        }
+
+        String uploadId = props.getProperty("uploadId");
+        String filePath = props.getProperty("filePath");
+        String url = props.getProperty("url");
+        if (uploadId == null || filePath == null || url == null) {
+            file.delete();
+            return null;
+        }
+        Upload upload = new Upload(uploadId, filePath, url, new HashMap<String, String>(),
+            props.getProperty("recordingId"), Integer.parseInt(props.getProperty("segmentIndex", "-1")));
+        upload.offset = Long.parseLong(props.getProperty("offset", "0"));
+        upload.totalBytes = Long.parseLong(props.getProperty("totalBytes", "0"));
+        upload.status = props.getProperty("status", STATUS_PENDING);
+        if (!props.getProperty(HEADER_NAMES, "").isEmpty() && !STATUS_COMPLETED.equals(upload.status)
+                && !STATUS_FAILED.equals(upload.status)) {
+            upload.status = STATUS_NEEDS_HEADERS;
+        }
+        return upload;
+    }
+}
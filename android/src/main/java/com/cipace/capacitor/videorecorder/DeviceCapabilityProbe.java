@@ -0,0 +1,425 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.hardware.Camera;
+import android.media.CamcorderProfile;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.util.Log;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Probes what this device can actually record: CamcorderProfile levels, video and
+ * preview sizes, fps ranges and stabilization of every camera, plus the available
+ * encoders from MediaCodecList.
+ *
+ * Opening each camera takes a few hundred milliseconds, so a complete probe is cached
+ * on disk keyed by {@link Build#FINGERPRINT} and only repeated after a system update.
+ * A probe that couldn't open a camera (no permission, camera in use) is returned but
+ * not cached.
+ */
+public class DeviceCapabilityProbe {
+
+    private static final String TAG = "DeviceCapabilityProbe";
+
+    // Bump when the probe output changes so old caches are ignored
+    private static final int CACHE_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int[] QUALITIES = {
+        CamcorderProfile.QUALITY_2160P,
+        CamcorderProfile.QUALITY_1080P,
+        CamcorderProfile.QUALITY_720P,
+        CamcorderProfile.QUALITY_480P,
+        CamcorderProfile.QUALITY_CIF,
+        CamcorderProfile.QUALITY_QVGA,
+        CamcorderProfile.QUALITY_QCIF
+    };
+    private static final String[] QUALITY_NAMES = { "2160p", "1080p", "720p", "480p", "cif", "qvga", "qcif" };
+
+    private static final String[] ENCODER_TYPES = {
+        MediaFormat.MIMETYPE_VIDEO_AVC,
+        MediaFormat.MIMETYPE_VIDEO_HEVC,
+        MediaFormat.MIMETYPE_AUDIO_AAC
+    };
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "VideoRecorder-probe");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static File cacheFile;
+    // Only touched on EXECUTOR
+    private static JSONObject capabilities;
+    // "<cameraId>:<quality>" pairs that have a CamcorderProfile the camera can't deliver
+    private static volatile Set<String> unsupportedProfiles = new HashSet<>();
+
+    /** Sets the cache location and loads a cached probe in the background. */
+    public static void initialize(File file) {
+        cacheFile = file;
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                JSONObject cached = readCache();
+                if (cached != null) {
+                    setCapabilities(cached);
+                }
+            }
+        });
+    }
+
+    /**
+     * Delivers the device capabilities as a {@link JSObject}, probing first when there's
+     * no complete probe for this build yet. Cameras are only opened when
+     * {@code canOpenCamera} is true (camera permission granted).
+     */
+    public static void get(final boolean canOpenCamera, final boolean refresh,
+                           final VideoRecorder.RecordingCallback callback) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (refresh || capabilities == null || !capabilities.optBoolean("complete")) {
+                        long start = System.currentTimeMillis();
+                        JSONObject result = probe(canOpenCamera);
+                        Log.d(TAG, "Probed device capabilities in " + (System.currentTimeMillis() - start) + "ms");
+                        setCapabilities(result);
+                        if (result.optBoolean("complete")) {
+                            writeCache(result);
+                        }
+                    }
+                    callback.onSuccess(new JSObject(capabilities.toString()));
+                } catch (Exception e) {
+                    Log.e(TAG, "Capability probe failed", e);
+                    callback.onError(new VideoRecorderError(VideoRecorderError.CAMERA_ERROR,
+                        "Failed to probe device capabilities: " + e.getMessage()));
+                }
+            }
+        });
+    }
+
+    /**
+     * False when a probe found that {@code cameraId} has the CamcorderProfile but can't
+     * deliver its size or has no encoder for it; true otherwise or when nothing is known yet.
+     */
+    public static boolean isRecordable(int cameraId, int quality) {
+        return !unsupportedProfiles.contains(cameraId + ":" + quality);
+    }
+
+    private static void setCapabilities(JSONObject result) {
+        capabilities = result;
+        Set<String> unsupported = new HashSet<>();
+        JSONArray cameras = result.optJSONArray("cameras");
+        for (int i = 0; cameras != null && i < cameras.length(); i++) {
+            JSONObject camera = cameras.optJSONObject(i);
+            JSONArray profiles = camera.optJSONArray("profiles");
+            for (int j = 0; profiles != null && j < profiles.length(); j++) {
+                JSONObject profile = profiles.optJSONObject(j);
+                if (!profile.optBoolean("supported", true)) {
+                    unsupported.add(camera.optInt("cameraId") + ":" + profile.optInt("qualityLevel"));
+                }
+            }
+        }
+        unsupportedProfiles = unsupported;
+    }
+
+    private static JSONObject probe(boolean canOpenCamera) throws JSONException {
+        MediaCodecInfo[] codecInfos = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+        boolean complete = canOpenCamera;
+
+        JSONArray cameras = new JSONArray();
+        JSONArray modes = new JSONArray();
+        for (int cameraId = 0; cameraId < Camera.getNumberOfCameras(); cameraId++) {
+            JSONObject camera = probeCamera(cameraId, canOpenCamera, codecInfos);
+            complete &= camera.optBoolean("opened");
+            cameras.put(camera);
+
+            JSONArray profiles = camera.getJSONArray("profiles");
+            for (int i = 0; i < profiles.length(); i++) {
+                JSONObject profile = profiles.getJSONObject(i);
+                if (!profile.optBoolean("supported", true)) {
+                    continue;
+                }
+                JSONObject mode = new JSONObject();
+                mode.put("type", "video/mp4");
+                mode.put("width", profile.getInt("width"));
+                mode.put("height", profile.getInt("height"));
+                mode.put("camera", camera.getString("facing"));
+                mode.put("quality", profile.getString("quality"));
+                mode.put("frameRate", profile.getInt("frameRate"));
+                mode.put("videoBitRate", profile.getInt("videoBitRate"));
+                mode.put("videoCodec", profile.getString("videoCodec"));
+                mode.put("audioBitRate", profile.getInt("audioBitRate"));
+                modes.put(mode);
+            }
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("version", CACHE_VERSION);
+        result.put("fingerprint", Build.FINGERPRINT);
+        result.put("probedAt", System.currentTimeMillis());
+        result.put("complete", complete);
+        result.put("modes", modes);
+        result.put("cameras", cameras);
+        result.put("encoders", probeEncoders(codecInfos));
+        return result;
+    }
+
+    private static JSONObject probeCamera(int cameraId, boolean canOpenCamera, MediaCodecInfo[] codecInfos)
+            throws JSONException {
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        Camera.getCameraInfo(cameraId, info);
+
+        JSONObject camera = new JSONObject();
+        camera.put("cameraId", cameraId);
+        camera.put("facing", info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT ? "front" : "back");
+        camera.put("orientation", info.orientation);
+
+        List<Camera.Size> videoSizes = null;
+        List<Camera.Size> previewSizes = null;
+        Camera device = null;
+        if (canOpenCamera) {
+            try {
+                device = Camera.open(cameraId);
+                Camera.Parameters parameters = device.getParameters();
+                videoSizes = parameters.getSupportedVideoSizes();
+                previewSizes = parameters.getSupportedPreviewSizes();
+                camera.put("videoSizes", sizesToJson(videoSizes));
+                camera.put("previewSizes", sizesToJson(previewSizes));
+
+                JSONArray fpsRanges = new JSONArray();
+                List<int[]> ranges = parameters.getSupportedPreviewFpsRange();
+                if (ranges != null) {
+                    for (int[] range : ranges) {
+                        JSONObject fps = new JSONObject();
+                        // Camera reports fps * 1000
+                        fps.put("min", range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] / 1000.0);
+                        fps.put("max", range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000.0);
+                        fpsRanges.put(fps);
+                    }
+                }
+                camera.put("fpsRanges", fpsRanges);
+                camera.put("videoStabilization", parameters.isVideoStabilizationSupported());
+                camera.put("opened", true);
+            } catch (RuntimeException e) {
+                // Camera in use by another app or disabled by policy
+                Log.w(TAG, "Could not open camera " + cameraId + " for probing", e);
+                camera.put("opened", false);
+            } finally {
+                if (device != null) {
+                    device.release();
+                }
+            }
+        } else {
+            camera.put("opened", false);
+        }
+
+        // When the camera has no separate video sizes, video uses the preview sizes
+        List<Camera.Size> recordableSizes = videoSizes != null ? videoSizes : previewSizes;
+        JSONArray profiles = new JSONArray();
+        for (int i = 0; i < QUALITIES.length; i++) {
+            if (!CamcorderProfile.hasProfile(cameraId, QUALITIES[i])) {
+                continue;
+            }
+            CamcorderProfile profile = CamcorderProfile.get(cameraId, QUALITIES[i]);
+            String videoMime = videoCodecMime(profile.videoCodec);
+            boolean sizeSupported = recordableSizes == null
+                || containsSize(recordableSizes, profile.videoFrameWidth, profile.videoFrameHeight);
+            boolean encoderSupported = videoMime == null || hasEncoderFor(codecInfos, videoMime,
+                profile.videoFrameWidth, profile.videoFrameHeight, profile.videoFrameRate);
+
+            JSONObject obj = new JSONObject();
+            obj.put("quality", QUALITY_NAMES[i]);
+            obj.put("qualityLevel", QUALITIES[i]);
+            obj.put("width", profile.videoFrameWidth);
+            obj.put("height", profile.videoFrameHeight);
+            obj.put("frameRate", profile.videoFrameRate);
+            obj.put("videoBitRate", profile.videoBitRate);
+            obj.put("videoCodec", videoMime != null ? videoMime : "unknown");
+            obj.put("audioBitRate", profile.audioBitRate);
+            obj.put("audioSampleRate", profile.audioSampleRate);
+            obj.put("audioChannels", profile.audioChannels);
+            obj.put("supported", sizeSupported && encoderSupported);
+            profiles.put(obj);
+        }
+        camera.put("profiles", profiles);
+        return camera;
+    }
+
+    private static JSONArray probeEncoders(MediaCodecInfo[] codecInfos) throws JSONException {
+        JSONArray encoders = new JSONArray();
+        for (MediaCodecInfo codecInfo : codecInfos) {
+            if (!codecInfo.isEncoder()) {
+                continue;
+            }
+            for (String type : codecInfo.getSupportedTypes()) {
+                if (!isProbedType(type)) {
+                    continue;
+                }
+                MediaCodecInfo.CodecCapabilities capabilities = codecInfo.getCapabilitiesForType(type);
+                JSONObject encoder = new JSONObject();
+                encoder.put("name", codecInfo.getName());
+                encoder.put("mimeType", type);
+                encoder.put("hardware", isHardware(codecInfo));
+                MediaCodecInfo.VideoCapabilities video = capabilities.getVideoCapabilities();
+                if (video != null) {
+                    encoder.put("maxWidth", video.getSupportedWidths().getUpper());
+                    encoder.put("maxHeight", video.getSupportedHeights().getUpper());
+                    encoder.put("maxBitRate", video.getBitrateRange().getUpper());
+                }
+                MediaCodecInfo.AudioCapabilities audio = capabilities.getAudioCapabilities();
+                if (audio != null) {
+                    encoder.put("maxBitRate", audio.getBitrateRange().getUpper());
+                    encoder.put("maxChannels", audio.getMaxInputChannelCount());
+                }
+                encoders.put(encoder);
+            }
+        }
+        return encoders;
+    }
+
+    private static boolean hasEncoderFor(MediaCodecInfo[] codecInfos, String mimeType, int width, int height,
+                                         int frameRate) {
+        for (MediaCodecInfo codecInfo : codecInfos) {
+            if (!codecInfo.isEncoder()) {
+                continue;
+            }
+            for (String type : codecInfo.getSupportedTypes()) {
+                if (!type.equalsIgnoreCase(mimeType)) {
+                    continue;
+                }
+                MediaCodecInfo.VideoCapabilities video = codecInfo.getCapabilitiesForType(type).getVideoCapabilities();
+                // Either orientation: some encoders only list landscape sizes
+                if (video != null && (video.areSizeAndRateSupported(width, height, frameRate)
+                        || video.areSizeAndRateSupported(height, width, frameRate))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isProbedType(String type) {
+        for (String probed : ENCODER_TYPES) {
+            if (probed.equalsIgnoreCase(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHardware(MediaCodecInfo codecInfo) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return codecInfo.isHardwareAccelerated();
+        }
+        String name = codecInfo.getName().toLowerCase();
+        return !name.startsWith("omx.google.") && !name.startsWith("c2.android.");
+    }
+
+    private static String videoCodecMime(int videoCodec) {
+        switch (videoCodec) {
+            case MediaRecorder.VideoEncoder.H264:
+                return MediaFormat.MIMETYPE_VIDEO_AVC;
+            case MediaRecorder.VideoEncoder.HEVC:
+                return MediaFormat.MIMETYPE_VIDEO_HEVC;
+            case MediaRecorder.VideoEncoder.MPEG_4_SP:
+                return MediaFormat.MIMETYPE_VIDEO_MPEG4;
+            case MediaRecorder.VideoEncoder.H263:
+                return MediaFormat.MIMETYPE_VIDEO_H263;
+            case MediaRecorder.VideoEncoder.VP8:
+                return MediaFormat.MIMETYPE_VIDEO_VP8;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean containsSize(List<Camera.Size> sizes, int width, int height) {
+        for (Camera.Size size : sizes) {
+            if (size.width == width && size.height == height) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static JSONArray sizesToJson(List<Camera.Size> sizes) throws JSONException {
+        JSONArray array = new JSONArray();
+        if (sizes != null) {
+            for (Camera.Size size : sizes) {
+                JSONObject obj = new JSONObject();
+                obj.put("width", size.width);
+                obj.put("height", size.height);
+                array.put(obj);
+            }
+        }
+        return array;
+    }
+
+    private static JSONObject readCache() {
+        if (cacheFile == null || !cacheFile.exists()) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(cacheFile)) {
+            byte[] data = new byte[(int) cacheFile.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            JSONObject cached = new JSONObject(new String(data, 0, read, UTF_8));
+            if (cached.optInt("version") != CACHE_VERSION
+                    || !Build.FINGERPRINT.equals(cached.optString("fingerprint"))) {
+                // System update or new probe format: probe again on next use
+                cacheFile.delete();
+                return null;
+            }
+            return cached;
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Ignoring unreadable capability cache", e);
+            cacheFile.delete();
+            return null;
+        }
+    }
+
+    private static void writeCache(JSONObject result) {
+        if (cacheFile == null) {
+            return;
+        }
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(result.toString().getBytes(UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write capability cache", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(cacheFile)) {
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.cipace.capacitor.videorecorder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ISO BMFF (MP4) box tree. Only the boxes under moov are materialised in memory;
+ * top-level boxes such as mdat are described by their {@link Header} only.
+ * Pure Java on purpose so it can run on a plain JVM.
+ */
+public class Mp4Box {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    // Boxes whose payload is nothing but child boxes
+    private static final Set<String> CONTAINERS = new HashSet<>(Arrays.asList(
+        "moov", "trak", "mdia", "minf", "stbl", "edts", "dinf", "mvex"
+    ));
+
+    // moov larger than this is treated as a corrupt file rather than read into memory
+    static final long MAX_MOOV_SIZE = 64L * 1024 * 1024;
+
+    public final String type;
+    public final List<Mp4Box> children;
+    private byte[] data;
+
+    public Mp4Box(String type, byte[] data) {
+        this.type = type;
+        this.data = data;
+        this.children = null;
+    }
+
+    public Mp4Box(String type, List<Mp4Box> children) {
+        this.type = type;
+        this.data = null;
+        this.children = children;
+    }
+
+    public static class Header {
+        public final String type;
+        public final long offset;
+        public final int headerSize;
+        public final long size;
+
+        public Header(String type, long offset, int headerSize, long size) {
+            this.type = type;
+            this.offset = offset;
+            this.headerSize = headerSize;
+            this.size = size;
+        }
+
+        public long payloadOffset() {
+            return offset + headerSize;
+        }
+
+        public long payloadSize() {
+            return size - headerSize;
+        }
+
+        public long end() {
+            return offset + size;
+        }
+    }
+
+    public boolean isContainer() {
+        return children != null;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        if (isContainer()) {
+            throw new IllegalStateException(type + " is a container box");
+        }
+        this.data = data;
+    }
+
+    /** Big-endian view over the payload of a leaf box. */
+    public ByteBuffer payload() {
+        return ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    public Mp4Box child(String childType) {
+        if (children == null) {
+            return null;
+        }
+        for (Mp4Box child : children) {
+            if (child.type.equals(childType)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    public List<Mp4Box> children(String childType) {
+        List<Mp4Box> result = new ArrayList<>();
+        if (children != null) {
+            for (Mp4Box child : children) {
+                if (child.type.equals(childType)) {
+                    result.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Resolves a slash separated path such as {@code "mdia/minf/stbl/stsd"}. */
+    public Mp4Box find(String path) {
+        Mp4Box current = this;
+        for (String part : path.split("/")) {
+            current = current.child(part);
+            if (current == null) {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    public long size() {
+        long payload;
+        if (isContainer()) {
+            payload = 0;
+            for (Mp4Box child : children) {
+                payload += child.size();
+            }
+        } else {
+            payload = data.length;
+        }
+        return payload + 8 <= 0xFFFFFFFFL ? payload + 8 : payload + 16;
+    }
+
+    public void writeTo(ByteBuffer out) {
+        long size = size();
+        if (size > 0xFFFFFFFFL) {
+            out.putInt(1);
+            out.put(type.getBytes(ASCII));
+            out.putLong(size);
+        } else {
+            out.putInt((int) size);
+            out.put(type.getBytes(ASCII));
+        }
+        if (isContainer()) {
+            for (Mp4Box child : children) {
+                child.writeTo(out);
+            }
+        } else {
+            out.put(data);
+        }
+    }
+
+    public ByteBuffer toByteBuffer() {
+        long size = size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException(type + " box is too large to serialise in memory");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) size).order(ByteOrder.BIG_ENDIAN);
+        writeTo(out);
+        out.flip();
+        return out;
+    }
+
+    // MARK: - Reading
+
+    /**
+     * Reads the box header at {@code offset}. Returns null at end of file or when the
+     * bytes there do not look like a box (e.g. zero padding after the last box).
+     */
+    public static Header readHeader(FileChannel channel, long offset) throws IOException {
+        long fileSize = channel.size();
+        if (offset + 8 > fileSize) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(16).order(ByteOrder.BIG_ENDIAN);
+        buf.limit(8);
+        readFully(channel, buf, offset);
+        buf.flip();
+
+        long size = buf.getInt() & 0xFFFFFFFFL;
+        String type = fourCC(buf.getInt());
+        if (!isValidType(type)) {
+            return null;
+        }
+
+        int headerSize = 8;
+        if (size == 1) {
+            if (offset + 16 > fileSize) {
+                return null;
+            }
+            buf.clear();
+            buf.limit(8);
+            readFully(channel, buf, offset + 8);
+            buf.flip();
+            size = buf.getLong();
+            headerSize = 16;
+        } else if (size == 0) {
+            // Box extends to end of file
+            size = fileSize - offset;
+        }
+
+        if (size < headerSize) {
+            return null;
+        }
+        return new Header(type, offset, headerSize, size);
+    }
+
+    /** Lists the top-level boxes of a file without reading any payload. */
+    public static List<Header> readTopLevel(FileChannel channel) throws IOException {
+        List<Header> headers = new ArrayList<>();
+        long offset = 0;
+        long fileSize = channel.size();
+        while (offset < fileSize) {
+            Header header = readHeader(channel, offset);
+            if (header == null) {
+                break;
+            }
+            headers.add(header);
+            offset = header.end();
+        }
+        return headers;
+    }
+
+    /** Reads and parses a whole box (normally moov) into memory. */
+    public static Mp4Box read(FileChannel channel, Header header) throws IOException {
+        if (header.payloadSize() > MAX_MOOV_SIZE) {
+            throw new IOException(header.type + " box too large: " + header.size);
+        }
+        if (header.end() > channel.size()) {
+            throw new IOException(header.type + " box is truncated");
+        }
+        ByteBuffer payload = ByteBuffer.allocate((int) header.payloadSize()).order(ByteOrder.BIG_ENDIAN);
+        readFully(channel, payload, header.payloadOffset());
+        payload.flip();
+        return parse(header.type, payload);
+    }
+
+    public static Mp4Box parse(String type, ByteBuffer payload) throws IOException {
+        if (!CONTAINERS.contains(type)) {
+            byte[] data = new byte[payload.remaining()];
+            payload.get(data);
+            return new Mp4Box(type, data);
+        }
+
+        List<Mp4Box> children = new ArrayList<>();
+        while (payload.remaining() >= 8) {
+            long size = payload.getInt() & 0xFFFFFFFFL;
+            String childType = fourCC(payload.getInt());
+            int headerSize = 8;
+            if (size == 1) {
+                size = payload.getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                size = payload.remaining() + headerSize;
+            }
+            if (size < headerSize || size - headerSize > payload.remaining()) {
+                throw new IOException("Malformed " + childType + " box inside " + type);
+            }
+            ByteBuffer childPayload = payload.slice();
+            childPayload.limit((int) (size - headerSize));
+            payload.position(payload.position() + (int) (size - headerSize));
+            children.add(parse(childType, childPayload.order(ByteOrder.BIG_ENDIAN)));
+        }
+        return new Mp4Box(type, children);
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += read;
+        }
+    }
+
+    static String fourCC(int value) {
+        byte[] bytes = {
+            (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value
+        };
+        return new String(bytes, ASCII);
+    }
+
+    private static boolean isValidType(String type) {
+        for (int i = 0; i < type.length(); i++) {
+            char c = type.charAt(i);
+            if (c < 0x20 || c > 0x7E) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,629 @@
+package com.cipace.capacitor.videorecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Lossless MP4 editing (trim, concat): picks samples out of the source sample tables,
+ * rebuilds stbl for the kept samples and copies their bytes with
+ * {@link FileChannel#transferTo}. Nothing is decoded, so the cost is proportional to
+ * the bytes kept.
+ *
+ * Output files are written moov first (fast start) with a single mdat.
+ */
+public class Mp4Editor {
+
+    /**
+     * Keeps the samples between the sync frame at or before {@code startSeconds} and
+     * {@code endSeconds}. The actual start therefore moves back to the previous keyframe.
+     */
+    public static void trim(File input, File output, double startSeconds, double endSeconds) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(input, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            Source source = Source.open(channel);
+
+            // Cut the video track first; the other tracks follow its keyframe-aligned start
+            Mp4SampleTable reference = null;
+            for (Mp4SampleTable table : source.tables) {
+                if (table.isVideo() && table.count > 0) {
+                    reference = table;
+                    break;
+                }
+            }
+
+            double start = startSeconds;
+            int referenceFrom = 0;
+            if (reference != null) {
+                referenceFrom = reference.syncSampleAtOrBefore(reference.sampleAt(toTicks(startSeconds, reference.timescale)));
+                start = reference.decodeTimes[referenceFrom] / (double) reference.timescale;
+            }
+
+            List<OutputTrack> tracks = new ArrayList<>();
+            for (Mp4SampleTable table : source.tables) {
+                int from;
+                if (table == reference) {
+                    from = referenceFrom;
+                } else if (reference != null) {
+                    from = table.firstSampleFrom(toTicks(start, table.timescale));
+                } else {
+                    from = table.sampleAt(toTicks(start, table.timescale));
+                }
+                int to = Math.max(from, table.firstSampleFrom(toTicks(endSeconds, table.timescale)));
+                if (table == reference && to == from) {
+                    to = Math.min(table.count, from + 1);
+                }
+
+                OutputTrack track = new OutputTrack(table.trak, table.timescale, to - from);
+                for (int i = from; i < to; i++) {
+                    track.add(0, table, i);
+                }
+                tracks.add(track);
+            }
+
+            write(output, new FileChannel[] { channel }, source.ftyp, source.moov, tracks);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Joins clips recorded with identical codec parameters (same tracks, stsd and
+     * timescales) into one file. Tracks are matched by handler type in order.
+     */
+    public static void concat(List<File> inputs, File output) throws IOException {
+        if (inputs.isEmpty()) {
+            throw new IOException("No input files");
+        }
+        List<RandomAccessFile> files = new ArrayList<>();
+        try {
+            FileChannel[] channels = new FileChannel[inputs.size()];
+            List<Source> sources = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                RandomAccessFile raf = new RandomAccessFile(inputs.get(i), "r");
+                files.add(raf);
+                channels[i] = raf.getChannel();
+                sources.add(Source.open(channels[i]));
+            }
+
+            Source first = sources.get(0);
+            for (Source source : sources) {
+                checkCompatible(first, source);
+            }
+
+            List<OutputTrack> tracks = new ArrayList<>();
+            for (int t = 0; t < first.tables.size(); t++) {
+                int capacity = 0;
+                for (Source source : sources) {
+                    capacity += source.tables.get(t).count;
+                }
+                Mp4SampleTable table = first.tables.get(t);
+                tracks.add(new OutputTrack(table.trak, table.timescale, capacity));
+            }
+            for (int s = 0; s < sources.size(); s++) {
+                Source source = sources.get(s);
+                for (int t = 0; t < tracks.size(); t++) {
+                    Mp4SampleTable table = source.tables.get(t);
+                    for (int i = 0; i < table.count; i++) {
+                        tracks.get(t).add(s, table, i);
+                    }
+                }
+                if (s < sources.size() - 1) {
+                    alignTrackEnds(tracks);
+                }
+            }
+
+            write(output, channels, first.ftyp, first.moov, tracks);
+        } finally {
+            for (RandomAccessFile raf : files) {
+                raf.close();
+            }
+        }
+    }
+
+    private static void checkCompatible(Source first, Source other) throws IOException {
+        if (first.tables.size() != other.tables.size()) {
+            throw new IOException("Clips have different track layouts");
+        }
+        for (int t = 0; t < first.tables.size(); t++) {
+            Mp4SampleTable a = first.tables.get(t);
+            Mp4SampleTable b = other.tables.get(t);
+            Mp4Box stsdA = a.trak.find("mdia/minf/stbl/stsd");
+            Mp4Box stsdB = b.trak.find("mdia/minf/stbl/stsd");
+            boolean sameHandler = a.handler == null ? b.handler == null : a.handler.equals(b.handler);
+            if (!sameHandler || a.timescale != b.timescale || stsdA == null || stsdB == null
+                    || !Arrays.equals(stsdA.getData(), stsdB.getData())) {
+                throw new IOException("Clips have different codec parameters");
+            }
+        }
+    }
+
+    /**
+     * Stretches the last sample of each track so every track ends where the longest one
+     * does. Without this, the small audio/video length mismatch of each clip would
+     * accumulate into drift over many joins.
+     */
+    private static void alignTrackEnds(List<OutputTrack> tracks) {
+        double end = 0;
+        for (OutputTrack track : tracks) {
+            if (track.timescale > 0) {
+                end = Math.max(end, track.duration() / (double) track.timescale);
+            }
+        }
+        for (OutputTrack track : tracks) {
+            if (track.count == 0 || track.timescale == 0) {
+                continue;
+            }
+            long gap = Math.round(end * track.timescale) - track.duration();
+            if (gap > 0) {
+                track.durations[track.count - 1] += (int) gap;
+            }
+        }
+    }
+
+    // MARK: - Shared building blocks
+
+    /** A parsed input file: ftyp, moov and one sample table per track. */
+    static class Source {
+        final Mp4Box ftyp;
+        final Mp4Box moov;
+        final List<Mp4SampleTable> tables = new ArrayList<>();
+
+        private Source(Mp4Box ftyp, Mp4Box moov) {
+            this.ftyp = ftyp;
+            this.moov = moov;
+        }
+
+        static Source open(FileChannel channel) throws IOException {
+            Mp4Box ftyp = null;
+            Mp4Box moov = null;
+            for (Mp4Box.Header header : Mp4Box.readTopLevel(channel)) {
+                if ("ftyp".equals(header.type) && ftyp == null) {
+                    ftyp = Mp4Box.read(channel, header);
+                } else if ("moov".equals(header.type) && moov == null) {
+                    moov = Mp4Box.read(channel, header);
+                } else if ("moof".equals(header.type)) {
+                    throw new IOException("Fragmented MP4 files are not supported");
+                }
+            }
+            if (moov == null) {
+                throw new IOException("moov box not found");
+            }
+            Source source = new Source(ftyp, moov);
+            for (Mp4Box trak : moov.children("trak")) {
+                source.tables.add(Mp4SampleTable.read(trak));
+            }
+            return source;
+        }
+    }
+
+    /** Samples picked for one output track, possibly from several source files. */
+    static class OutputTrack {
+        final Mp4Box trak;
+        final long timescale;
+        int count;
+        int[] sources;
+        long[] offsets;
+        int[] sizes;
+        int[] durations;
+        int[] compositionOffsets;
+        boolean[] sync;
+        int[] descriptions;
+        boolean hasCompositionOffsets;
+        boolean hasSyncTable;
+
+        OutputTrack(Mp4Box trak, long timescale, int capacity) {
+            this.trak = trak;
+            this.timescale = timescale;
+            int size = Math.max(16, capacity);
+            sources = new int[size];
+            offsets = new long[size];
+            sizes = new int[size];
+            durations = new int[size];
+            compositionOffsets = new int[size];
+            sync = new boolean[size];
+            descriptions = new int[size];
+        }
+
+        void add(int source, Mp4SampleTable table, int index) {
+            if (count == offsets.length) {
+                int size = count * 2;
+                sources = Arrays.copyOf(sources, size);
+                offsets = Arrays.copyOf(offsets, size);
+                sizes = Arrays.copyOf(sizes, size);
+                durations = Arrays.copyOf(durations, size);
+                compositionOffsets = Arrays.copyOf(compositionOffsets, size);
+                sync = Arrays.copyOf(sync, size);
+                descriptions = Arrays.copyOf(descriptions, size);
+            }
+            sources[count] = source;
+            offsets[count] = table.offsets[index];
+            sizes[count] = table.sizes[index];
+            durations[count] = table.durations[index];
+            if (table.compositionOffsets != null) {
+                compositionOffsets[count] = table.compositionOffsets[index];
+                hasCompositionOffsets = true;
+            }
+            sync[count] = table.isSync(index);
+            hasSyncTable |= table.sync != null;
+            descriptions[count] = table.descriptionIndices[index];
+            count++;
+        }
+
+        long duration() {
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total += durations[i];
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Writes ftyp, moov and mdat. Samples are laid out in (source, offset) order, which
+     * keeps the source interleaving; consecutive samples of one track form a chunk.
+     */
+    static void write(File output, FileChannel[] sources, Mp4Box ftyp, Mp4Box moov, List<OutputTrack> tracks)
+            throws IOException {
+        if (moov.child("mvex") != null) {
+            throw new IOException("Fragmented MP4 files are not supported");
+        }
+
+        // Interleave by merging the per-track sample lists on (source, offset)
+        int total = 0;
+        for (OutputTrack track : tracks) {
+            total += track.count;
+        }
+        int[] orderTrack = new int[total];
+        int[] orderSample = new int[total];
+        int[] cursors = new int[tracks.size()];
+        for (int n = 0; n < total; n++) {
+            int best = -1;
+            for (int t = 0; t < tracks.size(); t++) {
+                OutputTrack track = tracks.get(t);
+                int i = cursors[t];
+                if (i >= track.count) {
+                    continue;
+                }
+                if (best < 0) {
+                    best = t;
+                    continue;
+                }
+                OutputTrack other = tracks.get(best);
+                int j = cursors[best];
+                if (track.sources[i] < other.sources[j]
+                        || (track.sources[i] == other.sources[j] && track.offsets[i] < other.offsets[j])) {
+                    best = t;
+                }
+            }
+            orderTrack[n] = best;
+            orderSample[n] = cursors[best]++;
+        }
+
+        // Chunk layout relative to the start of the mdat payload
+        List<long[]> chunkOffsets = new ArrayList<>();
+        List<int[]> chunkCounts = new ArrayList<>();
+        List<int[]> chunkDescriptions = new ArrayList<>();
+        int[] chunkTotals = new int[tracks.size()];
+        for (int t = 0; t < tracks.size(); t++) {
+            chunkOffsets.add(new long[tracks.get(t).count]);
+            chunkCounts.add(new int[tracks.get(t).count]);
+            chunkDescriptions.add(new int[tracks.get(t).count]);
+        }
+        long mdatPayload = 0;
+        int previousTrack = -1;
+        for (int n = 0; n < total; n++) {
+            int t = orderTrack[n];
+            OutputTrack track = tracks.get(t);
+            int i = orderSample[n];
+            int chunk = chunkTotals[t] - 1;
+            if (t != previousTrack || chunk < 0 || chunkDescriptions.get(t)[chunk] != track.descriptions[i]) {
+                chunk = chunkTotals[t]++;
+                chunkOffsets.get(t)[chunk] = mdatPayload;
+                chunkDescriptions.get(t)[chunk] = track.descriptions[i];
+            }
+            chunkCounts.get(t)[chunk]++;
+            mdatPayload += track.sizes[i];
+            previousTrack = t;
+        }
+
+        Mp4Box outFtyp = ftyp != null ? ftyp : defaultFtyp();
+        int mdatHeaderSize = mdatPayload + 8 > 0xFFFFFFFFL ? 16 : 8;
+        long movieTimescale = movieTimescale(moov);
+
+        // Rebuild every stbl with placeholder offsets, then patch them once moov's size is
+        // known. Offsets only switch to co64 when the last chunk doesn't fit in 32 bits.
+        List<Mp4Box> offsetBoxes = new ArrayList<>();
+        long mdatStart = 0;
+        for (boolean wideOffsets = false; ; wideOffsets = true) {
+            offsetBoxes.clear();
+            long movieDuration = 0;
+            for (int t = 0; t < tracks.size(); t++) {
+                OutputTrack track = tracks.get(t);
+                offsetBoxes.add(rebuildSampleTable(track, chunkTotals[t], chunkCounts.get(t),
+                    chunkDescriptions.get(t), wideOffsets));
+
+                long mediaDuration = track.duration();
+                long trackDuration = movieTimescale > 0 && track.timescale > 0
+                    ? mediaDuration * movieTimescale / track.timescale : 0;
+                movieDuration = Math.max(movieDuration, trackDuration);
+                setDuration(track.trak.find("mdia/mdhd"), mediaDuration, false);
+                setDuration(track.trak.child("tkhd"), trackDuration, true);
+                rebuildEditList(track, trackDuration);
+            }
+            setDuration(moov.child("mvhd"), movieDuration, false);
+
+            mdatStart = outFtyp.size() + moov.size() + mdatHeaderSize;
+            if (wideOffsets || mdatStart + mdatPayload <= 0xFFFFFFFFL) {
+                break;
+            }
+        }
+        for (int t = 0; t < tracks.size(); t++) {
+            long[] offsets = Arrays.copyOf(chunkOffsets.get(t), chunkTotals[t]);
+            for (int c = 0; c < offsets.length; c++) {
+                offsets[c] += mdatStart;
+            }
+            Mp4FastStart.writeChunkOffsets(offsetBoxes.get(t), offsets);
+        }
+
+        // Written next to the target and renamed over it, so a failed edit never leaves a
+        // half-written file and the target is untouched until the new one is complete
+        File tmp = new File(output.getParentFile(), output.getName() + ".edit.tmp");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        boolean success = false;
+        try {
+            FileChannel dst = out.getChannel();
+            dst.truncate(0);
+            long position = 0;
+            position += writeBuffer(dst, outFtyp.toByteBuffer(), position);
+            position += writeBuffer(dst, moov.toByteBuffer(), position);
+
+            ByteBuffer mdatHeader = ByteBuffer.allocate(mdatHeaderSize).order(ByteOrder.BIG_ENDIAN);
+            if (mdatHeaderSize == 16) {
+                mdatHeader.putInt(1).put(new byte[] { 'm', 'd', 'a', 't' }).putLong(mdatPayload + 16);
+            } else {
+                mdatHeader.putInt((int) (mdatPayload + 8)).put(new byte[] { 'm', 'd', 'a', 't' });
+            }
+            mdatHeader.flip();
+            position += writeBuffer(dst, mdatHeader, position);
+
+            // Copy sample data, merging runs that are contiguous in the same source
+            int runSource = -1;
+            long runStart = 0;
+            long runLength = 0;
+            for (int n = 0; n < total; n++) {
+                OutputTrack track = tracks.get(orderTrack[n]);
+                int i = orderSample[n];
+                if (track.sources[i] == runSource && track.offsets[i] == runStart + runLength) {
+                    runLength += track.sizes[i];
+                    continue;
+                }
+                if (runLength > 0) {
+                    position += Mp4FastStart.transferFully(sources[runSource], runStart, runLength, dst, position);
+                }
+                runSource = track.sources[i];
+                runStart = track.offsets[i];
+                runLength = track.sizes[i];
+            }
+            if (runLength > 0) {
+                position += Mp4FastStart.transferFully(sources[runSource], runStart, runLength, dst, position);
+            }
+            dst.force(false);
+            success = true;
+        } finally {
+            out.close();
+            if (!success) {
+                tmp.delete();
+            }
+        }
+
+        if (!tmp.renameTo(output)) {
+            tmp.delete();
+            throw new IOException("Failed to write " + output);
+        }
+    }
+
+    // MARK: - Box rebuilding
+
+    /** Replaces the sample tables in stbl and returns the (unpatched) chunk offset box. */
+    private static Mp4Box rebuildSampleTable(OutputTrack track, int chunkCount, int[] chunkCounts,
+                                             int[] chunkDescriptions, boolean wideOffsets) throws IOException {
+        Mp4Box stbl = track.trak.find("mdia/minf/stbl");
+        Mp4Box stsd = stbl.child("stsd");
+        if (stsd == null) {
+            throw new IOException("stsd box not found");
+        }
+        int n = track.count;
+
+        // stts: run-length coded durations
+        ByteBuffer stts = ByteBuffer.allocate(8 + 8 * Math.max(1, n)).order(ByteOrder.BIG_ENDIAN);
+        stts.putInt(0).putInt(0);
+        int entries = 0;
+        for (int i = 0; i < n; ) {
+            int j = i;
+            while (j < n && track.durations[j] == track.durations[i]) {
+                j++;
+            }
+            stts.putInt(j - i).putInt(track.durations[i]);
+            entries++;
+            i = j;
+        }
+        stts.putInt(4, entries);
+
+        // stsz: a constant size collapses to a single field
+        boolean constantSize = n > 0;
+        for (int i = 1; i < n && constantSize; i++) {
+            constantSize = track.sizes[i] == track.sizes[0];
+        }
+        ByteBuffer stsz = ByteBuffer.allocate(12 + (constantSize ? 0 : 4 * n)).order(ByteOrder.BIG_ENDIAN);
+        stsz.putInt(0).putInt(constantSize ? track.sizes[0] : 0).putInt(n);
+        if (!constantSize) {
+            for (int i = 0; i < n; i++) {
+                stsz.putInt(track.sizes[i]);
+            }
+        }
+
+        // stsc: only emit an entry when samples-per-chunk or description changes
+        ByteBuffer stsc = ByteBuffer.allocate(8 + 12 * Math.max(1, chunkCount)).order(ByteOrder.BIG_ENDIAN);
+        stsc.putInt(0).putInt(0);
+        entries = 0;
+        for (int c = 0; c < chunkCount; c++) {
+            if (c == 0 || chunkCounts[c] != chunkCounts[c - 1] || chunkDescriptions[c] != chunkDescriptions[c - 1]) {
+                stsc.putInt(c + 1).putInt(chunkCounts[c]).putInt(chunkDescriptions[c]);
+                entries++;
+            }
+        }
+        stsc.putInt(4, entries);
+
+        List<Mp4Box> children = new ArrayList<>();
+        children.add(stsd);
+        children.add(new Mp4Box("stts", toBytes(stts)));
+
+        if (track.hasCompositionOffsets) {
+            ByteBuffer ctts = ByteBuffer.allocate(8 + 8 * Math.max(1, n)).order(ByteOrder.BIG_ENDIAN);
+            boolean negative = false;
+            ctts.putInt(0).putInt(0);
+            entries = 0;
+            for (int i = 0; i < n; ) {
+                int j = i;
+                while (j < n && track.compositionOffsets[j] == track.compositionOffsets[i]) {
+                    j++;
+                }
+                ctts.putInt(j - i).putInt(track.compositionOffsets[i]);
+                negative |= track.compositionOffsets[i] < 0;
+                entries++;
+                i = j;
+            }
+            ctts.putInt(4, entries);
+            if (negative) {
+                ctts.putInt(0, 1 << 24); // version 1: signed offsets
+            }
+            children.add(new Mp4Box("ctts", toBytes(ctts)));
+        }
+
+        if (track.hasSyncTable) {
+            int syncCount = 0;
+            for (int i = 0; i < n; i++) {
+                if (track.sync[i]) {
+                    syncCount++;
+                }
+            }
+            if (syncCount < n) {
+                ByteBuffer stss = ByteBuffer.allocate(8 + 4 * syncCount).order(ByteOrder.BIG_ENDIAN);
+                stss.putInt(0).putInt(syncCount);
+                for (int i = 0; i < n; i++) {
+                    if (track.sync[i]) {
+                        stss.putInt(i + 1);
+                    }
+                }
+                children.add(new Mp4Box("stss", toBytes(stss)));
+            }
+        }
+
+        children.add(new Mp4Box("stsc", toBytes(stsc)));
+        children.add(new Mp4Box("stsz", toBytes(stsz)));
+        Mp4Box offsets = new Mp4Box(wideOffsets ? "co64" : "stco", new byte[0]);
+        Mp4FastStart.writeChunkOffsets(offsets, new long[chunkCount]);
+        children.add(offsets);
+
+        // Everything else in stbl (sdtp, sgpd, ...) describes the old samples, so it is dropped
+        stbl.children.clear();
+        stbl.children.addAll(children);
+        return offsets;
+    }
+
+    /**
+     * Replaces any edit list with one covering the whole track, skipping the initial
+     * composition delay when the track has B-frames.
+     */
+    private static void rebuildEditList(OutputTrack track, long trackDuration) {
+        Iterator<Mp4Box> it = track.trak.children.iterator();
+        int index = 0;
+        int position = -1;
+        while (it.hasNext()) {
+            Mp4Box child = it.next();
+            if ("edts".equals(child.type)) {
+                it.remove();
+                position = index;
+            } else {
+                index++;
+            }
+        }
+        if (!track.hasCompositionOffsets || track.count == 0) {
+            return;
+        }
+        int minOffset = Integer.MAX_VALUE;
+        for (int i = 0; i < track.count; i++) {
+            minOffset = Math.min(minOffset, track.compositionOffsets[i]);
+        }
+        if (minOffset <= 0) {
+            return;
+        }
+        ByteBuffer elst = ByteBuffer.allocate(20).order(ByteOrder.BIG_ENDIAN);
+        elst.putInt(0).putInt(1).putInt((int) Math.min(trackDuration, 0xFFFFFFFFL)).putInt(minOffset).putInt(0x10000);
+        List<Mp4Box> edtsChildren = new ArrayList<>();
+        edtsChildren.add(new Mp4Box("elst", elst.array()));
+        // Right after tkhd, where the spec expects it
+        track.trak.children.add(position >= 0 ? position : Math.min(1, track.trak.children.size()),
+            new Mp4Box("edts", edtsChildren));
+    }
+
+    /** Writes the duration field of mvhd/mdhd ({@code tkhd == false}) or tkhd. */
+    private static void setDuration(Mp4Box box, long duration, boolean tkhd) {
+        if (box == null) {
+            return;
+        }
+        byte[] data = box.getData();
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+        int version = data[0] & 0xFF;
+        // version/flags, creation/modification time, then timescale (mvhd/mdhd)
+        // or track_ID + reserved (tkhd) before the duration
+        int position = 4 + (version == 1 ? 16 : 8) + (tkhd ? 8 : 4);
+        if (version == 1) {
+            buf.putLong(position, duration);
+        } else {
+            buf.putInt(position, (int) Math.min(duration, 0xFFFFFFFFL));
+        }
+    }
+
+    static long movieTimescale(Mp4Box moov) {
+        Mp4Box mvhd = moov.child("mvhd");
+        if (mvhd == null) {
+            return 0;
+        }
+        ByteBuffer buf = mvhd.payload();
+        int version = buf.get() & 0xFF;
+        return buf.getInt(4 + (version == 1 ? 16 : 8)) & 0xFFFFFFFFL;
+    }
+
+    private static Mp4Box defaultFtyp() {
+        ByteBuffer buf = ByteBuffer.allocate(16).order(ByteOrder.BIG_ENDIAN);
+        buf.put(new byte[] { 'm', 'p', '4', '2' }).putInt(0);
+        buf.put(new byte[] { 'i', 's', 'o', 'm', 'm', 'p', '4', '2' });
+        return new Mp4Box("ftyp", buf.array());
+    }
+
+    private static long toTicks(double seconds, long timescale) {
+        return Math.round(seconds * timescale);
+    }
+
+    private static byte[] toBytes(ByteBuffer buf) {
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    private static long writeBuffer(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        long written = 0;
+        while (buf.hasRemaining()) {
+            written += channel.write(buf, position + written);
+        }
+        return written;
+    }
+}
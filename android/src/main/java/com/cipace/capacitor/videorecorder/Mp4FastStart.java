@@ -0,0 +1,280 @@
+package com.cipace.capacitor.videorecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves the moov box in front of mdat ("fast start") so a player can begin playback
+ * from the head of the file. Chunk offsets in stco/co64 are patched, upgrading stco
+ * to co64 when the shifted offsets no longer fit in 32 bits.
+ *
+ * The copy mode streams every payload with {@link FileChannel#transferTo} into a temp
+ * file that then replaces the original. The in-place mode needs no extra space but
+ * is not crash safe; it moves data backwards through a direct buffer.
+ */
+public class Mp4FastStart {
+
+    private static final int MOVE_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Rewrites the file with moov first. Returns false when the file is already
+     * fast-start (nothing was written).
+     */
+    public static boolean optimize(File file, boolean inPlace) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, inPlace ? "rw" : "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            List<Mp4Box.Header> headers = Mp4Box.readTopLevel(channel);
+
+            Mp4Box.Header moovHeader = null;
+            Mp4Box.Header firstMdat = null;
+            for (Mp4Box.Header header : headers) {
+                if ("moov".equals(header.type) && moovHeader == null) {
+                    moovHeader = header;
+                } else if ("mdat".equals(header.type) && firstMdat == null) {
+                    firstMdat = header;
+                }
+            }
+            if (moovHeader == null) {
+                throw new IOException("moov box not found");
+            }
+            if (firstMdat == null || moovHeader.offset < firstMdat.offset) {
+                return false;
+            }
+
+            Mp4Box moov = Mp4Box.read(channel, moovHeader);
+            ByteBuffer moovBytes = relocate(moov, moovHeader, firstMdat.offset);
+
+            boolean moovIsLast = moovHeader.end() == channel.size();
+            if (inPlace && moovIsLast && moovBytes.remaining() == moovHeader.size) {
+                moveInPlace(channel, firstMdat.offset, moovHeader.offset, moovBytes);
+                channel.force(false);
+                return true;
+            }
+        } finally {
+            raf.close();
+        }
+
+        // Either a copy was requested, or the layout is too unusual to shuffle in place
+        copyOptimized(file);
+        return true;
+    }
+
+    private static void copyOptimized(File file) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".faststart.tmp");
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        boolean success = false;
+        try {
+            FileChannel src = in.getChannel();
+            FileChannel dst = out.getChannel();
+            dst.truncate(0);
+
+            List<Mp4Box.Header> headers = Mp4Box.readTopLevel(src);
+            Mp4Box.Header moovHeader = null;
+            Mp4Box.Header firstMdat = null;
+            for (Mp4Box.Header header : headers) {
+                if ("moov".equals(header.type) && moovHeader == null) {
+                    moovHeader = header;
+                } else if ("mdat".equals(header.type) && firstMdat == null) {
+                    firstMdat = header;
+                }
+            }
+            ByteBuffer moovBytes = relocate(Mp4Box.read(src, moovHeader), moovHeader, firstMdat.offset);
+
+            // Boxes before the first mdat (ftyp, free, ...), then moov, then everything else
+            long position = 0;
+            for (Mp4Box.Header header : headers) {
+                if (header.offset < firstMdat.offset && header != moovHeader) {
+                    position += transferFully(src, header.offset, header.size, dst, position);
+                }
+            }
+            while (moovBytes.hasRemaining()) {
+                position += dst.write(moovBytes, position);
+            }
+            for (Mp4Box.Header header : headers) {
+                if (header.offset >= firstMdat.offset && header != moovHeader) {
+                    position += transferFully(src, header.offset, header.size, dst, position);
+                }
+            }
+            dst.force(false);
+            success = true;
+        } finally {
+            in.close();
+            out.close();
+            if (!success) {
+                tmp.delete();
+            }
+        }
+
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    /**
+     * Shifts [dataStart, moovOffset) right by the moov size, working from the end
+     * backwards so no byte is overwritten before it has been moved, then writes moov
+     * into the gap. Only valid when moov is the last box and keeps its size.
+     */
+    private static void moveInPlace(FileChannel channel, long dataStart, long moovOffset, ByteBuffer moovBytes)
+            throws IOException {
+        long shift = moovBytes.remaining();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MOVE_BUFFER_SIZE);
+        long end = moovOffset;
+        while (end > dataStart) {
+            int length = (int) Math.min(MOVE_BUFFER_SIZE, end - dataStart);
+            long start = end - length;
+            buffer.clear();
+            buffer.limit(length);
+            Mp4Box.readFully(channel, buffer, start);
+            buffer.flip();
+            long position = start + shift;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            end = start;
+        }
+        long position = dataStart;
+        while (moovBytes.hasRemaining()) {
+            position += channel.write(moovBytes, position);
+        }
+    }
+
+    /**
+     * Patches chunk offsets for moov being placed at {@code insertAt}, and serialises it.
+     * Data after insertAt moves by the new moov size, minus the old moov size for data
+     * that used to follow moov.
+     */
+    private static ByteBuffer relocate(Mp4Box moov, Mp4Box.Header moovHeader, long insertAt) throws IOException {
+        List<Mp4Box> offsetBoxes = new ArrayList<>();
+        for (Mp4Box trak : moov.children("trak")) {
+            Mp4Box stbl = trak.find("mdia/minf/stbl");
+            if (stbl == null) {
+                continue;
+            }
+            Mp4Box stco = stbl.child("stco");
+            Mp4Box co64 = stbl.child("co64");
+            if (stco != null) {
+                offsetBoxes.add(stco);
+            } else if (co64 != null) {
+                offsetBoxes.add(co64);
+            }
+        }
+
+        List<long[]> originals = new ArrayList<>();
+        for (Mp4Box box : offsetBoxes) {
+            originals.add(readChunkOffsets(box));
+        }
+
+        boolean upgrade = false;
+        while (true) {
+            if (upgrade) {
+                for (int i = 0; i < offsetBoxes.size(); i++) {
+                    Mp4Box box = offsetBoxes.get(i);
+                    if ("stco".equals(box.type)) {
+                        offsetBoxes.set(i, replaceChild(moov, box, new Mp4Box("co64", box.getData())));
+                    }
+                }
+            }
+
+            long moovSize = sizeWithOffsets(moov, offsetBoxes, originals);
+            boolean overflow = false;
+            for (int i = 0; i < offsetBoxes.size(); i++) {
+                long[] offsets = originals.get(i);
+                long[] patched = new long[offsets.length];
+                for (int j = 0; j < offsets.length; j++) {
+                    long offset = offsets[j];
+                    if (offset >= moovHeader.end()) {
+                        offset += moovSize - moovHeader.size;
+                    } else if (offset >= insertAt) {
+                        offset += moovSize;
+                    }
+                    patched[j] = offset;
+                    if (offset > 0xFFFFFFFFL && "stco".equals(offsetBoxes.get(i).type)) {
+                        overflow = true;
+                    }
+                }
+                writeChunkOffsets(offsetBoxes.get(i), patched);
+            }
+            if (!overflow) {
+                return moov.toByteBuffer();
+            }
+            upgrade = true;
+        }
+    }
+
+    private static long sizeWithOffsets(Mp4Box moov, List<Mp4Box> offsetBoxes, List<long[]> originals) {
+        // Make sure every offset box has its final length before measuring moov
+        for (int i = 0; i < offsetBoxes.size(); i++) {
+            writeChunkOffsets(offsetBoxes.get(i), originals.get(i));
+        }
+        return moov.size();
+    }
+
+    private static Mp4Box replaceChild(Mp4Box root, Mp4Box target, Mp4Box replacement) {
+        if (!root.isContainer()) {
+            return null;
+        }
+        for (int i = 0; i < root.children.size(); i++) {
+            Mp4Box child = root.children.get(i);
+            if (child == target) {
+                root.children.set(i, replacement);
+                return replacement;
+            }
+            Mp4Box found = replaceChild(child, target, replacement);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    static long[] readChunkOffsets(Mp4Box box) {
+        ByteBuffer buf = box.payload();
+        buf.getInt(); // version/flags
+        int count = buf.getInt();
+        long[] offsets = new long[count];
+        boolean wide = "co64".equals(box.type);
+        for (int i = 0; i < count; i++) {
+            offsets[i] = wide ? buf.getLong() : buf.getInt() & 0xFFFFFFFFL;
+        }
+        return offsets;
+    }
+
+    static void writeChunkOffsets(Mp4Box box, long[] offsets) {
+        boolean wide = "co64".equals(box.type);
+        ByteBuffer buf = ByteBuffer.allocate(8 + offsets.length * (wide ? 8 : 4)).order(ByteOrder.BIG_ENDIAN);
+        buf.putInt(0);
+        buf.putInt(offsets.length);
+        for (long offset : offsets) {
+            if (wide) {
+                buf.putLong(offset);
+            } else {
+                buf.putInt((int) offset);
+            }
+        }
+        box.setData(buf.array());
+    }
+
+    static long transferFully(FileChannel src, long position, long count, FileChannel dst, long dstPosition)
+            throws IOException {
+        long transferred = 0;
+        dst.position(dstPosition);
+        while (transferred < count) {
+            long n = src.transferTo(position + transferred, count - transferred, dst);
+            if (n <= 0) {
+                throw new IOException("Unexpected end of file while copying");
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+}
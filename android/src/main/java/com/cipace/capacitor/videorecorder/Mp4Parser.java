@@ -0,0 +1,325 @@
+package com.cipace.capacitor.videorecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads recording metadata straight from the MP4 headers (moov/mvhd/tkhd/mdhd/stsd).
+ * mdat is never read, so the cost does not depend on the length of the recording.
+ */
+public class Mp4Parser {
+
+    public static class Mp4Info {
+        public final int width;
+        public final int height;
+        public final int rotation;
+        public final long durationUs;
+        public final long bitrate;
+        public final String videoCodec;
+        public final String audioCodec;
+        public final long fileSize;
+
+        public Mp4Info(int width, int height, int rotation, long durationUs, long bitrate,
+                       String videoCodec, String audioCodec, long fileSize) {
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.durationUs = durationUs;
+            this.bitrate = bitrate;
+            this.videoCodec = videoCodec;
+            this.audioCodec = audioCodec;
+            this.fileSize = fileSize;
+        }
+
+        public boolean hasVideo() {
+            return videoCodec != null;
+        }
+
+        /** RFC 6381 style codecs string, e.g. {@code "avc1.42C01E, mp4a.40.2"}. */
+        public String codecs() {
+            if (videoCodec != null && audioCodec != null) {
+                return videoCodec + ", " + audioCodec;
+            }
+            return videoCodec != null ? videoCodec : audioCodec;
+        }
+    }
+
+    public static Mp4Info parse(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return parse(channel);
+        }
+    }
+
+    public static Mp4Info parse(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        long mdatBytes = 0;
+        Mp4Box moov = null;
+
+        List<Mp4Box.Header> headers = Mp4Box.readTopLevel(channel);
+        for (Mp4Box.Header header : headers) {
+            if ("mdat".equals(header.type)) {
+                mdatBytes += header.payloadSize();
+            } else if ("moov".equals(header.type) && moov == null) {
+                moov = Mp4Box.read(channel, header);
+            }
+        }
+        if (moov == null) {
+            throw new IOException("moov box not found");
+        }
+        return parse(moov, fileSize, mdatBytes);
+    }
+
+    static Mp4Info parse(Mp4Box moov, long fileSize, long mdatBytes) throws IOException {
+        long movieDurationUs = 0;
+        Mp4Box mvhd = moov.child("mvhd");
+        if (mvhd != null) {
+            ByteBuffer buf = mvhd.payload();
+            int version = buf.get() & 0xFF;
+            skip(buf, 3 + (version == 1 ? 16 : 8));
+            long timescale = buf.getInt() & 0xFFFFFFFFL;
+            long duration = version == 1 ? buf.getLong() : buf.getInt() & 0xFFFFFFFFL;
+            movieDurationUs = toMicros(duration, timescale);
+        }
+
+        int width = 0;
+        int height = 0;
+        int rotation = 0;
+        long videoDurationUs = 0;
+        long audioDurationUs = 0;
+        long videoBitrate = 0;
+        String videoCodec = null;
+        String audioCodec = null;
+
+        for (Mp4Box trak : moov.children("trak")) {
+            String handler = handlerType(trak);
+            Mp4Box stsd = trak.find("mdia/minf/stbl/stsd");
+            long trackDurationUs = mediaDurationUs(trak);
+
+            if ("vide".equals(handler) && videoCodec == null) {
+                Mp4Box tkhd = trak.child("tkhd");
+                if (tkhd != null) {
+                    ByteBuffer buf = tkhd.payload();
+                    int version = buf.get() & 0xFF;
+                    // flags, creation/modification time, track_ID, reserved, duration, reserved[2],
+                    // layer, alternate_group, volume, reserved
+                    skip(buf, 3 + (version == 1 ? 32 : 20) + 16);
+                    int[] matrix = new int[9];
+                    for (int i = 0; i < 9; i++) {
+                        matrix[i] = buf.getInt();
+                    }
+                    rotation = rotationFromMatrix(matrix);
+                    width = buf.getInt() >>> 16;
+                    height = buf.getInt() >>> 16;
+                }
+                SampleEntry entry = stsd != null ? readSampleEntry(stsd, true) : null;
+                videoCodec = entry != null ? entry.codec : "unknown";
+                if (entry != null) {
+                    videoBitrate = entry.avgBitrate;
+                    if (width == 0 || height == 0) {
+                        width = entry.width;
+                        height = entry.height;
+                    }
+                }
+                videoDurationUs = trackDurationUs;
+            } else if ("soun".equals(handler) && audioCodec == null) {
+                SampleEntry entry = stsd != null ? readSampleEntry(stsd, false) : null;
+                audioCodec = entry != null ? entry.codec : "unknown";
+                audioDurationUs = trackDurationUs;
+            }
+        }
+
+        // 优先使用视频轨道的媒体时间，比 mvhd 的时间刻度更精确
+        long durationUs = videoDurationUs > 0 ? videoDurationUs
+            : audioDurationUs > 0 ? audioDurationUs : movieDurationUs;
+
+        long bitrate = videoBitrate;
+        if (durationUs > 0 && mdatBytes > 0) {
+            bitrate = mdatBytes * 8L * 1000000L / durationUs;
+        }
+
+        return new Mp4Info(width, height, rotation, durationUs, bitrate, videoCodec, audioCodec, fileSize);
+    }
+
+    // MARK: - Helpers
+
+    static String handlerType(Mp4Box trak) {
+        Mp4Box hdlr = trak.find("mdia/hdlr");
+        if (hdlr == null || hdlr.getData().length < 12) {
+            return null;
+        }
+        ByteBuffer buf = hdlr.payload();
+        skip(buf, 8); // version/flags, pre_defined
+        return Mp4Box.fourCC(buf.getInt());
+    }
+
+    static long mediaDurationUs(Mp4Box trak) {
+        Mp4Box mdhd = trak.find("mdia/mdhd");
+        if (mdhd == null) {
+            return 0;
+        }
+        ByteBuffer buf = mdhd.payload();
+        int version = buf.get() & 0xFF;
+        skip(buf, 3 + (version == 1 ? 16 : 8));
+        long timescale = buf.getInt() & 0xFFFFFFFFL;
+        long duration = version == 1 ? buf.getLong() : buf.getInt() & 0xFFFFFFFFL;
+        return toMicros(duration, timescale);
+    }
+
+    static int rotationFromMatrix(int[] matrix) {
+        int a = matrix[0];
+        int b = matrix[1];
+        int c = matrix[3];
+        int d = matrix[4];
+        int one = 0x10000;
+        if (a == 0 && b == one && c == -one && d == 0) {
+            return 90;
+        }
+        if (a == -one && b == 0 && c == 0 && d == -one) {
+            return 180;
+        }
+        if (a == 0 && b == -one && c == one && d == 0) {
+            return 270;
+        }
+        return 0;
+    }
+
+    private static long toMicros(long duration, long timescale) {
+        if (timescale == 0 || duration == 0xFFFFFFFFL || duration < 0) {
+            return 0;
+        }
+        return duration * 1000000L / timescale;
+    }
+
+    private static class SampleEntry {
+        String codec;
+        int width;
+        int height;
+        long avgBitrate;
+    }
+
+    private static SampleEntry readSampleEntry(Mp4Box stsd, boolean visual) {
+        ByteBuffer buf = stsd.payload();
+        if (buf.remaining() < 16) {
+            return null;
+        }
+        skip(buf, 4); // version/flags
+        int entryCount = buf.getInt();
+        if (entryCount < 1) {
+            return null;
+        }
+
+        int entryStart = buf.position();
+        long entrySize = buf.getInt() & 0xFFFFFFFFL;
+        String format = Mp4Box.fourCC(buf.getInt());
+        int entryEnd = (int) Math.min(buf.limit(), entryStart + entrySize);
+
+        SampleEntry entry = new SampleEntry();
+        entry.codec = format;
+        try {
+            skip(buf, 8); // reserved, data_reference_index
+            if (visual) {
+                skip(buf, 16); // pre_defined, reserved
+                entry.width = buf.getShort() & 0xFFFF;
+                entry.height = buf.getShort() & 0xFFFF;
+                skip(buf, 50); // resolution, reserved, frame_count, compressorname, depth, pre_defined
+            } else {
+                int version = buf.getShort() & 0xFFFF;
+                skip(buf, 18); // revision, vendor, channels, sample size, compression id, packet size, sample rate
+                if (version == 1) {
+                    skip(buf, 16);
+                } else if (version == 2) {
+                    skip(buf, 36);
+                }
+            }
+
+            // Child boxes of the sample entry (avcC, btrt, esds, ...)
+            while (buf.position() + 8 <= entryEnd) {
+                int childStart = buf.position();
+                int childSize = buf.getInt();
+                String childType = Mp4Box.fourCC(buf.getInt());
+                if (childSize < 8 || childStart + childSize > entryEnd) {
+                    break;
+                }
+                ByteBuffer child = buf.slice();
+                child.limit(childSize - 8);
+
+                if ("avcC".equals(childType) && child.remaining() >= 4) {
+                    child.get(); // configurationVersion
+                    entry.codec = String.format(Locale.US, "%s.%02X%02X%02X",
+                        format, child.get() & 0xFF, child.get() & 0xFF, child.get() & 0xFF);
+                } else if ("btrt".equals(childType) && child.remaining() >= 12) {
+                    skip(child, 8); // bufferSizeDB, maxBitrate
+                    entry.avgBitrate = child.getInt() & 0xFFFFFFFFL;
+                } else if ("esds".equals(childType)) {
+                    String codec = readEsdsCodec(child, format, entry);
+                    if (codec != null) {
+                        entry.codec = codec;
+                    }
+                }
+                buf.position(childStart + childSize);
+            }
+        } catch (RuntimeException e) {
+            // Truncated or unusual sample entry: the fourcc alone is still useful
+        }
+        return entry;
+    }
+
+    private static String readEsdsCodec(ByteBuffer buf, String format, SampleEntry entry) {
+        skip(buf, 4); // version/flags
+        if (buf.get() != 0x03) {
+            return null;
+        }
+        readDescriptorLength(buf);
+        skip(buf, 2); // ES_ID
+        int flags = buf.get() & 0xFF;
+        if ((flags & 0x80) != 0) {
+            skip(buf, 2);
+        }
+        if ((flags & 0x40) != 0) {
+            skip(buf, buf.get() & 0xFF);
+        }
+        if ((flags & 0x20) != 0) {
+            skip(buf, 2);
+        }
+
+        if (buf.get() != 0x04) {
+            return null;
+        }
+        readDescriptorLength(buf);
+        int objectType = buf.get() & 0xFF;
+        skip(buf, 8); // streamType, bufferSizeDB, maxBitrate
+        entry.avgBitrate = buf.getInt() & 0xFFFFFFFFL;
+
+        String codec = String.format(Locale.US, "%s.%02x", format, objectType);
+        if (buf.remaining() > 2 && buf.get() == 0x05) {
+            int length = readDescriptorLength(buf);
+            if (length > 0) {
+                int audioObjectType = (buf.get() & 0xFF) >>> 3;
+                codec += "." + audioObjectType;
+            }
+        }
+        return codec;
+    }
+
+    private static int readDescriptorLength(ByteBuffer buf) {
+        int length = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = buf.get() & 0xFF;
+            length = (length << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return length;
+    }
+
+    private static void skip(ByteBuffer buf, int count) {
+        buf.position(buf.position() + count);
+    }
+}
@@ -0,0 +1,220 @@
+package com.cipace.capacitor.videorecorder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Flattened view of one track's sample table (stbl): one entry per sample with its file
+ * offset, size, decode time, duration, composition offset and sync flag. Built from the
+ * run-length coded stts/ctts/stsc/stco boxes so edits can work sample by sample.
+ */
+class Mp4SampleTable {
+
+    final Mp4Box trak;
+    final String handler;
+    final long timescale;
+    final int count;
+    final long[] offsets;
+    final int[] sizes;
+    final long[] decodeTimes;
+    final int[] durations;
+    // null when the track has no ctts
+    final int[] compositionOffsets;
+    // null when every sample is a sync sample (no stss)
+    final boolean[] sync;
+    final int[] descriptionIndices;
+
+    private Mp4SampleTable(Mp4Box trak, String handler, long timescale, int count) {
+        this.trak = trak;
+        this.handler = handler;
+        this.timescale = timescale;
+        this.count = count;
+        this.offsets = new long[count];
+        this.sizes = new int[count];
+        this.decodeTimes = new long[count];
+        this.durations = new int[count];
+        this.descriptionIndices = new int[count];
+        this.compositionOffsets = trak.find("mdia/minf/stbl/ctts") != null ? new int[count] : null;
+        this.sync = trak.find("mdia/minf/stbl/stss") != null ? new boolean[count] : null;
+    }
+
+    static Mp4SampleTable read(Mp4Box trak) throws IOException {
+        Mp4Box stbl = trak.find("mdia/minf/stbl");
+        Mp4Box mdhd = trak.find("mdia/mdhd");
+        if (stbl == null || mdhd == null) {
+            throw new IOException("Track without sample table");
+        }
+        try {
+            ByteBuffer buf = mdhd.payload();
+            int version = buf.get() & 0xFF;
+            buf.position(4 + (version == 1 ? 16 : 8));
+            long timescale = buf.getInt() & 0xFFFFFFFFL;
+
+            Mp4Box stsz = stbl.child("stsz");
+            if (stsz == null) {
+                throw new IOException("stsz box not found");
+            }
+            ByteBuffer sizes = stsz.payload();
+            sizes.getInt();
+            int fixedSize = sizes.getInt();
+            int count = sizes.getInt();
+            if (count < 0 || (fixedSize == 0 && count > sizes.remaining() / 4)) {
+                throw new IOException("Malformed stsz box");
+            }
+
+            Mp4SampleTable table = new Mp4SampleTable(trak, Mp4Parser.handlerType(trak), timescale, count);
+            for (int i = 0; i < count; i++) {
+                table.sizes[i] = fixedSize != 0 ? fixedSize : sizes.getInt();
+            }
+            table.readTimes(stbl);
+            table.readOffsets(stbl);
+            table.readSync(stbl);
+            return table;
+        } catch (RuntimeException e) {
+            // BufferUnderflow and friends from a truncated table
+            throw new IOException("Malformed sample table", e);
+        }
+    }
+
+    boolean isVideo() {
+        return "vide".equals(handler);
+    }
+
+    boolean isSync(int index) {
+        return sync == null || sync[index];
+    }
+
+    /** Total media duration in the track timescale. */
+    long duration() {
+        return count == 0 ? 0 : decodeTimes[count - 1] + durations[count - 1];
+    }
+
+    /** Index of the sample playing at {@code time} (track timescale), clamped to the table. */
+    int sampleAt(long time) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (decodeTimes[mid] <= time) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /** Index of the first sample that starts at or after {@code time}; count if none. */
+    int firstSampleFrom(long time) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (decodeTimes[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    int syncSampleAtOrBefore(int index) {
+        for (int i = index; i >= 0; i--) {
+            if (isSync(i)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    // MARK: - Parsing
+
+    private void readTimes(Mp4Box stbl) throws IOException {
+        Mp4Box stts = stbl.child("stts");
+        if (stts == null) {
+            throw new IOException("stts box not found");
+        }
+        ByteBuffer buf = stts.payload();
+        buf.getInt();
+        int entries = buf.getInt();
+        int sample = 0;
+        long time = 0;
+        for (int e = 0; e < entries && sample < count; e++) {
+            int runLength = buf.getInt();
+            int delta = buf.getInt();
+            for (int i = 0; i < runLength && sample < count; i++, sample++) {
+                decodeTimes[sample] = time;
+                durations[sample] = delta;
+                time += delta;
+            }
+        }
+
+        Mp4Box ctts = stbl.child("ctts");
+        if (ctts != null) {
+            buf = ctts.payload();
+            buf.getInt();
+            entries = buf.getInt();
+            sample = 0;
+            for (int e = 0; e < entries && sample < count; e++) {
+                int runLength = buf.getInt();
+                int offset = buf.getInt();
+                for (int i = 0; i < runLength && sample < count; i++, sample++) {
+                    compositionOffsets[sample] = offset;
+                }
+            }
+        }
+    }
+
+    private void readOffsets(Mp4Box stbl) throws IOException {
+        Mp4Box stsc = stbl.child("stsc");
+        Mp4Box co = stbl.child("stco") != null ? stbl.child("stco") : stbl.child("co64");
+        if (stsc == null || co == null) {
+            throw new IOException("stsc/stco box not found");
+        }
+        long[] chunkOffsets = Mp4FastStart.readChunkOffsets(co);
+
+        ByteBuffer buf = stsc.payload();
+        buf.getInt();
+        int entries = buf.getInt();
+        int[] firstChunks = new int[entries];
+        int[] samplesPerChunk = new int[entries];
+        int[] descriptions = new int[entries];
+        for (int e = 0; e < entries; e++) {
+            firstChunks[e] = buf.getInt();
+            samplesPerChunk[e] = buf.getInt();
+            descriptions[e] = buf.getInt();
+        }
+
+        int sample = 0;
+        for (int e = 0; e < entries && sample < count; e++) {
+            int lastChunk = e + 1 < entries ? firstChunks[e + 1] - 1 : chunkOffsets.length;
+            for (int chunk = firstChunks[e]; chunk <= lastChunk && sample < count; chunk++) {
+                long offset = chunkOffsets[chunk - 1];
+                for (int i = 0; i < samplesPerChunk[e] && sample < count; i++, sample++) {
+                    offsets[sample] = offset;
+                    descriptionIndices[sample] = descriptions[e];
+                    offset += sizes[sample];
+                }
+            }
+        }
+        if (sample < count) {
+            throw new IOException("Chunk table covers " + sample + " of " + count + " samples");
+        }
+    }
+
+    private void readSync(Mp4Box stbl) {
+        if (sync == null) {
+            return;
+        }
+        ByteBuffer buf = stbl.child("stss").payload();
+        buf.getInt();
+        int entries = buf.getInt();
+        for (int e = 0; e < entries; e++) {
+            int sample = buf.getInt() - 1;
+            if (sample >= 0 && sample < count) {
+                sync[sample] = true;
+            }
+        }
+    }
+}
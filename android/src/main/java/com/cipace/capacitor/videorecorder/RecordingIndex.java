@@ -0,0 +1,581 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.util.Log;
+import com.getcapacitor.JSObject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Persistent index of finished recordings, so listing doesn't have to scan directories
+ * and re-read every file's metadata.
+ *
+ * Storage is an append-only log of JSON lines ({@code put} with the full entry or
+ * {@code remove} with the path), replayed into memory at startup. When the log holds
+ * many more records than live entries it is rewritten with one {@code put} per entry
+ * and atomically renamed over the old one. A torn last line from a crash is skipped.
+ *
+ * Changes are visible in memory immediately and appended to the log on one background
+ * thread, enqueued under the same lock as the in-memory change so the log order always
+ * matches it. Calls wait for the initial load; pages are served from sorted views that
+ * are built on first use and then kept sorted by inserting each change in place.
+ */
+public class RecordingIndex {
+
+    private static final String TAG = "RecordingIndex";
+
+    public static final String SORT_DATE = "date";
+    public static final String SORT_SIZE = "size";
+    public static final String SORT_DURATION = "duration";
+    public static final String SORT_NAME = "name";
+
+    private static final String LOG_FILE = "recordings.log";
+    private static final String OP_PUT = "put";
+    private static final String OP_REMOVE = "remove";
+    // Compact once the log holds this many superseded records
+    private static final int COMPACT_SLACK = 256;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static class Entry {
+        public final String recordingId;
+        public final String videoPath;
+        public final long fileSize;
+        public final double duration;
+        public final int width;
+        public final int height;
+        public final int rotation;
+        public final long startTime;
+        public final long endTime;
+        public final String mimeType;
+        public final String codecs;
+        public final long bitrate;
+        public final String thumbnailPath;
+
+        Entry(String recordingId, String videoPath, long fileSize, double duration, int width, int height,
+              int rotation, long startTime, long endTime, String mimeType, String codecs, long bitrate,
+              String thumbnailPath) {
+            this.recordingId = recordingId;
+            this.videoPath = videoPath;
+            this.fileSize = fileSize;
+            this.duration = duration;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.mimeType = mimeType;
+            this.codecs = codecs;
+            this.bitrate = bitrate;
+            this.thumbnailPath = thumbnailPath;
+        }
+
+        static Entry from(VideoRecorder.StopRecordingResult result) {
+            return new Entry(result.recordingId, result.videoPath, result.fileSize, result.duration,
+                result.width, result.height, result.rotation, result.startTime, result.endTime,
+                result.mimeType, result.codecs, result.bitrate, result.thumbnailPath);
+        }
+
+        Entry withFile(long newFileSize, String newThumbnailPath) {
+            return new Entry(recordingId, videoPath, newFileSize, duration, width, height, rotation,
+                startTime, endTime, mimeType, codecs, bitrate, newThumbnailPath);
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject obj = new JSONObject();
+            obj.put("recordingId", recordingId);
+            obj.put("videoPath", videoPath);
+            obj.put("fileSize", fileSize);
+            obj.put("duration", duration);
+            obj.put("width", width);
+            obj.put("height", height);
+            obj.put("rotation", rotation);
+            obj.put("startTime", startTime);
+            obj.put("endTime", endTime);
+            obj.putOpt("mimeType", mimeType);
+            obj.putOpt("codecs", codecs);
+            obj.put("bitrate", bitrate);
+            obj.putOpt("thumbnailPath", thumbnailPath);
+            return obj;
+        }
+
+        static Entry fromJson(JSONObject obj) {
+            return new Entry(
+                obj.optString("recordingId", null),
+                obj.optString("videoPath", null),
+                obj.optLong("fileSize"),
+                obj.optDouble("duration", 0),
+                obj.optInt("width"),
+                obj.optInt("height"),
+                obj.optInt("rotation"),
+                obj.optLong("startTime"),
+                obj.optLong("endTime"),
+                obj.optString("mimeType", null),
+                obj.optString("codecs", null),
+                obj.optLong("bitrate"),
+                obj.optString("thumbnailPath", null));
+        }
+
+        public JSObject toJSObject() {
+            JSObject obj = new JSObject();
+            obj.put("recordingId", recordingId);
+            obj.put("videoPath", videoPath);
+            obj.put("fileSize", fileSize);
+            obj.put("duration", duration);
+            obj.put("width", width);
+            obj.put("height", height);
+            obj.put("rotation", rotation);
+            obj.put("startTime", startTime);
+            obj.put("endTime", endTime);
+            obj.put("mimeType", mimeType);
+            obj.put("codecs", codecs);
+            obj.put("bitrate", bitrate);
+            // Older entries may point at thumbnails that have since been removed
+            obj.put("thumbnailPath", thumbnailPath != null && new File(thumbnailPath).exists() ? thumbnailPath : null);
+            return obj;
+        }
+    }
+
+    public static class Page {
+        public final List<Entry> entries;
+        public final int total;
+
+        Page(List<Entry> entries, int total) {
+            this.entries = entries;
+            this.total = total;
+        }
+    }
+
+    private static volatile RecordingIndex instance;
+
+    /**
+     * Creates the shared index and starts loading it. On the very first run (no log yet)
+     * the recordings already in {@code scanDirs} are imported.
+     */
+    public static synchronized RecordingIndex initialize(File indexDir, List<File> scanDirs) {
+        if (instance == null) {
+            instance = new RecordingIndex(indexDir);
+            instance.load(scanDirs);
+        }
+        return instance;
+    }
+
+    /** The shared index, or null before the plugin has loaded. */
+    public static RecordingIndex getInstance() {
+        return instance;
+    }
+
+    private final File logFile;
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    // Sorted views keyed by sortBy + order, updated in place on every change
+    private final HashMap<String, SortedView> sortedViews = new HashMap<>();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "VideoRecorder-index");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private Writer log;
+    private int logRecords;
+
+    RecordingIndex(File indexDir) {
+        indexDir.mkdirs();
+        this.logFile = new File(indexDir, LOG_FILE);
+    }
+
+    // MARK: - Mutations
+
+    public void put(VideoRecorder.StopRecordingResult result) {
+        apply(Entry.from(result));
+    }
+
+    /**
+     * Updates the size and thumbnail of an indexed recording (after fast start or
+     * thumbnail generation). A null thumbnail keeps the current one.
+     */
+    public void update(String videoPath, long fileSize, String thumbnailPath) {
+        awaitLoaded();
+        synchronized (this) {
+            Entry current = entries.get(videoPath);
+            if (current != null) {
+                apply(current.withFile(fileSize, thumbnailPath != null ? thumbnailPath : current.thumbnailPath));
+            }
+        }
+    }
+
+    /**
+     * Gives an indexed recording without a thumbnail a copy of {@code thumbnail}, stored
+     * next to the video where the post-processor puts them. Thumbnail cache files can be
+     * evicted at any time, so the index never points into the cache.
+     */
+    public void setThumbnailIfMissing(String videoPath, File thumbnail) {
+        Entry current = get(videoPath);
+        if (current == null || current.thumbnailPath != null) {
+            return;
+        }
+        File video = new File(videoPath);
+        File target = RecordingPostProcessor.thumbnailFileFor(video);
+        if (target.getName().equals(video.getName())) {
+            // Not an .mp4, there is no thumbnail name to give it
+            return;
+        }
+        try {
+            copyFile(thumbnail, target);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to store thumbnail for " + videoPath, e);
+            return;
+        }
+        synchronized (this) {
+            current = entries.get(videoPath);
+            if (current != null && current.thumbnailPath == null) {
+                apply(current.withFile(current.fileSize, target.getAbsolutePath()));
+            }
+        }
+    }
+
+    public void remove(String videoPath) {
+        awaitLoaded();
+        synchronized (this) {
+            Entry removed = entries.remove(videoPath);
+            if (removed == null) {
+                return;
+            }
+            for (SortedView view : sortedViews.values()) {
+                view.remove(removed);
+            }
+            try {
+                JSONObject record = new JSONObject();
+                record.put("op", OP_REMOVE);
+                record.put("videoPath", videoPath);
+                write(record);
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to serialize index record", e);
+            }
+        }
+    }
+
+    // MARK: - Queries
+
+    /**
+     * One page of recordings. Costs O(limit) once the sorted view for {@code sortBy}
+     * exists; the view is sorted once, on its first query.
+     */
+    public Page list(int offset, int limit, String sortBy, boolean descending) {
+        awaitLoaded();
+        synchronized (this) {
+            String key = sortBy + (descending ? ":desc" : ":asc");
+            SortedView view = sortedViews.get(key);
+            if (view == null) {
+                Comparator<Entry> comparator = comparatorFor(sortBy);
+                view = new SortedView(descending ? Collections.reverseOrder(comparator) : comparator, entries.values());
+                sortedViews.put(key, view);
+            }
+            List<Entry> sorted = view.entries;
+            int from = Math.max(0, Math.min(offset, sorted.size()));
+            int to = Math.min(sorted.size(), from + Math.max(0, limit));
+            return new Page(new ArrayList<>(sorted.subList(from, to)), sorted.size());
+        }
+    }
+
+    public Entry get(String videoPath) {
+        awaitLoaded();
+        synchronized (this) {
+            return entries.get(videoPath);
+        }
+    }
+
+    /** Snapshot of every entry, in no particular order. */
+    public List<Entry> snapshot() {
+        awaitLoaded();
+        synchronized (this) {
+            return new ArrayList<>(entries.values());
+        }
+    }
+
+    private static Comparator<Entry> comparatorFor(String sortBy) {
+        if (SORT_SIZE.equals(sortBy)) {
+            return new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    return a.fileSize < b.fileSize ? -1 : a.fileSize == b.fileSize ? a.videoPath.compareTo(b.videoPath) : 1;
+                }
+            };
+        }
+        if (SORT_DURATION.equals(sortBy)) {
+            return new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    int result = Double.compare(a.duration, b.duration);
+                    return result != 0 ? result : a.videoPath.compareTo(b.videoPath);
+                }
+            };
+        }
+        if (SORT_NAME.equals(sortBy)) {
+            return new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    int result = new File(a.videoPath).getName().compareTo(new File(b.videoPath).getName());
+                    return result != 0 ? result : a.videoPath.compareTo(b.videoPath);
+                }
+            };
+        }
+        return new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.startTime < b.startTime ? -1 : a.startTime == b.startTime ? a.videoPath.compareTo(b.videoPath) : 1;
+            }
+        };
+    }
+
+    private void awaitLoaded() {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // MARK: - Log
+
+    private void load(final List<File> scanDirs) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (logFile.exists()) {
+                        replay();
+                    } else if (scanDirs != null) {
+                        importExisting(scanDirs);
+                    }
+                    if (logRecords > entries.size() + COMPACT_SLACK) {
+                        compact();
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to load recording index", e);
+                } finally {
+                    loaded.countDown();
+                }
+            }
+        });
+    }
+
+    private void replay() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                logRecords++;
+                try {
+                    JSONObject record = new JSONObject(line);
+                    String op = record.optString("op");
+                    synchronized (this) {
+                        if (OP_PUT.equals(op)) {
+                            Entry entry = Entry.fromJson(record.getJSONObject("entry"));
+                            if (entry.videoPath != null) {
+                                entries.put(entry.videoPath, entry);
+                            }
+                        } else if (OP_REMOVE.equals(op)) {
+                            entries.remove(record.optString("videoPath"));
+                        }
+                    }
+                } catch (JSONException e) {
+                    // Torn write from a crash; everything before it is intact
+                    Log.w(TAG, "Skipping malformed index record");
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void importExisting(List<File> scanDirs) {
+        for (File dir : scanDirs) {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                // Pause takes are intermediate files and empty files are left by killed sessions
+                if (!name.endsWith(".mp4") || name.matches(".*_take\\d+\\.mp4") || file.length() == 0) {
+                    continue;
+                }
+                File thumbnail = RecordingPostProcessor.thumbnailFileFor(file);
+                VideoRecorder.StopRecordingResult result = VideoRecorder.createStopResult(
+                    name.substring(0, name.length() - 4), file, file.lastModified(), file.lastModified(),
+                    thumbnail.exists() ? thumbnail.getAbsolutePath() : null);
+                store(Entry.from(result));
+            }
+        }
+    }
+
+    private void apply(Entry entry) {
+        awaitLoaded();
+        store(entry);
+    }
+
+    /**
+     * Updates memory right away; the log record is appended on the writer thread. Both
+     * happen under the lock, so concurrent changes reach the log in the order they were
+     * applied and replay ends with the same entry that is in memory.
+     */
+    private void store(Entry entry) {
+        synchronized (this) {
+            Entry previous = entries.put(entry.videoPath, entry);
+            for (SortedView view : sortedViews.values()) {
+                if (previous != null) {
+                    view.remove(previous);
+                }
+                view.insert(entry);
+            }
+            try {
+                JSONObject record = new JSONObject();
+                record.put("op", OP_PUT);
+                record.put("entry", entry.toJson());
+                write(record);
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to serialize index record", e);
+            }
+        }
+    }
+
+    private void write(final JSONObject record) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    append(record);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to write index record", e);
+                }
+            }
+        });
+    }
+
+    private void append(JSONObject record) throws IOException {
+        if (log == null) {
+            log = new OutputStreamWriter(new FileOutputStream(logFile, true), UTF_8);
+        }
+        log.write(record.toString());
+        log.write('\n');
+        log.flush();
+        logRecords++;
+        int live;
+        synchronized (this) {
+            live = entries.size();
+        }
+        if (logRecords > live + COMPACT_SLACK) {
+            compact();
+        }
+    }
+
+    /** Rewrites the log with one put per live entry and renames it over the old log. */
+    private void compact() throws IOException {
+        List<Entry> live;
+        synchronized (this) {
+            live = new ArrayList<>(entries.values());
+        }
+        File temp = new File(logFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            Writer tempWriter = new OutputStreamWriter(out, UTF_8);
+            for (Entry entry : live) {
+                JSONObject record = new JSONObject();
+                record.put("op", OP_PUT);
+                record.put("entry", entry.toJson());
+                tempWriter.write(record.toString());
+                tempWriter.write('\n');
+            }
+            tempWriter.flush();
+            out.getFD().sync();
+        } catch (JSONException e) {
+            throw new IOException("Failed to serialize index entry", e);
+        } finally {
+            out.close();
+        }
+
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+        if (!temp.renameTo(logFile)) {
+            temp.delete();
+            throw new IOException("Failed to replace index log");
+        }
+        logRecords = live.size();
+        Log.d(TAG, "Compacted recording index to " + logRecords + " entries");
+    }
+
+    /**
+     * Entries kept in comparator order. Every comparator breaks ties on the path, so each
+     * entry has exactly one position and binary search finds it.
+     */
+    private static class SortedView {
+        final Comparator<Entry> comparator;
+        final ArrayList<Entry> entries;
+
+        SortedView(Comparator<Entry> comparator, Collection<Entry> all) {
+            this.comparator = comparator;
+            this.entries = new ArrayList<>(all);
+            Collections.sort(entries, comparator);
+        }
+
+        void insert(Entry entry) {
+            int index = Collections.binarySearch(entries, entry, comparator);
+            entries.add(index < 0 ? -index - 1 : index, entry);
+        }
+
+        void remove(Entry entry) {
+            int index = Collections.binarySearch(entries, entry, comparator);
+            if (index >= 0) {
+                entries.remove(index);
+            }
+        }
+    }
+
+    private static void copyFile(File source, File target) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Failed to write " + target);
+        }
+    }
+}
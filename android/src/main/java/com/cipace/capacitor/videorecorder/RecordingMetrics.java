@@ -0,0 +1,274 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency of each recording lifecycle phase, measured on the monotonic clock and
+ * aggregated process-wide into per-phase histograms.
+ *
+ * Recording a value is a handful of atomic increments with no locks or allocation, so
+ * the instrumentation stays on in production. Histograms use log-linear buckets (eight
+ * per power of two, in microseconds), which bounds the percentile error to about 6%.
+ */
+public class RecordingMetrics {
+
+    public static final int ACTIVITY_CREATE = 0;
+    public static final int CAMERA_OPEN = 1;
+    public static final int CAMERA_CONFIGURE = 2;
+    public static final int PREVIEW_START = 3;
+    public static final int RECORDER_PREPARE = 4;
+    public static final int RECORDER_START = 5;
+    public static final int FIRST_FRAME = 6;
+    public static final int RECORDER_STOP = 7;
+    public static final int THUMBNAIL = 8;
+    public static final int RESULT_DELIVERY = 9;
+
+    private static final String[] PHASE_NAMES = {
+        "activityCreate",
+        "cameraOpen",
+        "cameraConfigure",
+        "previewStart",
+        "recorderPrepare",
+        "recorderStart",
+        "firstFrame",
+        "recorderStop",
+        "thumbnail",
+        "resultDelivery"
+    };
+
+    // First-frame detection polls the output file; give up after this long
+    private static final long FIRST_FRAME_POLL_MS = 10;
+    private static final long FIRST_FRAME_TIMEOUT_NANOS = 5000L * 1000 * 1000;
+
+    private static final Histogram[] HISTOGRAMS = new Histogram[PHASE_NAMES.length];
+    private static volatile long since = SystemClock.elapsedRealtime();
+
+    // captureAudio: microphone overruns (frames AudioRecord overwrote before they were
+    // read) and chunks dropped while the AAC encoder was behind
+    private static final AtomicLong AUDIO_OVERRUNS = new AtomicLong();
+    private static final AtomicLong AUDIO_LOST_FRAMES = new AtomicLong();
+    private static final AtomicLong AUDIO_DROPPED_CHUNKS = new AtomicLong();
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new Histogram();
+        }
+    }
+
+    /** Monotonic timestamp for measuring phases. */
+    public static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /** Adds one measurement of {@code phase} to its histogram. */
+    public static void record(int phase, long nanos) {
+        HISTOGRAMS[phase].record(nanos);
+    }
+
+    /** Counts one microphone overrun that lost {@code frames} frames. */
+    public static void recordAudioOverrun(long frames) {
+        AUDIO_OVERRUNS.incrementAndGet();
+        AUDIO_LOST_FRAMES.addAndGet(frames);
+    }
+
+    public static void recordAudioDroppedChunk() {
+        AUDIO_DROPPED_CHUNKS.incrementAndGet();
+    }
+
+    /**
+     * Per-phase count, mean, p50/p95/p99 and max in milliseconds, plus the audio capture
+     * counters; optionally starts over.
+     */
+    public static JSObject snapshot(boolean reset) {
+        JSObject phases = new JSObject();
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            phases.put(PHASE_NAMES[i], HISTOGRAMS[i].toJSObject());
+            if (reset) {
+                HISTOGRAMS[i].reset();
+            }
+        }
+        JSObject audio = new JSObject();
+        audio.put("overruns", reset ? AUDIO_OVERRUNS.getAndSet(0) : AUDIO_OVERRUNS.get());
+        audio.put("lostFrames", reset ? AUDIO_LOST_FRAMES.getAndSet(0) : AUDIO_LOST_FRAMES.get());
+        audio.put("droppedChunks", reset ? AUDIO_DROPPED_CHUNKS.getAndSet(0) : AUDIO_DROPPED_CHUNKS.get());
+        JSObject result = new JSObject();
+        result.put("phases", phases);
+        result.put("audio", audio);
+        result.put("collectedFor", SystemClock.elapsedRealtime() - since);
+        if (reset) {
+            since = SystemClock.elapsedRealtime();
+        }
+        return result;
+    }
+
+    /**
+     * The phases of one recording. Each phase keeps its first measurement (a resume
+     * below API 24 prepares and starts the recorder again, which only feeds the
+     * histograms).
+     */
+    public static class Session {
+        private final long[] phases = new long[PHASE_NAMES.length];
+        public boolean prewarmed;
+
+        public Session() {
+            Arrays.fill(phases, -1);
+        }
+
+        /** Records into both this session and the histogram. */
+        public void record(int phase, long nanos) {
+            RecordingMetrics.record(phase, nanos);
+            set(phase, nanos);
+        }
+
+        /** Records into this session only (the histogram was fed where it was measured). */
+        public void set(int phase, long nanos) {
+            if (phases[phase] < 0) {
+                phases[phase] = nanos;
+            }
+        }
+
+        public boolean has(int phase) {
+            return phases[phase] >= 0;
+        }
+
+        /**
+         * Polls {@code file} until the recorder has written media data past its header
+         * and records FIRST_FRAME from {@code startNanos}. MediaRecorder on the old camera
+         * API reports no frame callback, so the first write is the earliest observable
+         * frame; it includes the muxer's chunk interleaving.
+         */
+        public void watchFirstFrame(final File file, final long startNanos) {
+            final long headerLength = file.length();
+            final Handler handler = new Handler(Looper.getMainLooper());
+            handler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    long elapsed = now() - startNanos;
+                    if (file.length() > headerLength) {
+                        record(FIRST_FRAME, elapsed);
+                    } else if (elapsed < FIRST_FRAME_TIMEOUT_NANOS && file.exists()) {
+                        handler.postDelayed(this, FIRST_FRAME_POLL_MS);
+                    }
+                }
+            }, FIRST_FRAME_POLL_MS);
+        }
+
+        public JSObject toJSObject() {
+            JSObject obj = new JSObject();
+            for (int i = 0; i < phases.length; i++) {
+                if (phases[i] >= 0) {
+                    obj.put(PHASE_NAMES[i], toMillis(phases[i]));
+                }
+            }
+            return obj;
+        }
+    }
+
+    /** Lock-free log-linear histogram of durations. */
+    static class Histogram {
+        // Values below 2^SUB_BITS microseconds get exact buckets
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        // Up to 2^40 µs (about 12 days); longer values land in the last bucket
+        private static final int MAX_MAGNITUDE = 40;
+        private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BITS + 2) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sumMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            counts.incrementAndGet(bucketOf(micros));
+            count.incrementAndGet();
+            sumMicros.addAndGet(micros);
+            long max;
+            while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+                // Retry until this value is stored or a larger one won
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            count.set(0);
+            sumMicros.set(0);
+            maxMicros.set(0);
+        }
+
+        static int bucketOf(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+            if (magnitude > MAX_MAGNITUDE) {
+                return BUCKETS - 1;
+            }
+            int sub = (int) (micros >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /** Midpoint of a bucket in microseconds. */
+        static double valueOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int magnitude = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long width = 1L << (magnitude - SUB_BITS);
+            long lower = (SUB_BUCKETS + bucket % SUB_BUCKETS) * width;
+            return lower + width / 2.0;
+        }
+
+        JSObject toJSObject() {
+            // Counts are read one by one while other threads may still record; the
+            // total is taken from the same reads so ranks stay consistent
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            long max = maxMicros.get();
+
+            JSObject obj = new JSObject();
+            obj.put("count", total);
+            if (total > 0) {
+                obj.put("mean", round(sumMicros.get() / 1000.0 / Math.max(1, count.get())));
+                obj.put("p50", round(Math.min(percentile(snapshot, total, 0.50), max) / 1000.0));
+                obj.put("p95", round(Math.min(percentile(snapshot, total, 0.95), max) / 1000.0));
+                obj.put("p99", round(Math.min(percentile(snapshot, total, 0.99), max) / 1000.0));
+                obj.put("max", round(max / 1000.0));
+            }
+            return obj;
+        }
+
+        private static double percentile(long[] snapshot, long total, double p) {
+            long rank = Math.max(1, (long) Math.ceil(p * total));
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return valueOf(i);
+                }
+            }
+            return valueOf(snapshot.length - 1);
+        }
+    }
+
+    static double toMillis(long nanos) {
+        return round(nanos / 1000000.0);
+    }
+
+    private static double round(double millis) {
+        return Math.round(millis * 10) / 10.0;
+    }
+}
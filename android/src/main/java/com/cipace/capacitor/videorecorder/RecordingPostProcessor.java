@@ -0,0 +1,202 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.os.Process;
+import android.util.Log;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Work that runs after a recording has been handed back to JS: thumbnail generation and
+ * queueing the upload. Jobs run one at a time on a background thread and each finished
+ * recording is announced with a {@code recordingProcessed} event.
+ *
+ * The fast-start rewrite is not part of it: it changes the file JS is given, so the
+ * recorders run {@link #applyFastStart} on this thread before resolving the result.
+ *
+ * Edits started from JS (optimizeForStreaming, trimRecording, concatRecordings) run on a
+ * separate thread, so a long edit never delays the result of the next recording.
+ */
+public class RecordingPostProcessor {
+
+    private static final String TAG = "RecordingPostProcessor";
+
+    public static final String THUMBNAIL_PENDING = "pending";
+    public static final String THUMBNAIL_READY = "ready";
+    public static final String THUMBNAIL_FAILED = "failed";
+
+    // Keep this much space free beyond a copy of the file before choosing copy mode
+    private static final long MIN_FREE_SPACE_MARGIN = 50L * 1024 * 1024;
+
+    private static final RecordingPostProcessor INSTANCE = new RecordingPostProcessor();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+        new BackgroundThreadFactory("VideoRecorder-postprocess"));
+    private final ExecutorService editExecutor = Executors.newSingleThreadExecutor(
+        new BackgroundThreadFactory("VideoRecorder-edit"));
+
+    public static RecordingPostProcessor getInstance() {
+        return INSTANCE;
+    }
+
+    private RecordingPostProcessor() {
+    }
+
+    public void submit(final VideoRecorder.StopRecordingResult result, final VideoRecordingOptions options,
+                       final RecordingMetrics.Session metrics) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                process(result, options, metrics);
+            }
+        });
+    }
+
+    /** Runs a one-off job for a just-finished recording (e.g. joining takes) on the post-processing thread. */
+    public void execute(Runnable job) {
+        executor.execute(job);
+    }
+
+    /** Runs an edit requested from JS on the edit thread, behind earlier edits only. */
+    public void executeEdit(Runnable job) {
+        editExecutor.execute(job);
+    }
+
+    /**
+     * The fast-start rewrite for a just-finished recording; failures are logged and leave
+     * the file as recorded. Returns whether the file is now fast-start.
+     */
+    public static boolean applyFastStart(File videoFile) {
+        try {
+            optimizeForStreaming(videoFile, false);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to apply fast start", e);
+            return false;
+        }
+    }
+
+    /**
+     * Moves moov to the front of the file. Uses the in-place mode when there isn't room
+     * for a second copy of the recording.
+     */
+    public static boolean optimizeForStreaming(File videoFile, boolean forceInPlace) throws java.io.IOException {
+        boolean inPlace = forceInPlace || videoFile.getParentFile().getUsableSpace() < videoFile.length() + MIN_FREE_SPACE_MARGIN;
+        return Mp4FastStart.optimize(videoFile, inPlace);
+    }
+
+    private void process(VideoRecorder.StopRecordingResult result, VideoRecordingOptions options,
+                         RecordingMetrics.Session metrics) {
+        JSObject event = new JSObject();
+        event.put("recordingId", result.recordingId);
+        event.put("videoPath", result.videoPath);
+
+        File videoFile = new File(result.videoPath);
+        if (!videoFile.exists()) {
+            // Deleted before we got to it
+            event.put("thumbnailStatus", THUMBNAIL_FAILED);
+            event.put("error", "Video file no longer exists");
+            VideoRecorderEvents.emit(VideoRecorderEvents.RECORDING_PROCESSED, event);
+            return;
+        }
+
+        RecordingIndex index = RecordingIndex.getInstance();
+        if (index != null) {
+            index.put(result);
+        }
+
+        // Rewritten before the result was resolved
+        if (result.fastStart != null) {
+            event.put("fastStart", result.fastStart.booleanValue());
+            event.put("fileSize", videoFile.length());
+        }
+
+        String thumbnailPath = null;
+        long thumbnailStart = RecordingMetrics.now();
+        try {
+            // 在第1秒生成缩略图
+            byte[] jpeg = VideoRecorder.encodeThumbnail(result.videoPath, 1.0, 0.8, 0);
+            if (jpeg == null) {
+                throw new IllegalStateException("Failed to extract frame from video");
+            }
+            File thumbnailFile = thumbnailFileFor(videoFile);
+            FileOutputStream out = new FileOutputStream(thumbnailFile);
+            try {
+                out.write(jpeg);
+            } finally {
+                out.close();
+            }
+            thumbnailPath = thumbnailFile.getAbsolutePath();
+            event.put("thumbnailPath", thumbnailPath);
+            event.put("thumbnailStatus", THUMBNAIL_READY);
+            if (metrics != null) {
+                metrics.record(RecordingMetrics.THUMBNAIL, RecordingMetrics.now() - thumbnailStart);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to generate thumbnail", e);
+            event.put("thumbnailStatus", THUMBNAIL_FAILED);
+            event.put("error", e.getMessage());
+        }
+
+        if (index != null) {
+            index.update(result.videoPath, videoFile.length(), thumbnailPath);
+        }
+
+        if (options != null && options.uploadUrl != null) {
+            enqueueUpload(result, options);
+        }
+
+        VideoRecorderEvents.emit(VideoRecorderEvents.RECORDING_PROCESSED, event);
+
+        if (metrics != null && options != null && options.reportMetrics) {
+            JSObject metricsEvent = new JSObject();
+            metricsEvent.put("recordingId", result.recordingId);
+            metricsEvent.put("phases", metrics.toJSObject());
+            metricsEvent.put("prewarmed", metrics.prewarmed);
+            VideoRecorderEvents.emit(VideoRecorderEvents.RECORDING_METRICS, metricsEvent);
+        }
+    }
+
+    private void enqueueUpload(VideoRecorder.StopRecordingResult result, VideoRecordingOptions options) {
+        ChunkedUploader uploader = ChunkedUploader.getInstance();
+        if (uploader == null) {
+            Log.w(TAG, "Uploader not initialized, skipping upload");
+            return;
+        }
+        if (result.segments != null && !result.segments.isEmpty()) {
+            // Earlier segments were queued as they were closed; only the last one is left
+            RecordingSegmenter.Segment last = result.segments.get(result.segments.size() - 1);
+            uploader.enqueue(last.path, options.uploadUrl, options.uploadHeaders, result.recordingId, last.index);
+        } else {
+            uploader.enqueue(result.videoPath, options.uploadUrl, options.uploadHeaders, result.recordingId, -1);
+        }
+    }
+
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final String name;
+
+        BackgroundThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    static File thumbnailFileFor(File videoFile) {
+        return new File(videoFile.getParent(), videoFile.getName().replace(".mp4", "_thumbnail.jpg"));
+    }
+}
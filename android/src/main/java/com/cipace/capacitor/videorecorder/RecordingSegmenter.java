@@ -0,0 +1,216 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.util.Log;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Rolls a MediaRecorder over to a new output file whenever the current one reaches its
+ * size budget, using {@link MediaRecorder#setNextOutputFile} (API 26+).
+ *
+ * MediaRecorder can only switch files on a max-file-size boundary, so a time-based
+ * segment length is turned into a byte budget from the profile bitrates. Every closed
+ * segment is announced with a {@code segmentCompleted} event while capture continues.
+ */
+public class RecordingSegmenter {
+
+    private static final String TAG = "RecordingSegmenter";
+
+    public static class Segment implements Serializable {
+        public final int index;
+        public final String path;
+        public final long fileSize;
+        public final double duration;
+
+        Segment(int index, String path, long fileSize, double duration) {
+            this.index = index;
+            this.path = path;
+            this.fileSize = fileSize;
+            this.duration = duration;
+        }
+
+        public JSObject toJSObject() {
+            JSObject obj = new JSObject();
+            obj.put("index", index);
+            obj.put("path", path);
+            obj.put("fileSize", fileSize);
+            obj.put("duration", duration);
+            return obj;
+        }
+    }
+
+    private final MediaRecorder mediaRecorder;
+    private final File outputDir;
+    private final String baseName;
+    private final long segmentBytes;
+    private final ArrayList<Segment> segments = new ArrayList<>();
+    private String recordingId;
+    private String uploadUrl;
+    private Map<String, String> uploadHeaders;
+    private File currentFile;
+    private File nextFile;
+
+    /**
+     * Returns the byte budget for one segment, or 0 when segmentation is off. When both
+     * limits are set the smaller one wins.
+     */
+    public static long segmentBytes(VideoRecordingOptions options, int videoBitRate, int audioBitRate) {
+        long bytes = options.segmentSize > 0 ? options.segmentSize : Long.MAX_VALUE;
+        if (options.segmentDuration > 0) {
+            int bitRate = videoBitRate + (options.enableAudio ? audioBitRate : 0);
+            bytes = Math.min(bytes, (long) (options.segmentDuration * bitRate / 8));
+        }
+        return bytes == Long.MAX_VALUE ? 0 : bytes;
+    }
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+    }
+
+    public RecordingSegmenter(MediaRecorder mediaRecorder, File outputDir, String baseName, long segmentBytes) {
+        this.mediaRecorder = mediaRecorder;
+        this.outputDir = outputDir;
+        this.baseName = baseName;
+        this.segmentBytes = segmentBytes;
+        this.currentFile = fileFor(0);
+    }
+
+    /** Configures the recorder's first output file and size limit. Call before prepare(). */
+    public File prepare() {
+        mediaRecorder.setOutputFile(currentFile.getAbsolutePath());
+        mediaRecorder.setMaxFileSize(segmentBytes);
+        return currentFile;
+    }
+
+    public void setRecordingId(String recordingId) {
+        this.recordingId = recordingId;
+    }
+
+    /** Uploads each segment as soon as it is closed. */
+    public void setUploadTarget(String url, Map<String, String> headers) {
+        this.uploadUrl = url;
+        this.uploadHeaders = headers;
+    }
+
+    /**
+     * Handles MediaRecorder info callbacks. Returns true when the event was consumed
+     * (the caller should not treat a max-file-size event as the end of recording).
+     */
+    public boolean onInfo(int what) {
+        if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_APPROACHING) {
+            queueNextFile();
+            return true;
+        }
+        if (what == MediaRecorder.MEDIA_RECORDER_INFO_NEXT_OUTPUT_FILE_STARTED) {
+            Segment segment = closeSegment(currentFile);
+            currentFile = nextFile;
+            nextFile = null;
+
+            JSObject event = segment.toJSObject();
+            event.put("recordingId", recordingId);
+            VideoRecorderEvents.emit(VideoRecorderEvents.SEGMENT_COMPLETED, event);
+
+            ChunkedUploader uploader = ChunkedUploader.getInstance();
+            if (uploadUrl != null && uploader != null) {
+                uploader.enqueue(segment.path, uploadUrl, uploadHeaders, recordingId, segment.index);
+            }
+            return true;
+        }
+        // MAX_FILESIZE_REACHED without a queued next file means the switch failed;
+        // let the caller stop the recording so the data written so far is kept
+        return false;
+    }
+
+    /** The file the recorder is currently writing. */
+    public File getCurrentFile() {
+        return currentFile;
+    }
+
+    /** Total size of the segments closed so far. */
+    public long getCompletedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.fileSize;
+        }
+        return bytes;
+    }
+
+    /** Closes the last segment. Call after MediaRecorder.stop(). */
+    public ArrayList<Segment> finish() {
+        if (currentFile != null && currentFile.exists()) {
+            closeSegment(currentFile);
+            currentFile = null;
+        }
+        if (nextFile != null) {
+            // Queued but never started
+            nextFile.delete();
+            nextFile = null;
+        }
+        return new ArrayList<>(segments);
+    }
+
+    /** Deletes every file this segmenter produced, e.g. when the recording is cancelled. */
+    public void deleteAll() {
+        for (Segment segment : segments) {
+            new File(segment.path).delete();
+        }
+        if (currentFile != null) {
+            currentFile.delete();
+        }
+        if (nextFile != null) {
+            nextFile.delete();
+        }
+    }
+
+    // MARK: - Private helpers
+
+    private void queueNextFile() {
+        if (nextFile != null) {
+            return;
+        }
+        File file = fileFor(segments.size() + 1);
+        // setNextOutputFile needs a seekable descriptor; the recorder keeps its own
+        // copy, so ours can be closed as soon as the call returns
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            mediaRecorder.setNextOutputFile(raf.getFD());
+            mediaRecorder.setMaxFileSize(segmentBytes);
+            nextFile = file;
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Failed to queue next segment", e);
+            file.delete();
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to close segment file", e);
+                }
+            }
+        }
+    }
+
+    private Segment closeSegment(File file) {
+        double duration = 0;
+        try {
+            duration = Mp4Parser.parse(file).durationUs / 1000000.0;
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to read segment duration: " + file, e);
+        }
+        Segment segment = new Segment(segments.size(), file.getAbsolutePath(), file.length(), duration);
+        segments.add(segment);
+        return segment;
+    }
+
+    private File fileFor(int index) {
+        return new File(outputDir, String.format("%s_part%03d.mp4", baseName, index));
+    }
+}
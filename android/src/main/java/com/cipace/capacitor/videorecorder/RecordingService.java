@@ -0,0 +1,575 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera;
+import android.media.CamcorderProfile;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.IBinder;
+import android.util.Log;
+import androidx.core.content.ContextCompat;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records without the recording Activity: a foreground service owns the camera and the
+ * MediaRecorder while the app's own UI (the WebView) stays on screen, and JS drives the
+ * recording through {@link RecordingSession} like any other.
+ *
+ * The camera is opened through {@link CameraPrewarmer}, so a camera prepared with
+ * {@code prepareCamera()} is reused, and every camera and recorder call runs on the
+ * camera thread; nothing here touches the UI thread. When {@link CameraPreview} is open
+ * its camera is borrowed as it is, already previewing; otherwise the preview goes to an
+ * offscreen texture. Pausing needs API 24; there is no take-joining fallback.
+ */
+public class RecordingService extends Service {
+
+    private static final String TAG = "RecordingService";
+
+    static final String EXTRA_OPTIONS = "options";
+
+    private static final String CHANNEL_ID = "video_recorder";
+    private static final int NOTIFICATION_ID = 0x5652;
+
+    // One headless recording at a time; set from start() until the service is done
+    private static final AtomicBoolean ACTIVE = new AtomicBoolean();
+    private static volatile VideoRecorder.RecordingCallback pendingStart;
+
+    // Only touched on the camera thread
+    private VideoRecordingOptions options;
+    private Camera camera;
+    private SurfaceTexture previewTexture;
+    // Also read by the audio level ticker
+    private volatile MediaRecorder mediaRecorder;
+    private RecordingSegmenter segmenter;
+    private RandomAccessFile outputReservation;
+    private RecordingSession session;
+    private File outputFile;
+    private String recordingId;
+    private long startTime;
+    private boolean started;
+    // The camera belongs to CameraPreview and is handed back instead of released
+    private boolean fromPreview;
+    private final RecordingMetrics.Session metrics = new RecordingMetrics.Session();
+
+    /**
+     * Starts a headless recording. The callback receives a StartRecordingResult once the
+     * recorder is running; the recording is then stopped through {@link RecordingSession}.
+     */
+    public static void start(Context context, VideoRecordingOptions options, VideoRecorder.RecordingCallback callback) {
+        if (RecordingSession.current() != null || !ACTIVE.compareAndSet(false, true)) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.ALREADY_RECORDING, "Recording is already in progress"));
+            return;
+        }
+        pendingStart = callback;
+        Intent intent = new Intent(context, RecordingService.class);
+        intent.putExtra(EXTRA_OPTIONS, options);
+        try {
+            ContextCompat.startForegroundService(context, intent);
+        } catch (RuntimeException e) {
+            // Android 12+ refuses foreground services started from the background
+            pendingStart = null;
+            ACTIVE.set(false);
+            callback.onError(new VideoRecorderError(VideoRecorderError.RECORDING_FAILED,
+                "Failed to start recording service: " + e.getMessage()));
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        final VideoRecordingOptions startOptions = intent != null
+            ? (VideoRecordingOptions) intent.getSerializableExtra(EXTRA_OPTIONS) : null;
+        // Must be called within a few seconds of startForegroundService, before anything else
+        try {
+            startForegroundCompat(startOptions != null && startOptions.enableAudio);
+        } catch (RuntimeException e) {
+            // Android 14 checks the camera/microphone permissions behind the service types
+            Log.e(TAG, "Failed to enter the foreground", e);
+            failStart(new VideoRecorderError(VideoRecorderError.PERMISSION_DENIED,
+                "Failed to start recording service: " + e.getMessage()));
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        if (startOptions == null) {
+            // Restarted by the system after the process died; there is nothing to resume
+            failStart(new VideoRecorderError(VideoRecorderError.INVALID_OPTIONS, "Recording options not provided"));
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        final long launchTime = RecordingMetrics.now();
+        final int cameraId = "front".equals(startOptions.camera)
+            ? Camera.CameraInfo.CAMERA_FACING_FRONT : Camera.CameraInfo.CAMERA_FACING_BACK;
+        CameraPrewarmer.post(new Runnable() {
+            @Override
+            public void run() {
+                // Record from the open preview when there is one: the camera is already running
+                CameraPrewarmer.PreparedCamera preview = CameraPreview.borrow();
+                if (preview != null) {
+                    if (preview.cameraId != cameraId) {
+                        // The preview owns the camera; switching it is up to the page (openPreview)
+                        CameraPreview.giveBack();
+                        failStart(new VideoRecorderError(VideoRecorderError.INVALID_OPTIONS,
+                            "The preview shows the " + (preview.cameraId == Camera.CameraInfo.CAMERA_FACING_FRONT ? "front" : "back")
+                                + " camera; reopen it with camera '" + startOptions.camera + "' before recording"));
+                        stopSelf();
+                        return;
+                    }
+                    fromPreview = true;
+                    startRecording(startOptions, preview, launchTime);
+                    return;
+                }
+                CameraPrewarmer.acquire(cameraId, startOptions.quality, new VideoRecorder.RecordingCallback() {
+                    @Override
+                    public void onSuccess(Object result) {
+                        // Already on the camera thread
+                        startRecording(startOptions, (CameraPrewarmer.PreparedCamera) result, launchTime);
+                    }
+
+                    @Override
+                    public void onError(VideoRecorderError error) {
+                        failStart(error);
+                        stopSelf();
+                    }
+                });
+            }
+        });
+        return START_NOT_STICKY;
+    }
+
+    private void startRecording(VideoRecordingOptions startOptions, CameraPrewarmer.PreparedCamera prepared, long launchTime) {
+        options = startOptions;
+        camera = prepared.camera;
+        metrics.prewarmed = prepared.prewarmed || fromPreview;
+
+        try {
+            if (fromPreview) {
+                // Opened, configured and previewing long before this take
+                metrics.set(RecordingMetrics.CAMERA_OPEN, 0);
+                metrics.set(RecordingMetrics.CAMERA_CONFIGURE, 0);
+                metrics.set(RecordingMetrics.PREVIEW_START, 0);
+            } else {
+                metrics.set(RecordingMetrics.CAMERA_OPEN, prepared.openNanos);
+                metrics.set(RecordingMetrics.CAMERA_CONFIGURE, prepared.configureNanos);
+                // The old camera API needs a running preview to record; nobody looks at it
+                long previewStart = RecordingMetrics.now();
+                previewTexture = new SurfaceTexture(0);
+                camera.setPreviewTexture(previewTexture);
+                camera.startPreview();
+                metrics.record(RecordingMetrics.PREVIEW_START, RecordingMetrics.now() - previewStart);
+            }
+
+            CamcorderProfile profile = StoragePreflight.resolveProfile(options.quality, prepared.cameraId);
+            File outputDir = new File(getExternalFilesDir(null), "videos");
+            if (!outputDir.exists()) {
+                outputDir.mkdirs();
+            }
+
+            StoragePreflight.Estimate storage = StoragePreflight.estimate(
+                outputDir, profile, options.enableAudio, options.maxDuration);
+            if (!storage.canRecord()) {
+                throw new RecordingException(VideoRecorderError.STORAGE_ERROR,
+                    "Not enough storage space to record (" + storage.availableBytes + " bytes available)");
+            }
+
+            startTime = System.currentTimeMillis();
+            recordingId = "recording_" + startTime;
+            String baseName = options.fileNamePrefix + "_" + startTime;
+            long segmentBytes = RecordingSegmenter.segmentBytes(options, profile.videoBitRate, profile.audioBitRate);
+            boolean segmented = segmentBytes > 0 && RecordingSegmenter.isSupported();
+            outputFile = new File(outputDir, baseName + ".mp4");
+            boolean preallocate = !segmented && options.preallocate && storage.estimatedBytes > 0;
+
+            // Claim the session before any output exists or the camera is unlocked, so a start
+            // that loses to the recording interface or captureAudio has nothing to undo
+            session = RecordingSession.begin(recordingId, outputFile, options.maxDuration, storage.maxFileSize,
+                storage.bytesPerSecond(), preallocate, options.progressInterval);
+            if (session == null) {
+                throw new RecordingException(VideoRecorderError.ALREADY_RECORDING, "Recording is already in progress");
+            }
+            if (preallocate) {
+                try {
+                    outputReservation = StoragePreflight.preallocate(outputFile,
+                        Math.min(storage.estimatedBytes, storage.maxFileSize));
+                } catch (IOException e) {
+                    throw new RecordingException(VideoRecorderError.STORAGE_ERROR, e.getMessage());
+                }
+            }
+
+            createMediaRecorder(profile);
+            if (segmented) {
+                segmenter = new RecordingSegmenter(mediaRecorder, outputDir, baseName, segmentBytes);
+                outputFile = segmenter.prepare();
+                session.setOutput(outputFile, 0);
+                segmenter.setRecordingId(recordingId);
+                if (options.uploadUrl != null) {
+                    segmenter.setUploadTarget(options.uploadUrl, options.uploadHeaders);
+                }
+            } else {
+                mediaRecorder.setMaxFileSize(storage.maxFileSize);
+                if (outputReservation != null) {
+                    mediaRecorder.setOutputFile(outputReservation.getFD());
+                } else {
+                    mediaRecorder.setOutputFile(outputFile.getAbsolutePath());
+                }
+            }
+            if (options.maxDuration > 0) {
+                mediaRecorder.setMaxDuration((int) (options.maxDuration * 1000));
+            }
+
+            long prepareStart = RecordingMetrics.now();
+            mediaRecorder.prepare();
+            long startStart = RecordingMetrics.now();
+            metrics.record(RecordingMetrics.RECORDER_PREPARE, startStart - prepareStart);
+            mediaRecorder.start();
+            metrics.record(RecordingMetrics.RECORDER_START, RecordingMetrics.now() - startStart);
+            // Counted from the service start, in place of the Activity's creation
+            metrics.record(RecordingMetrics.ACTIVITY_CREATE, prepareStart - launchTime);
+            if (outputReservation == null) {
+                metrics.watchFirstFrame(outputFile, startStart);
+            }
+            started = true;
+
+            session.setController(new RecordingSession.Controller() {
+                @Override
+                public void stop() {
+                    CameraPrewarmer.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            stopRecording();
+                        }
+                    });
+                }
+
+                @Override
+                public void pause(final VideoRecorder.RecordingCallback callback) {
+                    CameraPrewarmer.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            pauseRecording(callback);
+                        }
+                    });
+                }
+
+                @Override
+                public void resume(final VideoRecorder.RecordingCallback callback) {
+                    CameraPrewarmer.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            resumeRecording(callback);
+                        }
+                    });
+                }
+            });
+            if (options.enableAudio && options.audioLevelInterval > 0) {
+                // No PCM from MediaRecorder: peak only
+                session.setAudioLevelMeter(new AudioLevelMeter(new AudioLevelMeter.AmplitudeSource() {
+                    @Override
+                    public int getMaxAmplitude() {
+                        MediaRecorder recorder = mediaRecorder;
+                        return recorder != null ? recorder.getMaxAmplitude() : 0;
+                    }
+                }), options.audioLevelInterval);
+            }
+
+            Log.d(TAG, "Headless recording started: " + outputFile);
+            VideoRecorder.RecordingCallback callback = pendingStart;
+            pendingStart = null;
+            if (callback != null) {
+                callback.onSuccess(new VideoRecorder.StartRecordingResult(recordingId, startTime, outputFile.getAbsolutePath()));
+            }
+        } catch (RecordingException e) {
+            abort(new VideoRecorderError(e.code, e.getMessage()));
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting recording", e);
+            abort(new VideoRecorderError(VideoRecorderError.RECORDING_FAILED, "Failed to start recording: " + e.getMessage()));
+        }
+    }
+
+    /** Creates and configures a MediaRecorder on the current camera; the caller sets the output. */
+    private void createMediaRecorder(CamcorderProfile profile) {
+        mediaRecorder = new MediaRecorder();
+        camera.unlock();
+        mediaRecorder.setCamera(camera);
+
+        if (options.enableAudio) {
+            mediaRecorder.setAudioSource(MediaRecorder.AudioSource.CAMCORDER);
+        }
+        mediaRecorder.setVideoSource(MediaRecorder.VideoSource.CAMERA);
+
+        mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
+        if (options.enableAudio) {
+            mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+            mediaRecorder.setAudioEncodingBitRate(profile.audioBitRate);
+            mediaRecorder.setAudioSamplingRate(profile.audioSampleRate);
+        }
+        mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
+        mediaRecorder.setVideoSize(profile.videoFrameWidth, profile.videoFrameHeight);
+        mediaRecorder.setVideoFrameRate(profile.videoFrameRate);
+        mediaRecorder.setVideoEncodingBitRate(profile.videoBitRate);
+
+        // The recorder was created on the camera thread, so its callbacks arrive there too
+        mediaRecorder.setOnInfoListener(new MediaRecorder.OnInfoListener() {
+            @Override
+            public void onInfo(MediaRecorder mr, int what, int extra) {
+                if (segmenter != null && segmenter.onInfo(what)) {
+                    if (session != null) {
+                        session.setOutput(segmenter.getCurrentFile(), segmenter.getCompletedBytes());
+                    }
+                    return;
+                }
+                if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED
+                        || what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_REACHED) {
+                    // Limit reached: finish like a stop request, so JS callers get the result
+                    if (session != null && session.markStopping()) {
+                        stopRecording();
+                    }
+                }
+            }
+        });
+        mediaRecorder.setOnErrorListener(new MediaRecorder.OnErrorListener() {
+            @Override
+            public void onError(MediaRecorder mr, int what, int extra) {
+                Log.e(TAG, "MediaRecorder error " + what + "/" + extra);
+                abort(new VideoRecorderError(VideoRecorderError.RECORDING_FAILED, "Recorder error " + what + " (" + extra + ")"));
+            }
+        });
+    }
+
+    /** Runs on the camera thread once the session has moved to STOPPING. */
+    private void stopRecording() {
+        if (mediaRecorder == null) {
+            return;
+        }
+        try {
+            long stopStart = RecordingMetrics.now();
+            mediaRecorder.stop();
+            long stoppedAt = RecordingMetrics.now();
+            metrics.record(RecordingMetrics.RECORDER_STOP, stoppedAt - stopStart);
+            long endTime = System.currentTimeMillis();
+            releaseRecorder();
+
+            if (options.fastStart && segmenter == null) {
+                // The result is resolved once the file is final, from the post-processing thread.
+                // Everything it needs is captured here, the fields belong to the next recording.
+                final RecordingSession finishing = session;
+                final String id = recordingId;
+                final File file = outputFile;
+                final long start = startTime;
+                final long end = endTime;
+                final long stopped = stoppedAt;
+                final VideoRecordingOptions finishedOptions = options;
+                session = null;
+                RecordingPostProcessor.getInstance().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean optimized = RecordingPostProcessor.applyFastStart(file);
+                        VideoRecorder.StopRecordingResult result = VideoRecorder.createStopResult(id, file, start, end, null);
+                        result.fastStart = optimized;
+                        deliverResult(finishing, result, stopped, finishedOptions);
+                    }
+                });
+            } else {
+                VideoRecorder.StopRecordingResult result = VideoRecorder.createStopResult(
+                    recordingId, outputFile, startTime, endTime, null);
+                if (segmenter != null) {
+                    result = result.withSegments(segmenter.finish());
+                    segmenter = null;
+                }
+                deliverResult(session, result, stoppedAt, options);
+                session = null;
+            }
+        } catch (RuntimeException e) {
+            // stop() throws when nothing was recorded; the output is unusable
+            Log.e(TAG, "Error stopping recording", e);
+            if (segmenter == null) {
+                outputFile.delete();
+            }
+            abort(new VideoRecorderError(VideoRecorderError.RECORDING_FAILED, "Failed to stop recording: " + e.getMessage()));
+            return;
+        }
+        releaseCamera();
+        stopSelf();
+    }
+
+    /** Completes the session with the result for the stopped recording. */
+    private void deliverResult(RecordingSession finishing, VideoRecorder.StopRecordingResult result,
+                               long stoppedAt, VideoRecordingOptions finishedOptions) {
+        result.thumbnailStatus = RecordingPostProcessor.THUMBNAIL_PENDING;
+        metrics.record(RecordingMetrics.RESULT_DELIVERY, RecordingMetrics.now() - stoppedAt);
+        finishing.complete(result);
+        RecordingPostProcessor.getInstance().submit(result, finishedOptions, metrics);
+    }
+
+    private void pauseRecording(VideoRecorder.RecordingCallback callback) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            callback.onError(new VideoRecorderError("NOT_SUPPORTED", "Pause/Resume is not supported on Android API < 24"));
+            return;
+        }
+        if (mediaRecorder == null || session == null || session.isPaused()) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.NOT_RECORDING, "No active recording to pause"));
+            return;
+        }
+        try {
+            mediaRecorder.pause();
+            session.pause();
+            callback.onSuccess(null);
+        } catch (RuntimeException e) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.RECORDING_FAILED, "Failed to pause recording: " + e.getMessage()));
+        }
+    }
+
+    private void resumeRecording(VideoRecorder.RecordingCallback callback) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            callback.onError(new VideoRecorderError("NOT_SUPPORTED", "Pause/Resume is not supported on Android API < 24"));
+            return;
+        }
+        if (mediaRecorder == null || session == null || !session.isPaused()) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.NOT_RECORDING, "No paused recording to resume"));
+            return;
+        }
+        try {
+            mediaRecorder.resume();
+            session.resume();
+            callback.onSuccess(null);
+        } catch (RuntimeException e) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.RECORDING_FAILED, "Failed to resume recording: " + e.getMessage()));
+        }
+    }
+
+    /** Fails the start or the running session, releases everything and stops the service. */
+    private void abort(VideoRecorderError error) {
+        if (mediaRecorder != null && started) {
+            try {
+                mediaRecorder.stop();
+            } catch (RuntimeException e) {
+                // Nothing usable was written
+            }
+        }
+        releaseRecorder();
+        if (segmenter != null) {
+            segmenter.finish();
+            segmenter = null;
+        }
+        failStart(error);
+        if (session != null) {
+            session.fail(error);
+            session = null;
+        }
+        releaseCamera();
+        stopSelf();
+    }
+
+    private void releaseRecorder() {
+        if (mediaRecorder != null) {
+            mediaRecorder.release();
+            mediaRecorder = null;
+            camera.lock();
+        }
+        if (outputReservation != null) {
+            StoragePreflight.releasePreallocation(outputReservation, outputFile);
+            outputReservation = null;
+        }
+    }
+
+    private void releaseCamera() {
+        if (fromPreview) {
+            // Keeps previewing for the next take
+            fromPreview = false;
+            camera = null;
+            CameraPreview.giveBack();
+            return;
+        }
+        if (camera != null) {
+            camera.stopPreview();
+            camera.release();
+            camera = null;
+        }
+        if (previewTexture != null) {
+            previewTexture.release();
+            previewTexture = null;
+        }
+    }
+
+    private static void failStart(VideoRecorderError error) {
+        VideoRecorder.RecordingCallback callback = pendingStart;
+        pendingStart = null;
+        if (callback != null) {
+            callback.onError(error);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        // Stopped by the system or the app going away mid-recording: keep what was recorded
+        CameraPrewarmer.post(new Runnable() {
+            @Override
+            public void run() {
+                if (session != null && session.markStopping()) {
+                    stopRecording();
+                } else {
+                    releaseRecorder();
+                    releaseCamera();
+                }
+                ACTIVE.set(false);
+            }
+        });
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private void startForegroundCompat(boolean withMicrophone) {
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        Notification.Builder builder;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            if (manager.getNotificationChannel(CHANNEL_ID) == null) {
+                manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "Video recording",
+                    NotificationManager.IMPORTANCE_LOW));
+            }
+            builder = new Notification.Builder(this, CHANNEL_ID);
+        } else {
+            builder = new Notification.Builder(this);
+        }
+        Notification notification = builder
+            .setSmallIcon(android.R.drawable.presence_video_online)
+            .setContentTitle("Recording video")
+            .setOngoing(true)
+            .build();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // Camera and microphone access from a service requires the matching types
+            int type = ServiceInfo.FOREGROUND_SERVICE_TYPE_CAMERA;
+            if (withMicrophone) {
+                type |= ServiceInfo.FOREGROUND_SERVICE_TYPE_MICROPHONE;
+            }
+            startForeground(NOTIFICATION_ID, notification, type);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+    }
+
+    /** A start failure with its error code. */
+    private static class RecordingException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final String code;
+
+        RecordingException(String code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
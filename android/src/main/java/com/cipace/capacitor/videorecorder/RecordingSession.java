@@ -0,0 +1,383 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.os.SystemClock;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Live state of the recording in progress, written by whoever owns the MediaRecorder
+ * (the recording Activity) and read by the plugin, so {@code getRecordingStatus()}
+ * reports the real recording.
+ *
+ * The plugin also drives the recording through it: stop/pause/resume requests are
+ * checked against an atomic state machine (RECORDING ⇄ PAUSED → STOPPING → ENDED)
+ * on the calling thread and handed to the owner's {@link Controller}, which runs them
+ * where the recorder lives. Stop callers are completed with the final result. No
+ * locks are taken, so requests never wait on the UI thread.
+ *
+ * While a session is active it pushes {@code recordingProgress} events at the requested
+ * interval with media time, bytes on disk, the measured bitrate and what is left
+ * before the duration or size limit. Bytes are read from the output files on a
+ * background thread, never on the UI thread. With an {@link AudioLevelMeter} attached it
+ * also pushes {@code audioLevel} events from the same thread.
+ */
+public class RecordingSession {
+
+    // Bitrate is measured over at least this window; the muxer writes in ~1s chunks
+    private static final long BITRATE_WINDOW_MS = 1000;
+
+    public static final int RECORDING = 0;
+    public static final int PAUSED = 1;
+    public static final int STOPPING = 2;
+    public static final int ENDED = 3;
+    private static final String[] STATE_NAMES = { "recording", "paused", "stopping", "ended" };
+
+    private static final AtomicReference<RecordingSession> CURRENT = new AtomicReference<>();
+
+    /** Executes remote requests on the recorder's thread and reports back through the callback. */
+    public interface Controller {
+        void stop();
+        void pause(VideoRecorder.RecordingCallback callback);
+        void resume(VideoRecorder.RecordingCallback callback);
+    }
+
+    private static final ScheduledExecutorService TICKER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "VideoRecorder-progress");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public final String recordingId;
+    private final double maxDuration;
+    private final long maxBytes;
+    // Expected bytes per second from the profile, used until a bitrate has been measured
+    private final double profileByteRate;
+    // The output is pre-allocated, so its length says nothing about what was written
+    private final boolean preallocated;
+    private final long startedAt = SystemClock.elapsedRealtime();
+
+    private final AtomicInteger state = new AtomicInteger(RECORDING);
+    private volatile Controller controller;
+    // Final result (StopRecordingResult) or VideoRecorderError, set once
+    private final AtomicReference<Object> outcome = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<VideoRecorder.RecordingCallback> stopWaiters = new ConcurrentLinkedQueue<>();
+
+    private volatile File currentFile;
+    // Bytes in finished segments or takes
+    private volatile long completedBytes;
+    private volatile long pausedAt;
+    private volatile long pausedDuration;
+
+    // Only touched on TICKER
+    private ScheduledFuture<?> ticker;
+    private ScheduledFuture<?> levelTicker;
+    private long windowStart;
+    private long windowBytes;
+    private long bitrate;
+
+    private RecordingSession(String recordingId, File output, double maxDuration, long maxBytes,
+                             double profileByteRate, boolean preallocated) {
+        this.recordingId = recordingId;
+        this.currentFile = output;
+        this.maxDuration = maxDuration;
+        this.maxBytes = maxBytes;
+        this.profileByteRate = profileByteRate;
+        this.preallocated = preallocated;
+    }
+
+    /** The recording in progress, or null. */
+    public static RecordingSession current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Publishes a new recording as the current session and, when {@code progressIntervalMs}
+     * is positive, starts its progress events. {@code maxDuration} (seconds) and
+     * {@code maxBytes} are 0 when unlimited. Returns null when another recording is
+     * already current. Callers claim the session before they unlock the camera or start a
+     * recorder, and fail with ALREADY_RECORDING when this returns null.
+     */
+    public static RecordingSession begin(String recordingId, File output, double maxDuration, long maxBytes,
+                                         double profileByteRate, boolean preallocated, long progressIntervalMs) {
+        final RecordingSession session = new RecordingSession(recordingId, output, maxDuration, maxBytes,
+            profileByteRate, preallocated);
+        if (!CURRENT.compareAndSet(null, session)) {
+            return null;
+        }
+        if (progressIntervalMs > 0) {
+            TICKER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    session.startTicker(progressIntervalMs);
+                }
+            });
+        }
+        return session;
+    }
+
+    public void setController(Controller newController) {
+        controller = newController;
+    }
+
+    /** Pushes the meter's levels as {@code audioLevel} events every {@code intervalMs} while recording. */
+    public void setAudioLevelMeter(final AudioLevelMeter meter, final long intervalMs) {
+        TICKER.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (state.get() == ENDED || levelTicker != null) {
+                    return;
+                }
+                levelTicker = TICKER.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (state.get() != RECORDING) {
+                            return;
+                        }
+                        JSObject event = meter.poll(recordingId);
+                        if (event != null) {
+                            VideoRecorderEvents.emit(VideoRecorderEvents.AUDIO_LEVEL, event);
+                        }
+                    }
+                }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * Asks the owner to stop. The callback receives the StopRecordingResult once it is
+     * ready; repeated requests while stopping all receive the same result.
+     */
+    public void requestStop(VideoRecorder.RecordingCallback callback) {
+        stopWaiters.add(callback);
+        if (markStopping()) {
+            Controller current = controller;
+            if (current != null) {
+                current.stop();
+            } else {
+                fail(new VideoRecorderError(VideoRecorderError.NOT_RECORDING, "Recording can't be controlled remotely"));
+            }
+        }
+        // Already stopping or finished: the waiter is completed with the outcome
+        if (outcome.get() != null) {
+            drainWaiters();
+        }
+    }
+
+    public void requestPause(VideoRecorder.RecordingCallback callback) {
+        Controller current = controller;
+        if (state.get() != RECORDING || current == null) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.NOT_RECORDING,
+                "No active recording to pause (" + getStateName() + ")"));
+            return;
+        }
+        current.pause(callback);
+    }
+
+    public void requestResume(VideoRecorder.RecordingCallback callback) {
+        Controller current = controller;
+        if (state.get() != PAUSED || current == null) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.NOT_RECORDING,
+                "No paused recording to resume (" + getStateName() + ")"));
+            return;
+        }
+        current.resume(callback);
+    }
+
+    /**
+     * Moves to STOPPING from RECORDING or PAUSED. Returns false when the session was
+     * already stopping or ended, i.e. someone else owns the stop.
+     */
+    public boolean markStopping() {
+        while (true) {
+            int current = state.get();
+            if (current == STOPPING || current == ENDED) {
+                return false;
+            }
+            if (state.compareAndSet(current, STOPPING)) {
+                return true;
+            }
+        }
+    }
+
+    /** Completes stop requests with the final result. */
+    public void complete(VideoRecorder.StopRecordingResult result) {
+        if (outcome.compareAndSet(null, result)) {
+            end();
+            drainWaiters();
+        }
+    }
+
+    /** Completes stop requests with an error (failure or cancellation). */
+    public void fail(VideoRecorderError error) {
+        if (outcome.compareAndSet(null, error)) {
+            end();
+            drainWaiters();
+        }
+    }
+
+    private void drainWaiters() {
+        Object result = outcome.get();
+        VideoRecorder.RecordingCallback waiter;
+        while ((waiter = stopWaiters.poll()) != null) {
+            if (result instanceof VideoRecorderError) {
+                waiter.onError((VideoRecorderError) result);
+            } else {
+                waiter.onSuccess(result);
+            }
+        }
+    }
+
+    /** Ends the session: stops progress and level events and unpublishes it. */
+    public void end() {
+        state.set(ENDED);
+        CURRENT.compareAndSet(this, null);
+        TICKER.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (ticker != null) {
+                    ticker.cancel(false);
+                    ticker = null;
+                }
+                if (levelTicker != null) {
+                    levelTicker.cancel(false);
+                    levelTicker = null;
+                }
+            }
+        });
+    }
+
+    /** Called by the owner after the recorder paused. */
+    public void pause() {
+        // Only the owner's thread changes RECORDING ⇄ PAUSED, so pausedAt is set first
+        if (state.get() == RECORDING) {
+            pausedAt = SystemClock.elapsedRealtime();
+            state.compareAndSet(RECORDING, PAUSED);
+        }
+    }
+
+    /** Called by the owner after the recorder resumed. */
+    public void resume() {
+        if (state.compareAndSet(PAUSED, RECORDING)) {
+            pausedDuration += SystemClock.elapsedRealtime() - pausedAt;
+        }
+    }
+
+    /** The recorder moved on to {@code file}; {@code finishedBytes} are in earlier files. */
+    public void setOutput(File file, long finishedBytes) {
+        completedBytes = finishedBytes;
+        currentFile = file;
+    }
+
+    public boolean isPaused() {
+        return state.get() == PAUSED;
+    }
+
+    /** The file currently being written (the current segment for segmented recordings). */
+    public File getOutput() {
+        return currentFile;
+    }
+
+    public String getStateName() {
+        return STATE_NAMES[state.get()];
+    }
+
+    /** Recorded media time in seconds, not counting pauses. */
+    public double getDuration() {
+        long now = isPaused() ? pausedAt : SystemClock.elapsedRealtime();
+        return Math.max(0, now - startedAt - pausedDuration) / 1000.0;
+    }
+
+    /** Bytes written so far; estimated from the profile bitrate for pre-allocated outputs. */
+    public long getBytesWritten() {
+        if (preallocated) {
+            return completedBytes + (long) (getDuration() * profileByteRate);
+        }
+        File file = currentFile;
+        return completedBytes + (file != null ? file.length() : 0);
+    }
+
+    /** Status for {@code getRecordingStatus()}. Reads the output file size. */
+    public JSObject toJSObject() {
+        JSObject obj = new JSObject();
+        int current = state.get();
+        obj.put("isRecording", current == RECORDING || current == PAUSED);
+        obj.put("isPaused", current == PAUSED);
+        obj.put("state", STATE_NAMES[current]);
+        obj.put("currentDuration", getDuration());
+        obj.put("recordingId", recordingId);
+        obj.put("bytesWritten", getBytesWritten());
+        return obj;
+    }
+
+    private void startTicker(long intervalMs) {
+        if (state.get() == ENDED) {
+            return;
+        }
+        windowStart = SystemClock.elapsedRealtime();
+        windowBytes = getBytesWritten();
+        ticker = TICKER.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                int current = state.get();
+                if (current == RECORDING || current == PAUSED) {
+                    VideoRecorderEvents.emit(VideoRecorderEvents.RECORDING_PROGRESS, progress());
+                }
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Builds one progress event; runs on TICKER. */
+    private JSObject progress() {
+        double duration = getDuration();
+        long bytes = getBytesWritten();
+
+        boolean paused = isPaused();
+        long now = SystemClock.elapsedRealtime();
+        if (paused) {
+            // Nothing is written while paused; restart the window on resume
+            windowStart = now;
+            windowBytes = bytes;
+        } else if (now - windowStart >= BITRATE_WINDOW_MS) {
+            bitrate = (bytes - windowBytes) * 8 * 1000 / (now - windowStart);
+            windowStart = now;
+            windowBytes = bytes;
+        }
+
+        JSObject event = new JSObject();
+        event.put("recordingId", recordingId);
+        event.put("duration", duration);
+        event.put("bytesWritten", bytes);
+        event.put("bitrate", bitrate);
+        event.put("isPaused", paused);
+
+        double remainingTime = Double.MAX_VALUE;
+        if (maxDuration > 0) {
+            double remainingDuration = Math.max(0, maxDuration - duration);
+            event.put("remainingDuration", remainingDuration);
+            remainingTime = remainingDuration;
+        }
+        if (maxBytes > 0) {
+            long remainingBytes = Math.max(0, maxBytes - bytes);
+            event.put("remainingBytes", remainingBytes);
+            double byteRate = bitrate > 0 ? bitrate / 8.0 : profileByteRate;
+            if (byteRate > 0) {
+                remainingTime = Math.min(remainingTime, remainingBytes / byteRate);
+            }
+        }
+        if (remainingTime != Double.MAX_VALUE) {
+            event.put("remainingTime", Math.round(remainingTime * 10) / 10.0);
+        }
+        return event;
+    }
+}
@@ -0,0 +1,377 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the recording directories bounded: removes leftovers (empty MP4s, pause takes
+ * and pre-allocated outputs without a moov from killed sessions, stale temp files,
+ * thumbnails whose video is gone, index entries whose file is gone) and applies the
+ * retention policy (max age, max total bytes, keep newest N) to indexed recordings.
+ * Cached thumbnails of every deleted video are evicted through the thumbnail executor.
+ *
+ * A pass is split into small units of work that run in time slices on a background
+ * thread, yielding between slices, so a large directory never causes a long stall.
+ */
+public class RecordingSweeper {
+
+    private static final String TAG = "RecordingSweeper";
+
+    // Zero-length and unfinished files older than this can't belong to a live recording any more
+    private static final long EMPTY_FILE_GRACE_MS = 10 * 60 * 1000L;
+    // Pause takes and temp files older than this belong to a session that was killed
+    private static final long ORPHAN_GRACE_MS = 24 * 60 * 60 * 1000L;
+    // Pause between slices so other I/O gets through
+    private static final long SLICE_PAUSE_MS = 50;
+
+    private static final Pattern TAKE = Pattern.compile(".*_take\\d+\\.mp4");
+    private static final Pattern THUMBNAIL = Pattern.compile("(.*)_thumbnail\\.jpg");
+
+    public static class Policy {
+        // 0 disables the corresponding rule
+        public long maxAgeMs;
+        public long maxTotalBytes;
+        public int keepNewest;
+
+        boolean hasRetention() {
+            return maxAgeMs > 0 || maxTotalBytes > 0 || keepNewest > 0;
+        }
+    }
+
+    public static class Summary {
+        public int deletedRecordings;
+        public int deletedFiles;
+        public int removedIndexEntries;
+        public long freedBytes;
+        public long elapsedTime;
+
+        public JSObject toJSObject() {
+            JSObject obj = new JSObject();
+            obj.put("deletedRecordings", deletedRecordings);
+            obj.put("deletedFiles", deletedFiles);
+            obj.put("removedIndexEntries", removedIndexEntries);
+            obj.put("freedBytes", freedBytes);
+            obj.put("elapsedTime", elapsedTime);
+            return obj;
+        }
+    }
+
+    /**
+     * Deletes the {@code _thumbnail.jpg} written next to a video. Thumbnails generated on
+     * request live in the thumbnail cache and are evicted with {@link ThumbnailExecutor#cancel}.
+     */
+    public static long deleteThumbnails(File videoFile) {
+        File thumbnail = RecordingPostProcessor.thumbnailFileFor(videoFile);
+        if (thumbnail.equals(videoFile)) {
+            return 0;
+        }
+        long size = thumbnail.length();
+        return thumbnail.delete() ? size : 0;
+    }
+
+    private final List<File> dirs;
+    private final Policy policy;
+    private final long sliceMs;
+    private final ThumbnailExecutor thumbnails;
+    private final ScheduledThreadPoolExecutor executor;
+    private final List<VideoRecorder.RecordingCallback> waiting = new ArrayList<>();
+    private Pass pass;
+
+    public RecordingSweeper(List<File> dirs, Policy policy, long sliceMs, ThumbnailExecutor thumbnails) {
+        this.dirs = dirs;
+        this.policy = policy;
+        this.sliceMs = sliceMs;
+        this.thumbnails = thumbnails;
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "VideoRecorder-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Runs a pass after {@code initialDelayMs} and then every {@code intervalMs}. */
+    public void start(long initialDelayMs, long intervalMs) {
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                startPass();
+            }
+        }, initialDelayMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Starts a pass now (or joins the running one); the callback receives its {@link Summary}. */
+    public void sweepNow(final VideoRecorder.RecordingCallback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (callback != null) {
+                    waiting.add(callback);
+                }
+                startPass();
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void startPass() {
+        if (pass != null) {
+            return;
+        }
+        pass = new Pass();
+        runSlice();
+    }
+
+    private void runSlice() {
+        try {
+            long deadline = SystemClock.elapsedRealtime() + sliceMs;
+            while (pass.step()) {
+                if (SystemClock.elapsedRealtime() >= deadline) {
+                    executor.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            runSlice();
+                        }
+                    }, SLICE_PAUSE_MS, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Sweep failed", e);
+        }
+        finishPass();
+    }
+
+    private void finishPass() {
+        Summary summary = pass.summary;
+        summary.elapsedTime = System.currentTimeMillis() - pass.startedAt;
+        pass = null;
+        if (summary.deletedRecordings > 0 || summary.deletedFiles > 0 || summary.removedIndexEntries > 0) {
+            Log.d(TAG, "Swept " + summary.deletedRecordings + " recordings and " + summary.deletedFiles
+                + " files, freed " + summary.freedBytes + " bytes");
+            VideoRecorderEvents.emit(VideoRecorderEvents.RECORDINGS_SWEPT, summary.toJSObject());
+        }
+        for (VideoRecorder.RecordingCallback callback : waiting) {
+            callback.onSuccess(summary);
+        }
+        waiting.clear();
+    }
+
+    /** One sweep, advanced one small unit of work per {@link #step()}. */
+    private class Pass {
+        private static final int LIST = 0;
+        private static final int FILES = 1;
+        private static final int INDEX = 2;
+        private static final int RETENTION = 3;
+        private static final int DONE = 4;
+
+        final Summary summary = new Summary();
+        final long startedAt = System.currentTimeMillis();
+        private int phase = LIST;
+        private int position;
+        private final List<File> files = new ArrayList<>();
+        private List<RecordingIndex.Entry> entries;
+        private final Set<String> indexed = new HashSet<>();
+        private List<RecordingIndex.Entry> victims;
+
+        /** Does one unit of work; returns false when the pass is complete. */
+        boolean step() {
+            switch (phase) {
+                case LIST:
+                    if (position < dirs.size()) {
+                        File[] listed = dirs.get(position++).listFiles();
+                        if (listed != null) {
+                            Collections.addAll(files, listed);
+                        }
+                    } else {
+                        // Taken before the files are checked, so unfinished outputs can be told apart
+                        RecordingIndex index = RecordingIndex.getInstance();
+                        entries = index != null ? index.snapshot() : new ArrayList<RecordingIndex.Entry>();
+                        for (RecordingIndex.Entry entry : entries) {
+                            indexed.add(entry.videoPath);
+                        }
+                        next(FILES);
+                    }
+                    return true;
+
+                case FILES:
+                    if (position < files.size()) {
+                        checkFile(files.get(position++));
+                    } else {
+                        next(INDEX);
+                    }
+                    return true;
+
+                case INDEX:
+                    if (position < entries.size()) {
+                        RecordingIndex.Entry entry = entries.get(position++);
+                        if (!new File(entry.videoPath).exists()) {
+                            RecordingIndex.getInstance().remove(entry.videoPath);
+                            summary.removedIndexEntries++;
+                        }
+                    } else {
+                        victims = policy.hasRetention() ? selectVictims() : new ArrayList<RecordingIndex.Entry>();
+                        next(RETENTION);
+                    }
+                    return true;
+
+                case RETENTION:
+                    if (position < victims.size()) {
+                        deleteRecording(victims.get(position++));
+                        return true;
+                    }
+                    next(DONE);
+                    return false;
+
+                default:
+                    return false;
+            }
+        }
+
+        private void next(int nextPhase) {
+            phase = nextPhase;
+            position = 0;
+        }
+
+        private void checkFile(File file) {
+            String name = file.getName();
+            long age = System.currentTimeMillis() - file.lastModified();
+            boolean orphan = false;
+            if (name.endsWith(".mp4")) {
+                if (TAKE.matcher(name).matches()) {
+                    orphan = age > ORPHAN_GRACE_MS;
+                } else {
+                    orphan = age > EMPTY_FILE_GRACE_MS && (file.length() == 0 || isUnfinished(file));
+                }
+            } else if (name.endsWith(".tmp")) {
+                orphan = age > ORPHAN_GRACE_MS;
+            } else {
+                Matcher thumbnail = THUMBNAIL.matcher(name);
+                orphan = thumbnail.matches() && !new File(file.getParentFile(), thumbnail.group(1) + ".mp4").exists();
+            }
+            if (!orphan) {
+                return;
+            }
+            long size = file.length();
+            if (file.delete()) {
+                summary.deletedFiles++;
+                summary.freedBytes += size;
+                if (name.endsWith(".mp4")) {
+                    evictThumbnails(file);
+                    if (RecordingIndex.getInstance() != null) {
+                        RecordingIndex.getInstance().remove(file.getAbsolutePath());
+                    }
+                }
+            }
+        }
+
+        /**
+         * A pre-allocated output left by a killed session: it has its reserved length but
+         * no moov, because MediaRecorder writes that on stop. Indexed recordings and the
+         * file the current session writes to are never candidates.
+         */
+        private boolean isUnfinished(File file) {
+            String path = file.getAbsolutePath();
+            if (indexed.contains(path)) {
+                return false;
+            }
+            RecordingSession session = RecordingSession.current();
+            File output = session != null ? session.getOutput() : null;
+            if (output != null && output.getAbsolutePath().equals(path)) {
+                return false;
+            }
+            try {
+                Mp4Parser.parse(file);
+                return false;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+
+        private void evictThumbnails(File video) {
+            if (thumbnails != null) {
+                thumbnails.cancel(video.getAbsolutePath());
+            }
+        }
+
+        /** Indexed recordings, newest first, that fall outside the retention policy. */
+        private List<RecordingIndex.Entry> selectVictims() {
+            List<RecordingIndex.Entry> live = new ArrayList<>();
+            for (RecordingIndex.Entry entry : entries) {
+                if (new File(entry.videoPath).exists()) {
+                    live.add(entry);
+                }
+            }
+            Collections.sort(live, new Comparator<RecordingIndex.Entry>() {
+                @Override
+                public int compare(RecordingIndex.Entry a, RecordingIndex.Entry b) {
+                    return a.startTime > b.startTime ? -1 : a.startTime == b.startTime ? 0 : 1;
+                }
+            });
+
+            // Files still being uploaded are never deleted
+            Set<String> uploading = new HashSet<>();
+            ChunkedUploader uploader = ChunkedUploader.getInstance();
+            if (uploader != null) {
+                for (ChunkedUploader.Upload upload : uploader.getUploads()) {
+                    uploading.add(upload.filePath);
+                }
+            }
+
+            List<RecordingIndex.Entry> result = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            long totalBytes = 0;
+            for (int i = 0; i < live.size(); i++) {
+                RecordingIndex.Entry entry = live.get(i);
+                totalBytes += entry.fileSize;
+                boolean expired = (policy.keepNewest > 0 && i >= policy.keepNewest)
+                    || (policy.maxAgeMs > 0 && now - entry.startTime > policy.maxAgeMs)
+                    || (policy.maxTotalBytes > 0 && totalBytes > policy.maxTotalBytes);
+                if (expired && !uploading.contains(entry.videoPath)) {
+                    result.add(entry);
+                    totalBytes -= entry.fileSize;
+                }
+            }
+            return result;
+        }
+
+        private void deleteRecording(RecordingIndex.Entry entry) {
+            File video = new File(entry.videoPath);
+            long size = video.length();
+            if (video.exists() && !video.delete()) {
+                Log.w(TAG, "Failed to delete " + video);
+                return;
+            }
+            summary.deletedRecordings++;
+            summary.freedBytes += size + deleteThumbnails(video);
+            evictThumbnails(video);
+            RecordingIndex.getInstance().remove(entry.videoPath);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.media.CamcorderProfile;
+import android.os.StatFs;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Checks free space before a recording starts and derives the MediaRecorder file size
+ * cap from it, so a full disk ends the recording cleanly (MAX_FILESIZE_REACHED) instead
+ * of failing mid-write with a file that has no moov.
+ *
+ * Optionally the output is pre-allocated with {@code posix_fallocate}; the unused tail
+ * is cut off again when the recorder has stopped.
+ */
+public class StoragePreflight {
+
+    private static final String TAG = "StoragePreflight";
+
+    // Left free for the moov box, thumbnails and the rest of the system
+    private static final long RESERVED_BYTES = 20L * 1024 * 1024;
+    // Refuse to start unless at least this much can be recorded
+    private static final double MIN_RECORDING_SECONDS = 5.0;
+    // Container overhead (moov, sample tables) on top of the raw stream bitrates
+    private static final double CONTAINER_OVERHEAD = 1.02;
+
+    public static class Estimate {
+        public final int width;
+        public final int height;
+        public final int frameRate;
+        public final int videoBitRate;
+        public final int audioBitRate;
+        public final double duration;
+        // 0 when the duration is unbounded
+        public final long estimatedBytes;
+        public final long availableBytes;
+        public final long maxFileSize;
+
+        Estimate(CamcorderProfile profile, int audioBitRate, double duration, long estimatedBytes,
+                 long availableBytes, long maxFileSize) {
+            this.width = profile.videoFrameWidth;
+            this.height = profile.videoFrameHeight;
+            this.frameRate = profile.videoFrameRate;
+            this.videoBitRate = profile.videoBitRate;
+            this.audioBitRate = audioBitRate;
+            this.duration = duration;
+            this.estimatedBytes = estimatedBytes;
+            this.availableBytes = availableBytes;
+            this.maxFileSize = maxFileSize;
+        }
+
+        /** True when there is room for at least MIN_RECORDING_SECONDS. */
+        public boolean canRecord() {
+            return maxFileSize >= (long) (MIN_RECORDING_SECONDS * bytesPerSecond());
+        }
+
+        /** True when the whole maxDuration fits. */
+        public boolean isSufficient() {
+            return estimatedBytes > 0 && estimatedBytes <= maxFileSize;
+        }
+
+        double bytesPerSecond() {
+            return (videoBitRate + audioBitRate) / 8.0 * CONTAINER_OVERHEAD;
+        }
+
+        public JSObject toJSObject() {
+            JSObject obj = new JSObject();
+            obj.put("width", width);
+            obj.put("height", height);
+            obj.put("frameRate", frameRate);
+            obj.put("videoBitRate", videoBitRate);
+            obj.put("audioBitRate", audioBitRate);
+            obj.put("duration", duration);
+            obj.put("estimatedBytes", estimatedBytes);
+            obj.put("availableBytes", availableBytes);
+            obj.put("maxFileSize", maxFileSize);
+            obj.put("sufficient", isSufficient());
+            obj.put("canRecord", canRecord());
+            return obj;
+        }
+    }
+
+    /**
+     * The CamcorderProfile for a quality name: 4K → 1080P → 720P for "highest", 1080P for
+     * "high", 720P for "medium" and 480P for "low", with raised minimum bitrates for the
+     * upper two. Levels the capability probe found unrecordable are skipped. Does not need
+     * the camera to be open.
+     */
+    public static CamcorderProfile resolveProfile(String quality, int cameraId) {
+        switch (quality != null ? quality.toLowerCase() : "high") {
+            case "low":
+                if (hasProfile(cameraId, CamcorderProfile.QUALITY_480P)) {
+                    return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_480P);
+                }
+                return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_LOW);
+
+            case "medium":
+                if (hasProfile(cameraId, CamcorderProfile.QUALITY_720P)) {
+                    return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_720P);
+                }
+                return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_480P);
+
+            case "highest":
+                // 尝试最高质量：4K -> 1080P -> 720P
+                if (hasProfile(cameraId, CamcorderProfile.QUALITY_2160P)) {
+                    CamcorderProfile profile = CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_2160P);
+                    // 提高比特率以获得更好质量
+                    profile.videoBitRate = Math.max(profile.videoBitRate, 20000000); // 20Mbps
+                    return profile;
+                }
+                if (hasProfile(cameraId, CamcorderProfile.QUALITY_1080P)) {
+                    CamcorderProfile profile = CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_1080P);
+                    // 提高比特率以获得更好质量
+                    profile.videoBitRate = Math.max(profile.videoBitRate, 12000000); // 12Mbps
+                    return profile;
+                }
+                return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_720P);
+
+            case "high":
+            default:
+                // 默认使用 1080P，如果不支持则降级到 720P
+                if (hasProfile(cameraId, CamcorderProfile.QUALITY_1080P)) {
+                    CamcorderProfile profile = CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_1080P);
+                    // 适中的比特率
+                    profile.videoBitRate = Math.max(profile.videoBitRate, 8000000); // 8Mbps
+                    return profile;
+                }
+                return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_720P);
+        }
+    }
+
+    private static boolean hasProfile(int cameraId, int quality) {
+        return CamcorderProfile.hasProfile(cameraId, quality) && DeviceCapabilityProbe.isRecordable(cameraId, quality);
+    }
+
+    /**
+     * Estimates the size of a recording of {@code durationSeconds} (0 = unbounded) and
+     * checks it against the free space of {@code outputDir}.
+     */
+    public static Estimate estimate(File outputDir, CamcorderProfile profile, boolean enableAudio,
+                                    double durationSeconds) {
+        int audioBitRate = enableAudio ? profile.audioBitRate : 0;
+        double bytesPerSecond = (profile.videoBitRate + audioBitRate) / 8.0 * CONTAINER_OVERHEAD;
+        long estimatedBytes = durationSeconds > 0 ? (long) Math.ceil(durationSeconds * bytesPerSecond) : 0;
+
+        long availableBytes = new StatFs(existingParent(outputDir).getPath()).getAvailableBytes();
+        long maxFileSize = Math.max(0, availableBytes - RESERVED_BYTES);
+        return new Estimate(profile, audioBitRate, durationSeconds, estimatedBytes, availableBytes, maxFileSize);
+    }
+
+    /**
+     * Creates {@code file} and reserves {@code bytes} for it. Returns the open file for
+     * {@code MediaRecorder.setOutputFile(FileDescriptor)}, or null if the file system
+     * can't pre-allocate (the caller then records to the path as usual).
+     *
+     * @throws IOException when the space is not actually available (ENOSPC)
+     */
+    public static RandomAccessFile preallocate(File file, long bytes) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            Os.posix_fallocate(raf.getFD(), 0, bytes);
+            return raf;
+        } catch (ErrnoException e) {
+            raf.close();
+            file.delete();
+            if (e.errno == OsConstants.ENOSPC) {
+                throw new IOException("Not enough storage space to reserve " + bytes + " bytes", e);
+            }
+            Log.w(TAG, "posix_fallocate not supported, recording without pre-allocation", e);
+            return null;
+        }
+    }
+
+    /**
+     * Closes a pre-allocated output after the recorder has stopped and truncates the file
+     * to the end of its last box, dropping the unused zero-filled tail.
+     */
+    public static void releasePreallocation(RandomAccessFile raf, File file) {
+        try {
+            long end = endOfLastBox(raf);
+            if (end > 0 && end < raf.length()) {
+                raf.setLength(end);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to truncate pre-allocated file " + file, e);
+        } finally {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Walks the top-level boxes and returns the offset where the zero-filled tail starts,
+     * or -1 when the layout isn't recognisable (the file is then left untouched).
+     */
+    static long endOfLastBox(RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+        long position = 0;
+        while (position + 8 <= length) {
+            raf.seek(position);
+            long size = raf.readInt() & 0xFFFFFFFFL;
+            int type = raf.readInt();
+            if (size == 0 && type == 0) {
+                // Unwritten space
+                return position;
+            }
+            if (size == 1) {
+                if (position + 16 > length) {
+                    return -1;
+                }
+                size = raf.readLong();
+            } else if (size == 0) {
+                // Box extends to the end of the file (unfinished mdat)
+                return -1;
+            }
+            if (size < 8 || position + size > length) {
+                return -1;
+            }
+            position += size;
+        }
+        return position;
+    }
+
+    private static File existingParent(File dir) {
+        File current = dir;
+        while (current != null && !current.exists()) {
+            current = current.getParentFile();
+        }
+        return current != null ? current : dir;
+    }
+}
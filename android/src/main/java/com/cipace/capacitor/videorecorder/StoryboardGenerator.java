@@ -0,0 +1,118 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.media.MediaMetadataRetriever;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Packs N evenly spaced frames into a single sprite sheet for scrubbing previews.
+ * Frames are decoded at tile size and drawn into the sheet one at a time, so peak
+ * memory is roughly one tile plus the sheet.
+ */
+public class StoryboardGenerator {
+
+    public static final int MAX_TILE_SIZE = 1024;
+    /** Largest sheet that is rendered, 32 MB as RGB_565. */
+    public static final long MAX_SHEET_PIXELS = 4096L * 4096L;
+
+    public static class Layout {
+        public final int tileWidth;
+        public final int tileHeight;
+        public final int columns;
+        public final int rows;
+        public final double[] times;
+
+        Layout(int tileWidth, int tileHeight, int columns, int rows, double[] times) {
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.columns = columns;
+            this.rows = rows;
+            this.times = times;
+        }
+
+        public int tileX(int index) {
+            return (index % columns) * tileWidth;
+        }
+
+        public int tileY(int index) {
+            return (index / columns) * tileHeight;
+        }
+    }
+
+    /**
+     * Computes the grid and frame times from the MP4 headers. A tileHeight of 0 keeps
+     * the display aspect ratio of the video. Throws IllegalArgumentException when the
+     * sheet would be larger than {@link #MAX_SHEET_PIXELS}.
+     */
+    public static Layout layout(Mp4Parser.Mp4Info info, int count, int columns, int tileWidth, int tileHeight) {
+        int frames = Math.max(1, count);
+        int cols = Math.max(1, Math.min(columns, frames));
+        int rows = (frames + cols - 1) / cols;
+
+        int height = tileHeight;
+        if (height <= 0) {
+            boolean rotated = info.rotation == 90 || info.rotation == 270;
+            int displayWidth = rotated ? info.height : info.width;
+            int displayHeight = rotated ? info.width : info.height;
+            height = displayWidth > 0
+                ? Math.max(2, Math.round(tileWidth * (float) displayHeight / displayWidth) & ~1)
+                : tileWidth * 9 / 16;
+            // Extreme aspect ratios would otherwise give needle-thin sheets
+            height = Math.min(height, MAX_TILE_SIZE);
+        }
+        if ((long) cols * tileWidth * rows * height > MAX_SHEET_PIXELS) {
+            throw new IllegalArgumentException("Storyboard of " + cols * tileWidth + "x" + (long) rows * height
+                + " exceeds " + MAX_SHEET_PIXELS + " pixels; use fewer or smaller tiles");
+        }
+
+        // Sample the middle of each of N equal slices so the first and last frames aren't black
+        double durationSeconds = info.durationUs / 1000000.0;
+        double[] times = new double[frames];
+        for (int i = 0; i < frames; i++) {
+            times[i] = durationSeconds * (i + 0.5) / frames;
+        }
+        return new Layout(tileWidth, height, cols, rows, times);
+    }
+
+    public static byte[] render(String videoPath, Layout layout, double quality) throws Exception {
+        // RGB_565 halves the sheet memory, JPEG output has no alpha anyway
+        Bitmap sheet = Bitmap.createBitmap(layout.columns * layout.tileWidth, layout.rows * layout.tileHeight,
+            Bitmap.Config.RGB_565);
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            Canvas canvas = new Canvas(sheet);
+            canvas.drawColor(Color.BLACK);
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            Rect dst = new Rect();
+
+            retriever.setDataSource(videoPath);
+            for (int i = 0; i < layout.times.length; i++) {
+                Bitmap tile = VideoRecorder.extractFrame(retriever, (long) (layout.times[i] * 1000000),
+                    layout.tileWidth, layout.tileHeight);
+                if (tile == null) {
+                    continue;
+                }
+                // Letterbox inside the tile when the frame aspect differs
+                float scale = Math.min((float) layout.tileWidth / tile.getWidth(), (float) layout.tileHeight / tile.getHeight());
+                int w = Math.round(tile.getWidth() * scale);
+                int h = Math.round(tile.getHeight() * scale);
+                int x = layout.tileX(i) + (layout.tileWidth - w) / 2;
+                int y = layout.tileY(i) + (layout.tileHeight - h) / 2;
+                dst.set(x, y, x + w, y + h);
+                canvas.drawBitmap(tile, null, dst, paint);
+                tile.recycle();
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            sheet.compress(Bitmap.CompressFormat.JPEG, (int) (quality * 100), out);
+            return out.toByteArray();
+        } finally {
+            retriever.release();
+            sheet.recycle();
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Two-tier thumbnail cache: a byte-bounded in-memory LRU of encoded JPEGs in front of a
+ * size-capped directory of JPEG files. The directory is evictable, so
+ * {@code generateThumbnail} copies the bytes to a durable file next to the video; the
+ * memory tier lets repeat requests do that without reading the cache file back.
+ *
+ * Entries are keyed by the video's canonical path, size and mtime plus the request
+ * parameters, so a re-recorded file never serves a stale frame. File names are
+ * {@code <pathHash>_<variantHash>.jpg}, which lets all entries of one video be dropped
+ * without a separate index file.
+ */
+public class ThumbnailCache {
+
+    private static final String TAG = "ThumbnailCache";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SUFFIX = ".jpg";
+
+    public static class Key {
+        final String id;
+
+        Key(String pathHash, String variantHash) {
+            this.id = pathHash + "_" + variantHash;
+        }
+    }
+
+    private final File directory;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+
+    // Both maps are access ordered, eldest entry first
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(32, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes = 0;
+    private long diskBytes = 0;
+    private boolean diskLoaded = false;
+
+    public ThumbnailCache(File directory, long maxMemoryBytes, long maxDiskBytes) {
+        this.directory = directory;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    public Key key(String videoPath, double timeAt, double quality, int maxWidth) throws IOException {
+        return key(videoPath, timeAt + "|" + quality + "|" + maxWidth);
+    }
+
+    public Key storyboardKey(String videoPath, int count, int columns, int tileWidth, int tileHeight,
+                             double quality) throws IOException {
+        return key(videoPath, "storyboard|" + count + "|" + columns + "|" + tileWidth + "|" + tileHeight + "|" + quality);
+    }
+
+    private Key key(String videoPath, String params) throws IOException {
+        File video = new File(videoPath);
+        String canonicalPath = video.getCanonicalPath();
+        String variant = video.length() + "|" + video.lastModified() + "|" + params;
+        return new Key(hash(canonicalPath), hash(variant));
+    }
+
+    /** Returns the cached thumbnail file, or null on a miss. */
+    public synchronized File get(Key key) {
+        loadDiskIndex();
+        File file = fileFor(key);
+        byte[] bytes = memory.get(key.id);
+
+        if (disk.get(key.id) != null) {
+            if (file.exists()) {
+                return file;
+            }
+            // Removed behind our back (e.g. the system cleared the cache dir)
+            removeDiskEntry(key.id);
+        }
+
+        if (bytes != null) {
+            try {
+                writeFile(file, bytes);
+                addDiskEntry(key.id, bytes.length);
+                return file;
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to restore cached thumbnail", e);
+            }
+        }
+        return null;
+    }
+
+    /** Returns the cached JPEG bytes, from memory when possible, or null on a miss. */
+    public synchronized byte[] getBytes(Key key) {
+        byte[] bytes = memory.get(key.id);
+        if (bytes != null) {
+            return bytes;
+        }
+        File file = get(key);
+        if (file == null) {
+            return null;
+        }
+        try {
+            bytes = readFile(file);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read cached thumbnail", e);
+            return null;
+        }
+        putMemory(key.id, bytes);
+        return bytes;
+    }
+
+    public synchronized File put(Key key, byte[] jpeg) throws IOException {
+        loadDiskIndex();
+        File file = fileFor(key);
+        writeFile(file, jpeg);
+        addDiskEntry(key.id, jpeg.length);
+        putMemory(key.id, jpeg);
+        return file;
+    }
+
+    /** Drops every cached thumbnail of the given video. */
+    public synchronized void invalidate(String videoPath) {
+        String prefix;
+        try {
+            prefix = hash(new File(videoPath).getCanonicalPath()) + "_";
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to resolve " + videoPath, e);
+            return;
+        }
+        loadDiskIndex();
+
+        Iterator<Map.Entry<String, byte[]>> memoryIt = memory.entrySet().iterator();
+        while (memoryIt.hasNext()) {
+            Map.Entry<String, byte[]> entry = memoryIt.next();
+            if (entry.getKey().startsWith(prefix)) {
+                memoryBytes -= entry.getValue().length;
+                memoryIt.remove();
+            }
+        }
+
+        Iterator<Map.Entry<String, Long>> diskIt = disk.entrySet().iterator();
+        while (diskIt.hasNext()) {
+            Map.Entry<String, Long> entry = diskIt.next();
+            if (entry.getKey().startsWith(prefix)) {
+                diskBytes -= entry.getValue();
+                new File(directory, entry.getKey() + SUFFIX).delete();
+                diskIt.remove();
+            }
+        }
+    }
+
+    // MARK: - Private helpers
+
+    private File fileFor(Key key) {
+        return new File(directory, key.id + SUFFIX);
+    }
+
+    private void loadDiskIndex() {
+        if (diskLoaded) {
+            return;
+        }
+        diskLoaded = true;
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed to create " + directory);
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Oldest first so that insertion order matches LRU order
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(modified[a], modified[b]);
+            }
+        });
+        for (Integer i : order) {
+            String name = files[i].getName();
+            if (name.endsWith(SUFFIX)) {
+                addDiskEntry(name.substring(0, name.length() - SUFFIX.length()), files[i].length());
+            } else if (name.endsWith(".tmp")) {
+                files[i].delete();
+            }
+        }
+    }
+
+    private void addDiskEntry(String id, long size) {
+        Long previous = disk.put(id, size);
+        if (previous != null) {
+            diskBytes -= previous;
+        }
+        diskBytes += size;
+        trimDisk();
+    }
+
+    private void removeDiskEntry(String id) {
+        Long size = disk.remove(id);
+        if (size != null) {
+            diskBytes -= size;
+        }
+    }
+
+    private void putMemory(String id, byte[] jpeg) {
+        byte[] previous = memory.put(id, jpeg);
+        if (previous != null) {
+            memoryBytes -= previous.length;
+        }
+        memoryBytes += jpeg.length;
+        trimMemory();
+    }
+
+    private void trimMemory() {
+        Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+            memoryBytes -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    private void trimDisk() {
+        if (diskBytes <= maxDiskBytes) {
+            return;
+        }
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            diskBytes -= entry.getValue();
+            evicted.add(entry.getKey());
+            it.remove();
+        }
+        for (String id : evicted) {
+            new File(directory, id + SUFFIX).delete();
+        }
+    }
+
+    static void writeFile(File file, byte[] bytes) throws IOException {
+        // Write to a temp file first so a crash never leaves a truncated JPEG behind
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Failed to write " + file);
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(value.getBytes(UTF8));
+            StringBuilder sb = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", bytes[i] & 0xFF));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.os.Process;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs thumbnail generation off the plugin thread on a bounded pool.
+ * Cache hits are answered on the calling thread, identical in-flight requests
+ * share one decode, and pending work for a video can be cancelled when that
+ * video is deleted.
+ *
+ * Single thumbnails are written to {@code <name>_thumbnail_<N>s.jpg} next to the
+ * video, which the cache never evicts; batches and storyboards return cache files.
+ */
+public class ThumbnailExecutor {
+
+    private static final String TAG = "ThumbnailExecutor";
+
+    private final ThreadPoolExecutor executor;
+    private final ThumbnailCache cache;
+    private final ConcurrentHashMap<String, Task> inFlight = new ConcurrentHashMap<>();
+    private final Set<BatchTask> batches = Collections.newSetFromMap(new ConcurrentHashMap<BatchTask, Boolean>());
+    private final Set<StoryboardTask> storyboards = Collections.newSetFromMap(new ConcurrentHashMap<StoryboardTask, Boolean>());
+
+    public ThumbnailExecutor(int workerCount, int queueCapacity, ThumbnailCache cache) {
+        this.cache = cache;
+        int workers = Math.max(1, workerCount);
+        executor = new ThreadPoolExecutor(
+            workers,
+            workers,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(Math.max(1, queueCapacity)),
+            new WorkerThreadFactory()
+        );
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void submit(String videoPath, double timeAt, double quality, int maxWidth, VideoRecorder.RecordingCallback callback) {
+        ThumbnailCache.Key cacheKey;
+        try {
+            cacheKey = cache.key(videoPath, timeAt, quality, maxWidth);
+        } catch (IOException e) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.THUMBNAIL_GENERATION_FAILED, "Failed to resolve video path: " + e.getMessage()));
+            return;
+        }
+
+        byte[] cached = cache.getBytes(cacheKey);
+        if (cached != null) {
+            try {
+                File output = writeOutput(videoPath, timeAt, cached);
+                callback.onSuccess(new VideoRecorder.ThumbnailResult(output.getAbsolutePath()));
+            } catch (IOException e) {
+                callback.onError(new VideoRecorderError(VideoRecorderError.THUMBNAIL_GENERATION_FAILED, "Failed to write thumbnail: " + e.getMessage()));
+            }
+            return;
+        }
+
+        String key = cacheKey.id;
+
+        while (true) {
+            Task existing = inFlight.get(key);
+            if (existing != null) {
+                if (existing.addCallback(callback)) {
+                    return;
+                }
+                // Task finished between get() and addCallback(), drop it and retry
+                inFlight.remove(key, existing);
+                continue;
+            }
+
+            Task task = new Task(cacheKey, videoPath, timeAt, quality, maxWidth, callback);
+            if (inFlight.putIfAbsent(key, task) != null) {
+                continue;
+            }
+
+            try {
+                task.future = executor.submit(task);
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(key, task);
+                task.finish(null, new VideoRecorderError(VideoRecorderError.THUMBNAIL_GENERATION_FAILED, "Thumbnail queue is full"));
+            }
+            return;
+        }
+    }
+
+    /**
+     * Generates thumbnails for several timestamps of one video. Cached frames are reused
+     * and the rest are decoded by a single task sharing one retriever session.
+     */
+    public void submitBatch(String videoPath, double[] times, double quality, int maxWidth,
+                            VideoRecorder.RecordingCallback callback) {
+        String[] paths = new String[times.length];
+        ThumbnailCache.Key[] keys = new ThumbnailCache.Key[times.length];
+        int misses = 0;
+        try {
+            for (int i = 0; i < times.length; i++) {
+                keys[i] = cache.key(videoPath, times[i], quality, maxWidth);
+                File cached = cache.get(keys[i]);
+                if (cached != null) {
+                    paths[i] = cached.getAbsolutePath();
+                } else {
+                    misses++;
+                }
+            }
+        } catch (IOException e) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.THUMBNAIL_GENERATION_FAILED, "Failed to resolve video path: " + e.getMessage()));
+            return;
+        }
+
+        if (misses == 0) {
+            callback.onSuccess(new VideoRecorder.ThumbnailsResult(times, paths));
+            return;
+        }
+
+        BatchTask task = new BatchTask(videoPath, times, quality, maxWidth, keys, paths, misses, callback);
+        batches.add(task);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            batches.remove(task);
+            callback.onError(new VideoRecorderError(VideoRecorderError.THUMBNAIL_GENERATION_FAILED, "Thumbnail queue is full"));
+        }
+    }
+
+    /**
+     * Renders a sprite sheet of evenly spaced frames. The sheet goes through the thumbnail
+     * cache like any other thumbnail, so repeat requests only re-read the MP4 headers.
+     */
+    public void submitStoryboard(String videoPath, int count, int columns, int tileWidth, int tileHeight,
+                                 double quality, VideoRecorder.RecordingCallback callback) {
+        StoryboardGenerator.Layout layout;
+        ThumbnailCache.Key key;
+        try {
+            layout = StoryboardGenerator.layout(Mp4Parser.parse(new File(videoPath)), count, columns, tileWidth, tileHeight);
+            key = cache.storyboardKey(videoPath, count, columns, tileWidth, tileHeight, quality);
+        } catch (IOException e) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.THUMBNAIL_GENERATION_FAILED, "Failed to read video: " + e.getMessage()));
+            return;
+        } catch (IllegalArgumentException e) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.INVALID_OPTIONS, e.getMessage()));
+            return;
+        }
+
+        File cached = cache.get(key);
+        if (cached != null) {
+            callback.onSuccess(new VideoRecorder.StoryboardResult(cached.getAbsolutePath(), layout));
+            return;
+        }
+
+        StoryboardTask task = new StoryboardTask(videoPath, layout, quality, key, callback);
+        storyboards.add(task);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            storyboards.remove(task);
+            callback.onError(new VideoRecorderError(VideoRecorderError.THUMBNAIL_GENERATION_FAILED, "Thumbnail queue is full"));
+        }
+    }
+
+    /**
+     * Cancels queued and running requests for a video and drops its cached thumbnails,
+     * e.g. because it is being deleted.
+     */
+    public void cancel(String videoPath) {
+        for (Task task : inFlight.values()) {
+            if (task.videoPath.equals(videoPath)) {
+                task.cancel();
+            }
+        }
+        for (BatchTask batch : batches) {
+            if (batch.videoPath.equals(videoPath)) {
+                batch.cancel();
+            }
+        }
+        for (StoryboardTask storyboard : storyboards) {
+            if (storyboard.videoPath.equals(videoPath)) {
+                storyboard.cancel();
+            }
+        }
+        cache.invalidate(videoPath);
+    }
+
+    public void shutdown() {
+        for (Task task : inFlight.values()) {
+            task.cancel();
+        }
+        for (BatchTask batch : batches) {
+            batch.cancel();
+        }
+        for (StoryboardTask storyboard : storyboards) {
+            storyboard.cancel();
+        }
+        executor.shutdownNow();
+    }
+
+    /** Durable copy of a thumbnail next to its video: {@code <name>_thumbnail_<N>s.jpg}. */
+    static File outputFileFor(File video, double timeAt) {
+        String name = video.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        return new File(video.getParentFile(), baseName + "_thumbnail_" + (int) timeAt + "s.jpg");
+    }
+
+    private static File writeOutput(String videoPath, double timeAt, byte[] jpeg) throws IOException {
+        File output = outputFileFor(new File(videoPath), timeAt);
+        ThumbnailCache.writeFile(output, jpeg);
+        return output;
+    }
+
+    private class Task implements Runnable {
+        final ThumbnailCache.Key cacheKey;
+        final String key;
+        final String videoPath;
+        final double timeAt;
+        final double quality;
+        final int maxWidth;
+        private final List<VideoRecorder.RecordingCallback> callbacks = new ArrayList<>();
+        private boolean completed = false;
+        private volatile boolean cancelled = false;
+        volatile Future<?> future;
+
+        Task(ThumbnailCache.Key cacheKey, String videoPath, double timeAt, double quality, int maxWidth,
+             VideoRecorder.RecordingCallback callback) {
+            this.cacheKey = cacheKey;
+            this.key = cacheKey.id;
+            this.videoPath = videoPath;
+            this.timeAt = timeAt;
+            this.quality = quality;
+            this.maxWidth = maxWidth;
+            this.callbacks.add(callback);
+        }
+
+        synchronized boolean addCallback(VideoRecorder.RecordingCallback callback) {
+            if (completed) {
+                return false;
+            }
+            callbacks.add(callback);
+            return true;
+        }
+
+        void cancel() {
+            cancelled = true;
+            Future<?> f = future;
+            if (f != null) {
+                f.cancel(false);
+            }
+            inFlight.remove(key, this);
+            finish(null, new VideoRecorderError(VideoRecorderError.CANCELLED, "Thumbnail request cancelled: " + videoPath));
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                byte[] jpeg = VideoRecorder.encodeThumbnail(videoPath, timeAt, quality, maxWidth);
+                if (jpeg == null) {
+                    finish(null, new VideoRecorderError(VideoRecorderError.THUMBNAIL_GENERATION_FAILED, "Failed to extract frame from video"));
+                    return;
+                }
+                if (cancelled) {
+                    // The video was deleted while decoding, don't cache its thumbnail
+                    return;
+                }
+                cache.put(cacheKey, jpeg);
+                File output = writeOutput(videoPath, timeAt, jpeg);
+                finish(new VideoRecorder.ThumbnailResult(output.getAbsolutePath()), null);
+            } catch (Exception e) {
+                finish(null, new VideoRecorderError(VideoRecorderError.THUMBNAIL_GENERATION_FAILED, "Failed to generate thumbnail: " + e.getMessage()));
+            } finally {
+                inFlight.remove(key, this);
+            }
+        }
+
+        private void finish(Object result, VideoRecorderError error) {
+            List<VideoRecorder.RecordingCallback> pending;
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+                pending = new ArrayList<>(callbacks);
+                callbacks.clear();
+            }
+            for (VideoRecorder.RecordingCallback callback : pending) {
+                try {
+                    if (error != null) {
+                        callback.onError(error);
+                    } else {
+                        callback.onSuccess(result);
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Thumbnail callback failed", e);
+                }
+            }
+        }
+    }
+
+    private class BatchTask implements Runnable {
+        final String videoPath;
+        final double[] times;
+        final double quality;
+        final int maxWidth;
+        final ThumbnailCache.Key[] keys;
+        final String[] paths;
+        final int misses;
+        final VideoRecorder.RecordingCallback callback;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile boolean cancelled = false;
+
+        BatchTask(String videoPath, double[] times, double quality, int maxWidth, ThumbnailCache.Key[] keys,
+                  String[] paths, int misses, VideoRecorder.RecordingCallback callback) {
+            this.videoPath = videoPath;
+            this.times = times;
+            this.quality = quality;
+            this.maxWidth = maxWidth;
+            this.keys = keys;
+            this.paths = paths;
+            this.misses = misses;
+            this.callback = callback;
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (done.compareAndSet(false, true)) {
+                batches.remove(this);
+                callback.onError(new VideoRecorderError(VideoRecorderError.CANCELLED, "Thumbnail request cancelled: " + videoPath));
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            // Only decode the timestamps the cache could not answer
+            final int[] missIndex = new int[misses];
+            double[] missTimes = new double[misses];
+            for (int i = 0, j = 0; i < times.length; i++) {
+                if (paths[i] == null) {
+                    missIndex[j] = i;
+                    missTimes[j++] = times[i];
+                }
+            }
+
+            try {
+                VideoRecorder.encodeThumbnails(videoPath, missTimes, quality, maxWidth, new VideoRecorder.FrameConsumer() {
+                    @Override
+                    public boolean onFrame(int index, byte[] jpeg) throws IOException {
+                        if (cancelled) {
+                            return false;
+                        }
+                        if (jpeg != null) {
+                            int i = missIndex[index];
+                            paths[i] = cache.put(keys[i], jpeg).getAbsolutePath();
+                        }
+                        return true;
+                    }
+                });
+                if (done.compareAndSet(false, true)) {
+                    callback.onSuccess(new VideoRecorder.ThumbnailsResult(times, paths));
+                }
+            } catch (Exception e) {
+                if (done.compareAndSet(false, true)) {
+                    callback.onError(new VideoRecorderError(VideoRecorderError.THUMBNAIL_GENERATION_FAILED, "Failed to generate thumbnails: " + e.getMessage()));
+                }
+            } finally {
+                batches.remove(this);
+            }
+        }
+    }
+
+    private class StoryboardTask implements Runnable {
+        final String videoPath;
+        final StoryboardGenerator.Layout layout;
+        final double quality;
+        final ThumbnailCache.Key key;
+        final VideoRecorder.RecordingCallback callback;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile boolean cancelled = false;
+
+        StoryboardTask(String videoPath, StoryboardGenerator.Layout layout, double quality, ThumbnailCache.Key key,
+                       VideoRecorder.RecordingCallback callback) {
+            this.videoPath = videoPath;
+            this.layout = layout;
+            this.quality = quality;
+            this.key = key;
+            this.callback = callback;
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (done.compareAndSet(false, true)) {
+                storyboards.remove(this);
+                callback.onError(new VideoRecorderError(VideoRecorderError.CANCELLED, "Storyboard request cancelled: " + videoPath));
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                byte[] jpeg = StoryboardGenerator.render(videoPath, layout, quality);
+                if (cancelled) {
+                    // The video was deleted while rendering, don't cache its storyboard
+                    return;
+                }
+                File file = cache.put(key, jpeg);
+                if (done.compareAndSet(false, true)) {
+                    callback.onSuccess(new VideoRecorder.StoryboardResult(file.getAbsolutePath(), layout));
+                }
+            } catch (Exception e) {
+                if (done.compareAndSet(false, true)) {
+                    callback.onError(new VideoRecorderError(VideoRecorderError.THUMBNAIL_GENERATION_FAILED, "Failed to generate storyboard: " + e.getMessage()));
+                }
+            } finally {
+                storyboards.remove(this);
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "VideoRecorder-thumbnail-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Surface;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Connects a decoder's output to an encoder's input surface through GLES: the decoder
+ * renders into a {@link SurfaceTexture} and every frame is drawn as a full-viewport
+ * quad onto the encoder surface, which scales it to the output size on the GPU.
+ *
+ * All methods except {@link #onFrameAvailable} must be called on the thread that
+ * created the instance, because that thread owns the EGL context.
+ */
+class TranscodeSurface implements SurfaceTexture.OnFrameAvailableListener {
+
+    // EGL_RECORDABLE_ANDROID, not exposed by EGL14
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+    private static final long FRAME_TIMEOUT_MS = 2500;
+
+    private static final String VERTEX_SHADER =
+        "uniform mat4 uTexMatrix;\n"
+            + "attribute vec4 aPosition;\n"
+            + "attribute vec4 aTextureCoord;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "void main() {\n"
+            + "    gl_Position = aPosition;\n"
+            + "    vTextureCoord = (uTexMatrix * aTextureCoord).xy;\n"
+            + "}\n";
+
+    private static final String FRAGMENT_SHADER =
+        "#extension GL_OES_EGL_image_external : require\n"
+            + "precision mediump float;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "uniform samplerExternalOES sTexture;\n"
+            + "void main() {\n"
+            + "    gl_FragColor = texture2D(sTexture, vTextureCoord);\n"
+            + "}\n";
+
+    // Triangle strip: x, y, u, v
+    private static final float[] QUAD = {
+        -1f, -1f, 0f, 0f,
+        1f, -1f, 1f, 0f,
+        -1f, 1f, 0f, 1f,
+        1f, 1f, 1f, 1f,
+    };
+
+    private EGLDisplay eglDisplay = EGL14.EGL_NO_DISPLAY;
+    private EGLContext eglContext = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface eglSurface = EGL14.EGL_NO_SURFACE;
+
+    private final HandlerThread callbackThread;
+    private final SurfaceTexture surfaceTexture;
+    private final Surface decoderSurface;
+    private final FloatBuffer quad;
+    private final float[] texMatrix = new float[16];
+    private final int program;
+    private final int textureId;
+    private final int positionHandle;
+    private final int texCoordHandle;
+    private final int texMatrixHandle;
+
+    private final Object frameLock = new Object();
+    private boolean frameAvailable;
+
+    TranscodeSurface(Surface encoderSurface, int width, int height) {
+        setUpEgl(encoderSurface);
+
+        program = createProgram();
+        positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+        texCoordHandle = GLES20.glGetAttribLocation(program, "aTextureCoord");
+        texMatrixHandle = GLES20.glGetUniformLocation(program, "uTexMatrix");
+
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        textureId = textures[0];
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        checkGlError("glTexParameter");
+        GLES20.glViewport(0, 0, width, height);
+
+        quad = ByteBuffer.allocateDirect(QUAD.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        quad.put(QUAD).position(0);
+
+        // Frame callbacks arrive on our own looper so they don't depend on the main thread
+        callbackThread = new HandlerThread("VideoRecorder-transcode-frames");
+        callbackThread.start();
+        surfaceTexture = new SurfaceTexture(textureId);
+        surfaceTexture.setOnFrameAvailableListener(this, new Handler(callbackThread.getLooper()));
+        decoderSurface = new Surface(surfaceTexture);
+    }
+
+    /** The surface the decoder should be configured with. */
+    Surface getDecoderSurface() {
+        return decoderSurface;
+    }
+
+    @Override
+    public void onFrameAvailable(SurfaceTexture texture) {
+        synchronized (frameLock) {
+            frameAvailable = true;
+            frameLock.notifyAll();
+        }
+    }
+
+    /** Waits for the frame just released by the decoder and latches it into the texture. */
+    void awaitNewImage() throws IOException {
+        synchronized (frameLock) {
+            long deadline = System.currentTimeMillis() + FRAME_TIMEOUT_MS;
+            while (!frameAvailable) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException("Timed out waiting for decoded frame");
+                }
+                try {
+                    frameLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for decoded frame");
+                }
+            }
+            frameAvailable = false;
+        }
+        surfaceTexture.updateTexImage();
+        surfaceTexture.getTransformMatrix(texMatrix);
+    }
+
+    void drawImage() {
+        GLES20.glClearColor(0f, 0f, 0f, 1f);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        GLES20.glUseProgram(program);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+
+        quad.position(0);
+        GLES20.glVertexAttribPointer(positionHandle, 2, GLES20.GL_FLOAT, false, 16, quad);
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        quad.position(2);
+        GLES20.glVertexAttribPointer(texCoordHandle, 2, GLES20.GL_FLOAT, false, 16, quad);
+        GLES20.glEnableVertexAttribArray(texCoordHandle);
+        GLES20.glUniformMatrix4fv(texMatrixHandle, 1, false, texMatrix, 0);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        checkGlError("glDrawArrays");
+    }
+
+    /** Submits the drawn frame to the encoder with the given timestamp. */
+    void swapBuffers(long presentationTimeUs) {
+        EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, presentationTimeUs * 1000);
+        EGL14.eglSwapBuffers(eglDisplay, eglSurface);
+        checkEglError("eglSwapBuffers");
+    }
+
+    void release() {
+        if (eglDisplay != EGL14.EGL_NO_DISPLAY) {
+            GLES20.glDeleteProgram(program);
+            EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            EGL14.eglDestroySurface(eglDisplay, eglSurface);
+            EGL14.eglDestroyContext(eglDisplay, eglContext);
+            EGL14.eglReleaseThread();
+            EGL14.eglTerminate(eglDisplay);
+        }
+        eglDisplay = EGL14.EGL_NO_DISPLAY;
+        eglContext = EGL14.EGL_NO_CONTEXT;
+        eglSurface = EGL14.EGL_NO_SURFACE;
+        decoderSurface.release();
+        surfaceTexture.release();
+        callbackThread.quit();
+    }
+
+    // MARK: - Setup
+
+    private void setUpEgl(Surface encoderSurface) {
+        eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        if (eglDisplay == EGL14.EGL_NO_DISPLAY) {
+            throw new IllegalStateException("Unable to get EGL display");
+        }
+        int[] version = new int[2];
+        if (!EGL14.eglInitialize(eglDisplay, version, 0, version, 1)) {
+            eglDisplay = EGL14.EGL_NO_DISPLAY;
+            throw new IllegalStateException("Unable to initialize EGL");
+        }
+
+        int[] configAttributes = {
+            EGL14.EGL_RED_SIZE, 8,
+            EGL14.EGL_GREEN_SIZE, 8,
+            EGL14.EGL_BLUE_SIZE, 8,
+            EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+            EGL_RECORDABLE_ANDROID, 1,
+            EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(eglDisplay, configAttributes, 0, configs, 0, 1, numConfigs, 0) || numConfigs[0] == 0) {
+            throw new IllegalStateException("No recordable EGL config");
+        }
+
+        int[] contextAttributes = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        eglContext = EGL14.eglCreateContext(eglDisplay, configs[0], EGL14.EGL_NO_CONTEXT, contextAttributes, 0);
+        checkEglError("eglCreateContext");
+
+        int[] surfaceAttributes = {EGL14.EGL_NONE};
+        eglSurface = EGL14.eglCreateWindowSurface(eglDisplay, configs[0], encoderSurface, surfaceAttributes, 0);
+        checkEglError("eglCreateWindowSurface");
+
+        if (!EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
+            throw new IllegalStateException("eglMakeCurrent failed");
+        }
+    }
+
+    private static int createProgram() {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        // The program keeps the shaders alive
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+        if (status[0] != GLES20.GL_TRUE) {
+            String log = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            throw new IllegalStateException("Could not link program: " + log);
+        }
+        return program;
+    }
+
+    private static int loadShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new IllegalStateException("Could not compile shader " + type + ": " + log);
+        }
+        return shader;
+    }
+
+    private static void checkGlError(String operation) {
+        int error = GLES20.glGetError();
+        if (error != GLES20.GL_NO_ERROR) {
+            throw new IllegalStateException(operation + ": glError 0x" + Integer.toHexString(error));
+        }
+    }
+
+    private static void checkEglError(String operation) {
+        int error = EGL14.eglGetError();
+        if (error != EGL14.EGL_SUCCESS) {
+            throw new IllegalStateException(operation + ": EGL error 0x" + Integer.toHexString(error));
+        }
+    }
+}
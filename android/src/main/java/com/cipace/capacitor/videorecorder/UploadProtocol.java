@@ -0,0 +1,149 @@
+package com.cipace.capacitor.videorecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * The HTTP side of {@link ChunkedUploader}: one chunk {@code PUT} with
+ * {@code Content-Range}, and the empty {@code PUT} that asks the server how much it has
+ * committed. Plain {@code java.net} with no Android dependencies, so the protocol is
+ * tested on the JVM against a local server.
+ */
+class UploadProtocol {
+
+    static final int CONNECT_TIMEOUT_MS = 15000;
+    static final int READ_TIMEOUT_MS = 30000;
+
+    private final String url;
+    private final Map<String, String> headers;
+    private final String contentType;
+
+    /** {@code headers} are sent with every request, in addition to Content-Range. */
+    UploadProtocol(String url, Map<String, String> headers, String contentType) {
+        this.url = url;
+        this.headers = headers;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Sends {@code length} bytes of {@code file} from {@code start} and returns the offset
+     * the server has committed afterwards. Throws {@link PermanentUploadException} for
+     * responses that won't get better with a retry.
+     */
+    long sendChunk(File file, long start, long length, long totalBytes, byte[] buffer) throws IOException {
+        long last = start + length - 1;
+        HttpURLConnection connection = open();
+        try {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(length);
+            connection.setRequestProperty("Content-Type", contentType);
+            connection.setRequestProperty("Content-Range", "bytes " + start + "-" + last + "/" + totalBytes);
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                raf.seek(start);
+                OutputStream out = connection.getOutputStream();
+                long remaining = length;
+                while (remaining > 0) {
+                    int read = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException("File shrank during upload");
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+                out.close();
+            } finally {
+                raf.close();
+            }
+
+            int code = connection.getResponseCode();
+            if (code == 308) {
+                long committed = parseRange(connection.getHeaderField("Range"));
+                return committed >= 0 ? committed : last + 1;
+            }
+            if (code >= 200 && code < 300) {
+                return last + 1;
+            }
+            throw errorFor(code);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /** Asks the server how many bytes it has. Returns -1 when the server can't tell us. */
+    long queryOffset(long totalBytes) throws IOException {
+        HttpURLConnection connection = open();
+        try {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(0);
+            connection.setRequestProperty("Content-Range", "bytes */" + totalBytes);
+            connection.getOutputStream().close();
+
+            int code = connection.getResponseCode();
+            if (code == 308) {
+                long committed = parseRange(connection.getHeaderField("Range"));
+                return committed >= 0 ? committed : 0;
+            }
+            if (code >= 200 && code < 300) {
+                return totalBytes;
+            }
+            if (code >= 500 || code == 429) {
+                throw new IOException("HTTP " + code);
+            }
+            return -1;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection open() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("PUT");
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setUseCaches(false);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        return connection;
+    }
+
+    static IOException errorFor(int code) {
+        // 408/429/5xx are worth retrying, anything else won't get better
+        if (code == 408 || code == 429 || code >= 500) {
+            return new IOException("HTTP " + code);
+        }
+        return new PermanentUploadException("HTTP " + code);
+    }
+
+    /** Parses {@code bytes=0-<last>} and returns last + 1, or -1 when absent. */
+    static long parseRange(String range) {
+        if (range == null) {
+            return -1;
+        }
+        int dash = range.lastIndexOf('-');
+        if (dash < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(range.substring(dash + 1).trim()) + 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** A response that retrying won't fix (4xx other than 408/429). */
+    static class PermanentUploadException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        PermanentUploadException(String message) {
+            super(message);
+        }
+    }
+}
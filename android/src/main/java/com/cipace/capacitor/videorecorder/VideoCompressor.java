@@ -0,0 +1,676 @@
+package com.cipace.capacitor.videorecorder;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaMuxer;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Re-encodes a recording at a lower resolution, bitrate or frame rate:
+ * MediaExtractor → decoder → {@link TranscodeSurface} (GPU scaling) → H.264 encoder →
+ * MediaMuxer. AAC audio is copied sample by sample unless a lower audio bitrate is
+ * requested, in which case it is decoded to PCM and re-encoded.
+ *
+ * Jobs run one at a time on a dedicated thread (encoder instances are a scarce
+ * resource) and report {@code compressionProgress} events including the throughput
+ * in frames per second.
+ */
+public class VideoCompressor {
+
+    private static final String TAG = "VideoCompressor";
+
+    private static final String VIDEO_MIME = MediaFormat.MIMETYPE_VIDEO_AVC;
+    private static final String AUDIO_MIME = MediaFormat.MIMETYPE_AUDIO_AAC;
+    private static final long TIMEOUT_US = 10000;
+    private static final int I_FRAME_INTERVAL = 1;
+    private static final double DEFAULT_FRAME_RATE = 30.0;
+    // Default video bitrate as bits per output pixel per frame
+    private static final double BITS_PER_PIXEL = 0.1;
+    private static final int MIN_VIDEO_BITRATE = 100000;
+    private static final int DEFAULT_AUDIO_BITRATE = 128000;
+    private static final int PASSTHROUGH_BUFFER_SIZE = 256 * 1024;
+    // Audio may run this far ahead of video before it waits, so the muxer interleaves well
+    private static final long INTERLEAVE_US = 500000;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    public static class Options {
+        public int maxWidth = 1280;
+        public int maxHeight = 1280;
+        // 0 = derived from the output size and frame rate
+        public int videoBitrate = 0;
+        // 0 = pass the audio through unchanged
+        public int audioBitrate = 0;
+        // 0 = keep the source frame rate
+        public double fps = 0;
+    }
+
+    public static class Result {
+        public final int frameCount;
+        public final double framesPerSecond;
+        public final boolean audioPassthrough;
+        public final long elapsedTime;
+
+        Result(int frameCount, double framesPerSecond, boolean audioPassthrough, long elapsedTime) {
+            this.frameCount = frameCount;
+            this.framesPerSecond = framesPerSecond;
+            this.audioPassthrough = audioPassthrough;
+            this.elapsedTime = elapsedTime;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, VideoCompressor> ACTIVE = new ConcurrentHashMap<>();
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "VideoRecorder-compress");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Queues a compression job. The callback receives a {@link Result} or a
+     * {@link VideoRecorderError}; the partial output is deleted on failure.
+     */
+    public static void compress(final String compressionId, File input, final File output, Options options,
+                                final VideoRecorder.RecordingCallback callback) {
+        final VideoCompressor compressor = new VideoCompressor(compressionId, input, output, options);
+        if (ACTIVE.putIfAbsent(compressionId, compressor) != null) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.INVALID_OPTIONS,
+                "Compression already running: " + compressionId));
+            return;
+        }
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Result result = compressor.run();
+                    callback.onSuccess(result);
+                } catch (Exception e) {
+                    output.delete();
+                    if (compressor.cancelled) {
+                        callback.onError(new VideoRecorderError(VideoRecorderError.CANCELLED,
+                            "Compression cancelled: " + compressionId));
+                    } else {
+                        Log.e(TAG, "Compression failed", e);
+                        callback.onError(new VideoRecorderError(VideoRecorderError.COMPRESSION_FAILED,
+                            "Failed to compress video: " + e.getMessage()));
+                    }
+                } finally {
+                    ACTIVE.remove(compressionId);
+                }
+            }
+        });
+    }
+
+    /**
+     * The track's frame rate, or {@code fallback} when it isn't known. Most extractors store
+     * KEY_FRAME_RATE as an int, but some store a float and getInteger then throws.
+     */
+    static double frameRateOf(MediaFormat format, double fallback) {
+        if (!format.containsKey(MediaFormat.KEY_FRAME_RATE)) {
+            return fallback;
+        }
+        double fps;
+        try {
+            fps = format.getInteger(MediaFormat.KEY_FRAME_RATE);
+        } catch (ClassCastException e) {
+            fps = format.getFloat(MediaFormat.KEY_FRAME_RATE);
+        }
+        return fps > 0 ? fps : fallback;
+    }
+
+    /** Cancels a queued or running job; returns false if it is unknown or already finished. */
+    public static boolean cancel(String compressionId) {
+        VideoCompressor compressor = ACTIVE.get(compressionId);
+        if (compressor == null) {
+            return false;
+        }
+        compressor.cancelled = true;
+        return true;
+    }
+
+    public static int cancelAll() {
+        int count = 0;
+        for (VideoCompressor compressor : ACTIVE.values()) {
+            compressor.cancelled = true;
+            count++;
+        }
+        return count;
+    }
+
+    private final String compressionId;
+    private final File input;
+    private final File output;
+    private final Options options;
+    private volatile boolean cancelled;
+
+    private final MediaCodec.BufferInfo videoInfo = new MediaCodec.BufferInfo();
+    private final MediaCodec.BufferInfo audioInfo = new MediaCodec.BufferInfo();
+    private final MediaCodec.BufferInfo pcmInfo = new MediaCodec.BufferInfo();
+
+    private MediaExtractor videoExtractor;
+    private MediaCodec videoDecoder;
+    private MediaCodec videoEncoder;
+    private TranscodeSurface surface;
+    private MediaExtractor audioExtractor;
+    private MediaCodec audioDecoder;
+    private MediaCodec audioEncoder;
+    private ByteBuffer passthroughBuffer;
+    private MediaMuxer muxer;
+
+    private boolean hasAudio;
+    private boolean muxerStarted;
+    private int videoTrack = -1;
+    private int audioTrack = -1;
+
+    private boolean videoInputDone;
+    private boolean videoDecoderDone;
+    private boolean videoDone;
+    private boolean audioInputDone;
+    private boolean audioDecoderDone;
+    private boolean audioDone;
+    private long lastVideoUs;
+    private long lastAudioUs;
+
+    // Frame dropping when the output rate is lower than the source rate
+    private long frameIntervalUs;
+    private long nextFrameUs = Long.MIN_VALUE;
+
+    // Decoded PCM waiting for room in the audio encoder
+    private int pendingAudioIndex = -1;
+    private int pendingAudioOffset;
+    private int pcmBytesPerFrame;
+    private int pcmSampleRate;
+
+    private long durationUs;
+    private int frameCount;
+    private long startedAt;
+    private long lastProgressAt;
+
+    private VideoCompressor(String compressionId, File input, File output, Options options) {
+        this.compressionId = compressionId;
+        this.input = input;
+        this.output = output;
+        this.options = options;
+    }
+
+    private Result run() throws IOException {
+        startedAt = SystemClock.elapsedRealtime();
+        try {
+            setUp();
+            while (!videoDone || !audioDone) {
+                if (cancelled) {
+                    throw new IOException("Cancelled");
+                }
+                if (!videoDone) {
+                    stepVideo();
+                }
+                if (!audioDone && (videoDone || !muxerStarted || lastAudioUs <= lastVideoUs + INTERLEAVE_US)) {
+                    stepAudio();
+                }
+                reportProgress(false);
+            }
+            muxer.stop();
+            muxerStarted = false;
+            reportProgress(true);
+            return new Result(frameCount, framesPerSecond(), hasAudio && audioEncoder == null,
+                SystemClock.elapsedRealtime() - startedAt);
+        } finally {
+            release();
+        }
+    }
+
+    // MARK: - Setup
+
+    private void setUp() throws IOException {
+        videoExtractor = new MediaExtractor();
+        videoExtractor.setDataSource(input.getAbsolutePath());
+        int videoIndex = selectTrack(videoExtractor, "video/");
+        if (videoIndex < 0) {
+            throw new IOException("No video track found");
+        }
+        videoExtractor.selectTrack(videoIndex);
+        MediaFormat sourceFormat = videoExtractor.getTrackFormat(videoIndex);
+
+        int rotation = readRotation();
+        int sourceWidth = sourceFormat.getInteger(MediaFormat.KEY_WIDTH);
+        int sourceHeight = sourceFormat.getInteger(MediaFormat.KEY_HEIGHT);
+        durationUs = sourceFormat.containsKey(MediaFormat.KEY_DURATION) ? sourceFormat.getLong(MediaFormat.KEY_DURATION) : 0;
+        double sourceFps = frameRateOf(sourceFormat, DEFAULT_FRAME_RATE);
+        double fps = sourceFps;
+        if (options.fps > 0 && options.fps < sourceFps) {
+            fps = options.fps;
+            frameIntervalUs = (long) (1000000 / fps);
+        }
+
+        // maxWidth/maxHeight refer to the displayed (rotated) frame
+        boolean swap = rotation == 90 || rotation == 270;
+        int boundWidth = swap ? options.maxHeight : options.maxWidth;
+        int boundHeight = swap ? options.maxWidth : options.maxHeight;
+        double scale = 1.0;
+        if (boundWidth > 0) {
+            scale = Math.min(scale, (double) boundWidth / sourceWidth);
+        }
+        if (boundHeight > 0) {
+            scale = Math.min(scale, (double) boundHeight / sourceHeight);
+        }
+        // Software encoders require even dimensions
+        int width = Math.max(2, (int) Math.round(sourceWidth * scale) & ~1);
+        int height = Math.max(2, (int) Math.round(sourceHeight * scale) & ~1);
+
+        videoEncoder = MediaCodec.createEncoderByType(VIDEO_MIME);
+        MediaCodecInfo.VideoCapabilities capabilities = videoEncoder.getCodecInfo()
+            .getCapabilitiesForType(VIDEO_MIME).getVideoCapabilities();
+        if (!capabilities.isSizeSupported(width, height)) {
+            // Many hardware encoders only take macroblock-aligned sizes
+            width = Math.max(16, width & ~15);
+            height = Math.max(16, height & ~15);
+        }
+
+        int bitrate = options.videoBitrate;
+        if (bitrate <= 0) {
+            bitrate = (int) (width * height * fps * BITS_PER_PIXEL);
+            long sourceBitrate = sourceFormat.containsKey(MediaFormat.KEY_BIT_RATE)
+                ? sourceFormat.getInteger(MediaFormat.KEY_BIT_RATE)
+                : durationUs > 0 ? input.length() * 8 * 1000000 / durationUs : 0;
+            if (sourceBitrate > 0) {
+                // Never larger than the source
+                bitrate = (int) Math.min(bitrate, sourceBitrate);
+            }
+        }
+        bitrate = Math.max(MIN_VIDEO_BITRATE, capabilities.getBitrateRange().clamp(bitrate));
+
+        MediaFormat encoderFormat = MediaFormat.createVideoFormat(VIDEO_MIME, width, height);
+        encoderFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        encoderFormat.setInteger(MediaFormat.KEY_BIT_RATE, bitrate);
+        encoderFormat.setInteger(MediaFormat.KEY_FRAME_RATE, (int) Math.round(fps));
+        encoderFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL);
+        videoEncoder.configure(encoderFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        surface = new TranscodeSurface(videoEncoder.createInputSurface(), width, height);
+        videoEncoder.start();
+
+        // Rotation is carried by the container instead of being baked into the pixels
+        sourceFormat.setInteger(MediaFormat.KEY_ROTATION, 0);
+        videoDecoder = MediaCodec.createDecoderByType(sourceFormat.getString(MediaFormat.KEY_MIME));
+        videoDecoder.configure(sourceFormat, surface.getDecoderSurface(), null, 0);
+        videoDecoder.start();
+
+        muxer = new MediaMuxer(output.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        muxer.setOrientationHint(rotation);
+
+        setUpAudio();
+        Log.d(TAG, "Compressing " + sourceWidth + "x" + sourceHeight + " -> " + width + "x" + height
+            + " @ " + bitrate + "bps, " + fps + "fps, audio " + (!hasAudio ? "none" : audioEncoder == null && audioDecoder == null ? "copy" : "transcode"));
+    }
+
+    private void setUpAudio() throws IOException {
+        audioExtractor = new MediaExtractor();
+        audioExtractor.setDataSource(input.getAbsolutePath());
+        int audioIndex = selectTrack(audioExtractor, "audio/");
+        if (audioIndex < 0) {
+            audioDone = true;
+            return;
+        }
+        hasAudio = true;
+        audioExtractor.selectTrack(audioIndex);
+        MediaFormat format = audioExtractor.getTrackFormat(audioIndex);
+
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        int sourceBitrate = format.containsKey(MediaFormat.KEY_BIT_RATE) ? format.getInteger(MediaFormat.KEY_BIT_RATE) : 0;
+        boolean passthrough = AUDIO_MIME.equals(mime)
+            && (options.audioBitrate <= 0 || (sourceBitrate > 0 && sourceBitrate <= options.audioBitrate));
+        if (passthrough) {
+            audioTrack = muxer.addTrack(format);
+            int bufferSize = format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)
+                ? format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE) : PASSTHROUGH_BUFFER_SIZE;
+            passthroughBuffer = ByteBuffer.allocateDirect(bufferSize);
+            return;
+        }
+
+        // The encoder is configured once the decoder reports its PCM format
+        audioDecoder = MediaCodec.createDecoderByType(mime);
+        audioDecoder.configure(format, null, null, 0);
+        audioDecoder.start();
+    }
+
+    private int readRotation() {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(input.getAbsolutePath());
+            String rotation = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+            return rotation != null ? Integer.parseInt(rotation) : 0;
+        } catch (RuntimeException e) {
+            return 0;
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    private static int selectTrack(MediaExtractor extractor, String mimePrefix) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith(mimePrefix)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // MARK: - Video
+
+    private void stepVideo() throws IOException {
+        if (!videoInputDone) {
+            videoInputDone = feedDecoder(videoExtractor, videoDecoder);
+        }
+
+        if (!videoDecoderDone) {
+            int index = videoDecoder.dequeueOutputBuffer(videoInfo, TIMEOUT_US);
+            if (index >= 0) {
+                boolean endOfStream = (videoInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                boolean render = videoInfo.size > 0 && keepFrame(videoInfo.presentationTimeUs);
+                videoDecoder.releaseOutputBuffer(index, render);
+                if (render) {
+                    surface.awaitNewImage();
+                    surface.drawImage();
+                    surface.swapBuffers(videoInfo.presentationTimeUs);
+                    frameCount++;
+                }
+                if (endOfStream) {
+                    videoEncoder.signalEndOfInputStream();
+                    videoDecoderDone = true;
+                }
+            }
+        }
+
+        drainEncoder(videoEncoder, videoInfo, true, videoDecoderDone ? TIMEOUT_US : 0);
+    }
+
+    private boolean keepFrame(long presentationTimeUs) {
+        if (frameIntervalUs <= 0) {
+            return true;
+        }
+        // A quarter interval of slack so timestamp jitter doesn't drop frames that are due
+        if (presentationTimeUs + frameIntervalUs / 4 < nextFrameUs) {
+            return false;
+        }
+        nextFrameUs = nextFrameUs == Long.MIN_VALUE ? presentationTimeUs + frameIntervalUs : nextFrameUs + frameIntervalUs;
+        if (nextFrameUs <= presentationTimeUs) {
+            nextFrameUs = presentationTimeUs + frameIntervalUs;
+        }
+        return true;
+    }
+
+    // MARK: - Audio
+
+    private void stepAudio() throws IOException {
+        if (audioDecoder == null) {
+            copyAudioSample();
+            return;
+        }
+
+        if (!audioInputDone) {
+            audioInputDone = feedDecoder(audioExtractor, audioDecoder);
+        }
+
+        if (!audioDecoderDone && pendingAudioIndex < 0) {
+            int index = audioDecoder.dequeueOutputBuffer(pcmInfo, 0);
+            if (index >= 0) {
+                pendingAudioIndex = index;
+                pendingAudioOffset = pcmInfo.offset;
+            }
+        }
+        if (pendingAudioIndex >= 0) {
+            if (audioEncoder == null && !startAudioEncoder()) {
+                return;
+            }
+            feedAudioEncoder();
+        }
+
+        if (audioEncoder != null) {
+            drainEncoder(audioEncoder, audioInfo, false, audioDecoderDone ? TIMEOUT_US : 0);
+        }
+    }
+
+    private void copyAudioSample() {
+        if (!muxerStarted) {
+            return;
+        }
+        int size = audioExtractor.readSampleData(passthroughBuffer, 0);
+        if (size < 0) {
+            audioDone = true;
+            return;
+        }
+        boolean sync = (audioExtractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+        audioInfo.set(0, size, audioExtractor.getSampleTime(), sync ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+        muxer.writeSampleData(audioTrack, passthroughBuffer, audioInfo);
+        lastAudioUs = audioInfo.presentationTimeUs;
+        audioExtractor.advance();
+    }
+
+    /** Configures the AAC encoder for the decoder's PCM format; false if there is no audio at all. */
+    private boolean startAudioEncoder() throws IOException {
+        MediaFormat pcm = audioDecoder.getOutputFormat();
+        if (!pcm.containsKey(MediaFormat.KEY_SAMPLE_RATE) || !pcm.containsKey(MediaFormat.KEY_CHANNEL_COUNT)) {
+            if ((pcmInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                // The stream ended without producing any PCM; write the file without audio
+                audioDecoder.releaseOutputBuffer(pendingAudioIndex, false);
+                pendingAudioIndex = -1;
+                audioDecoderDone = true;
+                audioDone = true;
+                hasAudio = false;
+                maybeStartMuxer();
+            }
+            return false;
+        }
+        pcmSampleRate = pcm.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        int channels = pcm.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        pcmBytesPerFrame = 2 * channels;
+
+        MediaFormat format = MediaFormat.createAudioFormat(AUDIO_MIME, pcmSampleRate, channels);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, options.audioBitrate > 0 ? options.audioBitrate : DEFAULT_AUDIO_BITRATE);
+        format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        audioEncoder = MediaCodec.createEncoderByType(AUDIO_MIME);
+        audioEncoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        audioEncoder.start();
+        return true;
+    }
+
+    /** Copies as much of the pending PCM buffer as fits into the next encoder input buffer. */
+    private void feedAudioEncoder() {
+        int index = audioEncoder.dequeueInputBuffer(0);
+        if (index < 0) {
+            return;
+        }
+        boolean endOfStream = (pcmInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+        ByteBuffer source = audioDecoder.getOutputBuffer(pendingAudioIndex);
+        ByteBuffer target = audioEncoder.getInputBuffer(index);
+        int end = pcmInfo.offset + pcmInfo.size;
+        int length = Math.min(end - pendingAudioOffset, target.remaining());
+        source.limit(pendingAudioOffset + length);
+        source.position(pendingAudioOffset);
+        target.put(source);
+
+        long frames = (pendingAudioOffset - pcmInfo.offset) / pcmBytesPerFrame;
+        long presentationTimeUs = pcmInfo.presentationTimeUs + frames * 1000000 / pcmSampleRate;
+        pendingAudioOffset += length;
+        boolean finished = pendingAudioOffset >= end;
+        audioEncoder.queueInputBuffer(index, 0, length, presentationTimeUs,
+            finished && endOfStream ? MediaCodec.BUFFER_FLAG_END_OF_STREAM : 0);
+        if (finished) {
+            audioDecoder.releaseOutputBuffer(pendingAudioIndex, false);
+            pendingAudioIndex = -1;
+            audioDecoderDone = endOfStream;
+        }
+    }
+
+    // MARK: - Shared
+
+    /** Queues the next sample, or end of stream once the extractor is exhausted; true after EOS. */
+    private static boolean feedDecoder(MediaExtractor extractor, MediaCodec decoder) {
+        int index = decoder.dequeueInputBuffer(TIMEOUT_US);
+        if (index < 0) {
+            return false;
+        }
+        int size = extractor.readSampleData(decoder.getInputBuffer(index), 0);
+        if (size < 0) {
+            decoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            return true;
+        }
+        decoder.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+        extractor.advance();
+        return false;
+    }
+
+    /**
+     * Moves encoded output into the muxer. Once a track's format is known its output
+     * stays queued in the encoder until every track has been added and the muxer started.
+     */
+    private void drainEncoder(MediaCodec encoder, MediaCodec.BufferInfo info, boolean video, long timeoutUs) {
+        while (true) {
+            int track = video ? videoTrack : audioTrack;
+            if (track >= 0 && !muxerStarted) {
+                return;
+            }
+            int index = encoder.dequeueOutputBuffer(info, timeoutUs);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                return;
+            }
+            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                if (video) {
+                    videoTrack = muxer.addTrack(encoder.getOutputFormat());
+                } else {
+                    audioTrack = muxer.addTrack(encoder.getOutputFormat());
+                }
+                maybeStartMuxer();
+                continue;
+            }
+            if (index < 0) {
+                continue;
+            }
+
+            if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                // Already part of the track format
+                info.size = 0;
+            }
+            if (info.size > 0) {
+                muxer.writeSampleData(track, encoder.getOutputBuffer(index), info);
+                if (video) {
+                    lastVideoUs = info.presentationTimeUs;
+                } else {
+                    lastAudioUs = info.presentationTimeUs;
+                }
+            }
+            encoder.releaseOutputBuffer(index, false);
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                if (video) {
+                    videoDone = true;
+                } else {
+                    audioDone = true;
+                }
+                return;
+            }
+        }
+    }
+
+    private void maybeStartMuxer() {
+        if (!muxerStarted && videoTrack >= 0 && (!hasAudio || audioTrack >= 0)) {
+            muxer.start();
+            muxerStarted = true;
+        }
+    }
+
+    private double framesPerSecond() {
+        long elapsed = SystemClock.elapsedRealtime() - startedAt;
+        return elapsed > 0 ? frameCount * 1000.0 / elapsed : 0;
+    }
+
+    private void reportProgress(boolean finished) {
+        long now = SystemClock.elapsedRealtime();
+        if (!finished && now - lastProgressAt < PROGRESS_INTERVAL_MS) {
+            return;
+        }
+        lastProgressAt = now;
+        double progress = finished ? 1.0 : durationUs > 0 ? Math.min(0.99, (double) lastVideoUs / durationUs) : 0;
+
+        JSObject event = new JSObject();
+        event.put("compressionId", compressionId);
+        event.put("videoPath", input.getAbsolutePath());
+        event.put("progress", progress);
+        event.put("frames", frameCount);
+        event.put("framesPerSecond", framesPerSecond());
+        VideoRecorderEvents.emit(VideoRecorderEvents.COMPRESSION_PROGRESS, event);
+    }
+
+    private void release() {
+        if (videoDecoder != null) {
+            try {
+                videoDecoder.stop();
+            } catch (Exception ignored) {
+            }
+            videoDecoder.release();
+        }
+        if (videoEncoder != null) {
+            try {
+                videoEncoder.stop();
+            } catch (Exception ignored) {
+            }
+            videoEncoder.release();
+        }
+        if (surface != null) {
+            surface.release();
+        }
+        if (audioDecoder != null) {
+            try {
+                audioDecoder.stop();
+            } catch (Exception ignored) {
+            }
+            audioDecoder.release();
+        }
+        if (audioEncoder != null) {
+            try {
+                audioEncoder.stop();
+            } catch (Exception ignored) {
+            }
+            audioEncoder.release();
+        }
+        if (videoExtractor != null) {
+            videoExtractor.release();
+        }
+        if (audioExtractor != null) {
+            audioExtractor.release();
+        }
+        if (muxer != null) {
+            try {
+                if (muxerStarted) {
+                    muxer.stop();
+                }
+            } catch (Exception ignored) {
+            }
+            muxer.release();
+        }
+    }
+}
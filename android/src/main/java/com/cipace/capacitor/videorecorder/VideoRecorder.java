@@ -5,6 +5,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.media.MediaRecorder;
 import android.os.Environment;
+import android.util.Log;
 import com.getcapacitor.JSObject;
 import java.io.File;
 import java.io.Serializable;
@@ -14,6 +15,8 @@ import java.util.UUID;
 
 public class VideoRecorder {
     
+    private static final String TAG = "VideoRecorder";
+    
     private Context context;
     private MediaRecorder mediaRecorder;
     private String recordingId;
@@ -51,10 +54,27 @@ public class VideoRecorder {
         public final long endTime;
         public final String thumbnailPath;
         public final String mimeType;
+        public final int rotation;
+        public final String codecs;
+        public final long bitrate;
+        // Set when the thumbnail is produced after the result is delivered ("pending")
+        public String thumbnailStatus;
+        // Whether the fast-start rewrite succeeded; null when options.fastStart was off
+        public Boolean fastStart;
+        // Set for segmented recordings (see withSegments); videoPath is the first segment
+        public ArrayList<RecordingSegmenter.Segment> segments;
         
         public StopRecordingResult(String recordingId, String videoPath, long fileSize, 
                                  double duration, int width, int height, long startTime, 
                                  long endTime, String thumbnailPath, String mimeType) {
+            this(recordingId, videoPath, fileSize, duration, width, height, startTime, endTime,
+                 thumbnailPath, mimeType, 0, null, 0);
+        }
+        
+        public StopRecordingResult(String recordingId, String videoPath, long fileSize, 
+                                 double duration, int width, int height, long startTime, 
+                                 long endTime, String thumbnailPath, String mimeType,
+                                 int rotation, String codecs, long bitrate) {
             this.recordingId = recordingId;
             this.videoPath = videoPath;
             this.fileSize = fileSize;
@@ -65,6 +85,28 @@ public class VideoRecorder {
             this.endTime = endTime;
             this.thumbnailPath = thumbnailPath;
             this.mimeType = mimeType;
+            this.rotation = rotation;
+            this.codecs = codecs;
+            this.bitrate = bitrate;
+        }
+
+        /**
+         * This result for a segmented recording: fileSize and duration become totals over
+         * all segments and bitrate their average; videoPath stays the first segment.
+         */
+        public StopRecordingResult withSegments(ArrayList<RecordingSegmenter.Segment> allSegments) {
+            long totalSize = 0;
+            double totalDuration = 0;
+            for (RecordingSegmenter.Segment segment : allSegments) {
+                totalSize += segment.fileSize;
+                totalDuration += segment.duration;
+            }
+            StopRecordingResult total = new StopRecordingResult(recordingId, videoPath, totalSize, totalDuration,
+                width, height, startTime, endTime, thumbnailPath, mimeType, rotation, codecs,
+                totalDuration > 0 ? (long) (totalSize * 8 / totalDuration) : bitrate);
+            total.thumbnailStatus = thumbnailStatus;
+            total.segments = allSegments;
+            return total;
         }
     }
     
@@ -107,6 +149,31 @@ public class VideoRecorder {
         }
     }
     
+    public static class ThumbnailsResult {
+        public final double[] times;
+        public final String[] thumbnailPaths;
+        
+        public ThumbnailsResult(double[] times, String[] thumbnailPaths) {
+            this.times = times;
+            this.thumbnailPaths = thumbnailPaths;
+        }
+    }
+    
+    public static class StoryboardResult {
+        public final String imagePath;
+        public final StoryboardGenerator.Layout layout;
+        
+        public StoryboardResult(String imagePath, StoryboardGenerator.Layout layout) {
+            this.imagePath = imagePath;
+            this.layout = layout;
+        }
+    }
+    
+    interface FrameConsumer {
+        /** Returns false to stop extracting further frames. */
+        boolean onFrame(int index, byte[] jpeg) throws java.io.IOException;
+    }
+    
     public interface RecordingCallback {
         void onSuccess(Object result);
         void onError(VideoRecorderError error);
@@ -116,9 +183,52 @@ public class VideoRecorder {
     // Note: captureVideo is now handled directly by VideoRecorderPlugin using startActivityForResult
     // This ensures proper callback when user stops recording
     
-    public void captureAudio(VideoRecordingOptions options, RecordingCallback callback) {
-        // Simplified audio capture implementation
-        callback.onSuccess(new CaptureAudioResult(new ArrayList<>()));
+    public void captureAudio(VideoRecordingOptions options, final RecordingCallback callback) {
+        // Fails early without opening the microphone; RecordingSession.begin is the real check
+        if (RecordingSession.current() != null) {
+            callback.onError(new VideoRecorderError(VideoRecorderError.ALREADY_RECORDING, "Recording is already in progress"));
+            return;
+        }
+
+        File outputDir = new File(context.getExternalFilesDir(null), "audio");
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+        // AudioRecord → AAC → m4a (or straight into a WAV file) on a dedicated thread; ends
+        // after `limit` clips of `duration` seconds or when stopRecording is called
+        AudioCaptureEngine engine = new AudioCaptureEngine(outputDir, "audio_capture_" + System.currentTimeMillis(),
+            options.audioFormat, options.sampleRate, options.channels, options.maxDuration, options.limit,
+            options.progressInterval);
+        engine.setAudioLevelInterval(options.audioLevelInterval);
+        engine.start(new RecordingCallback() {
+            @Override
+            public void onSuccess(Object result) {
+                // AudioCaptureEngine always succeeds with its list of finished clips
+                @SuppressWarnings("unchecked")
+                List<StopRecordingResult> clips = (List<StopRecordingResult>) result;
+                List<JSObject> files = new ArrayList<>();
+                for (StopRecordingResult clip : clips) {
+                    files.add(createMediaFile(clip));
+                }
+                callback.onSuccess(new CaptureAudioResult(files));
+            }
+
+            @Override
+            public void onError(VideoRecorderError error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    /** Media Capture compatible MediaFile for a finished recording. */
+    static JSObject createMediaFile(StopRecordingResult result) {
+        JSObject mediaFile = new JSObject();
+        mediaFile.put("name", new File(result.videoPath).getName());
+        mediaFile.put("fullPath", result.videoPath);
+        mediaFile.put("type", result.mimeType);
+        mediaFile.put("lastModifiedDate", result.endTime);
+        mediaFile.put("size", result.fileSize);
+        return mediaFile;
     }
     
     // Advanced recording methods
@@ -170,20 +280,7 @@ public class VideoRecorder {
             mediaRecorder = null;
             
             long endTime = System.currentTimeMillis();
-            double duration = (endTime - startTime) / 1000.0;
-            
-            StopRecordingResult result = new StopRecordingResult(
-                recordingId,
-                outputFile.getAbsolutePath(),
-                outputFile.length(),
-                duration,
-                1920, // Default width
-                1080, // Default height
-                startTime,
-                endTime,
-                null, // No thumbnail for now
-                "video/mp4"
-            );
+            StopRecordingResult result = createStopResult(recordingId, outputFile, startTime, endTime, null);
             
             isRecording = false;
             isPaused = false;
@@ -249,11 +346,8 @@ public class VideoRecorder {
             }
             
             if (deleteThumbnail) {
-                String thumbnailPath = videoPath.replace(".mp4", "_thumbnail.jpg");
-                File thumbnailFile = new File(thumbnailPath);
-                if (thumbnailFile.exists()) {
-                    thumbnailFile.delete();
-                }
+                // 缓存中的缩略图由插件通过 ThumbnailExecutor.cancel 清除
+                RecordingSweeper.deleteThumbnails(videoFile);
             }
             
             callback.onSuccess(null);
@@ -262,10 +356,15 @@ public class VideoRecorder {
         }
     }
     
-    public static void generateThumbnail(String videoPath, double timeAt, double quality, RecordingCallback callback) {
+    /**
+     * Decodes one frame and returns it JPEG encoded, or null when no frame could be extracted.
+     * A positive maxWidth scales the frame down to that width.
+     */
+    static byte[] encodeThumbnail(String videoPath, double timeAt, double quality, int maxWidth) throws Exception {
+        // 使用MediaMetadataRetriever生成缩略图
+        android.media.MediaMetadataRetriever retriever = new android.media.MediaMetadataRetriever();
+        android.graphics.Bitmap bitmap;
         try {
-            // 使用MediaMetadataRetriever生成缩略图
-            android.media.MediaMetadataRetriever retriever = new android.media.MediaMetadataRetriever();
             retriever.setDataSource(videoPath);
             
             // 获取视频时长
@@ -276,30 +375,190 @@ public class VideoRecorder {
             long actualTimeAt = Math.min(Math.max((long)(timeAt * 1000), 0), duration - 100); // 转换为毫秒
             
             // 生成缩略图
-            android.graphics.Bitmap bitmap = retriever.getFrameAtTime(actualTimeAt * 1000, android.media.MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            bitmap = extractFrame(retriever, actualTimeAt * 1000, maxWidth, 0);
+        } finally {
             retriever.release();
-            
-            if (bitmap == null) {
-                callback.onError(new VideoRecorderError("THUMBNAIL_GENERATION_FAILED", "Failed to extract frame from video"));
-                return;
+        }
+        
+        if (bitmap == null) {
+            return null;
+        }
+        
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        bitmap.compress(android.graphics.Bitmap.CompressFormat.JPEG, (int)(quality * 100), out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+    
+    /**
+     * Extracts the sync frame closest to timeUs, scaled to fit within maxWidth x maxHeight
+     * (0 means unbounded). On API 27+ the decoder scales directly so the full-resolution
+     * frame is never materialised.
+     */
+    static android.graphics.Bitmap extractFrame(android.media.MediaMetadataRetriever retriever, long timeUs,
+                                                int maxWidth, int maxHeight) {
+        int option = android.media.MediaMetadataRetriever.OPTION_CLOSEST_SYNC;
+        if (maxWidth <= 0 && maxHeight <= 0) {
+            return retriever.getFrameAtTime(timeUs, option);
+        }
+        
+        int width = parseIntMetadata(retriever, android.media.MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH);
+        int height = parseIntMetadata(retriever, android.media.MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT);
+        int rotation = parseIntMetadata(retriever, android.media.MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+        if (rotation == 90 || rotation == 270) {
+            int tmp = width;
+            width = height;
+            height = tmp;
+        }
+        if (width <= 0 || height <= 0) {
+            return retriever.getFrameAtTime(timeUs, option);
+        }
+        
+        double scale = 1.0;
+        if (maxWidth > 0) {
+            scale = Math.min(scale, (double) maxWidth / width);
+        }
+        if (maxHeight > 0) {
+            scale = Math.min(scale, (double) maxHeight / height);
+        }
+        if (scale >= 1.0) {
+            return retriever.getFrameAtTime(timeUs, option);
+        }
+        int dstWidth = Math.max(1, (int) Math.round(width * scale));
+        int dstHeight = Math.max(1, (int) Math.round(height * scale));
+        
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O_MR1) {
+            return retriever.getScaledFrameAtTime(timeUs, option, dstWidth, dstHeight);
+        }
+        
+        android.graphics.Bitmap frame = retriever.getFrameAtTime(timeUs, option);
+        if (frame == null) {
+            return null;
+        }
+        android.graphics.Bitmap scaled = android.graphics.Bitmap.createScaledBitmap(frame, dstWidth, dstHeight, true);
+        if (scaled != frame) {
+            frame.recycle();
+        }
+        return scaled;
+    }
+    
+    /**
+     * Extracts several frames through a single MediaMetadataRetriever session, in timestamp
+     * order, so setDataSource and container parsing are paid once per video. Frames that
+     * need scaling on pre-27 devices are drawn into one reused bitmap.
+     */
+    static void encodeThumbnails(String videoPath, final double[] times, double quality, int maxWidth,
+                                 FrameConsumer consumer) throws Exception {
+        Integer[] order = new Integer[times.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        java.util.Arrays.sort(order, new java.util.Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(times[a], times[b]);
             }
+        });
+        
+        android.media.MediaMetadataRetriever retriever = new android.media.MediaMetadataRetriever();
+        android.graphics.Bitmap reusable = null;
+        try {
+            retriever.setDataSource(videoPath);
+            long duration = Long.parseLong(retriever.extractMetadata(android.media.MediaMetadataRetriever.METADATA_KEY_DURATION));
+            boolean decoderScales = android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O_MR1;
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
             
-            // 生成缩略图文件路径
-            File videoFile = new File(videoPath);
-            String fileName = videoFile.getName().replace(".mp4", "_thumbnail_" + (int)timeAt + "s.jpg");
-            File thumbnailFile = new File(videoFile.getParent(), fileName);
-            
-            // 保存缩略图
-            java.io.FileOutputStream out = new java.io.FileOutputStream(thumbnailFile);
-            bitmap.compress(android.graphics.Bitmap.CompressFormat.JPEG, (int)(quality * 100), out);
-            out.flush();
-            out.close();
-            bitmap.recycle();
-            
-            callback.onSuccess(new ThumbnailResult(thumbnailFile.getAbsolutePath()));
-            
+            for (Integer index : order) {
+                long timeUs = Math.min(Math.max((long)(times[index] * 1000), 0), duration - 100) * 1000;
+                android.graphics.Bitmap frame = (maxWidth > 0 && !decoderScales)
+                    ? retriever.getFrameAtTime(timeUs, android.media.MediaMetadataRetriever.OPTION_CLOSEST_SYNC)
+                    : extractFrame(retriever, timeUs, maxWidth, 0);
+                if (frame == null) {
+                    if (!consumer.onFrame(index, null)) {
+                        return;
+                    }
+                    continue;
+                }
+                
+                android.graphics.Bitmap output = frame;
+                if (maxWidth > 0 && !decoderScales && frame.getWidth() > maxWidth) {
+                    int dstHeight = Math.max(1, Math.round(frame.getHeight() * (float) maxWidth / frame.getWidth()));
+                    if (reusable == null || reusable.getWidth() != maxWidth || reusable.getHeight() != dstHeight) {
+                        if (reusable != null) {
+                            reusable.recycle();
+                        }
+                        reusable = android.graphics.Bitmap.createBitmap(maxWidth, dstHeight, android.graphics.Bitmap.Config.ARGB_8888);
+                    }
+                    android.graphics.Canvas canvas = new android.graphics.Canvas(reusable);
+                    canvas.drawBitmap(frame, null, new android.graphics.Rect(0, 0, maxWidth, dstHeight),
+                        new android.graphics.Paint(android.graphics.Paint.FILTER_BITMAP_FLAG));
+                    frame.recycle();
+                    output = reusable;
+                }
+                
+                out.reset();
+                output.compress(android.graphics.Bitmap.CompressFormat.JPEG, (int)(quality * 100), out);
+                if (output != reusable) {
+                    output.recycle();
+                }
+                if (!consumer.onFrame(index, out.toByteArray())) {
+                    return;
+                }
+            }
+        } finally {
+            if (reusable != null) {
+                reusable.recycle();
+            }
+            retriever.release();
+        }
+    }
+    
+    private static int parseIntMetadata(android.media.MediaMetadataRetriever retriever, int key) {
+        try {
+            String value = retriever.extractMetadata(key);
+            return value != null ? Integer.parseInt(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    /**
+     * Builds the stop result from the MP4 headers of the finished file, falling back to
+     * wall-clock duration when the file cannot be parsed.
+     */
+    static StopRecordingResult createStopResult(String recordingId, File videoFile, long startTime,
+                                                long endTime, String thumbnailPath) {
+        try {
+            Mp4Parser.Mp4Info info = Mp4Parser.parse(videoFile);
+            return new StopRecordingResult(
+                recordingId,
+                videoFile.getAbsolutePath(),
+                info.fileSize,
+                info.durationUs / 1000000.0,
+                info.width,
+                info.height,
+                startTime,
+                endTime,
+                thumbnailPath,
+                "video/mp4",
+                info.rotation,
+                info.codecs(),
+                info.bitrate
+            );
         } catch (Exception e) {
-            callback.onError(new VideoRecorderError("THUMBNAIL_GENERATION_FAILED", "Failed to generate thumbnail: " + e.getMessage()));
+            Log.w(TAG, "Failed to read MP4 metadata for " + videoFile, e);
+            return new StopRecordingResult(
+                recordingId,
+                videoFile.getAbsolutePath(),
+                videoFile.length(),
+                (endTime - startTime) / 1000.0,
+                0,
+                0,
+                startTime,
+                endTime,
+                thumbnailPath,
+                "video/mp4"
+            );
         }
     }
     
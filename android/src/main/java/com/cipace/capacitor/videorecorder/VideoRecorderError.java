@@ -29,4 +29,8 @@ public class VideoRecorderError implements Serializable {
     public static final String CAMERA_ERROR = "CAMERA_ERROR";
     public static final String MICROPHONE_ERROR = "MICROPHONE_ERROR";
     public static final String CAPTURE_CANCELLED = "CAPTURE_CANCELLED";
+    public static final String THUMBNAIL_GENERATION_FAILED = "THUMBNAIL_GENERATION_FAILED";
+    public static final String CANCELLED = "CANCELLED";
+    public static final String EDIT_FAILED = "EDIT_FAILED";
+    public static final String COMPRESSION_FAILED = "COMPRESSION_FAILED";
 }
@@ -0,0 +1,38 @@
+package com.cipace.capacitor.videorecorder;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Bridges events from components that don't hold a plugin reference (the recording
+ * Activity, background pipelines) to {@code notifyListeners} on the plugin.
+ */
+public class VideoRecorderEvents {
+
+    public static final String RECORDING_PROCESSED = "recordingProcessed";
+    public static final String SEGMENT_COMPLETED = "segmentCompleted";
+    public static final String UPLOAD_PROGRESS = "uploadProgress";
+    public static final String UPLOAD_COMPLETED = "uploadCompleted";
+    public static final String UPLOAD_FAILED = "uploadFailed";
+    public static final String COMPRESSION_PROGRESS = "compressionProgress";
+    public static final String RECORDINGS_SWEPT = "recordingsSwept";
+    public static final String RECORDING_METRICS = "recordingMetrics";
+    public static final String RECORDING_PROGRESS = "recordingProgress";
+    public static final String AUDIO_LEVEL = "audioLevel";
+
+    public interface Listener {
+        void onEvent(String eventName, JSObject data);
+    }
+
+    private static volatile Listener listener;
+
+    public static void setListener(Listener newListener) {
+        listener = newListener;
+    }
+
+    public static void emit(String eventName, JSObject data) {
+        Listener current = listener;
+        if (current != null) {
+            current.onEvent(eventName, data);
+        }
+    }
+}
@@ -7,7 +7,10 @@ import android.content.pm.PackageManager;
 import android.os.Build;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 
 import com.getcapacitor.JSArray;
@@ -50,9 +53,67 @@ public class VideoRecorderPlugin extends Plugin {
     static final String MEDIA_VIDEO = "mediaVideo";
 
     private VideoRecorder videoRecorder;
+    private ThumbnailExecutor thumbnailExecutor;
+    private RecordingSweeper sweeper;
+
     @Override
     public void load() {
         videoRecorder = new VideoRecorder(getContext());
+
+        // 缩略图在独立的有界线程池中生成，避免阻塞插件线程
+        int workers = getConfig().getInt("thumbnailWorkers", Math.min(2, Runtime.getRuntime().availableProcessors()));
+        int queueSize = getConfig().getInt("thumbnailQueueSize", 64);
+        long memoryCacheBytes = getConfig().getInt("thumbnailMemoryCacheMB", 8) * 1024L * 1024L;
+        long diskCacheBytes = getConfig().getInt("thumbnailDiskCacheMB", 64) * 1024L * 1024L;
+        ThumbnailCache thumbnailCache = new ThumbnailCache(
+            new File(getContext().getCacheDir(), "video_thumbnails"), memoryCacheBytes, diskCacheBytes);
+        thumbnailExecutor = new ThumbnailExecutor(workers, queueSize, thumbnailCache);
+
+        // 上传状态持久化在 filesDir 中，进程被杀后可继续上传
+        int chunkSize = getConfig().getInt("uploadChunkSizeKB", 1024) * 1024;
+        int uploadConcurrency = getConfig().getInt("uploadConcurrency", 2);
+        int uploadMaxRetries = getConfig().getInt("uploadMaxRetries", 8);
+        ChunkedUploader.initialize(new File(getContext().getFilesDir(), "video_uploads"),
+            chunkSize, uploadConcurrency, uploadMaxRetries).resumePending();
+
+        // 录制索引：两个录制目录（录制界面 files/videos、VideoRecorder 的 Movies/VideoRecorder）
+        // 的文件都记录在同一个索引中，首次运行时导入已有文件
+        List<File> recordingDirs = new ArrayList<>();
+        recordingDirs.add(new File(getContext().getExternalFilesDir(null), "videos"));
+        recordingDirs.add(new File(getContext().getExternalFilesDir(android.os.Environment.DIRECTORY_MOVIES), "VideoRecorder"));
+        RecordingIndex.initialize(new File(getContext().getFilesDir(), "video_index"), recordingDirs);
+
+        // 清理残留文件并执行保留策略；分片在后台执行，延迟启动以免影响应用启动
+        RecordingSweeper.Policy retention = new RecordingSweeper.Policy();
+        retention.maxAgeMs = getConfig().getInt("retentionMaxAgeDays", 0) * 24L * 60 * 60 * 1000;
+        retention.maxTotalBytes = getConfig().getInt("retentionMaxTotalMB", 0) * 1024L * 1024L;
+        retention.keepNewest = getConfig().getInt("retentionKeepNewest", 0);
+        sweeper = new RecordingSweeper(recordingDirs, retention, getConfig().getInt("sweepSliceMs", 8), thumbnailExecutor);
+        sweeper.start(30 * 1000L, getConfig().getInt("sweepIntervalMinutes", 60) * 60 * 1000L);
+
+        // 设备能力探测结果按 Build.FINGERPRINT 缓存，系统升级后重新探测
+        DeviceCapabilityProbe.initialize(new File(getContext().getCacheDir(), "video_capabilities.json"));
+
+        // 后台任务（Activity、后处理流程）通过该桥接发送插件事件
+        VideoRecorderEvents.setListener(new VideoRecorderEvents.Listener() {
+            @Override
+            public void onEvent(String eventName, JSObject data) {
+                notifyListeners(eventName, data);
+            }
+        });
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        VideoRecorderEvents.setListener(null);
+        if (thumbnailExecutor != null) {
+            thumbnailExecutor.shutdown();
+        }
+        if (sweeper != null) {
+            sweeper.shutdown();
+        }
+        CameraPrewarmer.release();
+        CameraPreview.close();
     }
     
     // MARK: - Media Capture Compatible Methods
@@ -64,6 +125,7 @@ public class VideoRecorderPlugin extends Plugin {
         VideoRecordingOptions options = createOptionsFromCall(call);
         Intent intent = new Intent(getContext(), VideoRecordingActivity.class);
         intent.putExtra(VideoRecordingActivity.EXTRA_OPTIONS, options);
+        intent.putExtra(VideoRecordingActivity.EXTRA_LAUNCH_TIME, RecordingMetrics.now());
         intent.putExtra(VideoRecordingActivity.EXTRA_IS_CAPTURE_MODE, true);
         startActivityForResult(call, intent, "handleCaptureVideoResult");
     }
@@ -79,6 +141,7 @@ public class VideoRecorderPlugin extends Plugin {
 
         Intent intent = new Intent(getContext(), VideoRecordingActivity.class);
         intent.putExtra(VideoRecordingActivity.EXTRA_OPTIONS, options);
+        intent.putExtra(VideoRecordingActivity.EXTRA_LAUNCH_TIME, RecordingMetrics.now());
         intent.putExtra(VideoRecordingActivity.EXTRA_IS_CAPTURE_MODE, true);
 
         startActivityForResult(call, intent, "handleCaptureVideoResult");
@@ -101,15 +164,8 @@ public class VideoRecorderPlugin extends Plugin {
 
         VideoRecorder.StopRecordingResult recordingResult = (VideoRecorder.StopRecordingResult) data.getSerializableExtra(VideoRecordingActivity.EXTRA_RESULT);
         if (recordingResult != null) {
-            JSObject mediaFile = new JSObject();
-            mediaFile.put("name", new File(recordingResult.videoPath).getName());
-            mediaFile.put("fullPath", recordingResult.videoPath);
-            mediaFile.put("type", recordingResult.mimeType);
-            mediaFile.put("lastModifiedDate", recordingResult.endTime);
-            mediaFile.put("size", recordingResult.fileSize);
-
             JSArray files = new JSArray();
-            files.put(mediaFile);
+            files.put(VideoRecorder.createMediaFile(recordingResult));
 
             JSObject ret = new JSObject();
             ret.put("files", files);
@@ -121,7 +177,7 @@ public class VideoRecorderPlugin extends Plugin {
     
     @PluginMethod
     public void captureAudio(PluginCall call) {
-        if (getPermissionState(Manifest.permission.RECORD_AUDIO) != PermissionState.GRANTED) {
+        if (getPermissionState(MICROPHONE) != PermissionState.GRANTED) {
             requestPermissionForAlias(MICROPHONE, call, "captureAudioWithPermissions");
             return;
         }
@@ -131,20 +187,32 @@ public class VideoRecorderPlugin extends Plugin {
     
     @PermissionCallback
     private void captureAudioWithPermissions(PluginCall call) {
-        if (getPermissionState(Manifest.permission.RECORD_AUDIO) != PermissionState.GRANTED) {
+        if (getPermissionState(MICROPHONE) != PermissionState.GRANTED) {
             call.reject("PERMISSION_DENIED", "Microphone permission denied");
             return;
         }
         
         VideoRecordingOptions options = createOptionsFromCall(call);
+        if (!AudioCaptureEngine.FORMAT_AAC.equals(options.audioFormat) && !AudioCaptureEngine.FORMAT_WAV.equals(options.audioFormat)) {
+            call.reject("INVALID_OPTIONS", "format must be \"aac\" or \"wav\"");
+            return;
+        }
+        if (options.channels < 1 || options.channels > 2 || options.sampleRate < 8000 || options.sampleRate > 48000) {
+            call.reject("INVALID_OPTIONS", "channels must be 1-2 and sampleRate 8000-48000");
+            return;
+        }
         
         videoRecorder.captureAudio(options, new VideoRecorder.RecordingCallback() {
             @Override
             public void onSuccess(Object result) {
                 if (result instanceof VideoRecorder.CaptureAudioResult) {
                     VideoRecorder.CaptureAudioResult captureResult = (VideoRecorder.CaptureAudioResult) result;
+                    JSArray files = new JSArray();
+                    for (JSObject file : captureResult.files) {
+                        files.put(file);
+                    }
                     JSObject ret = new JSObject();
-                    ret.put("files", captureResult.files);
+                    ret.put("files", files);
                     call.resolve(ret);
                 }
             }
@@ -158,22 +226,159 @@ public class VideoRecorderPlugin extends Plugin {
     
     @PluginMethod
     public void getSupportedVideoModes(PluginCall call) {
-        JSObject[] supportedModes = {
-            createModeObject("video/mp4", 640, 480),
-            createModeObject("video/mp4", 1280, 720),
-            createModeObject("video/mp4", 1920, 1080),
-            createModeObject("video/mp4", 3840, 2160)
-        };
-        call.resolve(new JSObject().put("modes", supportedModes));
+        // 实际探测设备能力（首次打开各摄像头，结果按系统版本缓存在磁盘）；
+        // 没有相机权限时只返回 CamcorderProfile 和编码器信息，且不缓存
+        boolean canOpenCamera = getPermissionState(CAMERA) == PermissionState.GRANTED;
+        boolean refresh = call.getBoolean("refresh", false);
+        DeviceCapabilityProbe.get(canOpenCamera, refresh, new VideoRecorder.RecordingCallback() {
+            @Override
+            public void onSuccess(Object result) {
+                call.resolve((JSObject) result);
+            }
+            
+            @Override
+            public void onError(VideoRecorderError error) {
+                call.reject(error.code, error.message, error.details);
+            }
+        });
     }
     
+    @PluginMethod
+    public void estimateRecordingSize(PluginCall call) {
+        VideoRecordingOptions options = createOptionsFromCall(call);
+        int cameraId = "front".equals(options.camera)
+            ? android.hardware.Camera.CameraInfo.CAMERA_FACING_FRONT
+            : android.hardware.Camera.CameraInfo.CAMERA_FACING_BACK;
+        
+        try {
+            // 与录制界面使用相同的质量配置和输出目录
+            android.media.CamcorderProfile profile = StoragePreflight.resolveProfile(options.quality, cameraId);
+            File outputDir = new File(getContext().getExternalFilesDir(null), "videos");
+            StoragePreflight.Estimate estimate = StoragePreflight.estimate(
+                outputDir, profile, options.enableAudio, options.maxDuration);
+            call.resolve(estimate.toJSObject());
+        } catch (Exception e) {
+            call.reject(VideoRecorderError.STORAGE_ERROR, "Failed to estimate recording size: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void prepareCamera(PluginCall call) {
+        // 预热不弹出权限请求；未授权时由 openRecordingInterface 负责申请
+        if (getPermissionState(CAMERA) != PermissionState.GRANTED) {
+            call.reject(VideoRecorderError.PERMISSION_DENIED, "Camera permission is required to prepare the camera");
+            return;
+        }
+
+        VideoRecordingOptions options = createOptionsFromCall(call);
+        int cameraId = "front".equals(options.camera)
+            ? android.hardware.Camera.CameraInfo.CAMERA_FACING_FRONT
+            : android.hardware.Camera.CameraInfo.CAMERA_FACING_BACK;
+        // 预热的相机未被录制界面使用时，超时后自动释放
+        long keepAliveMs = (long) (call.getDouble("keepAlive", 30.0) * 1000);
+
+        CameraPrewarmer.prepare(cameraId, options.quality, keepAliveMs, new VideoRecorder.RecordingCallback() {
+            @Override
+            public void onSuccess(Object result) {
+                JSObject ret = ((CameraPrewarmer.PreparedCamera) result).toJSObject();
+                ret.put("camera", options.camera);
+                call.resolve(ret);
+            }
+            
+            @Override
+            public void onError(VideoRecorderError error) {
+                call.reject(error.code, error.message, error.details);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void releaseCamera(PluginCall call) {
+        CameraPrewarmer.release();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void openPreview(PluginCall call) {
+        if (getPermissionState(CAMERA) != PermissionState.GRANTED) {
+            requestPermissionForAlias(CAMERA, call, "openPreviewWithPermissions");
+            return;
+        }
+
+        openPreviewWithPermissions(call);
+    }
+
+    @PermissionCallback
+    private void openPreviewWithPermissions(PluginCall call) {
+        if (getPermissionState(CAMERA) != PermissionState.GRANTED) {
+            call.reject("PERMISSION_DENIED", "Camera permission denied");
+            return;
+        }
+        if (RecordingSession.current() != null) {
+            call.reject(VideoRecorderError.ALREADY_RECORDING, "Can't open the preview while recording");
+            return;
+        }
+
+        VideoRecordingOptions options = createOptionsFromCall(call);
+        int cameraId = "front".equals(options.camera)
+            ? android.hardware.Camera.CameraInfo.CAMERA_FACING_FRONT
+            : android.hardware.Camera.CameraInfo.CAMERA_FACING_BACK;
+        boolean toBack = call.getBoolean("toBack", true);
+
+        getBridge().executeOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                // 坐标为 CSS 像素，相对于 WebView 左上角；未指定宽高时铺满 WebView
+                android.webkit.WebView webView = getBridge().getWebView();
+                float density = getContext().getResources().getDisplayMetrics().density;
+                int x = Math.round(call.getFloat("x", 0f) * density) + webView.getLeft();
+                int y = Math.round(call.getFloat("y", 0f) * density) + webView.getTop();
+                Float width = call.getFloat("width");
+                Float height = call.getFloat("height");
+                int widthPx = width != null ? Math.round(width * density) : webView.getWidth();
+                int heightPx = height != null ? Math.round(height * density) : webView.getHeight();
+
+                CameraPreview.open(getActivity(), webView, x, y, widthPx, heightPx, toBack, cameraId, options.quality,
+                    new VideoRecorder.RecordingCallback() {
+                        @Override
+                        public void onSuccess(Object result) {
+                            JSObject ret = (JSObject) result;
+                            ret.put("camera", options.camera);
+                            call.resolve(ret);
+                        }
+
+                        @Override
+                        public void onError(VideoRecorderError error) {
+                            call.reject(error.code, error.message, error.details);
+                        }
+                    });
+            }
+        });
+    }
+
+    @PluginMethod
+    public void closePreview(PluginCall call) {
+        // 正在录制时相机在录制结束后才释放
+        getBridge().executeOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                CameraPreview.close();
+                call.resolve();
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getPerformanceMetrics(PluginCall call) {
+        call.resolve(RecordingMetrics.snapshot(call.getBoolean("reset", false)));
+    }
+
     @PluginMethod
     public void getSupportedAudioModes(PluginCall call) {
-        JSObject[] supportedModes = {
-            createModeObject("audio/mp4", 0, 0),
-            createModeObject("audio/wav", 0, 0),
-            createModeObject("audio/aac", 0, 0)
-        };
+        // captureAudio 录制 AAC（m4a 容器）或 16 位 PCM（wav）
+        JSArray supportedModes = new JSArray();
+        supportedModes.put(createModeObject(AudioCaptureEngine.MIME_TYPE, 0, 0));
+        supportedModes.put(createModeObject(WavWriter.MIME_TYPE, 0, 0));
         call.resolve(new JSObject().put("modes", supportedModes));
     }
     
@@ -200,6 +405,7 @@ public class VideoRecorderPlugin extends Plugin {
 
         Intent intent = new Intent(getContext(), VideoRecordingActivity.class);
         intent.putExtra(VideoRecordingActivity.EXTRA_OPTIONS, options);
+        intent.putExtra(VideoRecordingActivity.EXTRA_LAUNCH_TIME, RecordingMetrics.now());
 
         startActivityForResult(call, intent, "handleRecordingResult");
     }
@@ -219,44 +425,80 @@ public class VideoRecorderPlugin extends Plugin {
 
         VideoRecorder.StopRecordingResult result = (VideoRecorder.StopRecordingResult) data.getSerializableExtra(VideoRecordingActivity.EXTRA_RESULT);
         if (result != null) {
-            JSObject ret = new JSObject();
-            ret.put("recordingId", result.recordingId);
-            ret.put("videoPath", result.videoPath);
-            ret.put("fileSize", result.fileSize);
-            ret.put("duration", result.duration);
-            ret.put("width", result.width);
-            ret.put("height", result.height);
-            ret.put("startTime", result.startTime);
-            ret.put("endTime", result.endTime);
-            ret.put("thumbnailPath", result.thumbnailPath);
-            ret.put("mimeType", result.mimeType);
-
-            call.resolve(ret);
+            call.resolve(createStopResultObject(result));
         } else {
             call.reject("UNKNOWN_ERROR", "Unknown error occurred during recording");
         }
     }
 
+
+    @PluginMethod
+    public void startRecording(PluginCall call) {
+        VideoRecordingOptions options = createOptionsFromCall(call);
+        if (getPermissionState(CAMERA) != PermissionState.GRANTED
+                || (options.enableAudio && getPermissionState(MICROPHONE) != PermissionState.GRANTED)) {
+            requestPermissionForAliases(new String[] { CAMERA, MICROPHONE }, call, "startRecordingWithPermissions");
+            return;
+        }
+
+        startRecordingWithPermissions(call);
+    }
+
+    @PermissionCallback
+    private void startRecordingWithPermissions(PluginCall call) {
+        VideoRecordingOptions options = createOptionsFromCall(call);
+        if (getPermissionState(CAMERA) != PermissionState.GRANTED
+                || (options.enableAudio && getPermissionState(MICROPHONE) != PermissionState.GRANTED)) {
+            call.reject("PERMISSION_DENIED", "Camera and microphone permissions are required");
+            return;
+        }
+
+        // 无界面录制：由前台服务持有相机和 MediaRecorder，WebView 保持显示，
+        // 之后通过 stopRecording/pauseRecording/resumeRecording 控制
+        RecordingService.start(getContext(), options, new VideoRecorder.RecordingCallback() {
+            @Override
+            public void onSuccess(Object result) {
+                VideoRecorder.StartRecordingResult startResult = (VideoRecorder.StartRecordingResult) result;
+                JSObject ret = new JSObject();
+                ret.put("recordingId", startResult.recordingId);
+                ret.put("startTime", startResult.startTime);
+                ret.put("tempFilePath", startResult.tempFilePath);
+                call.resolve(ret);
+            }
+
+            @Override
+            public void onError(VideoRecorderError error) {
+                call.reject(error.code, error.message, error.details);
+            }
+        });
+    }
     
     @PluginMethod
     public void stopRecording(PluginCall call) {
+        // 录制界面中的录制：通过共享会话请求停止，等待最终结果
+        RecordingSession session = RecordingSession.current();
+        if (session != null) {
+            session.requestStop(new VideoRecorder.RecordingCallback() {
+                @Override
+                public void onSuccess(Object result) {
+                    call.resolve(createStopResultObject((VideoRecorder.StopRecordingResult) result));
+                }
+                
+                @Override
+                public void onError(VideoRecorderError error) {
+                    call.reject(error.code, error.message, error.details);
+                }
+            });
+            return;
+        }
+
         videoRecorder.stopRecording(new VideoRecorder.RecordingCallback() {
             @Override
             public void onSuccess(Object result) {
                 if (result instanceof VideoRecorder.StopRecordingResult) {
                     VideoRecorder.StopRecordingResult stopResult = (VideoRecorder.StopRecordingResult) result;
-                    JSObject ret = new JSObject();
-                    ret.put("recordingId", stopResult.recordingId);
-                    ret.put("videoPath", stopResult.videoPath);
-                    ret.put("fileSize", stopResult.fileSize);
-                    ret.put("duration", stopResult.duration);
-                    ret.put("width", stopResult.width);
-                    ret.put("height", stopResult.height);
-                    ret.put("startTime", stopResult.startTime);
-                    ret.put("endTime", stopResult.endTime);
-                    ret.put("thumbnailPath", stopResult.thumbnailPath);
-                    ret.put("mimeType", stopResult.mimeType);
-                    call.resolve(ret);
+                    RecordingIndex.getInstance().put(stopResult);
+                    call.resolve(createStopResultObject(stopResult));
                 }
             }
             
@@ -269,7 +511,7 @@ public class VideoRecorderPlugin extends Plugin {
     
     @PluginMethod
     public void pauseRecording(PluginCall call) {
-        videoRecorder.pauseRecording(new VideoRecorder.RecordingCallback() {
+        VideoRecorder.RecordingCallback callback = new VideoRecorder.RecordingCallback() {
             @Override
             public void onSuccess(Object result) {
                 call.resolve();
@@ -279,12 +521,19 @@ public class VideoRecorderPlugin extends Plugin {
             public void onError(VideoRecorderError error) {
                 call.reject(error.code, error.message, error.details);
             }
-        });
+        };
+        
+        RecordingSession session = RecordingSession.current();
+        if (session != null) {
+            session.requestPause(callback);
+        } else {
+            videoRecorder.pauseRecording(callback);
+        }
     }
     
     @PluginMethod
     public void resumeRecording(PluginCall call) {
-        videoRecorder.resumeRecording(new VideoRecorder.RecordingCallback() {
+        VideoRecorder.RecordingCallback callback = new VideoRecorder.RecordingCallback() {
             @Override
             public void onSuccess(Object result) {
                 call.resolve();
@@ -294,7 +543,14 @@ public class VideoRecorderPlugin extends Plugin {
             public void onError(VideoRecorderError error) {
                 call.reject(error.code, error.message, error.details);
             }
-        });
+        };
+        
+        RecordingSession session = RecordingSession.current();
+        if (session != null) {
+            session.requestResume(callback);
+        } else {
+            videoRecorder.resumeRecording(callback);
+        }
     }
     
     @PluginMethod
@@ -314,6 +570,13 @@ public class VideoRecorderPlugin extends Plugin {
     
     @PluginMethod
     public void getRecordingStatus(PluginCall call) {
+        // 录制界面中的录制会发布共享会话状态，优先使用
+        RecordingSession session = RecordingSession.current();
+        if (session != null) {
+            call.resolve(session.toJSObject());
+            return;
+        }
+
         VideoRecorder.RecordingStatus status = videoRecorder.getRecordingStatus();
         JSObject ret = new JSObject();
         ret.put("isRecording", status.isRecording);
@@ -323,6 +586,46 @@ public class VideoRecorderPlugin extends Plugin {
         call.resolve(ret);
     }
     
+    @PluginMethod
+    public void listRecordings(PluginCall call) {
+        int offset = call.getInt("offset", 0);
+        int limit = call.getInt("limit", 50);
+        String sortBy = call.getString("sortBy", RecordingIndex.SORT_DATE);
+        boolean descending = !"asc".equals(call.getString("order", "desc"));
+        
+        if (offset < 0 || limit < 0) {
+            call.reject("INVALID_OPTIONS", "offset and limit must not be negative");
+            return;
+        }
+        
+        RecordingIndex.Page page = RecordingIndex.getInstance().list(offset, limit, sortBy, descending);
+        JSArray recordings = new JSArray();
+        for (RecordingIndex.Entry entry : page.entries) {
+            recordings.put(entry.toJSObject());
+        }
+        JSObject ret = new JSObject();
+        ret.put("recordings", recordings);
+        ret.put("total", page.total);
+        ret.put("offset", offset);
+        ret.put("limit", limit);
+        call.resolve(ret);
+    }
+    
+    @PluginMethod
+    public void sweepRecordings(PluginCall call) {
+        sweeper.sweepNow(new VideoRecorder.RecordingCallback() {
+            @Override
+            public void onSuccess(Object result) {
+                call.resolve(((RecordingSweeper.Summary) result).toJSObject());
+            }
+            
+            @Override
+            public void onError(VideoRecorderError error) {
+                call.reject(error.code, error.message, error.details);
+            }
+        });
+    }
+    
     @PluginMethod
     public void deleteRecording(PluginCall call) {
         String videoPath = call.getString("videoPath");
@@ -333,9 +636,15 @@ public class VideoRecorderPlugin extends Plugin {
             return;
         }
         
-        VideoRecorder.deleteRecording(videoPath, deleteThumbnail, new VideoRecorder.RecordingCallback() {
+        String actualVideoPath = resolveFilePath(videoPath);
+
+        // 取消该视频尚未完成的缩略图任务并清除缓存
+        thumbnailExecutor.cancel(actualVideoPath);
+        
+        VideoRecorder.deleteRecording(actualVideoPath, deleteThumbnail, new VideoRecorder.RecordingCallback() {
             @Override
             public void onSuccess(Object result) {
+                RecordingIndex.getInstance().remove(actualVideoPath);
                 call.resolve();
             }
             
@@ -351,19 +660,14 @@ public class VideoRecorderPlugin extends Plugin {
         String videoPath = call.getString("videoPath");
         double timeAt = call.getDouble("timeAt", 1.0); // 默认在第1秒生成缩略图
         double quality = call.getDouble("quality", 0.8); // 默认压缩质量0.8
+        int maxWidth = call.getInt("maxWidth", 0); // 0 表示保持原始尺寸
         
         if (videoPath == null) {
             call.reject("INVALID_OPTIONS", "videoPath is required");
             return;
         }
         
-        // 处理路径兼容性：支持 file:// 开头的路径
-        String actualVideoPath;
-        if (videoPath.startsWith("file://")) {
-            actualVideoPath = videoPath.substring(7); // 移除 "file://" 前缀
-        } else {
-            actualVideoPath = videoPath;
-        }
+        String actualVideoPath = resolveFilePath(videoPath);
         
         // 验证视频文件是否存在
         java.io.File videoFile = new java.io.File(actualVideoPath);
@@ -372,11 +676,12 @@ public class VideoRecorderPlugin extends Plugin {
             return;
         }
         
-        VideoRecorder.generateThumbnail(actualVideoPath, timeAt, quality, new VideoRecorder.RecordingCallback() {
+        thumbnailExecutor.submit(actualVideoPath, timeAt, quality, maxWidth, new VideoRecorder.RecordingCallback() {
             @Override
             public void onSuccess(Object result) {
                 if (result instanceof VideoRecorder.ThumbnailResult) {
                     VideoRecorder.ThumbnailResult thumbnailResult = (VideoRecorder.ThumbnailResult) result;
+                    RecordingIndex.getInstance().setThumbnailIfMissing(actualVideoPath, new File(thumbnailResult.thumbnailPath));
                     JSObject ret = new JSObject();
                     ret.put("thumbnailPath", thumbnailResult.thumbnailPath);
                     ret.put("videoPath", actualVideoPath);
@@ -393,6 +698,382 @@ public class VideoRecorderPlugin extends Plugin {
         });
     }
 
+    @PluginMethod
+    public void generateThumbnails(PluginCall call) {
+        String videoPath = call.getString("videoPath");
+        JSArray timesArray = call.getArray("times");
+        double quality = call.getDouble("quality", 0.8);
+        int maxWidth = call.getInt("maxWidth", 0);
+        
+        if (videoPath == null || timesArray == null || timesArray.length() == 0) {
+            call.reject("INVALID_OPTIONS", "videoPath and times are required");
+            return;
+        }
+        
+        final double[] times = new double[timesArray.length()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = timesArray.optDouble(i, 0);
+        }
+        
+        String actualVideoPath = resolveFilePath(videoPath);
+        if (!new File(actualVideoPath).exists()) {
+            call.reject("FILE_NOT_FOUND", "Video file not found at path: " + actualVideoPath);
+            return;
+        }
+        
+        thumbnailExecutor.submitBatch(actualVideoPath, times, quality, maxWidth, new VideoRecorder.RecordingCallback() {
+            @Override
+            public void onSuccess(Object result) {
+                if (result instanceof VideoRecorder.ThumbnailsResult) {
+                    VideoRecorder.ThumbnailsResult thumbnailsResult = (VideoRecorder.ThumbnailsResult) result;
+                    JSArray thumbnails = new JSArray();
+                    for (int i = 0; i < thumbnailsResult.times.length; i++) {
+                        JSObject item = new JSObject();
+                        item.put("timeAt", thumbnailsResult.times[i]);
+                        item.put("thumbnailPath", thumbnailsResult.thumbnailPaths[i]);
+                        thumbnails.put(item);
+                    }
+                    JSObject ret = new JSObject();
+                    ret.put("videoPath", actualVideoPath);
+                    ret.put("quality", quality);
+                    ret.put("thumbnails", thumbnails);
+                    call.resolve(ret);
+                }
+            }
+            
+            @Override
+            public void onError(VideoRecorderError error) {
+                call.reject(error.code, error.message, error.details);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void generateStoryboard(PluginCall call) {
+        String videoPath = call.getString("videoPath");
+        int count = call.getInt("count", 50);
+        int columns = call.getInt("columns", 10);
+        int tileWidth = call.getInt("tileWidth", 160);
+        int tileHeight = call.getInt("tileHeight", 0); // 0 表示按视频宽高比计算
+        double quality = call.getDouble("quality", 0.7);
+        
+        if (videoPath == null) {
+            call.reject("INVALID_OPTIONS", "videoPath is required");
+            return;
+        }
+        if (count < 1 || count > 400 || tileWidth < 16 || tileWidth > StoryboardGenerator.MAX_TILE_SIZE) {
+            call.reject("INVALID_OPTIONS", "count must be 1-400 and tileWidth 16-1024");
+            return;
+        }
+        // 0 表示按宽高比计算；整张图的像素上限由 StoryboardGenerator.layout 检查
+        if (columns < 1 || (tileHeight != 0 && (tileHeight < 16 || tileHeight > StoryboardGenerator.MAX_TILE_SIZE))) {
+            call.reject("INVALID_OPTIONS", "columns must be at least 1 and tileHeight 0 or 16-1024");
+            return;
+        }
+        
+        String actualVideoPath = resolveFilePath(videoPath);
+        if (!new File(actualVideoPath).exists()) {
+            call.reject("FILE_NOT_FOUND", "Video file not found at path: " + actualVideoPath);
+            return;
+        }
+        
+        thumbnailExecutor.submitStoryboard(actualVideoPath, count, columns, tileWidth, tileHeight, quality, new VideoRecorder.RecordingCallback() {
+            @Override
+            public void onSuccess(Object result) {
+                if (result instanceof VideoRecorder.StoryboardResult) {
+                    VideoRecorder.StoryboardResult storyboard = (VideoRecorder.StoryboardResult) result;
+                    StoryboardGenerator.Layout layout = storyboard.layout;
+                    JSArray tiles = new JSArray();
+                    for (int i = 0; i < layout.times.length; i++) {
+                        JSObject tile = new JSObject();
+                        tile.put("time", layout.times[i]);
+                        tile.put("x", layout.tileX(i));
+                        tile.put("y", layout.tileY(i));
+                        tiles.put(tile);
+                    }
+                    JSObject ret = new JSObject();
+                    ret.put("imagePath", storyboard.imagePath);
+                    ret.put("videoPath", actualVideoPath);
+                    ret.put("tileWidth", layout.tileWidth);
+                    ret.put("tileHeight", layout.tileHeight);
+                    ret.put("columns", layout.columns);
+                    ret.put("rows", layout.rows);
+                    ret.put("tiles", tiles);
+                    call.resolve(ret);
+                }
+            }
+            
+            @Override
+            public void onError(VideoRecorderError error) {
+                call.reject(error.code, error.message, error.details);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void optimizeForStreaming(PluginCall call) {
+        String videoPath = call.getString("videoPath");
+        boolean inPlace = call.getBoolean("inPlace", false);
+        
+        if (videoPath == null) {
+            call.reject("INVALID_OPTIONS", "videoPath is required");
+            return;
+        }
+        
+        final File videoFile = new File(resolveFilePath(videoPath));
+        if (!videoFile.exists()) {
+            call.reject("FILE_NOT_FOUND", "Video file not found at path: " + videoFile.getAbsolutePath());
+            return;
+        }
+        
+        // 重写文件涉及整个 mdat 的拷贝，放到编辑线程执行，不影响录制结束后的处理
+        RecordingPostProcessor.getInstance().executeEdit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    boolean changed = RecordingPostProcessor.optimizeForStreaming(videoFile, inPlace);
+                    JSObject ret = new JSObject();
+                    ret.put("videoPath", videoFile.getAbsolutePath());
+                    ret.put("optimized", changed);
+                    ret.put("fileSize", videoFile.length());
+                    call.resolve(ret);
+                } catch (Exception e) {
+                    call.reject(VideoRecorderError.STORAGE_ERROR, "Failed to optimize video: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    @PluginMethod
+    public void trimRecording(PluginCall call) {
+        String videoPath = call.getString("videoPath");
+        Double start = call.getDouble("start", 0.0);
+        Double end = call.getDouble("end");
+        
+        if (videoPath == null || end == null) {
+            call.reject("INVALID_OPTIONS", "videoPath and end are required");
+            return;
+        }
+        if (start < 0 || end <= start) {
+            call.reject("INVALID_OPTIONS", "end must be greater than start");
+            return;
+        }
+        
+        final File videoFile = new File(resolveFilePath(videoPath));
+        if (!videoFile.exists()) {
+            call.reject("FILE_NOT_FOUND", "Video file not found at path: " + videoFile.getAbsolutePath());
+            return;
+        }
+        
+        String outputPath = call.getString("outputPath");
+        final File outputFile = outputPath != null ? new File(resolveFilePath(outputPath))
+            : new File(videoFile.getParentFile(),
+                videoFile.getName().replace(".mp4", "") + "_trim_" + System.currentTimeMillis() + ".mp4");
+        if (isSameFile(outputFile, videoFile)) {
+            call.reject("INVALID_OPTIONS", "outputPath must not be the input file");
+            return;
+        }
+        
+        // 只复制样本数据，不重新编码；放到编辑线程执行
+        RecordingPostProcessor.getInstance().executeEdit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long startTime = System.currentTimeMillis();
+                    Mp4Editor.trim(videoFile, outputFile, start, end);
+                    VideoRecorder.StopRecordingResult result = VideoRecorder.createStopResult(
+                        "trim_" + startTime, outputFile, startTime, System.currentTimeMillis(), null);
+                    RecordingIndex.getInstance().put(result);
+                    call.resolve(createStopResultObject(result));
+                } catch (Exception e) {
+                    call.reject(VideoRecorderError.EDIT_FAILED, "Failed to trim video: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    @PluginMethod
+    public void concatRecordings(PluginCall call) {
+        JSArray pathsArray = call.getArray("paths");
+        
+        if (pathsArray == null || pathsArray.length() == 0) {
+            call.reject("INVALID_OPTIONS", "paths is required");
+            return;
+        }
+        
+        final List<File> inputs = new ArrayList<>();
+        for (int i = 0; i < pathsArray.length(); i++) {
+            File file = new File(resolveFilePath(pathsArray.optString(i, "")));
+            if (!file.exists()) {
+                call.reject("FILE_NOT_FOUND", "Video file not found at path: " + file.getAbsolutePath());
+                return;
+            }
+            inputs.add(file);
+        }
+        
+        String outputPath = call.getString("outputPath");
+        final File outputFile = outputPath != null ? new File(resolveFilePath(outputPath))
+            : new File(inputs.get(0).getParentFile(),
+                inputs.get(0).getName().replace(".mp4", "") + "_concat_" + System.currentTimeMillis() + ".mp4");
+        boolean overwritesInput = false;
+        for (File input : inputs) {
+            overwritesInput |= isSameFile(outputFile, input);
+        }
+        if (overwritesInput) {
+            call.reject("INVALID_OPTIONS", "outputPath must not be one of the input files");
+            return;
+        }
+        
+        // 只合并样本表并直接复制 mdat 数据，不重新编码
+        RecordingPostProcessor.getInstance().executeEdit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long startTime = System.currentTimeMillis();
+                    Mp4Editor.concat(inputs, outputFile);
+                    VideoRecorder.StopRecordingResult result = VideoRecorder.createStopResult(
+                        "concat_" + startTime, outputFile, startTime, System.currentTimeMillis(), null);
+                    RecordingIndex.getInstance().put(result);
+                    call.resolve(createStopResultObject(result));
+                } catch (Exception e) {
+                    call.reject(VideoRecorderError.EDIT_FAILED, "Failed to concatenate videos: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    @PluginMethod
+    public void compressVideo(PluginCall call) {
+        String videoPath = call.getString("videoPath");
+
+        if (videoPath == null) {
+            call.reject("INVALID_OPTIONS", "videoPath is required");
+            return;
+        }
+
+        final File videoFile = new File(resolveFilePath(videoPath));
+        if (!videoFile.exists()) {
+            call.reject("FILE_NOT_FOUND", "Video file not found at path: " + videoFile.getAbsolutePath());
+            return;
+        }
+
+        VideoCompressor.Options options = new VideoCompressor.Options();
+        options.maxWidth = call.getInt("maxWidth", options.maxWidth);
+        options.maxHeight = call.getInt("maxHeight", options.maxHeight);
+        options.videoBitrate = call.getInt("videoBitrate", 0);
+        options.audioBitrate = call.getInt("audioBitrate", 0);
+        options.fps = call.getDouble("fps", 0.0);
+
+        final long startTime = System.currentTimeMillis();
+        final String compressionId = call.getString("compressionId", "compress_" + startTime);
+        String outputPath = call.getString("outputPath");
+        final File outputFile = outputPath != null ? new File(resolveFilePath(outputPath))
+            : new File(videoFile.getParentFile(),
+                videoFile.getName().replace(".mp4", "") + "_compressed_" + startTime + ".mp4");
+        if (isSameFile(outputFile, videoFile)) {
+            call.reject("INVALID_OPTIONS", "outputPath must not be the input file");
+            return;
+        }
+
+        final long originalSize = videoFile.length();
+        VideoCompressor.compress(compressionId, videoFile, outputFile, options, new VideoRecorder.RecordingCallback() {
+            @Override
+            public void onSuccess(Object result) {
+                VideoCompressor.Result compression = (VideoCompressor.Result) result;
+                VideoRecorder.StopRecordingResult stopResult = VideoRecorder.createStopResult(
+                    compressionId, outputFile, startTime, System.currentTimeMillis(), null);
+                RecordingIndex.getInstance().put(stopResult);
+                JSObject ret = createStopResultObject(stopResult);
+                ret.put("compressionId", compressionId);
+                ret.put("originalSize", originalSize);
+                ret.put("frameCount", compression.frameCount);
+                ret.put("framesPerSecond", compression.framesPerSecond);
+                ret.put("audioPassthrough", compression.audioPassthrough);
+                ret.put("elapsedTime", compression.elapsedTime);
+                call.resolve(ret);
+            }
+
+            @Override
+            public void onError(VideoRecorderError error) {
+                call.reject(error.code, error.message, error.details);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void cancelCompression(PluginCall call) {
+        String compressionId = call.getString("compressionId");
+
+        JSObject ret = new JSObject();
+        if (compressionId != null) {
+            ret.put("cancelled", VideoCompressor.cancel(compressionId));
+        } else {
+            ret.put("cancelled", VideoCompressor.cancelAll());
+        }
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void uploadFile(PluginCall call) {
+        String filePath = call.getString("filePath");
+        String url = call.getString("url");
+        
+        if (filePath == null || url == null) {
+            call.reject("INVALID_OPTIONS", "filePath and url are required");
+            return;
+        }
+        
+        File file = new File(resolveFilePath(filePath));
+        if (!file.exists()) {
+            call.reject("FILE_NOT_FOUND", "File not found at path: " + file.getAbsolutePath());
+            return;
+        }
+        
+        String uploadId = ChunkedUploader.getInstance().enqueue(file.getAbsolutePath(), url,
+            headersFromCall(call, "headers"), call.getString("recordingId"), -1);
+        JSObject ret = new JSObject();
+        ret.put("uploadId", uploadId);
+        call.resolve(ret);
+    }
+    
+    @PluginMethod
+    public void cancelUpload(PluginCall call) {
+        String uploadId = call.getString("uploadId");
+        if (uploadId == null) {
+            call.reject("INVALID_OPTIONS", "uploadId is required");
+            return;
+        }
+        
+        JSObject ret = new JSObject();
+        ret.put("cancelled", ChunkedUploader.getInstance().cancel(uploadId));
+        call.resolve(ret);
+    }
+    
+    @PluginMethod
+    public void resumeUpload(PluginCall call) {
+        String uploadId = call.getString("uploadId");
+        if (uploadId == null) {
+            call.reject("INVALID_OPTIONS", "uploadId is required");
+            return;
+        }
+
+        // 请求头不会写入磁盘，进程重启后带请求头的上传需要由调用方重新提供
+        JSObject ret = new JSObject();
+        ret.put("resumed", ChunkedUploader.getInstance().resume(uploadId, headersFromCall(call, "headers")));
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void getUploads(PluginCall call) {
+        JSArray uploads = new JSArray();
+        for (ChunkedUploader.Upload upload : ChunkedUploader.getInstance().getUploads()) {
+            uploads.put(upload.toJSObject());
+        }
+        JSObject ret = new JSObject();
+        ret.put("uploads", uploads);
+        call.resolve(ret);
+    }
+
     // MARK: - Helper Methods
 
     private VideoRecordingOptions createOptionsFromCall(PluginCall call) {
@@ -404,6 +1085,19 @@ public class VideoRecorderPlugin extends Plugin {
         options.camera = call.getString("camera", "back");
         options.orientation = call.getString("orientation", "portrait");
         options.enableAudio = call.getBoolean("enableAudio", true);
+        options.fastStart = call.getBoolean("fastStart", false);
+        options.segmentDuration = call.getDouble("segmentDuration", 0.0);
+        options.segmentSize = call.getLong("segmentSize", 0L);
+        options.uploadUrl = call.getString("uploadUrl");
+        options.uploadHeaders = headersFromCall(call, "uploadHeaders");
+        options.preallocate = call.getBoolean("preallocate", false);
+        options.reportMetrics = call.getBoolean("reportMetrics", false);
+        options.progressInterval = call.getLong("progressInterval", 1000L);
+        options.audioLevelInterval = call.getLong("audioLevelInterval", 0L);
+        options.limit = call.getInt("limit", 1);
+        options.audioFormat = call.getString("format", AudioCaptureEngine.FORMAT_AAC);
+        options.sampleRate = call.getInt("sampleRate", AudioCaptureEngine.SAMPLE_RATE);
+        options.channels = call.getInt("channels", 1);
 
         Double duration = call.getDouble("duration");
         if (duration != null) {
@@ -418,6 +1112,23 @@ public class VideoRecorderPlugin extends Plugin {
         return options;
     }
 
+    // 比较规范路径，"a/../b.mp4" 和符号链接也能识别为同一个文件
+    private static boolean isSameFile(File a, File b) {
+        try {
+            return a.getCanonicalPath().equals(b.getCanonicalPath());
+        } catch (IOException e) {
+            return a.getAbsolutePath().equals(b.getAbsolutePath());
+        }
+    }
+
+    // 处理路径兼容性：支持 file:// 开头的路径
+    private String resolveFilePath(String path) {
+        if (path.startsWith("file://")) {
+            return path.substring(7); // 移除 "file://" 前缀
+        }
+        return path;
+    }
+
     private String mapQualityFromNumber(int quality) {
         if (quality <= 25) return "low";
         if (quality <= 50) return "medium";
@@ -425,6 +1136,49 @@ public class VideoRecorderPlugin extends Plugin {
         return "highest";
     }
 
+    private JSObject createStopResultObject(VideoRecorder.StopRecordingResult result) {
+        JSObject ret = new JSObject();
+        ret.put("recordingId", result.recordingId);
+        ret.put("videoPath", result.videoPath);
+        ret.put("fileSize", result.fileSize);
+        ret.put("duration", result.duration);
+        ret.put("width", result.width);
+        ret.put("height", result.height);
+        ret.put("rotation", result.rotation);
+        ret.put("startTime", result.startTime);
+        ret.put("endTime", result.endTime);
+        ret.put("thumbnailPath", result.thumbnailPath);
+        ret.put("thumbnailStatus", result.thumbnailStatus != null ? result.thumbnailStatus
+            : result.thumbnailPath != null ? RecordingPostProcessor.THUMBNAIL_READY : null);
+        ret.put("mimeType", result.mimeType);
+        ret.put("codecs", result.codecs);
+        ret.put("bitrate", result.bitrate);
+        if (result.fastStart != null) {
+            ret.put("fastStart", result.fastStart.booleanValue());
+        }
+        if (result.segments != null) {
+            JSArray segments = new JSArray();
+            for (RecordingSegmenter.Segment segment : result.segments) {
+                segments.put(segment.toJSObject());
+            }
+            ret.put("segments", segments);
+        }
+        return ret;
+    }
+
+    private HashMap<String, String> headersFromCall(PluginCall call, String key) {
+        HashMap<String, String> headers = new HashMap<>();
+        JSObject object = call.getObject(key);
+        if (object != null) {
+            Iterator<String> names = object.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                headers.put(name, object.getString(name));
+            }
+        }
+        return headers;
+    }
+
     private JSObject createModeObject(String type, int width, int height) {
         JSObject mode = new JSObject();
         mode.put("type", type);
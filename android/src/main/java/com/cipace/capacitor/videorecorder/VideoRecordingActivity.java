@@ -9,6 +9,7 @@ import android.graphics.drawable.GradientDrawable;
 import android.hardware.Camera;
 import android.media.CamcorderProfile;
 import android.media.MediaRecorder;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -29,6 +30,8 @@ import androidx.core.content.ContextCompat;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.List;
 
 public class VideoRecordingActivity extends Activity implements SurfaceHolder.Callback {
@@ -39,31 +42,52 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
     public static final String EXTRA_RESULT = "result";
     public static final String EXTRA_ERROR = "error";
     public static final String EXTRA_IS_CAPTURE_MODE = "is_capture_mode";
+    // RecordingMetrics.now() when the plugin started this Activity
+    public static final String EXTRA_LAUNCH_TIME = "launch_time";
     
     private SurfaceView surfaceView;
     private SurfaceHolder surfaceHolder;
     private Camera camera;
-    private MediaRecorder mediaRecorder;
+    // audioLevel 事件在后台线程轮询峰值，因此为 volatile
+    private volatile MediaRecorder mediaRecorder;
     private Button recordButton;
     private Button stopButton;
     private Button cancelButton;
     private Button switchCameraButton;
+    private Button pauseButton;
     private TextView recordingLabel;
     private TextView durationLabel;
 
     private boolean isRecording = false;
     private boolean isPreviewMode = true;
+    private boolean isPaused = false;
+    // 停止已开始（按钮、maxDuration 或 JS 调用），避免重复停止覆盖结果
+    private boolean isStopping = false;
+    private long pausedAt;
+    private long pausedDurationMs;
+    // API < 24 pause fallback: finished takes, joined on stop
+    private final List<File> takeFiles = new ArrayList<>();
+    private String currentTakePath;
     private int currentCameraId = Camera.CameraInfo.CAMERA_FACING_BACK;
     private VideoRecordingOptions options;
     private String outputFilePath;
+    private RecordingSegmenter segmenter;
+    // 与插件共享的录制状态，同时负责发送 recordingProgress 事件
+    private RecordingSession session;
+    // Open handle of the pre-allocated output file (options.preallocate), null otherwise
+    private RandomAccessFile outputReservation;
+    private String recordingId;
     private long recordingStartTime;
     private Handler blinkHandler;
     private Runnable blinkRunnable;
     private Handler durationHandler;
     private Runnable durationRunnable;
+    private RecordingMetrics.Session metrics = new RecordingMetrics.Session();
+    private long recorderStoppedAt;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long createStart = RecordingMetrics.now();
         super.onCreate(savedInstanceState);
 
         // 首先检查权限
@@ -85,6 +109,8 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
         }
         
         setupUI();
+        long launchTime = getIntent().getLongExtra(EXTRA_LAUNCH_TIME, createStart);
+        metrics.record(RecordingMetrics.ACTIVITY_CREATE, RecordingMetrics.now() - launchTime);
         setupCamera();
     }
     
@@ -167,6 +193,21 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
         stopButton.setVisibility(View.GONE);
         mainLayout.addView(stopButton, stopParams);
 
+        // Pause button - 圆形，录制时显示在左侧（取消按钮的位置）
+        pauseButton = createCircularButton("❚❚", Color.parseColor("#757575"));
+        FrameLayout.LayoutParams pauseParams = new FrameLayout.LayoutParams(140, 140);
+        pauseParams.gravity = Gravity.BOTTOM | Gravity.LEFT;
+        pauseParams.setMargins(100, 0, 0, 150); // 初始设置更大的底部边距
+        pauseButton.setOnClickListener(v -> {
+            if (isPaused) {
+                resumeRecording();
+            } else {
+                pauseRecording();
+            }
+        });
+        pauseButton.setVisibility(View.GONE);
+        mainLayout.addView(pauseButton, pauseParams);
+
         // Switch camera button - 圆形，右侧
         switchCameraButton = createCircularButton("⟲", Color.parseColor("#99000000"));
         switchCameraButton.setTextSize(20);
@@ -211,50 +252,50 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
     }
     
     private void openCamera() {
-        try {
-            if (camera != null) {
-                camera.release();
-            }
-            
-            camera = Camera.open(currentCameraId);
-            Camera.Parameters parameters = camera.getParameters();
-            
-            // Set camera parameters with optimal preview size
-            Camera.Size optimalPreviewSize = getOptimalPreviewSize(parameters);
-            if (optimalPreviewSize != null) {
-                parameters.setPreviewSize(optimalPreviewSize.width, optimalPreviewSize.height);
-            }
-
-            // 设置对焦模式以获得更清晰的画面
-            List<String> focusModes = parameters.getSupportedFocusModes();
-            if (focusModes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
-                parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
-            } else if (focusModes.contains(Camera.Parameters.FOCUS_MODE_AUTO)) {
-                parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
-            }
+        if (camera != null) {
+            camera.release();
+            camera = null;
+        }
 
-            // 启用视频稳定（如果支持）
-            if (parameters.isVideoStabilizationSupported()) {
-                parameters.setVideoStabilization(true);
+        // 在相机线程上打开并配置相机（如已通过 prepareCamera 预热则直接复用），不阻塞 UI 线程
+        final int cameraId = currentCameraId;
+        CameraPrewarmer.acquire(cameraId, options.quality, new VideoRecorder.RecordingCallback() {
+            @Override
+            public void onSuccess(Object result) {
+                CameraPrewarmer.PreparedCamera prepared = (CameraPrewarmer.PreparedCamera) result;
+                runOnUiThread(() -> onCameraOpened(prepared, cameraId));
             }
 
-            // 设置场景模式为视频录制
-            List<String> sceneModes = parameters.getSupportedSceneModes();
-            if (sceneModes != null && sceneModes.contains(Camera.Parameters.SCENE_MODE_AUTO)) {
-                parameters.setSceneMode(Camera.Parameters.SCENE_MODE_AUTO);
+            @Override
+            public void onError(VideoRecorderError error) {
+                runOnUiThread(() -> {
+                    if (!isFinishing()) {
+                        finishWithError(error.code, error.message);
+                    }
+                });
             }
+        });
+    }
 
-            camera.setParameters(parameters);
-            camera.setDisplayOrientation(90);
-
-            if (surfaceHolder != null) {
-                camera.setPreviewDisplay(surfaceHolder);
-                camera.startPreview();
+    private void onCameraOpened(CameraPrewarmer.PreparedCamera prepared, int cameraId) {
+        // Activity 已关闭或期间切换了摄像头，丢弃该相机
+        if (isFinishing() || isDestroyed() || cameraId != currentCameraId || camera != null) {
+            prepared.camera.release();
+            return;
+        }
+        camera = prepared.camera;
+        // 打开和配置耗时已在相机线程计入统计，这里只记录到本次录制
+        metrics.set(RecordingMetrics.CAMERA_OPEN, prepared.openNanos);
+        metrics.set(RecordingMetrics.CAMERA_CONFIGURE, prepared.configureNanos);
+        metrics.prewarmed = prepared.prewarmed;
 
-                // 调整 SurfaceView 尺寸以保持正确的宽高比
-                adjustSurfaceViewSize(optimalPreviewSize);
+        try {
+            if (surfaceHolder != null && surfaceHolder.getSurface() != null && surfaceHolder.getSurface().isValid()) {
+                startPreview(surfaceHolder);
             }
-            
+
+            // 调整 SurfaceView 尺寸以保持正确的宽高比
+            adjustSurfaceViewSize(prepared.previewSize);
         } catch (Exception e) {
             Log.e(TAG, "Error opening camera", e);
             finishWithError("CAMERA_ERROR", "Failed to open camera: " + e.getMessage());
@@ -272,27 +313,12 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
     }
     
     private void startRecording() {
+        if (camera == null) {
+            // 相机仍在后台线程打开中
+            return;
+        }
         try {
-            // Prepare MediaRecorder
-            mediaRecorder = new MediaRecorder();
-            camera.unlock();
-            mediaRecorder.setCamera(camera);
-
-            mediaRecorder.setAudioSource(MediaRecorder.AudioSource.CAMCORDER);
-            mediaRecorder.setVideoSource(MediaRecorder.VideoSource.CAMERA);
-
-            // Set output format and encoders
-            mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
-            mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
-            mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
-
-            // Set quality based on options
-            CamcorderProfile profile = getQualityProfile();
-            mediaRecorder.setVideoSize(profile.videoFrameWidth, profile.videoFrameHeight);
-            mediaRecorder.setVideoFrameRate(profile.videoFrameRate);
-            mediaRecorder.setVideoEncodingBitRate(profile.videoBitRate);
-            mediaRecorder.setAudioEncodingBitRate(profile.audioBitRate);
-            mediaRecorder.setAudioSamplingRate(profile.audioSampleRate);
+            CamcorderProfile profile = StoragePreflight.resolveProfile(options.quality, currentCameraId);
 
             // Set output file
             File outputDir = new File(getExternalFilesDir(null), "videos");
@@ -300,29 +326,123 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
                 outputDir.mkdirs();
             }
 
-            String fileName = options.fileNamePrefix + "_" + System.currentTimeMillis() + ".mp4";
-            File outputFile = new File(outputDir, fileName);
-            outputFilePath = outputFile.getAbsolutePath();
-            mediaRecorder.setOutputFile(outputFilePath);
-
-            // Set max duration if specified
-            if (options.maxDuration > 0) {
-                mediaRecorder.setMaxDuration((int) (options.maxDuration * 1000));
-                mediaRecorder.setOnInfoListener((mr, what, extra) -> {
-                    if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED) {
-                        stopRecording();
-                    }
-                });
+            String baseName = options.fileNamePrefix + "_" + System.currentTimeMillis();
+            long segmentBytes = RecordingSegmenter.segmentBytes(options, profile.videoBitRate, profile.audioBitRate);
+            boolean segmented = segmentBytes > 0 && RecordingSegmenter.isSupported();
+            if (segmentBytes > 0 && !segmented) {
+                Log.w(TAG, "Segmented recording requires API 26+, recording a single file");
+            }
+
+            // 在解锁相机之前检查存储空间，空间不足时直接失败
+            StoragePreflight.Estimate storage = StoragePreflight.estimate(
+                outputDir, profile, options.enableAudio, options.maxDuration);
+            if (!storage.canRecord()) {
+                finishWithError(VideoRecorderError.STORAGE_ERROR,
+                    "Not enough storage space to record (" + storage.availableBytes + " bytes available)");
+                return;
+            }
+            if (!storage.isSufficient()) {
+                Log.w(TAG, "Recording will be capped at " + storage.maxFileSize + " bytes by free space");
+            }
+            File outputFile = new File(outputDir, baseName + ".mp4");
+            boolean preallocate = !segmented && options.preallocate && storage.estimatedBytes > 0;
+
+            // 在创建输出文件、解锁相机之前占用录制会话：后台录制或 captureAudio 已经开始时直接失败
+            recordingId = "recording_" + System.currentTimeMillis();
+            session = RecordingSession.begin(recordingId, outputFile,
+                options.maxDuration, storage.maxFileSize, storage.bytesPerSecond(), preallocate,
+                options.progressInterval);
+            if (session == null) {
+                finishWithError(VideoRecorderError.ALREADY_RECORDING, "Recording is already in progress");
+                return;
+            }
+
+            if (preallocate) {
+                try {
+                    outputReservation = StoragePreflight.preallocate(outputFile,
+                        Math.min(storage.estimatedBytes, storage.maxFileSize));
+                } catch (IOException e) {
+                    finishWithError(VideoRecorderError.STORAGE_ERROR, e.getMessage());
+                    return;
+                }
+            }
+
+            createMediaRecorder(profile);
+
+            segmenter = null;
+            if (segmented) {
+                // 分段录制：达到大小上限时自动切换到下一个文件
+                // （每个分段有自己的大小上限，总大小已在上面的预检中确认）
+                segmenter = new RecordingSegmenter(mediaRecorder, outputDir, baseName, segmentBytes);
+                outputFilePath = segmenter.prepare().getAbsolutePath();
+                session.setOutput(new File(outputFilePath), 0);
+                if (options.uploadUrl != null) {
+                    segmenter.setUploadTarget(options.uploadUrl, options.uploadHeaders);
+                }
+            } else {
+                outputFilePath = outputFile.getAbsolutePath();
+                // 按剩余空间限制文件大小：写满前正常结束录制，而不是留下没有 moov 的损坏文件
+                mediaRecorder.setMaxFileSize(storage.maxFileSize);
+                if (outputReservation != null) {
+                    mediaRecorder.setOutputFile(outputReservation.getFD());
+                } else {
+                    mediaRecorder.setOutputFile(outputFilePath);
+                }
             }
 
-            mediaRecorder.setPreviewDisplay(surfaceHolder.getSurface());
-            mediaRecorder.prepare();
-            mediaRecorder.start();
+            takeFiles.clear();
+            pausedDurationMs = 0;
+            long startedAt = startMediaRecorder(options.maxDuration);
+            if (outputReservation == null && !metrics.has(RecordingMetrics.FIRST_FRAME)) {
+                // 预分配的文件长度不变，无法据此判断首帧
+                metrics.watchFirstFrame(new File(outputFilePath), startedAt);
+            }
 
             // Update UI - 隐藏预览状态的按钮，显示录制状态的按钮
             isRecording = true;
             isPreviewMode = false;
             recordingStartTime = System.currentTimeMillis();
+            if (segmenter != null) {
+                segmenter.setRecordingId(recordingId);
+            }
+            // JS 通过插件的 stopRecording/pauseRecording/resumeRecording 控制录制，操作在 UI 线程执行
+            session.setController(new RecordingSession.Controller() {
+                @Override
+                public void stop() {
+                    runOnUiThread(() -> stopRecording());
+                }
+
+                @Override
+                public void pause(VideoRecorder.RecordingCallback callback) {
+                    runOnUiThread(() -> {
+                        pauseRecording();
+                        if (isPaused) {
+                            callback.onSuccess(null);
+                        } else {
+                            callback.onError(new VideoRecorderError(VideoRecorderError.RECORDING_FAILED, "Failed to pause recording"));
+                        }
+                    });
+                }
+
+                @Override
+                public void resume(VideoRecorder.RecordingCallback callback) {
+                    runOnUiThread(() -> {
+                        resumeRecording();
+                        if (isRecording && !isPaused) {
+                            callback.onSuccess(null);
+                        } else {
+                            callback.onError(new VideoRecorderError(VideoRecorderError.RECORDING_FAILED, "Failed to resume recording"));
+                        }
+                    });
+                }
+            });
+            if (options.enableAudio && options.audioLevelInterval > 0) {
+                // MediaRecorder 不提供 PCM，只能轮询峰值（getMaxAmplitude），没有 RMS
+                session.setAudioLevelMeter(new AudioLevelMeter(() -> {
+                    MediaRecorder recorder = mediaRecorder;
+                    return recorder != null ? recorder.getMaxAmplitude() : 0;
+                }), options.audioLevelInterval);
+            }
 
             // 隐藏预览状态的按钮
             recordButton.setVisibility(View.GONE);
@@ -331,6 +451,7 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
 
             // 显示录制状态的按钮和指示器
             stopButton.setVisibility(View.VISIBLE);
+            pauseButton.setVisibility(View.VISIBLE);
             recordingLabel.setVisibility(View.VISIBLE);
             durationLabel.setVisibility(View.VISIBLE);
 
@@ -346,75 +467,209 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
         }
     }
 
+    /** Creates and configures a MediaRecorder on the current camera; the caller sets the output. */
+    private void createMediaRecorder(CamcorderProfile profile) {
+        // Prepare MediaRecorder
+        mediaRecorder = new MediaRecorder();
+        camera.unlock();
+        mediaRecorder.setCamera(camera);
+
+        mediaRecorder.setAudioSource(MediaRecorder.AudioSource.CAMCORDER);
+        mediaRecorder.setVideoSource(MediaRecorder.VideoSource.CAMERA);
+
+        // Set output format and encoders
+        mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
+        mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+        mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
+
+        // Set quality based on options
+        mediaRecorder.setVideoSize(profile.videoFrameWidth, profile.videoFrameHeight);
+        mediaRecorder.setVideoFrameRate(profile.videoFrameRate);
+        mediaRecorder.setVideoEncodingBitRate(profile.videoBitRate);
+        mediaRecorder.setAudioEncodingBitRate(profile.audioBitRate);
+        mediaRecorder.setAudioSamplingRate(profile.audioSampleRate);
+    }
+
+    /**
+     * Sets limits and listeners on the configured recorder, then prepares and starts it.
+     * Returns the monotonic time start() was called.
+     */
+    private long startMediaRecorder(double maxDurationSeconds) throws IOException {
+        // Set max duration if specified
+        if (maxDurationSeconds > 0) {
+            mediaRecorder.setMaxDuration((int) (maxDurationSeconds * 1000));
+        }
+        mediaRecorder.setOnInfoListener((mr, what, extra) -> {
+            if (segmenter != null && segmenter.onInfo(what)) {
+                if (session != null) {
+                    session.setOutput(segmenter.getCurrentFile(), segmenter.getCompletedBytes());
+                }
+                return;
+            }
+            if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED
+                    || what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_REACHED) {
+                stopRecording();
+            }
+        });
+
+        mediaRecorder.setPreviewDisplay(surfaceHolder.getSurface());
+        long prepareStart = RecordingMetrics.now();
+        mediaRecorder.prepare();
+        long startStart = RecordingMetrics.now();
+        metrics.record(RecordingMetrics.RECORDER_PREPARE, startStart - prepareStart);
+        mediaRecorder.start();
+        metrics.record(RecordingMetrics.RECORDER_START, RecordingMetrics.now() - startStart);
+        return startStart;
+    }
+
+    private void pauseRecording() {
+        if (!isRecording || isPaused) {
+            return;
+        }
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                mediaRecorder.pause();
+            } else {
+                // API < 24 没有 pause()：结束当前片段，停止时再无损拼接
+                mediaRecorder.stop();
+                mediaRecorder.release();
+                mediaRecorder = null;
+                camera.lock();
+                releaseOutputReservation();
+                takeFiles.add(new File(takeFiles.isEmpty() ? outputFilePath : currentTakePath));
+            }
+            isPaused = true;
+            pausedAt = System.currentTimeMillis();
+            if (session != null) {
+                session.pause();
+            }
+            pauseButton.setText("▶");
+            stopBlinkingAnimation();
+        } catch (Exception e) {
+            Log.e(TAG, "Error pausing recording", e);
+            finishWithError("RECORDING_FAILED", "Failed to pause recording: " + e.getMessage());
+        }
+    }
+
+    private void resumeRecording() {
+        if (!isRecording || !isPaused) {
+            return;
+        }
+        try {
+            pausedDurationMs += System.currentTimeMillis() - pausedAt;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                mediaRecorder.resume();
+            } else {
+                double remaining = options.maxDuration > 0
+                    ? Math.max(1, options.maxDuration - getRecordedDurationMs() / 1000.0) : 0;
+                CamcorderProfile profile = StoragePreflight.resolveProfile(options.quality, currentCameraId);
+                StoragePreflight.Estimate storage = StoragePreflight.estimate(
+                    new File(outputFilePath).getParentFile(), profile, options.enableAudio, remaining);
+                if (!storage.canRecord()) {
+                    // 空间不足以继续录制：保留已录制的片段并结束
+                    Log.w(TAG, "Not enough storage space to resume, stopping");
+                    stopRecording();
+                    return;
+                }
+                createMediaRecorder(profile);
+                currentTakePath = outputFilePath.replace(".mp4", "_take" + takeFiles.size() + ".mp4");
+                mediaRecorder.setMaxFileSize(storage.maxFileSize);
+                mediaRecorder.setOutputFile(currentTakePath);
+                startMediaRecorder(remaining);
+                if (session != null) {
+                    long finishedBytes = 0;
+                    for (File take : takeFiles) {
+                        finishedBytes += take.length();
+                    }
+                    session.setOutput(new File(currentTakePath), finishedBytes);
+                }
+            }
+            isPaused = false;
+            if (session != null) {
+                session.resume();
+            }
+            pauseButton.setText("❚❚");
+            startBlinkingAnimation();
+        } catch (Exception e) {
+            Log.e(TAG, "Error resuming recording", e);
+            finishWithError("RECORDING_FAILED", "Failed to resume recording: " + e.getMessage());
+        }
+    }
+
+    private long getRecordedDurationMs() {
+        long now = isPaused ? pausedAt : System.currentTimeMillis();
+        return now - recordingStartTime - pausedDurationMs;
+    }
+
     private void stopRecording() {
+        if (isStopping) {
+            return;
+        }
+        isStopping = true;
+        if (session != null) {
+            // 之后 JS 的暂停/继续请求会被拒绝，停止请求等待同一个结果
+            session.markStopping();
+        }
         try {
             Log.d(TAG, "🛑 用户点击停止录制，准备回调到前端...");
 
             // 确保总是有回调，即使录制状态异常
-            if (mediaRecorder != null && isRecording) {
+            // 低版本暂停时 mediaRecorder 已经释放，只剩待拼接的片段
+            boolean pausedBetweenTakes = isPaused && mediaRecorder == null && !takeFiles.isEmpty();
+            if (isRecording && (mediaRecorder != null || pausedBetweenTakes)) {
                 Log.d(TAG, "📹 正常停止录制流程...");
 
-                mediaRecorder.stop();
-                mediaRecorder.release();
-                mediaRecorder = null;
-
-                camera.lock();
+                if (mediaRecorder != null) {
+                    long stopStart = RecordingMetrics.now();
+                    mediaRecorder.stop();
+                    metrics.record(RecordingMetrics.RECORDER_STOP, RecordingMetrics.now() - stopStart);
+                    mediaRecorder.release();
+                    mediaRecorder = null;
+                    camera.lock();
+                    releaseOutputReservation();
+                    if (!takeFiles.isEmpty()) {
+                        takeFiles.add(new File(currentTakePath));
+                    }
+                }
                 isRecording = false;
+                isPaused = false;
+                recorderStoppedAt = RecordingMetrics.now();
 
                 stopBlinkingAnimation();
                 stopDurationTimer();
 
                 // Create result
-                long endTime = System.currentTimeMillis();
-                double duration = (endTime - recordingStartTime) / 1000.0;
-
-                File file = new File(outputFilePath);
-                long fileSize = file.length();
+                final long endTime = System.currentTimeMillis();
 
-                // 生成缩略图
-                String thumbnailPath = null;
-                try {
-                    android.media.MediaMetadataRetriever retriever = new android.media.MediaMetadataRetriever();
-                    retriever.setDataSource(outputFilePath);
-                    
-                    // 在第1秒生成缩略图
-                    android.graphics.Bitmap bitmap = retriever.getFrameAtTime(1000000, android.media.MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
-                    retriever.release();
-                    
-                    if (bitmap != null) {
-                        String thumbnailFileName = new File(outputFilePath).getName().replace(".mp4", "_thumbnail.jpg");
-                        File thumbnailFile = new File(new File(outputFilePath).getParent(), thumbnailFileName);
-                        
-                        java.io.FileOutputStream out = new java.io.FileOutputStream(thumbnailFile);
-                        bitmap.compress(android.graphics.Bitmap.CompressFormat.JPEG, 80, out);
-                        out.flush();
-                        out.close();
-                        bitmap.recycle();
-                        
-                        thumbnailPath = thumbnailFile.getAbsolutePath();
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to generate thumbnail", e);
+                // 分段可能已经在上传，不做 fast start 重写
+                final boolean fastStart = options.fastStart && segmenter == null;
+                if (takeFiles.isEmpty() && !fastStart) {
+                    deliverResult(endTime, null);
+                    return;
                 }
 
-                VideoRecorder.StopRecordingResult result = new VideoRecorder.StopRecordingResult(
-                    "recording_" + recordingStartTime,
-                    outputFilePath,
-                    fileSize,
-                    duration,
-                    1920, // Default width - should get from actual recording
-                    1080, // Default height - should get from actual recording
-                    recordingStartTime,
-                    endTime,
-                    thumbnailPath,
-                    "video/mp4"
-                );
-
-                Intent resultIntent = new Intent();
-                resultIntent.putExtra(EXTRA_RESULT, result);
-                setResult(RESULT_OK, resultIntent);
-                Log.d(TAG, "✅ 录制结果已设置，准备关闭Activity...");
-                finish();
+                // 拼接和 fast start 重写都是文件 I/O，放到后台线程；
+                // 完成后才返回结果，JS 拿到的路径和大小都是最终文件的
+                stopButton.setEnabled(false);
+                pauseButton.setEnabled(false);
+                final List<File> takes = new ArrayList<>(takeFiles);
+                takeFiles.clear();
+                RecordingPostProcessor.getInstance().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (!takes.isEmpty()) {
+                                joinTakes(takes);
+                            }
+                            final Boolean optimized = fastStart
+                                ? RecordingPostProcessor.applyFastStart(new File(outputFilePath)) : null;
+                            runOnUiThread(() -> deliverResult(endTime, optimized));
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error joining takes", e);
+                            runOnUiThread(() -> finishWithError("RECORDING_FAILED", "Failed to join takes: " + e.getMessage()));
+                        }
+                    }
+                });
             } else {
                 Log.w(TAG, "⚠️ 录制状态异常，但仍然回调取消状态到前端");
                 Log.w(TAG, "mediaRecorder: " + (mediaRecorder != null ? "not null" : "null"));
@@ -430,49 +685,69 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
         }
     }
 
-    private CamcorderProfile getQualityProfile() {
-        String quality = options.quality != null ? options.quality : "high";
-        int cameraId = currentCameraId;
+    private void deliverResult(long endTime, Boolean fastStart) {
+        // 宽高、时长、编码信息直接从 MP4 头部读取
+        // 分段录制时 fileSize/duration 为所有分段之和
+        VideoRecorder.StopRecordingResult result = VideoRecorder.createStopResult(
+            recordingId,
+            new File(outputFilePath),
+            recordingStartTime,
+            endTime,
+            null
+        );
+        // 缩略图等耗时操作放到后台处理，完成后通过 recordingProcessed 事件通知
+        result.thumbnailStatus = RecordingPostProcessor.THUMBNAIL_PENDING;
+        result.fastStart = fastStart;
+        if (segmenter != null) {
+            result = result.withSegments(segmenter.finish());
+            segmenter = null;
+        }
 
-        switch (quality.toLowerCase()) {
-            case "low":
-                if (CamcorderProfile.hasProfile(cameraId, CamcorderProfile.QUALITY_480P)) {
-                    return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_480P);
-                }
-                return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_LOW);
+        Intent resultIntent = new Intent();
+        resultIntent.putExtra(EXTRA_RESULT, result);
+        setResult(RESULT_OK, resultIntent);
+        metrics.record(RecordingMetrics.RESULT_DELIVERY, RecordingMetrics.now() - recorderStoppedAt);
+        if (session != null) {
+            // 通知等待 stopRecording 的 JS 调用
+            session.complete(result);
+            session = null;
+        }
+        Log.d(TAG, "✅ 录制结果已设置，准备关闭Activity...");
+        finish();
 
-            case "medium":
-                if (CamcorderProfile.hasProfile(cameraId, CamcorderProfile.QUALITY_720P)) {
-                    return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_720P);
-                }
-                return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_480P);
-
-            case "highest":
-                // 尝试最高质量：4K -> 1080P -> 720P
-                if (CamcorderProfile.hasProfile(cameraId, CamcorderProfile.QUALITY_2160P)) {
-                    CamcorderProfile profile = CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_2160P);
-                    // 提高比特率以获得更好质量
-                    profile.videoBitRate = Math.max(profile.videoBitRate, 20000000); // 20Mbps
-                    return profile;
-                }
-                if (CamcorderProfile.hasProfile(cameraId, CamcorderProfile.QUALITY_1080P)) {
-                    CamcorderProfile profile = CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_1080P);
-                    // 提高比特率以获得更好质量
-                    profile.videoBitRate = Math.max(profile.videoBitRate, 12000000); // 12Mbps
-                    return profile;
-                }
-                return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_720P);
-
-            case "high":
-            default:
-                // 默认使用 1080P，如果不支持则降级到 720P
-                if (CamcorderProfile.hasProfile(cameraId, CamcorderProfile.QUALITY_1080P)) {
-                    CamcorderProfile profile = CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_1080P);
-                    // 适中的比特率
-                    profile.videoBitRate = Math.max(profile.videoBitRate, 8000000); // 8Mbps
-                    return profile;
-                }
-                return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_720P);
+        RecordingPostProcessor.getInstance().submit(result, options, metrics);
+    }
+
+    /** Joins the takes of a paused recording (API < 24) into outputFilePath. */
+    private void joinTakes(List<File> takes) throws IOException {
+        // The first take was recorded straight to outputFilePath; move it aside first
+        File output = new File(outputFilePath);
+        File firstTake = new File(outputFilePath.replace(".mp4", "_take0.mp4"));
+        if (!takes.get(0).renameTo(firstTake)) {
+            throw new IOException("Failed to rename " + takes.get(0));
+        }
+        takes.set(0, firstTake);
+
+        Mp4Editor.concat(takes, output);
+        for (File take : takes) {
+            take.delete();
+        }
+    }
+
+    /** Ends the shared session and fails pending stop requests (no-op after complete). */
+    private void failSession(String code, String message) {
+        if (session != null) {
+            session.fail(new VideoRecorderError(code, message));
+            session.end();
+            session = null;
+        }
+    }
+
+    /** Closes a pre-allocated output once the recorder is done with it and drops the unused tail. */
+    private void releaseOutputReservation() {
+        if (outputReservation != null) {
+            StoragePreflight.releasePreallocation(outputReservation, new File(outputFilePath));
+            outputReservation = null;
         }
     }
 
@@ -522,7 +797,7 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
 
     private void updateDurationLabel() {
         if (recordingStartTime > 0) {
-            long elapsed = (System.currentTimeMillis() - recordingStartTime) / 1000;
+            long elapsed = getRecordedDurationMs() / 1000;
             int minutes = (int) (elapsed / 60);
             int seconds = (int) (elapsed % 60);
 
@@ -535,30 +810,49 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
         Log.d(TAG, "❌ 用户点击取消录制，回调到前端...");
 
         // 如果正在录制，先停止录制
-        if (isRecording && mediaRecorder != null) {
+        if (isRecording && (mediaRecorder != null || !takeFiles.isEmpty())) {
             try {
-                mediaRecorder.stop();
-                mediaRecorder.release();
-                mediaRecorder = null;
-                camera.lock();
+                if (mediaRecorder != null) {
+                    mediaRecorder.stop();
+                    mediaRecorder.release();
+                    mediaRecorder = null;
+                    camera.lock();
+                }
+                releaseOutputReservation();
+
+                // 删除暂停前录制的片段
+                for (File take : takeFiles) {
+                    take.delete();
+                }
+                if (currentTakePath != null) {
+                    new File(currentTakePath).delete();
+                }
+                takeFiles.clear();
 
                 // 删除录制的文件
-                if (outputFilePath != null) {
+                if (segmenter != null) {
+                    segmenter.finish();
+                    segmenter.deleteAll();
+                    segmenter = null;
+                } else if (outputFilePath != null) {
                     File file = new File(outputFilePath);
                     if (file.exists()) {
                         file.delete();
                     }
+                    RecordingSweeper.deleteThumbnails(file);
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error stopping recording during cancel", e);
             }
         }
+        failSession(VideoRecorderError.CAPTURE_CANCELLED, "Recording was cancelled");
 
         setResult(RESULT_CANCELED);
         finish();
     }
     
     private void finishWithError(String code, String message) {
+        failSession(code, message);
         Intent result = new Intent();
         result.putExtra(EXTRA_ERROR, new VideoRecorderError(code, message, null));
         setResult(RESULT_FIRST_USER, result);
@@ -570,13 +864,22 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
     public void surfaceCreated(SurfaceHolder holder) {
         if (camera != null) {
             try {
-                camera.setPreviewDisplay(holder);
-                camera.startPreview();
+                startPreview(holder);
             } catch (IOException e) {
                 Log.e(TAG, "Error setting camera preview", e);
             }
         }
     }
+
+    private void startPreview(SurfaceHolder holder) throws IOException {
+        long start = RecordingMetrics.now();
+        camera.setPreviewDisplay(holder);
+        camera.startPreview();
+        // 只统计首次启动预览，切换摄像头不计入
+        if (!metrics.has(RecordingMetrics.PREVIEW_START)) {
+            metrics.record(RecordingMetrics.PREVIEW_START, RecordingMetrics.now() - start);
+        }
+    }
     
     @Override
     public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
@@ -601,6 +904,7 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        failSession(VideoRecorderError.CAPTURE_CANCELLED, "Recording interface was closed");
         if (camera != null) {
             camera.release();
             camera = null;
@@ -609,6 +913,9 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
             mediaRecorder.release();
             mediaRecorder = null;
         }
+        if (outputReservation != null) {
+            releaseOutputReservation();
+        }
         if (blinkHandler != null && blinkRunnable != null) {
             blinkHandler.removeCallbacks(blinkRunnable);
         }
@@ -653,73 +960,6 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
         }
     }
 
-    // 获取最优预览尺寸，避免画面变形
-    private Camera.Size getOptimalPreviewSize(Camera.Parameters parameters) {
-        List<Camera.Size> supportedPreviewSizes = parameters.getSupportedPreviewSizes();
-        List<Camera.Size> supportedVideoSizes = parameters.getSupportedVideoSizes();
-
-        if (supportedPreviewSizes == null || supportedPreviewSizes.isEmpty()) {
-            return null;
-        }
-
-        // 获取录制质量对应的尺寸
-        CamcorderProfile profile = getQualityProfile();
-        int targetWidth = profile.videoFrameWidth;
-        int targetHeight = profile.videoFrameHeight;
-        double targetRatio = (double) targetWidth / targetHeight;
-
-        // 获取屏幕尺寸作为参考
-        android.util.DisplayMetrics displayMetrics = new android.util.DisplayMetrics();
-        getWindowManager().getDefaultDisplay().getMetrics(displayMetrics);
-        int screenWidth = displayMetrics.widthPixels;
-        int screenHeight = displayMetrics.heightPixels;
-
-        Camera.Size optimalSize = null;
-        double minDiff = Double.MAX_VALUE;
-
-        // 首先尝试找到与录制尺寸比例匹配的预览尺寸
-        for (Camera.Size size : supportedPreviewSizes) {
-            double ratio = (double) size.width / size.height;
-            double ratioDiff = Math.abs(ratio - targetRatio);
-
-            // 如果比例接近且尺寸合适
-            if (ratioDiff < 0.1) {
-                double sizeDiff = Math.abs(size.height - targetHeight);
-                if (sizeDiff < minDiff) {
-                    optimalSize = size;
-                    minDiff = sizeDiff;
-                }
-            }
-        }
-
-        // 如果没找到合适的比例，选择最接近录制尺寸的
-        if (optimalSize == null) {
-            minDiff = Double.MAX_VALUE;
-            for (Camera.Size size : supportedPreviewSizes) {
-                double sizeDiff = Math.abs(size.width - targetWidth) + Math.abs(size.height - targetHeight);
-                if (sizeDiff < minDiff) {
-                    optimalSize = size;
-                    minDiff = sizeDiff;
-                }
-            }
-        }
-
-        // 确保选择的尺寸不会太大（避免性能问题）
-        if (optimalSize != null && optimalSize.width * optimalSize.height > 1920 * 1080) {
-            for (Camera.Size size : supportedPreviewSizes) {
-                if (size.width <= 1920 && size.height <= 1080) {
-                    double ratio = (double) size.width / size.height;
-                    if (Math.abs(ratio - targetRatio) < 0.1) {
-                        optimalSize = size;
-                        break;
-                    }
-                }
-            }
-        }
-
-        return optimalSize != null ? optimalSize : supportedPreviewSizes.get(0);
-    }
-
     // 调整 SurfaceView 尺寸以避免画面变形
     private void adjustSurfaceViewSize(Camera.Size previewSize) {
         if (previewSize == null || surfaceView == null) {
@@ -797,6 +1037,12 @@ public class VideoRecordingActivity extends Activity implements SurfaceHolder.Ca
             cancelButton.setLayoutParams(cancelParams);
         }
 
+        if (pauseButton != null) {
+            FrameLayout.LayoutParams pauseParams = (FrameLayout.LayoutParams) pauseButton.getLayoutParams();
+            pauseParams.setMargins(100, 0, 0, buttonBottomMargin);
+            pauseButton.setLayoutParams(pauseParams);
+        }
+
         // 更新切换相机按钮位置（右下角）
         if (switchCameraButton != null) {
             FrameLayout.LayoutParams switchParams = (FrameLayout.LayoutParams) switchCameraButton.getLayoutParams();
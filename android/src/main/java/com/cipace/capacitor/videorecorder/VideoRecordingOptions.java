@@ -1,6 +1,7 @@
 package com.cipace.capacitor.videorecorder;
 
 import java.io.Serializable;
+import java.util.HashMap;
 
 public class VideoRecordingOptions implements Serializable {
     public String quality = "high";
@@ -10,6 +11,27 @@ public class VideoRecordingOptions implements Serializable {
     public String camera = "back";
     public String orientation = "portrait";
     public boolean enableAudio = true;
+    public boolean fastStart = false;
+    // Roll to a new file every N seconds / N bytes (0 = single file)
+    public double segmentDuration = 0;
+    public long segmentSize = 0;
+    // Upload finished segments / the final file to this URL (resumable chunked PUT)
+    public String uploadUrl = null;
+    public HashMap<String, String> uploadHeaders = new HashMap<>();
+    // Reserve the estimated file size with posix_fallocate before recording
+    public boolean preallocate = false;
+    // Emit a recordingMetrics event with this recording's phase timings
+    public boolean reportMetrics = false;
+    // Interval of recordingProgress events in milliseconds (0 = off)
+    public long progressInterval = 1000;
+    // Interval of audioLevel events in milliseconds (0 = off)
+    public long audioLevelInterval = 0;
+    // captureAudio: number of consecutive clips of maxDuration each
+    public int limit = 1;
+    // captureAudio: "aac" (m4a) or "wav" (16-bit PCM), sample rate in Hz, 1 or 2 channels
+    public String audioFormat = AudioCaptureEngine.FORMAT_AAC;
+    public int sampleRate = AudioCaptureEngine.SAMPLE_RATE;
+    public int channels = 1;
     
     public enum VideoQuality {
         LOW("low"),
@@ -0,0 +1,143 @@
+package com.cipace.capacitor.videorecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes 16-bit PCM to a WAV file through a memory-mapped window, so the recorder reads
+ * straight into the file's pages: {@code AudioRecord.read()} targets the buffer returned
+ * by {@link #nextChunk}, and there is no copy in between.
+ *
+ * AudioRecord writes at a direct buffer's base address whatever its position, so each
+ * window is cut into chunk-sized slices when it is mapped. Only mapping a new window
+ * (every ~{@link #WINDOW_BYTES}) allocates.
+ *
+ * The RIFF header is written with zero sizes up front and patched by {@link #close}, after
+ * the file has been truncated to the data actually written (the mapping extends the file
+ * up to a window ahead).
+ */
+public class WavWriter {
+
+    public static final String MIME_TYPE = "audio/wav";
+
+    private static final int HEADER_BYTES = 44;
+    // ~10s of 48kHz stereo per mapping
+    private static final int WINDOW_BYTES = 2 * 1024 * 1024;
+    // RIFF sizes are 32 bits
+    public static final long MAX_DATA_BYTES = 0xFFFFFFFFL - HEADER_BYTES;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final int channels;
+    private final int chunkBytes;
+    private final ByteBuffer[] chunks;
+    private MappedByteBuffer window;
+    private int nextChunk;
+    private long dataBytes;
+
+    /** {@code chunkBytes} is the size of every read; a shorter read remaps at the exact offset. */
+    public WavWriter(File file, int sampleRate, int channels, int chunkBytes) throws IOException {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.chunkBytes = chunkBytes;
+        this.chunks = new ByteBuffer[Math.max(1, WINDOW_BYTES / chunkBytes)];
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        try {
+            raf.setLength(0);
+            channel.write(header(0), 0);
+            map(HEADER_BYTES);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The mapped chunk the next read goes into, starting at the write offset. What was
+     * written there is committed with {@link #advance}; until then the same chunk is
+     * returned again.
+     */
+    public ByteBuffer nextChunk() throws IOException {
+        if (nextChunk == chunks.length) {
+            map(HEADER_BYTES + dataBytes);
+        }
+        return chunks[nextChunk];
+    }
+
+    /** Commits {@code bytes} written into the chunk from {@link #nextChunk}. */
+    public void advance(int bytes) throws IOException {
+        dataBytes += bytes;
+        nextChunk++;
+        if (bytes < chunkBytes) {
+            // Keep the data contiguous: the next chunk starts right after this one
+            map(HEADER_BYTES + dataBytes);
+        }
+    }
+
+    public long getDataBytes() {
+        return dataBytes;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public double getDuration() {
+        return dataBytes / (2.0 * channels * sampleRate);
+    }
+
+    /** Flushes the last window, trims the file to the data written, patches the header and closes it. */
+    public void close() throws IOException {
+        try {
+            if (window != null) {
+                window.force();
+            }
+            raf.setLength(HEADER_BYTES + dataBytes);
+            channel.write(header(dataBytes), 0);
+        } finally {
+            window = null;
+            raf.close();
+        }
+    }
+
+    private void map(long offset) throws IOException {
+        // The previous window is not forced here: a synchronous flush would stall the
+        // reads, and the kernel writes dirty pages back on its own
+        window = channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) chunks.length * chunkBytes);
+        for (int i = 0; i < chunks.length; i++) {
+            window.limit((i + 1) * chunkBytes).position(i * chunkBytes);
+            chunks[i] = window.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        window.clear();
+        nextChunk = 0;
+    }
+
+    private ByteBuffer header(long dataSize) {
+        int blockAlign = channels * 2;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt((int) (36 + dataSize));
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(16);
+        header.putShort((short) 1); // PCM
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * blockAlign);
+        header.putShort((short) blockAlign);
+        header.putShort((short) 16);
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt((int) dataSize);
+        header.flip();
+        return header;
+    }
+}
@@ -0,0 +1,290 @@
+package com.cipace.capacitor.videorecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class Mp4ParserTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void listsTopLevelBoxes() throws IOException {
+        File file = write(concat(ftyp(), moov(0, 90), box("mdat", new byte[1000])));
+
+        List<Mp4Box.Header> headers = topLevel(file);
+
+        assertEquals(3, headers.size());
+        assertEquals("ftyp", headers.get(0).type);
+        assertEquals("moov", headers.get(1).type);
+        assertEquals("mdat", headers.get(2).type);
+        assertEquals(8, headers.get(2).headerSize);
+        assertEquals(1008, headers.get(2).size);
+        assertEquals(file.length(), headers.get(2).end());
+    }
+
+    @Test
+    public void readsLargeSizeHeader() throws IOException {
+        byte[] payload = new byte[500];
+        File file = write(concat(ftyp(), largeBox("mdat", payload), moov(0, 0)));
+
+        List<Mp4Box.Header> headers = topLevel(file);
+
+        Mp4Box.Header mdat = headers.get(1);
+        assertEquals("mdat", mdat.type);
+        assertEquals(16, mdat.headerSize);
+        assertEquals(516, mdat.size);
+        assertEquals(500, mdat.payloadSize());
+        // The box after it is found, so the 64-bit size was used to skip it
+        assertEquals("moov", headers.get(2).type);
+    }
+
+    @Test
+    public void zeroSizeBoxExtendsToEndOfFile() throws IOException {
+        byte[] open = concat(int32(0), ascii("mdat"), new byte[300]);
+        File file = write(concat(ftyp(), moov(0, 0), open));
+
+        List<Mp4Box.Header> headers = topLevel(file);
+
+        Mp4Box.Header mdat = headers.get(2);
+        assertEquals(308, mdat.size);
+        assertEquals(file.length(), mdat.end());
+    }
+
+    @Test
+    public void stopsAtTruncatedHeader() throws IOException {
+        // Four bytes of a fifth box header: not enough to read a size and type
+        File file = write(concat(ftyp(), moov(0, 0), new byte[] {0, 0, 1, 0}));
+
+        assertEquals(2, topLevel(file).size());
+    }
+
+    @Test
+    public void stopsAtLargeSizeHeaderCutShort() throws IOException {
+        byte[] cut = Arrays.copyOf(largeBox("mdat", new byte[100]), 12);
+        File file = write(concat(ftyp(), cut));
+
+        assertEquals(1, topLevel(file).size());
+    }
+
+    @Test
+    public void rejectsTruncatedMoov() throws IOException {
+        byte[] moov = moov(0, 0);
+        File file = write(concat(ftyp(), Arrays.copyOf(moov, moov.length - 20)));
+
+        try {
+            Mp4Parser.parse(file);
+            fail("Expected a truncated moov to be rejected");
+        } catch (IOException e) {
+            assertEquals("moov box is truncated", e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsChildLargerThanParent() {
+        // trak claims 100 bytes inside a moov that only has 16 bytes of payload
+        ByteBuffer payload = ByteBuffer.wrap(concat(int32(100), ascii("trak"), new byte[8]));
+        try {
+            Mp4Box.parse("moov", payload);
+            fail("Expected a malformed child to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Malformed trak box"));
+        }
+    }
+
+    @Test
+    public void parsesLargeSizeChildInsideContainer() throws IOException {
+        byte[] mvhd = mvhd(1000, 3000);
+        Mp4Box moov = Mp4Box.parse("moov", ByteBuffer.wrap(largeBox("mvhd", mvhd)));
+
+        assertNotNull(moov.child("mvhd"));
+        assertEquals(mvhd.length, moov.child("mvhd").getData().length);
+    }
+
+    @Test
+    public void failsWithoutMoov() throws IOException {
+        File file = write(concat(ftyp(), box("mdat", new byte[64])));
+        try {
+            Mp4Parser.parse(file);
+            fail("Expected a missing moov to be reported");
+        } catch (IOException e) {
+            assertEquals("moov box not found", e.getMessage());
+        }
+    }
+
+    @Test
+    public void parsesVideoTrack() throws IOException {
+        byte[] mdat = box("mdat", new byte[250000]);
+        File file = write(concat(ftyp(), moov(0, 90), mdat));
+
+        Mp4Parser.Mp4Info info = Mp4Parser.parse(file);
+
+        assertEquals(640, info.width);
+        assertEquals(480, info.height);
+        assertEquals(90, info.rotation);
+        // From mdhd (2500 / 1000), not mvhd
+        assertEquals(2500000, info.durationUs);
+        assertEquals("avc1.42C01E", info.videoCodec);
+        assertNull(info.audioCodec);
+        assertEquals(250000 * 8L * 1000000L / 2500000, info.bitrate);
+        assertEquals(file.length(), info.fileSize);
+    }
+
+    @Test
+    public void parsesVersion1Durations() throws IOException {
+        File file = write(concat(ftyp(), moov(1, 0)));
+
+        Mp4Parser.Mp4Info info = Mp4Parser.parse(file);
+
+        assertEquals(0, info.rotation);
+        assertEquals(2500000, info.durationUs);
+    }
+
+    @Test
+    public void serializesParsedTreeUnchanged() throws IOException {
+        byte[] moov = moov(0, 270);
+        Mp4Box parsed = Mp4Box.parse("moov", ByteBuffer.wrap(moov, 8, moov.length - 8).slice());
+
+        ByteBuffer out = parsed.toByteBuffer();
+        byte[] bytes = new byte[out.remaining()];
+        out.get(bytes);
+
+        assertEquals(moov.length, parsed.size());
+        assertTrue(Arrays.equals(moov, bytes));
+        assertNotNull(parsed.find("trak/mdia/minf/stbl/stsd"));
+    }
+
+    // MARK: - Fixtures
+
+    private List<Mp4Box.Header> topLevel(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return Mp4Box.readTopLevel(channel);
+        }
+    }
+
+    private File write(byte[] bytes) throws IOException {
+        File file = temp.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] ftyp() {
+        return box("ftyp", concat(ascii("isom"), int32(0x200), ascii("isomavc1")));
+    }
+
+    /** moov with one 640x480 video track of 2.5 s; {@code version} selects 32 or 64-bit times. */
+    private static byte[] moov(int version, int rotation) {
+        byte[] tkhd = tkhd(version, rotation, 640, 480);
+        byte[] mdhd = version == 1 ? mdhd64(1000, 2500) : mdhd(1000, 2500);
+        byte[] hdlr = concat(new byte[8], ascii("vide"), new byte[12], new byte[] {0});
+        byte[] stsd = concat(int32(0), int32(1), avc1(640, 480));
+        byte[] stbl = box("stbl", box("stsd", stsd));
+        byte[] mdia = box("mdia", concat(box("mdhd", mdhd), box("hdlr", hdlr), box("minf", stbl)));
+        byte[] trak = box("trak", concat(box("tkhd", tkhd), mdia));
+        return box("moov", concat(box("mvhd", mvhd(600, 1200)), trak));
+    }
+
+    private static byte[] mvhd(int timescale, int duration) {
+        return concat(int32(0), int32(0), int32(0), int32(timescale), int32(duration), new byte[80]);
+    }
+
+    private static byte[] mdhd(int timescale, int duration) {
+        return concat(int32(0), int32(0), int32(0), int32(timescale), int32(duration), new byte[4]);
+    }
+
+    private static byte[] mdhd64(int timescale, long duration) {
+        return concat(int32(0x01000000), new byte[16], int32(timescale), int64(duration), new byte[4]);
+    }
+
+    private static byte[] tkhd(int version, int rotation, int width, int height) {
+        int one = 0x10000;
+        int[] matrix;
+        if (rotation == 90) {
+            matrix = new int[] {0, one, 0, -one, 0, 0, 0, 0, 0x40000000};
+        } else if (rotation == 270) {
+            matrix = new int[] {0, -one, 0, one, 0, 0, 0, 0, 0x40000000};
+        } else {
+            matrix = new int[] {one, 0, 0, 0, one, 0, 0, 0, 0x40000000};
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(version << 24);
+            // times, track_ID, reserved, duration
+            out.write(new byte[version == 1 ? 32 : 20]);
+            // reserved[2], layer, alternate_group, volume, reserved
+            out.write(new byte[16]);
+            for (int value : matrix) {
+                out.writeInt(value);
+            }
+            out.writeInt(width << 16);
+            out.writeInt(height << 16);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] avc1(int width, int height) {
+        byte[] avcC = box("avcC", new byte[] {1, 0x42, (byte) 0xC0, 0x1E, (byte) 0xFF, (byte) 0xE0, 0});
+        byte[] fields = concat(new byte[6], new byte[] {0, 1}, new byte[16],
+            int16(width), int16(height), new byte[50], avcC);
+        return box("avc1", fields);
+    }
+
+    private static byte[] box(String type, byte[] payload) {
+        return concat(int32(payload.length + 8), ascii(type), payload);
+    }
+
+    /** A box written with size 1 and a 64-bit largesize. */
+    private static byte[] largeBox(String type, byte[] payload) {
+        return concat(int32(1), ascii(type), int64(payload.length + 16), payload);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] int16(int value) {
+        return new byte[] {(byte) (value >>> 8), (byte) value};
+    }
+
+    private static byte[] int32(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private static byte[] int64(long value) {
+        return ByteBuffer.allocate(8).putLong(value).array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,273 @@
+package com.cipace.capacitor.videorecorder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UploadProtocolTest {
+
+    private static final int CHUNK = 1000;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private HttpServer server;
+    private ResumableServer handler;
+    private String url;
+
+    @Before
+    public void startServer() throws IOException {
+        handler = new ResumableServer();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/upload", handler);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/upload";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void uploadsAllChunksWithContentRange() throws IOException {
+        byte[] data = randomBytes(2500);
+        File file = writeFile(data);
+        UploadProtocol protocol = protocol();
+
+        long offset = 0;
+        byte[] buffer = new byte[256];
+        while (offset < data.length) {
+            offset = protocol.sendChunk(file, offset, Math.min(CHUNK, data.length - offset), data.length, buffer);
+        }
+
+        assertEquals(data.length, offset);
+        assertArrayEquals(data, handler.received());
+        assertEquals(Collections.singletonList("abc"), handler.uploadIds());
+        assertEquals("bytes 0-999/2500", handler.ranges.get(0));
+        assertEquals("bytes 1000-1999/2500", handler.ranges.get(1));
+        assertEquals("bytes 2000-2499/2500", handler.ranges.get(2));
+    }
+
+    @Test
+    public void followsCommittedRangeFrom308() throws IOException {
+        byte[] data = randomBytes(2000);
+        File file = writeFile(data);
+        // The server keeps only the first 400 bytes of the first chunk
+        handler.keepAtMost = 400;
+
+        long offset = protocol().sendChunk(file, 0, CHUNK, data.length, new byte[256]);
+
+        assertEquals(400, offset);
+    }
+
+    @Test
+    public void resumesAfterServerErrorFromQueriedOffset() throws IOException {
+        byte[] data = randomBytes(3500);
+        File file = writeFile(data);
+        UploadProtocol protocol = protocol();
+        byte[] buffer = new byte[256];
+
+        long offset = protocol.sendChunk(file, 0, CHUNK, data.length, buffer);
+        handler.failNext = true;
+        try {
+            protocol.sendChunk(file, offset, CHUNK, data.length, buffer);
+            fail("Expected the 503 to surface as an IOException");
+        } catch (UploadProtocol.PermanentUploadException e) {
+            fail("503 must be retryable");
+        } catch (IOException e) {
+            assertEquals("HTTP 503", e.getMessage());
+        }
+
+        // What a restarted uploader does: ask the server, then continue from there
+        offset = protocol.queryOffset(data.length);
+        assertEquals(CHUNK, offset);
+        while (offset < data.length) {
+            offset = protocol.sendChunk(file, offset, Math.min(CHUNK, data.length - offset), data.length, buffer);
+        }
+        assertArrayEquals(data, handler.received());
+        assertEquals("bytes */3500", handler.ranges.get(2));
+    }
+
+    @Test
+    public void queryOffsetOfCompleteUploadReturnsTotal() throws IOException {
+        byte[] data = randomBytes(500);
+        File file = writeFile(data);
+        UploadProtocol protocol = protocol();
+        protocol.sendChunk(file, 0, data.length, data.length, new byte[256]);
+
+        assertEquals(data.length, protocol.queryOffset(data.length));
+    }
+
+    @Test
+    public void queryOffsetWithoutSupportReturnsMinusOne() throws IOException {
+        handler.queryStatus = 404;
+
+        assertEquals(-1, protocol().queryOffset(100));
+    }
+
+    @Test
+    public void clientErrorsArePermanent() throws IOException {
+        File file = writeFile(randomBytes(10));
+        handler.forcedStatus = 403;
+        try {
+            protocol().sendChunk(file, 0, 10, 10, new byte[16]);
+            fail("Expected a permanent failure");
+        } catch (UploadProtocol.PermanentUploadException e) {
+            assertEquals("HTTP 403", e.getMessage());
+        }
+    }
+
+    @Test
+    public void classifiesStatusCodes() {
+        assertTrue(UploadProtocol.errorFor(400) instanceof UploadProtocol.PermanentUploadException);
+        assertTrue(UploadProtocol.errorFor(404) instanceof UploadProtocol.PermanentUploadException);
+        assertFalse(UploadProtocol.errorFor(408) instanceof UploadProtocol.PermanentUploadException);
+        assertFalse(UploadProtocol.errorFor(429) instanceof UploadProtocol.PermanentUploadException);
+        assertFalse(UploadProtocol.errorFor(500) instanceof UploadProtocol.PermanentUploadException);
+    }
+
+    @Test
+    public void parsesRangeHeader() {
+        assertEquals(1000, UploadProtocol.parseRange("bytes=0-999"));
+        assertEquals(1, UploadProtocol.parseRange("bytes=0-0"));
+        assertEquals(-1, UploadProtocol.parseRange(null));
+        assertEquals(-1, UploadProtocol.parseRange("bytes"));
+        assertEquals(-1, UploadProtocol.parseRange("bytes=0-x"));
+    }
+
+    private UploadProtocol protocol() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Upload-Id", "abc");
+        return new UploadProtocol(url, headers, "video/mp4");
+    }
+
+    private File writeFile(byte[] data) throws IOException {
+        File file = temp.newFile("upload.mp4");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /** Minimal server side of the protocol: appends in-order chunks and reports its offset. */
+    private static class ResumableServer implements HttpHandler {
+        final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> uploadIds = Collections.synchronizedList(new ArrayList<String>());
+        private final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        volatile boolean failNext;
+        volatile int keepAtMost = Integer.MAX_VALUE;
+        volatile int queryStatus;
+        volatile int forcedStatus;
+
+        synchronized byte[] received() {
+            return stored.toByteArray();
+        }
+
+        List<String> uploadIds() {
+            List<String> distinct = new ArrayList<>();
+            for (String id : uploadIds) {
+                if (!distinct.contains(id)) {
+                    distinct.add(id);
+                }
+            }
+            return distinct;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String range = exchange.getRequestHeaders().getFirst("Content-Range");
+            ranges.add(range);
+            uploadIds.add(exchange.getRequestHeaders().getFirst("X-Upload-Id"));
+            byte[] body = readAll(exchange.getRequestBody());
+            long total = Long.parseLong(range.substring(range.indexOf('/') + 1));
+
+            if (forcedStatus != 0) {
+                respond(exchange, forcedStatus);
+                return;
+            }
+            if (range.startsWith("bytes */")) {
+                if (queryStatus != 0) {
+                    respond(exchange, queryStatus);
+                } else {
+                    respondWithOffset(exchange, total);
+                }
+                return;
+            }
+            if (failNext) {
+                failNext = false;
+                respond(exchange, 503);
+                return;
+            }
+            long start = Long.parseLong(range.substring(6, range.indexOf('-')));
+            synchronized (this) {
+                if (start == stored.size()) {
+                    stored.write(body, 0, Math.min(body.length, keepAtMost));
+                }
+            }
+            respondWithOffset(exchange, total);
+        }
+
+        private void respondWithOffset(HttpExchange exchange, long total) throws IOException {
+            long committed;
+            synchronized (this) {
+                committed = stored.size();
+            }
+            if (committed >= total) {
+                respond(exchange, 201);
+                return;
+            }
+            if (committed > 0) {
+                exchange.getResponseHeaders().set("Range", "bytes=0-" + (committed - 1));
+            }
+            respond(exchange, 308);
+        }
+
+        private static void respond(HttpExchange exchange, int status) throws IOException {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        }
+
+        private static byte[] readAll(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
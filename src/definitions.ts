@@ -1,3 +1,5 @@
+import type { PluginListenerHandle } from '@capacitor/core';
+
 export interface VideoRecorderPlugin {
   /**
    * 开始视频录制 - 类似于 media-capture 的 captureVideo
@@ -8,6 +10,8 @@ export interface VideoRecorderPlugin {
 
   /**
    * 开始音频录制 - 类似于 media-capture 的 captureAudio
+   * Android 上不显示界面，直接从麦克风录制 AAC（.m4a）或 WAV，录满 duration 或调用 stopRecording 时结束；
+   * 录制期间同样支持 pauseRecording/resumeRecording 和 recordingProgress 事件
    * @param options 录制配置选项
    * @returns Promise<CaptureAudioResult>
    */
@@ -21,20 +25,30 @@ export interface VideoRecorderPlugin {
    */
   openRecordingInterface(options: StartRecordingOptions): Promise<StopRecordingResult>;
 
+  /**
+   * 无界面录制：由前台服务持有相机和 MediaRecorder，不打开录制界面，当前页面保持显示（Android）
+   * 录制开始后返回，之后通过 stopRecording/pauseRecording/resumeRecording 控制，
+   * 进度通过 recordingProgress 事件获取；暂停需要 Android 7.0+
+   * @param options 录制配置选项
+   * @returns Promise<StartRecordingResult> tempFilePath 为正在写入的文件
+   */
+  startRecording(options?: StartRecordingOptions): Promise<StartRecordingResult>;
+
   /**
    * 停止当前录制
+   * 录制界面中的录制同样可以通过此方法停止，重复调用会得到同一个结果
    * @returns Promise<StopRecordingResult>
    */
   stopRecording(): Promise<StopRecordingResult>;
 
   /**
-   * 暂停视频录制
+   * 暂停视频录制（同样作用于录制界面中的录制）
    * @returns Promise<void>
    */
   pauseRecording(): Promise<void>;
 
   /**
-   * 恢复视频录制
+   * 恢复视频录制（同样作用于录制界面中的录制）
    * @returns Promise<void>
    */
   resumeRecording(): Promise<void>;
@@ -59,9 +73,13 @@ export interface VideoRecorderPlugin {
 
   /**
    * 获取支持的视频模式 - 类似于 media-capture 的 supportedVideoModes
-   * @returns Promise<ConfigurationData[]>
+   * Android 上为实际探测结果（各摄像头的 CamcorderProfile、视频/预览尺寸、帧率范围、防抖和可用编码器），
+   * 首次探测后按系统版本缓存，之后不再打开摄像头
+   * 注意：返回值由 ConfigurationData[] 改为 SupportedVideoModes，模式列表在 modes 中（不兼容旧版本）
+   * @param options refresh 为 true 时忽略缓存重新探测
+   * @returns Promise<SupportedVideoModes>
    */
-  getSupportedVideoModes(): Promise<ConfigurationData[]>;
+  getSupportedVideoModes(options?: { refresh?: boolean }): Promise<SupportedVideoModes>;
 
   /**
    * 获取支持的音频模式 - 类似于 media-capture 的 supportedAudioModes
@@ -69,6 +87,48 @@ export interface VideoRecorderPlugin {
    */
   getSupportedAudioModes(): Promise<ConfigurationData[]>;
 
+  /**
+   * 按录制质量和最大时长估算文件大小，并检查剩余存储空间
+   * @param options 与 startRecording 相同的录制选项
+   * @returns Promise<RecordingSizeEstimate>
+   */
+  estimateRecordingSize(options?: StartRecordingOptions): Promise<RecordingSizeEstimate>;
+
+  /**
+   * 预热相机：在后台线程打开并配置相机，之后打开录制界面时直接复用，缩短黑屏时间（Android）
+   * 未被使用的相机在 keepAlive 秒后自动释放
+   * @param options camera、quality 与 openRecordingInterface 相同
+   * @returns Promise<PreparedCameraInfo>
+   */
+  prepareCamera(options?: PrepareCameraOptions): Promise<PreparedCameraInfo>;
+
+  /**
+   * 释放 prepareCamera 预热但尚未使用的相机
+   */
+  releaseCamera(): Promise<void>;
+
+  /**
+   * 在当前页面中显示相机预览，不打开录制界面，由页面自己绘制控件（Android）
+   * toBack 为 true 时预览位于 WebView 下方，页面需使用透明背景；
+   * 预览打开期间 startRecording 直接使用预览中的相机，连续录制无需重新打开相机
+   * （camera 与预览的摄像头不一致时 startRecording 以 INVALID_OPTIONS 失败，需先重新调用 openPreview 切换）
+   * @param options 预览位置（CSS 像素）和摄像头
+   * @returns Promise<PreparedCameraInfo>
+   */
+  openPreview(options?: OpenPreviewOptions): Promise<PreparedCameraInfo>;
+
+  /**
+   * 关闭相机预览；正在录制时相机在录制结束后释放
+   */
+  closePreview(): Promise<void>;
+
+  /**
+   * 获取录制各阶段耗时统计（p50/p95/p99，毫秒），统计范围为当前进程（Android）
+   * @param options reset 为 true 时读取后清空统计
+   * @returns Promise<PerformanceMetrics>
+   */
+  getPerformanceMetrics(options?: { reset?: boolean }): Promise<PerformanceMetrics>;
+
   /**
    * 删除录制的文件
    * @param options 删除选项
@@ -76,12 +136,183 @@ export interface VideoRecorderPlugin {
    */
   deleteRecording(options: DeleteRecordingOptions): Promise<void>;
 
+  /**
+   * 分页获取已录制的视频（来自持久化索引，不扫描目录，包含缓存的元数据和缩略图路径）
+   * @param options 分页和排序选项
+   * @returns Promise<ListRecordingsResult>
+   */
+  listRecordings(options?: ListRecordingsOptions): Promise<ListRecordingsResult>;
+
+  /**
+   * 立即执行一次清理：删除孤立文件（空文件、进程被杀后留下的未完成预分配文件、残留分段、临时文件、无对应视频的缩略图），
+   * 移除文件已不存在的索引项，并按保留策略删除旧录制（正在上传的文件不会被删除）
+   * @returns Promise<SweepSummary>
+   */
+  sweepRecordings(): Promise<SweepSummary>;
+
   /**
    * 生成视频缩略图
    * @param options 缩略图生成选项
    * @returns Promise<ThumbnailResult>
    */
   generateThumbnail(options: GenerateThumbnailOptions): Promise<ThumbnailResult>;
+
+  /**
+   * 批量生成视频缩略图（同一视频只解析一次）
+   * @param options 批量缩略图生成选项
+   * @returns Promise<ThumbnailsResult>
+   */
+  generateThumbnails(options: GenerateThumbnailsOptions): Promise<ThumbnailsResult>;
+
+  /**
+   * 生成拖动预览用的雪碧图（故事板）及其瓦片映射
+   * @param options 故事板生成选项
+   * @returns Promise<StoryboardResult>
+   */
+  generateStoryboard(options: GenerateStoryboardOptions): Promise<StoryboardResult>;
+
+  /**
+   * 将 moov 移到文件头部（fast start），便于边下载边播放
+   * @param options 优化选项
+   * @returns Promise<OptimizeForStreamingResult>
+   */
+  optimizeForStreaming(options: OptimizeForStreamingOptions): Promise<OptimizeForStreamingResult>;
+
+  /**
+   * 无损裁剪：从 start 之前最近的关键帧开始保留到 end，直接复制样本数据，不重新编码
+   * @param options 裁剪选项
+   * @returns Promise<StopRecordingResult>
+   */
+  trimRecording(options: TrimRecordingOptions): Promise<StopRecordingResult>;
+
+  /**
+   * 无损拼接多个编码参数相同的 MP4（多段拍摄、分段录制），不重新编码
+   * @param options 拼接选项
+   * @returns Promise<StopRecordingResult>
+   */
+  concatRecordings(options: ConcatRecordingsOptions): Promise<StopRecordingResult>;
+
+  /**
+   * 重新编码压缩视频（降低分辨率、码率或帧率），进度通过 compressionProgress 事件通知
+   * @param options 压缩选项
+   * @returns Promise<CompressVideoResult>
+   */
+  compressVideo(options: CompressVideoOptions): Promise<CompressVideoResult>;
+
+  /**
+   * 取消压缩任务，被取消的 compressVideo 以 CANCELLED 错误结束
+   * @param options 包含 compressionId
+   * @returns cancelled 表示该任务是否仍在运行或排队并已被取消
+   */
+  cancelCompression(options: { compressionId: string }): Promise<{ cancelled: boolean }>;
+
+  /**
+   * 取消全部压缩任务
+   * @returns cancelled 为被取消的任务数
+   */
+  cancelCompression(options?: Record<string, never>): Promise<{ cancelled: number }>;
+
+  /**
+   * 将文件加入上传队列（可断点续传的分块 PUT，进程重启后自动继续）
+   * headers 不会写入磁盘：进程重启后带 headers 的上传状态为 needsHeaders，需调用 resumeUpload 重新提供
+   * @param options 上传选项
+   * @returns Promise<UploadFileResult>
+   */
+  uploadFile(options: UploadFileOptions): Promise<UploadFileResult>;
+
+  /**
+   * 取消上传
+   * @param options 包含 uploadId
+   */
+  cancelUpload(options: { uploadId: string }): Promise<{ cancelled: boolean }>;
+
+  /**
+   * 重新提供请求头并继续状态为 needsHeaders 的上传（进程重启后）
+   * @param options uploadId 和上传时使用的 headers
+   */
+  resumeUpload(options: { uploadId: string; headers?: { [name: string]: string } }): Promise<{ resumed: boolean }>;
+
+  /**
+   * 获取尚未完成的上传任务
+   */
+  getUploads(): Promise<{ uploads: UploadInfo[] }>;
+
+  /**
+   * 录制后处理（缩略图等）完成时触发
+   */
+  addListener(
+    eventName: 'recordingProcessed',
+    listenerFunc: (event: RecordingProcessedEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * 分段录制时每完成一个分段触发，可在录制过程中开始上传或处理
+   */
+  addListener(
+    eventName: 'segmentCompleted',
+    listenerFunc: (event: SegmentCompletedEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * 上传进度（每个分块确认后触发）
+   */
+  addListener(
+    eventName: 'uploadProgress' | 'uploadCompleted',
+    listenerFunc: (event: UploadInfo) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * 上传失败（重试次数用完或服务器返回不可重试的错误）
+   */
+  addListener(
+    eventName: 'uploadFailed',
+    listenerFunc: (event: UploadInfo & { error: string }) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * 压缩进度（约每 250ms 触发一次）
+   */
+  addListener(
+    eventName: 'compressionProgress',
+    listenerFunc: (event: CompressionProgressEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * 后台清理删除了文件或索引项时触发
+   */
+  addListener(
+    eventName: 'recordingsSwept',
+    listenerFunc: (event: SweepSummary) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * 录制过程中按 progressInterval 定期触发，替代轮询 getRecordingStatus
+   */
+  addListener(
+    eventName: 'recordingProgress',
+    listenerFunc: (event: RecordingProgressEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * 录制过程中按 audioLevelInterval 定期触发音量（可用于音量表或检测麦克风静音），暂停时不触发
+   */
+  addListener(
+    eventName: 'audioLevel',
+    listenerFunc: (event: AudioLevelEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * 录制后处理完成时触发，包含本次录制各阶段耗时（需要 reportMetrics: true）
+   */
+  addListener(
+    eventName: 'recordingMetrics',
+    listenerFunc: (event: RecordingMetricsEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * 移除所有事件监听
+   */
+  removeAllListeners(): Promise<void>;
 }
 
 // 兼容 media-capture 的接口
@@ -104,14 +335,40 @@ export interface CaptureVideoOptions {
 
 export interface CaptureAudioOptions {
   /**
-   * 最大录制时长（秒）
+   * 每个文件的最大录制时长（秒）
+   * @default 300
    */
   duration?: number;
 
   /**
-   * 最大录制文件数量
+   * 最大录制文件数量：录满 duration 后继续录制下一个文件，直到达到数量或调用 stopRecording
+   * @default 1
    */
   limit?: number;
+
+  /**
+   * 输出格式：aac（.m4a）或 wav（16 位 PCM，不压缩）
+   * @default 'aac'
+   */
+  format?: 'aac' | 'wav';
+
+  /**
+   * 采样率（Hz，8000-48000）
+   * @default 44100
+   */
+  sampleRate?: number;
+
+  /**
+   * 声道数（1 或 2）
+   * @default 1
+   */
+  channels?: 1 | 2;
+
+  /**
+   * audioLevel 事件的发送间隔（毫秒），0 表示不发送
+   * @default 0
+   */
+  audioLevelInterval?: number;
 }
 
 export interface CaptureVideoResult {
@@ -207,6 +464,159 @@ export interface ConfigurationData {
   height: number;
 }
 
+export interface VideoModeInfo extends ConfigurationData {
+  /**
+   * 摄像头朝向
+   */
+  camera?: 'front' | 'back';
+
+  /**
+   * CamcorderProfile 质量等级，如 '2160p'、'1080p'、'720p'
+   */
+  quality?: string;
+
+  /**
+   * 帧率
+   */
+  frameRate?: number;
+
+  /**
+   * 视频码率（bps）
+   */
+  videoBitRate?: number;
+
+  /**
+   * 视频编码 MIME 类型
+   */
+  videoCodec?: string;
+
+  /**
+   * 音频码率（bps）
+   */
+  audioBitRate?: number;
+}
+
+export interface CameraCapabilities {
+  /**
+   * 摄像头 ID
+   */
+  cameraId: number;
+
+  /**
+   * 摄像头朝向
+   */
+  facing: 'front' | 'back';
+
+  /**
+   * 传感器方向（度）
+   */
+  orientation: number;
+
+  /**
+   * 是否成功打开摄像头探测（为 false 时没有尺寸、帧率和防抖信息）
+   */
+  opened: boolean;
+
+  /**
+   * 支持的录制尺寸
+   */
+  videoSizes?: { width: number; height: number }[];
+
+  /**
+   * 支持的预览尺寸
+   */
+  previewSizes?: { width: number; height: number }[];
+
+  /**
+   * 支持的帧率范围
+   */
+  fpsRanges?: { min: number; max: number }[];
+
+  /**
+   * 是否支持视频防抖
+   */
+  videoStabilization?: boolean;
+
+  /**
+   * 设备声明的 CamcorderProfile，supported 为 false 表示摄像头或编码器实际无法录制该尺寸
+   */
+  profiles: (Required<Omit<VideoModeInfo, 'type' | 'camera'>> & {
+    qualityLevel: number;
+    audioSampleRate: number;
+    audioChannels: number;
+    supported: boolean;
+  })[];
+}
+
+export interface EncoderInfo {
+  /**
+   * 编码器名称
+   */
+  name: string;
+
+  /**
+   * MIME 类型
+   */
+  mimeType: string;
+
+  /**
+   * 是否为硬件编码器
+   */
+  hardware: boolean;
+
+  /**
+   * 最大宽度（视频编码器）
+   */
+  maxWidth?: number;
+
+  /**
+   * 最大高度（视频编码器）
+   */
+  maxHeight?: number;
+
+  /**
+   * 最大码率（bps）
+   */
+  maxBitRate?: number;
+
+  /**
+   * 最大声道数（音频编码器）
+   */
+  maxChannels?: number;
+}
+
+export interface SupportedVideoModes {
+  /**
+   * 可录制的模式（仅包含摄像头和编码器都支持的 CamcorderProfile）
+   */
+  modes: VideoModeInfo[];
+
+  /**
+   * 各摄像头的探测结果（Android）
+   */
+  cameras?: CameraCapabilities[];
+
+  /**
+   * 可用的 AVC、HEVC 和 AAC 编码器（Android）
+   */
+  encoders?: EncoderInfo[];
+
+  /**
+   * 探测时的系统指纹（Android）
+   */
+  fingerprint?: string;
+
+  /**
+   * 探测时间戳（Android）
+   */
+  probedAt?: number;
+
+  /**
+   * 是否所有摄像头都已探测（没有相机权限时为 false，结果不会缓存）
+   */
+  complete?: boolean;
+}
+
 // 扩展的高级录制选项
 export interface StartRecordingOptions {
   /**
@@ -251,6 +661,58 @@ export interface StartRecordingOptions {
    */
   enableAudio?: boolean;
 
+  /**
+   * 录制完成后将 moov 移到文件头部，便于边下载边播放（分段录制除外）
+   * 在后台线程完成重写后才返回录制结果，因此停止录制会稍慢；结果中的 fileSize 为重写后的大小
+   * @default false
+   */
+  fastStart?: boolean;
+
+  /**
+   * 分段录制：每隔 N 秒切换到新文件（Android 8.0+），每段完成时触发 segmentCompleted
+   * 按码率换算为文件大小上限，实际时长为近似值
+   */
+  segmentDuration?: number;
+
+  /**
+   * 分段录制：每段文件的大小上限（字节，Android 8.0+）
+   */
+  segmentSize?: number;
+
+  /**
+   * 上传地址：分段完成或录制结束后自动上传（可断点续传的分块 PUT）
+   */
+  uploadUrl?: string;
+
+  /**
+   * 上传请求附加的 HTTP 头
+   */
+  uploadHeaders?: { [name: string]: string };
+
+  /**
+   * 录制前用 posix_fallocate 预分配估算大小的空间，减少碎片并避免录制中途空间不足
+   * @default false
+   */
+  preallocate?: boolean;
+
+  /**
+   * 录制后处理完成时发送 recordingMetrics 事件，包含本次录制各阶段耗时（Android）
+   * @default false
+   */
+  reportMetrics?: boolean;
+
+  /**
+   * recordingProgress 事件的发送间隔（毫秒），0 表示不发送
+   * @default 1000
+   */
+  progressInterval?: number;
+
+  /**
+   * audioLevel 事件的发送间隔（毫秒），0 表示不发送；需要 enableAudio
+   * @default 0
+   */
+  audioLevelInterval?: number;
+
   /**
    * 自定义视频尺寸
    */
@@ -289,12 +751,12 @@ export interface StopRecordingResult {
   videoPath: string;
 
   /**
-   * 视频文件大小（字节）
+   * 视频文件大小（字节）；分段录制时为所有分段之和
    */
   fileSize: number;
 
   /**
-   * 录制时长（秒）
+   * 录制时长（秒）；分段录制时为所有分段之和
    */
   duration: number;
 
@@ -308,6 +770,11 @@ export interface StopRecordingResult {
    */
   height: number;
 
+  /**
+   * 视频旋转角度（0、90、180、270），来自轨道矩阵
+   */
+  rotation?: number;
+
   /**
    * 录制开始时间戳
    */
@@ -323,11 +790,36 @@ export interface StopRecordingResult {
    */
   thumbnailPath?: string;
 
+  /**
+   * 缩略图状态：'pending' 表示正在后台生成，完成后触发 recordingProcessed 事件
+   */
+  thumbnailStatus?: 'pending' | 'ready' | 'failed';
+
   /**
    * MIME类型
    */
   mimeType: string;
 
+  /**
+   * 编解码器（RFC 6381 格式，如 "avc1.42C01E, mp4a.40.2"）
+   */
+  codecs?: string;
+
+  /**
+   * 平均比特率（bps）
+   */
+  bitrate?: number;
+
+  /**
+   * 设置了 fastStart 时，重写是否成功（失败时保留原始文件）
+   */
+  fastStart?: boolean;
+
+  /**
+   * 分段录制时的全部分段（videoPath 为第一段）
+   */
+  segments?: RecordingSegment[];
+
   /**
    * 转换为 MediaFile 格式
    */
@@ -364,6 +856,11 @@ export interface RecordingStatus {
    */
   isPaused: boolean;
 
+  /**
+   * 录制状态，stopping 表示正在停止并生成结果
+   */
+  state?: 'recording' | 'paused' | 'stopping' | 'ended';
+
   /**
    * 当前录制时长（秒）
    */
@@ -373,63 +870,934 @@ export interface RecordingStatus {
    * 录制会话ID
    */
   recordingId?: string;
-}
 
-export interface DeleteRecordingOptions {
+  /**
+   * 已写入的字节数（录制界面中的录制）
+   */
+  bytesWritten?: number;
+}
+
+export interface RecordingProgressEvent {
+  /**
+   * 录制会话ID
+   */
+  recordingId: string;
+
+  /**
+   * 已录制的媒体时长（秒，不含暂停时间）
+   */
+  duration: number;
+
+  /**
+   * 已写入的字节数（包括已完成的分段）
+   */
+  bytesWritten: number;
+
+  /**
+   * 最近约 1 秒的实际码率（bps）
+   */
+  bitrate: number;
+
+  /**
+   * 是否暂停
+   */
+  isPaused: boolean;
+
+  /**
+   * 距离 maxDuration 的剩余秒数（设置了 maxDuration 时）
+   */
+  remainingDuration?: number;
+
+  /**
+   * 距离文件大小上限（剩余存储空间）的剩余字节数
+   */
+  remainingBytes?: number;
+
+  /**
+   * 按时长和空间限制估算的剩余可录制秒数
+   */
+  remainingTime?: number;
+}
+
+export interface AudioLevelEvent {
+  /**
+   * 录制会话ID
+   */
+  recordingId: string;
+
+  /**
+   * 本次间隔内的峰值（dBFS，-96 到 0，静音为 -96）
+   */
+  peak: number;
+
+  /**
+   * 本次间隔内的均方根电平（dBFS）；仅 captureAudio 提供，视频录制的 MediaRecorder 无法获取 PCM
+   */
+  rms?: number;
+}
+
+export interface ListRecordingsOptions {
+  /**
+   * 起始位置
+   * @default 0
+   */
+  offset?: number;
+
+  /**
+   * 每页数量
+   * @default 50
+   */
+  limit?: number;
+
+  /**
+   * 排序字段
+   * @default 'date'
+   */
+  sortBy?: 'date' | 'size' | 'duration' | 'name';
+
+  /**
+   * 排序方向
+   * @default 'desc'
+   */
+  order?: 'asc' | 'desc';
+}
+
+export interface RecordingInfo {
+  /**
+   * 录制ID
+   */
+  recordingId: string;
+
+  /**
+   * 视频文件路径
+   */
+  videoPath: string;
+
+  /**
+   * 文件大小（字节）
+   */
+  fileSize: number;
+
+  /**
+   * 时长（秒）
+   */
+  duration: number;
+
+  /**
+   * 视频宽度
+   */
+  width: number;
+
+  /**
+   * 视频高度
+   */
+  height: number;
+
+  /**
+   * 旋转角度
+   */
+  rotation: number;
+
+  /**
+   * 录制开始时间
+   */
+  startTime: number;
+
+  /**
+   * 录制结束时间
+   */
+  endTime: number;
+
+  /**
+   * MIME 类型
+   */
+  mimeType?: string;
+
+  /**
+   * 编码信息
+   */
+  codecs?: string;
+
+  /**
+   * 码率（bps）
+   */
+  bitrate: number;
+
+  /**
+   * 缩略图路径
+   */
+  thumbnailPath?: string;
+}
+
+export interface PrepareCameraOptions {
+  /**
+   * 摄像头
+   * @default 'back'
+   */
+  camera?: 'front' | 'back';
+
+  /**
+   * 录制质量（决定预览尺寸）
+   * @default 'high'
+   */
+  quality?: 'low' | 'medium' | 'high' | 'highest';
+
+  /**
+   * 未被录制界面使用时保留相机的秒数
+   * @default 30
+   */
+  keepAlive?: number;
+}
+
+export interface OpenPreviewOptions {
+  /**
+   * 预览左上角相对于 WebView 的横坐标（CSS 像素）
+   * @default 0
+   */
+  x?: number;
+
+  /**
+   * 预览左上角相对于 WebView 的纵坐标（CSS 像素）
+   * @default 0
+   */
+  y?: number;
+
+  /**
+   * 预览宽度（CSS 像素），默认铺满 WebView
+   */
+  width?: number;
+
+  /**
+   * 预览高度（CSS 像素），默认铺满 WebView
+   */
+  height?: number;
+
+  /**
+   * 预览是否位于 WebView 下方（WebView 背景会设为透明）
+   * @default true
+   */
+  toBack?: boolean;
+
+  /**
+   * 摄像头
+   * @default 'back'
+   */
+  camera?: 'front' | 'back';
+
+  /**
+   * 录制质量（决定预览尺寸）
+   * @default 'high'
+   */
+  quality?: 'low' | 'medium' | 'high' | 'highest';
+}
+
+export interface PreparedCameraInfo {
+  /**
+   * 摄像头
+   */
+  camera: 'front' | 'back';
+
+  /**
+   * 摄像头 ID
+   */
+  cameraId: number;
+
+  /**
+   * 录制质量
+   */
+  quality: string;
+
+  /**
+   * 预览宽度
+   */
+  previewWidth?: number;
+
+  /**
+   * 预览高度
+   */
+  previewHeight?: number;
+
+  /**
+   * 打开和配置相机的耗时（毫秒）
+   */
+  openTime: number;
+}
+
+/**
+ * 录制生命周期阶段：Activity 创建（从插件启动 Activity 开始）、打开相机、设置参数、启动预览、
+ * MediaRecorder.prepare、start、首帧（首次写入媒体数据）、stop、缩略图生成、结果返回
+ */
+export type RecordingPhase =
+  | 'activityCreate'
+  | 'cameraOpen'
+  | 'cameraConfigure'
+  | 'previewStart'
+  | 'recorderPrepare'
+  | 'recorderStart'
+  | 'firstFrame'
+  | 'recorderStop'
+  | 'thumbnail'
+  | 'resultDelivery';
+
+export interface PhaseStats {
+  /**
+   * 样本数
+   */
+  count: number;
+
+  /**
+   * 平均值（毫秒），count 为 0 时没有
+   */
+  mean?: number;
+
+  /**
+   * 中位数（毫秒）
+   */
+  p50?: number;
+
+  /**
+   * 95 分位（毫秒）
+   */
+  p95?: number;
+
+  /**
+   * 99 分位（毫秒）
+   */
+  p99?: number;
+
+  /**
+   * 最大值（毫秒）
+   */
+  max?: number;
+}
+
+export interface PerformanceMetrics {
+  /**
+   * 各阶段统计
+   */
+  phases: Record<RecordingPhase, PhaseStats>;
+
+  /**
+   * captureAudio 计数（Android）
+   */
+  audio: AudioCaptureCounters;
+
+  /**
+   * 统计时长（毫秒，从进程启动或上次 reset 开始）
+   */
+  collectedFor: number;
+}
+
+export interface AudioCaptureCounters {
+  /**
+   * 麦克风缓冲区溢出次数（读取不及时，数据被覆盖；Android 7.0+ 检测）
+   */
+  overruns: number;
+
+  /**
+   * 溢出丢失的帧数（估算）
+   */
+  lostFrames: number;
+
+  /**
+   * AAC 编码跟不上时丢弃的数据块数
+   */
+  droppedChunks: number;
+}
+
+export interface RecordingMetricsEvent {
+  /**
+   * 录制 ID
+   */
+  recordingId: string;
+
+  /**
+   * 本次录制各阶段耗时（毫秒），未发生的阶段不包含
+   */
+  phases: Partial<Record<RecordingPhase, number>>;
+
+  /**
+   * 是否使用了 prepareCamera 预热的相机
+   */
+  prewarmed: boolean;
+}
+
+export interface ListRecordingsResult {
+  /**
+   * 当前页的录制
+   */
+  recordings: RecordingInfo[];
+
+  /**
+   * 录制总数
+   */
+  total: number;
+
+  /**
+   * 起始位置
+   */
+  offset: number;
+
+  /**
+   * 每页数量
+   */
+  limit: number;
+}
+
+export interface SweepSummary {
+  /**
+   * 按保留策略删除的录制数量
+   */
+  deletedRecordings: number;
+
+  /**
+   * 删除的孤立文件数量
+   */
+  deletedFiles: number;
+
+  /**
+   * 移除的失效索引项数量
+   */
+  removedIndexEntries: number;
+
+  /**
+   * 释放的字节数
+   */
+  freedBytes: number;
+
+  /**
+   * 清理耗时（毫秒）
+   */
+  elapsedTime: number;
+}
+
+export interface DeleteRecordingOptions {
   /**
    * 要删除的视频文件路径
    */
   videoPath: string;
 
   /**
-   * 是否同时删除缩略图
-   * @default true
+   * 是否同时删除缩略图
+   * @default true
+   */
+  deleteThumbnail?: boolean;
+}
+
+export interface GenerateThumbnailOptions {
+  /**
+   * 视频文件路径
+   */
+  videoPath: string;
+
+  /**
+   * 生成缩略图的时间点（秒）
+   * @default 1.0
+   */
+  timeAt?: number;
+
+  /**
+   * 缩略图质量 (0.0 - 1.0)
+   * @default 0.8
+   */
+  quality?: number;
+
+  /**
+   * 缩略图最大宽度（像素），0 表示保持原始尺寸
+   * @default 0
+   */
+  maxWidth?: number;
+}
+
+export interface ThumbnailResult {
+  /**
+   * 生成的缩略图文件路径，保存在视频所在目录：原文件名_thumbnail_时间点s.jpg
+   * 同一视频同一时间点的请求会覆盖该文件
+   */
+  thumbnailPath: string;
+
+  /**
+   * 原始视频文件路径
+   */
+  videoPath: string;
+
+  /**
+   * 生成缩略图的时间点（秒）
+   */
+  timeAt: number;
+
+  /**
+   * 缩略图质量
+   */
+  quality: number;
+}
+
+export interface GenerateThumbnailsOptions {
+  /**
+   * 视频文件路径
+   */
+  videoPath: string;
+
+  /**
+   * 生成缩略图的时间点数组（秒）
+   */
+  times: number[];
+
+  /**
+   * 缩略图质量 (0.0 - 1.0)
+   * @default 0.8
+   */
+  quality?: number;
+
+  /**
+   * 缩略图最大宽度（像素），0 表示保持原始尺寸
+   * @default 0
+   */
+  maxWidth?: number;
+}
+
+export interface ThumbnailsResult {
+  /**
+   * 原始视频文件路径
+   */
+  videoPath: string;
+
+  /**
+   * 缩略图质量
+   */
+  quality: number;
+
+  /**
+   * 按请求顺序排列的缩略图，无法解码的时间点 thumbnailPath 为 null
+   * 文件位于缩略图缓存目录，可能被清理，需要长期保存时请自行复制
    */
-  deleteThumbnail?: boolean;
+  thumbnails: {
+    timeAt: number;
+    thumbnailPath: string | null;
+  }[];
 }
 
-export interface GenerateThumbnailOptions {
+export interface GenerateStoryboardOptions {
   /**
    * 视频文件路径
    */
   videoPath: string;
 
   /**
-   * 生成缩略图的时间点（秒）
-   * @default 1.0
+   * 均匀抽取的帧数 (1 - 400)
+   * @default 50
    */
-  timeAt?: number;
+  count?: number;
 
   /**
-   * 缩略图质量 (0.0 - 1.0)
-   * @default 0.8
+   * 雪碧图列数（至少 1，超过 count 时按 count 计算）
+   * @default 10
+   */
+  columns?: number;
+
+  /**
+   * 单个瓦片宽度（像素，16 - 1024）
+   * @default 160
+   */
+  tileWidth?: number;
+
+  /**
+   * 单个瓦片高度（像素，16 - 1024），0 表示按视频宽高比计算
+   * 整张雪碧图超过 4096 x 4096 像素时以 INVALID_OPTIONS 失败
+   * @default 0
+   */
+  tileHeight?: number;
+
+  /**
+   * 图片质量 (0.0 - 1.0)
+   * @default 0.7
    */
   quality?: number;
 }
 
-export interface ThumbnailResult {
+export interface StoryboardResult {
   /**
-   * 生成的缩略图文件路径
+   * 雪碧图文件路径（JPEG），位于缩略图缓存目录，可能被清理
    */
-  thumbnailPath: string;
+  imagePath: string;
 
   /**
    * 原始视频文件路径
    */
   videoPath: string;
 
+  tileWidth: number;
+  tileHeight: number;
+  columns: number;
+  rows: number;
+
   /**
-   * 生成缩略图的时间点（秒）
+   * 瓦片映射：每个瓦片对应的时间点（秒）及其在雪碧图中的左上角坐标
    */
-  timeAt: number;
+  tiles: {
+    time: number;
+    x: number;
+    y: number;
+  }[];
+}
 
+export interface OptimizeForStreamingOptions {
   /**
-   * 缩略图质量
+   * 视频文件路径
    */
-  quality: number;
+  videoPath: string;
+
+  /**
+   * 原地重写，不需要额外的存储空间（过程中被中断会损坏文件）
+   * 剩余空间不足时会自动使用原地模式
+   * @default false
+   */
+  inPlace?: boolean;
+}
+
+export interface OptimizeForStreamingResult {
+  /**
+   * 视频文件路径
+   */
+  videoPath: string;
+
+  /**
+   * 是否进行了重写（已经是 fast start 格式时为 false）
+   */
+  optimized: boolean;
+
+  /**
+   * 重写后的文件大小（字节）
+   */
+  fileSize: number;
+}
+
+export interface RecordingSegment {
+  /**
+   * 分段序号（从 0 开始）
+   */
+  index: number;
+
+  /**
+   * 分段文件路径
+   */
+  path: string;
+
+  /**
+   * 文件大小（字节）
+   */
+  fileSize: number;
+
+  /**
+   * 分段时长（秒）
+   */
+  duration: number;
+}
+
+export interface SegmentCompletedEvent extends RecordingSegment {
+  /**
+   * 录制ID
+   */
+  recordingId: string;
+}
+
+export interface TrimRecordingOptions {
+  /**
+   * 视频文件路径
+   */
+  videoPath: string;
+
+  /**
+   * 开始时间（秒），实际起点为该时间之前最近的关键帧
+   * @default 0
+   */
+  start?: number;
+
+  /**
+   * 结束时间（秒）
+   */
+  end: number;
+
+  /**
+   * 输出文件路径，默认在原文件旁生成 *_trim_<时间戳>.mp4
+   */
+  outputPath?: string;
+}
+
+export interface RecordingSizeEstimate {
+  /**
+   * 视频宽度
+   */
+  width: number;
+
+  /**
+   * 视频高度
+   */
+  height: number;
+
+  /**
+   * 帧率
+   */
+  frameRate: number;
+
+  /**
+   * 视频码率（bps）
+   */
+  videoBitRate: number;
+
+  /**
+   * 音频码率（bps），未启用音频时为 0
+   */
+  audioBitRate: number;
+
+  /**
+   * 估算使用的时长（秒），0 表示不限时长
+   */
+  duration: number;
+
+  /**
+   * 估算的文件大小（字节），不限时长时为 0
+   */
+  estimatedBytes: number;
+
+  /**
+   * 可用存储空间（字节）
+   */
+  availableBytes: number;
+
+  /**
+   * 录制时的文件大小上限（可用空间减去预留空间）
+   */
+  maxFileSize: number;
+
+  /**
+   * 剩余空间是否足够录满最大时长
+   */
+  sufficient: boolean;
+
+  /**
+   * 是否能开始录制（不能时 startRecording 会以 STORAGE_ERROR 失败）
+   */
+  canRecord: boolean;
+}
+
+export interface ConcatRecordingsOptions {
+  /**
+   * 按顺序拼接的视频文件路径
+   */
+  paths: string[];
+
+  /**
+   * 输出文件路径，默认在第一个文件旁生成 *_concat_<时间戳>.mp4
+   */
+  outputPath?: string;
+}
+
+export interface CompressVideoOptions {
+  /**
+   * 视频文件路径
+   */
+  videoPath: string;
+
+  /**
+   * 输出的最大宽度（按旋转后的显示方向），不会放大
+   * @default 1280
+   */
+  maxWidth?: number;
+
+  /**
+   * 输出的最大高度（按旋转后的显示方向），不会放大
+   * @default 1280
+   */
+  maxHeight?: number;
+
+  /**
+   * 视频码率（bps），默认按输出尺寸和帧率估算，且不超过原视频码率
+   */
+  videoBitrate?: number;
+
+  /**
+   * 音频码率（bps），省略时直接复制原音频（不重新编码）
+   */
+  audioBitrate?: number;
+
+  /**
+   * 输出帧率，只能降低，默认保持原帧率
+   */
+  fps?: number;
+
+  /**
+   * 任务ID，用于进度事件和 cancelCompression，默认自动生成
+   */
+  compressionId?: string;
+
+  /**
+   * 输出文件路径，默认在原文件旁生成 *_compressed_<时间戳>.mp4
+   */
+  outputPath?: string;
+}
+
+export interface CompressVideoResult extends StopRecordingResult {
+  /**
+   * 任务ID
+   */
+  compressionId: string;
+
+  /**
+   * 原文件大小（字节）
+   */
+  originalSize: number;
+
+  /**
+   * 编码的帧数
+   */
+  frameCount: number;
+
+  /**
+   * 处理速度（帧/秒）
+   */
+  framesPerSecond: number;
+
+  /**
+   * 音频是否直接复制
+   */
+  audioPassthrough: boolean;
+
+  /**
+   * 耗时（毫秒）
+   */
+  elapsedTime: number;
+}
+
+export interface CompressionProgressEvent {
+  /**
+   * 任务ID
+   */
+  compressionId: string;
+
+  /**
+   * 源视频路径
+   */
+  videoPath: string;
+
+  /**
+   * 进度（0-1）
+   */
+  progress: number;
+
+  /**
+   * 已编码帧数
+   */
+  frames: number;
+
+  /**
+   * 处理速度（帧/秒）
+   */
+  framesPerSecond: number;
+}
+
+export interface UploadFileOptions {
+  /**
+   * 文件路径
+   */
+  filePath: string;
+
+  /**
+   * 上传地址
+   */
+  url: string;
+
+  /**
+   * 附加的 HTTP 头
+   */
+  headers?: { [name: string]: string };
+
+  /**
+   * 关联的录制ID（作为 X-Recording-Id 头发送）
+   */
+  recordingId?: string;
+}
+
+export interface UploadFileResult {
+  /**
+   * 上传任务ID
+   */
+  uploadId: string;
+}
+
+export interface UploadInfo {
+  /**
+   * 上传任务ID
+   */
+  uploadId: string;
+
+  /**
+   * 文件路径
+   */
+  filePath: string;
+
+  /**
+   * 关联的录制ID
+   */
+  recordingId?: string;
+
+  /**
+   * 分段序号（仅分段录制）
+   */
+  segmentIndex?: number;
+
+  /**
+   * 服务器已确认的字节数
+   */
+  bytesSent: number;
+
+  /**
+   * 文件总大小（字节）
+   */
+  totalBytes: number;
+
+  /**
+   * 上传状态；needsHeaders 表示进程重启后等待 resumeUpload 提供请求头
+   */
+  status: 'pending' | 'uploading' | 'completed' | 'failed' | 'needsHeaders';
 }
 
+export interface RecordingProcessedEvent {
+  /**
+   * 录制会话ID
+   */
+  recordingId: string;
+
+  /**
+   * 视频文件路径
+   */
+  videoPath: string;
+
+  /**
+   * 生成的缩略图路径（成功时）
+   */
+  thumbnailPath?: string;
+
+  /**
+   * 缩略图状态
+   */
+  thumbnailStatus: 'ready' | 'failed';
+
+  /**
+   * 是否已完成 fast start 重写（仅在启用 fastStart 时返回）
+   */
+  fastStart?: boolean;
+
+  /**
+   * 重写后的文件大小（字节）
+   */
+  fileSize?: number;
 
+  /**
+   * 失败原因
+   */
+  error?: string;
+}
 
 export interface CaptureError {
   /**
@@ -461,4 +1829,7 @@ export const VideoRecorderErrorCodes = {
   MICROPHONE_ERROR: 'MICROPHONE_ERROR',
   CAPTURE_CANCELLED: 'CAPTURE_CANCELLED',
   THUMBNAIL_GENERATION_FAILED: 'THUMBNAIL_GENERATION_FAILED',
+  CANCELLED: 'CANCELLED',
+  EDIT_FAILED: 'EDIT_FAILED',
+  COMPRESSION_FAILED: 'COMPRESSION_FAILED',
 } as const;